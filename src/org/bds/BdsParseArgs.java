@@ -85,6 +85,7 @@ import org.bds.util.Timer;
 public class BdsParseArgs {
 
 	boolean debug;
+	boolean programModified; // Has any variable initialization in the program been replaced?
 	boolean showHelp;
 	int argNum = 0;
 	ProgramUnit programUnit;
@@ -154,6 +155,7 @@ public class BdsParseArgs {
 				for (VariableInit varInit : varDecl.getVarInit())
 					if (varInit.getVarName().equals(varName)) { // Name matches?
 						setVarInit(varName, varType, varInit);
+						programModified = true;
 						return;
 					}
 			}
@@ -178,6 +180,10 @@ public class BdsParseArgs {
 		return arg.startsWith("-") && (arg.length() > 1);
 	}
 
+	public boolean isProgramModified() {
+		return programModified;
+	}
+
 	public boolean isShowHelp() {
 		return showHelp;
 	}
@@ -32,6 +32,7 @@ public class Config implements Serializable {
 	public static final String AWS_REGION = "awsRegion"; // Cloud: Amazon AWS parameters
 	public static String BDS_HOME = Gpr.HOME + "/.bds"; // Bds home directory
 	public static final String BDS_INCLUDE_PATH = "BDS_PATH"; // BDS include path (colon separated list of directories to look for include files)
+	public static final String CLUSTER_BATCH_SIZE = "clusterBatchSize"; // Cluster: Submit compatible tasks as job arrays of (at most) this size
 	public static final String CLUSTER_GENERIC_KILL = "clusterGenericKill"; // Cluster: Generic cluster
 	public static final String CLUSTER_GENERIC_POSTMORTEMINFO = "clusterGenericPostMortemInfo";
 	public static final String CLUSTER_GENERIC_RUN = "clusterGenericRun";
@@ -47,7 +48,15 @@ public class Config implements Serializable {
 	public static final String CLUSTER_SGE_TIMEOUT_SOFT = "sge.timeoutSoft";
 	public static final String CLUSTER_SSH_NODES = "ssh.nodes"; // Cluster ssh
 	public static final String CLUSTER_STAT_ADDITIONAL_ARGUMENTS = "clusterStatAdditionalArgs"; // Cluster additional command line arguments (when requesting information about all tasks)
+	public static final String CLUSTER_STAT_INTERVAL_MAX = "clusterStatIntervalMax"; // Cluster: Maximum interval between checks that tasks are running (seconds)
+	public static final String CLUSTER_STAT_OWN_JOBS_ONLY = "clusterStatOwnJobsOnly"; // Cluster: Query only the user's jobs when checking that tasks are running
+	public static final String COMPILE_CACHE = "compileCache"; // Cache compiled programs (unchanged programs are not parsed again)
+	public static final String COMPILE_CACHE_DIR = "compileCache.dir"; // Compiled programs cache directory
+	public static final String COMPILE_CACHE_MAX_SIZE = "compileCache.maxSize"; // Compiled programs cache: Maximum size (bytes)
 	private static Config configInstance = null; // Config is some kind of singleton because we want to make it accessible from everywhere
+	public static final String DATA_CACHE_DIR = "dataCache.dir"; // Remote data: Shared cache directory for downloaded files
+	public static final String DATA_CACHE_LINK = "dataCache.link"; // Remote data: Local files are hard links to cache entries (instead of copies)
+	public static final String DATA_CACHE_MAX_SIZE = "dataCache.maxSize"; // Remote data: Maximum cache size (bytes), zero disables the cache
 	public static final String DEFAULT_CONFIG_BASENAME = "bds.config"; // We want to put bds.config together with bds executable
 	public static final String DEFAULT_CONFIG_DIR = BDS_HOME; // by default BDS_HOME == HOME
 	public static final String DEFAULT_CONFIG_FILE = DEFAULT_CONFIG_DIR + "/" + DEFAULT_CONFIG_BASENAME;
@@ -60,22 +69,33 @@ public class Config implements Serializable {
 	public static final String DISABLE_CHECKPOINT_CREATE = "disableCheckpoint"; // Disable checkpoint creation
 	public static final String DISABLE_RM_ON_EXIT = "disableRmOnExit";
 	public static final String[] EMPTY_STRING_ARRAY = new String[0];
+	public static final String FILE_STAT_CACHE_TTL = "fileStatCacheTtl"; // File metadata cache: Entries expire after this time (milliseconds). Zero disables the cache
 	public static final String FILTER_OUT_TASK_HINT = "filterOutTaskHint"; // Lines to filter out from task hint
+	public static final String LOCAL_EXEC_ASYNC = "localExecAsync"; // Local tasks: Do not block a thread while each task is running
 	public static final String MAX_NUMBER_OF_RUNNING_THREADS = "maxThreads";
 	public static final int MAX_NUMBER_OF_RUNNING_THREADS_MIN_VALUE = 50; // If maxThreads in configuration file is too small, we'll consider it an error and use this number
 	public static final String PID_CHECK_TASK_RUNNING_COLUMN = "pidColumnCheckTaskRunning"; // Regex used for checking PID
 	public static final String PID_CHECK_TASK_RUNNING_REGEX = "pidRegexCheckTaskRunning"; // Regex used for checking PID
 	public static final String PID_REGEX = "pidRegex"; // Regex used for PID
+	public static final String PLACEMENT_POLICY = "placementPolicy"; // Policy used to select a host to run a task (firstFit, bestFit, worstFit, binPacking)
 	public static final String QUEUE = "queue";
 	public static final String REPORT_HTML = "reportHtml"; // Create an HTML report
 	public static final String REPORT_YAML = "reportYaml"; // Create a YAML report
 	private static final long serialVersionUID = 6558109289073244716L;
+	public static final String S3_ENDPOINT = "s3.endpoint"; // S3: Use this endpoint instead of AWS (e.g. an S3 compatible server)
+	public static final String S3_PART_SIZE = "s3.partSize"; // S3: Transfer large objects in parts of this size (bytes)
+	public static final String S3_THREADS = "s3.threads"; // S3: Number of parts transferred concurrently
 	public static final String SHOW_TASK_CODE = "showTaskCode"; // Always show task's code (sys commands)
+	public static final String SSH_KEEP_ALIVE = "ssh.keepAlive"; // Ssh: Keep alive interval (seconds)
+	public static final String SSH_MAX_CHANNELS = "ssh.maxChannels"; // Ssh: Maximum number of commands running on the same connection
+	public static final String SYS_OUTPUT_MEM_MAX = "sysOutputMemMax"; // Output from 'sys' commands larger than this (characters) is kept on disk while the command runs
 	public static final String SYS_SHELL = "sysShell"; // Sys's shell
 	public static String SYS_SHELL_DEFAULT = "/bin/bash -euo pipefail -c"; // Note: This executes a script, so it requires the "-c" right before script name
 	public static final String TAIL_LINES = "tailLines"; // Number of lie to use in 'tail'
 	public static final String TASK_MAX_HINT_LEN = "taskMaxHintLen";
+	public static final String TASK_ORDER = "taskOrder"; // Order in which ready tasks are executed (fifo, criticalPath)
 	public static final String TASK_PRELUDE = "taskPrelude"; // Task prelude
+	public static final String TASK_RUNTIME_HISTORY = "taskRuntimeHistory"; // File storing historical task run times (used for 'criticalPath' task ordering)
 	public static final String TASK_SHELL = "taskShell"; // Task's shell
 	public static final String TASK_SHELL_DEFAULT = "/bin/bash -eu\nset -o pipefail"; // Use '-euo pipefail' so that shell script stops after first error
 	public static final String TMP_DIR = "tmpDir";
@@ -91,6 +111,7 @@ public class Config implements Serializable {
 	boolean extractSource = false; // Extract source code from checkpoint file
 	ArrayList<String> filterOutTaskHint;
 	ArrayList<String> includePath;
+	boolean localExecAsync; // Local tasks: Do not block a thread while each task is running
 	boolean log = false; // Log all commands?
 	int maxThreads = -1; // Maximum number of simultaneous threads (e.g. when running 'qsub' commands)
 	MonitorTask monitorTask;
@@ -298,6 +319,7 @@ public class Config implements Serializable {
 	 * Get a property as a string
 	 */
 	protected String getString(String propertyName) {
+		if (properties == null) return null; // Config not loaded
 		return properties.getProperty(propertyName);
 	}
 
@@ -423,6 +445,10 @@ public class Config implements Serializable {
 		return extractSource;
 	}
 
+	public boolean isLocalExecAsync() {
+		return localExecAsync;
+	}
+
 	public boolean isLog() {
 		return log;
 	}
@@ -476,6 +502,7 @@ public class Config implements Serializable {
 	 * Parse some values
 	 */
 	void parse() {
+		localExecAsync = getBool(LOCAL_EXEC_ASYNC, false);
 		maxThreads = (int) getLong(MAX_NUMBER_OF_RUNNING_THREADS, DEFAULT_MAX_NUMBER_OF_RUNNING_THREADS);
 		noCheckpoint = getBool(DISABLE_CHECKPOINT_CREATE, false);
 		noRmOnExit = getBool(DISABLE_RM_ON_EXIT, false);
@@ -1,7 +1,7 @@
 package org.bds.cluster.host;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.bds.cluster.Cluster;
 import org.bds.task.Task;
@@ -10,6 +10,10 @@ import org.bds.util.Gpr;
 /**
  * Host's information
  *
+ * Note: Resources used by running tasks are accounted incrementally
+ * (when tasks are added or removed), so updating available resources
+ * does not depend on the number of tasks running
+ *
  * @author pcingola@mcgill.ca
  */
 public class Host implements Comparable<Host> {
@@ -22,7 +26,9 @@ public class Host implements Comparable<Host> {
 	int port = DEFAULT_PORT; // Ssh port
 	HostResources resources; // Host resources (all cpus, memory, etc)
 	HostResources resourcesAvaialble; // Available resources
-	Set<Task> tasksRunning; // A list of tasks running in this host
+	Map<Task, HostResources> tasksRunning; // Tasks running in this host (and resources reserved for each task)
+	int cpusUsed; // Number of CPUs used by running tasks
+	long memUsed; // Memory used by running tasks
 
 	public Host(Cluster cluster, String hostName) {
 		this.cluster = cluster;
@@ -38,7 +44,12 @@ public class Host implements Comparable<Host> {
 	 * Add task to this host
 	 */
 	public synchronized void add(Task task) {
-		if (tasksRunning.add(task)) updateResourcesAvailable();
+		if (tasksRunning.containsKey(task)) return;
+
+		// Note: Keep a copy, so that the same resources are released when the task is removed
+		HostResources hr = task.getResources() != null ? task.getResources().clone() : null;
+		tasksRunning.put(task, hr);
+		use(hr, 1);
 	}
 
 	@Override
@@ -98,7 +109,7 @@ public class Host implements Comparable<Host> {
 			userName = System.getProperty("user.name");
 		}
 
-		tasksRunning = new HashSet<>();
+		tasksRunning = new HashMap<>();
 		cluster.add(this);
 	}
 
@@ -110,7 +121,8 @@ public class Host implements Comparable<Host> {
 	 * Remove task from this host
 	 */
 	public synchronized void remove(Task task) {
-		if (tasksRunning.remove(task)) updateResourcesAvailable();
+		if (!tasksRunning.containsKey(task)) return;
+		use(tasksRunning.remove(task), -1);
 	}
 
 	@Override
@@ -119,11 +131,23 @@ public class Host implements Comparable<Host> {
 	}
 
 	/**
-	 * Update 'resources available'
+	 * Update 'resources available' (e.g. after host's resources change)
 	 */
 	public synchronized void updateResourcesAvailable() {
 		resourcesAvaialble = resources.clone();
-		for (Task t : tasksRunning)
-			resourcesAvaialble.consume(t.getResources());
+		if (resourcesAvaialble.cpus >= 0) resourcesAvaialble.cpus = (int) Math.max(0, resourcesAvaialble.cpus - (long) cpusUsed);
+		if (resourcesAvaialble.mem >= 0) resourcesAvaialble.mem = Math.max(0, resourcesAvaialble.mem - memUsed);
+	}
+
+	/**
+	 * Account for resources used ('sign' is 1) or released ('sign' is -1) by a task
+	 * Note: Negative values (information not available) are not accounted
+	 */
+	void use(HostResources hr, int sign) {
+		if (hr != null) {
+			if (hr.cpus > 0) cpusUsed += sign * hr.cpus;
+			if (hr.mem > 0) memUsed += sign * hr.mem;
+		}
+		updateResourcesAvailable();
 	}
 }
@@ -0,0 +1,100 @@
+package org.bds.cluster.placement;
+
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostResources;
+
+/**
+ * Placement policy: Select a host to run a task, among all
+ * hosts having enough resources available
+ *
+ * Policies score each candidate host (lower is better), ties are
+ * resolved by selecting the first host
+ *
+ * @author pcingola
+ */
+public abstract class PlacementPolicy {
+
+	public static final String BEST_FIT = "bestFit";
+	public static final String BIN_PACKING = "binPacking";
+	public static final String FIRST_FIT = "firstFit";
+	public static final String WORST_FIT = "worstFit";
+
+	public static PlacementPolicy factory(String name) {
+		if (name == null || name.isEmpty()) return new PlacementPolicyFirstFit();
+
+		switch (name) {
+		case BEST_FIT:
+			return new PlacementPolicyBestFit();
+
+		case BIN_PACKING:
+			return new PlacementPolicyBinPacking();
+
+		case FIRST_FIT:
+			return new PlacementPolicyFirstFit();
+
+		case WORST_FIT:
+			return new PlacementPolicyWorstFit();
+
+		default:
+			throw new RuntimeException("Unknown placement policy '" + name + "'. Available policies: " + FIRST_FIT + ", " + BEST_FIT + ", " + WORST_FIT + ", " + BIN_PACKING);
+		}
+	}
+
+	/**
+	 * Fraction of host's resources 'value' represents (negative if not available)
+	 */
+	protected static double fraction(long value, long total) {
+		if (value < 0 || total <= 0) return -1;
+		return ((double) value) / total;
+	}
+
+	/**
+	 * Fraction of host's CPUs left after running a task requiring 'required' resources
+	 */
+	protected static double leftCpus(Host host, HostResources required) {
+		HostResources avail = host.getResourcesAvaialble();
+		if (required.getCpus() < 0) return fraction(avail.getCpus(), host.getResources().getCpus());
+		return fraction(avail.getCpus() - required.getCpus(), host.getResources().getCpus());
+	}
+
+	/**
+	 * Fraction of host's memory left after running a task requiring 'required' resources
+	 */
+	protected static double leftMem(Host host, HostResources required) {
+		HostResources avail = host.getResourcesAvaialble();
+		if (required.getMem() < 0) return fraction(avail.getMem(), host.getResources().getMem());
+		return fraction(avail.getMem() - required.getMem(), host.getResources().getMem());
+	}
+
+	/**
+	 * Score for running a task requiring 'required' resources on 'host' (lower is better)
+	 * Note: The host is known to have enough resources available
+	 */
+	protected abstract double score(Host host, HostResources required);
+
+	/**
+	 * Select a host to run a task requiring 'required' resources
+	 * @return The selected host or null if no host has enough resources available
+	 */
+	public Host select(HostResources required, Iterable<Host> hosts) {
+		Host best = null;
+		double bestScore = 0;
+		for (Host host : hosts) {
+			if (!host.isAlive()) continue;
+			if (!host.getResourcesAvaialble().hasResources(required)) continue;
+
+			double score = score(host, required);
+			if (best == null || score < bestScore) {
+				best = host;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+
+}
@@ -0,0 +1,20 @@
+package org.bds.cluster.placement;
+
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostResources;
+
+/**
+ * Select the host having the least resources left after running
+ * the task (sum of CPU and memory fractions left). Keeps large
+ * blocks of resources free for large tasks.
+ *
+ * @author pcingola
+ */
+public class PlacementPolicyBestFit extends PlacementPolicy {
+
+	@Override
+	protected double score(Host host, HostResources required) {
+		return Math.max(0, leftCpus(host, required)) + Math.max(0, leftMem(host, required));
+	}
+
+}
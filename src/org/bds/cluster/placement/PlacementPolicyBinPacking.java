@@ -0,0 +1,26 @@
+package org.bds.cluster.placement;
+
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostResources;
+
+/**
+ * Vector bin packing ('norm based greedy'): Resources are a (CPU, memory)
+ * vector, select the host minimizing the norm (L2) of the resources left
+ * after running the task.
+ *
+ * Compared to best fit (L1), hosts where one resource would be left
+ * unbalanced (e.g. plenty of memory, but no CPUs) are penalized, which
+ * reduces fragmentation when tasks have different CPU / memory ratios.
+ *
+ * @author pcingola
+ */
+public class PlacementPolicyBinPacking extends PlacementPolicy {
+
+	@Override
+	protected double score(Host host, HostResources required) {
+		double cpus = Math.max(0, leftCpus(host, required));
+		double mem = Math.max(0, leftMem(host, required));
+		return cpus * cpus + mem * mem;
+	}
+
+}
@@ -0,0 +1,25 @@
+package org.bds.cluster.placement;
+
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostResources;
+
+/**
+ * Select the first host having enough resources
+ *
+ * @author pcingola
+ */
+public class PlacementPolicyFirstFit extends PlacementPolicy {
+
+	@Override
+	protected double score(Host host, HostResources required) {
+		return 0;
+	}
+
+	@Override
+	public Host select(HostResources required, Iterable<Host> hosts) {
+		for (Host host : hosts)
+			if (host.isAlive() && host.getResourcesAvaialble().hasResources(required)) return host;
+		return null;
+	}
+
+}
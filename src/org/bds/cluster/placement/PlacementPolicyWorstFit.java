@@ -0,0 +1,20 @@
+package org.bds.cluster.placement;
+
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostResources;
+
+/**
+ * Select the host having the most resources left after running
+ * the task (sum of CPU and memory fractions left). Spreads the
+ * load across hosts.
+ *
+ * @author pcingola
+ */
+public class PlacementPolicyWorstFit extends PlacementPolicy {
+
+	@Override
+	protected double score(Host host, HostResources required) {
+		return -(Math.max(0, leftCpus(host, required)) + Math.max(0, leftMem(host, required)));
+	}
+
+}
@@ -1,7 +1,7 @@
 package org.bds.compile;
 
 import java.io.File;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.antlr.v4.runtime.CharStream;
@@ -36,6 +36,7 @@ public class BdsCompiler {
 	boolean verbose; // Verbose mode
 	String programFileName; // Program file name
 	ProgramUnit programUnit; // Program (parsed nodes)
+	Set<String> sourceFiles; // Program and all included files (canonical paths)
 
 	public BdsCompiler(String fileName) {
 		programFileName = fileName;
@@ -93,7 +94,8 @@ public class BdsCompiler {
 	 */
 	ParseTree createAst() {
 		File file = new File(programFileName);
-		return createAst(file, debug, new HashSet<String>());
+		sourceFiles = new LinkedHashSet<>();
+		return createAst(file, debug, sourceFiles);
 	}
 
 	/**
@@ -227,6 +229,13 @@ public class BdsCompiler {
 		return programUnit;
 	}
 
+	/**
+	 * Program file and all included files (canonical paths)
+	 */
+	public Set<String> getSourceFiles() {
+		return sourceFiles;
+	}
+
 	void log(String msg) {
 		Timer.showStdErr(getClass().getSimpleName() + ": " + msg);
 	}
@@ -0,0 +1,317 @@
+package org.bds.compile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.bds.Bds;
+import org.bds.Config;
+import org.bds.lang.ProgramUnit;
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+import org.bds.vm.BdsVm;
+
+/**
+ * A persistent cache of compiled programs ('.bdsc' files)
+ *
+ * Parsing, type-checking and assembling large programs (e.g. programs
+ * including big libraries) takes a significant amount of time. Compiled
+ * programs (the ProgramUnit and the VM's code, constants and types) are
+ * serialized into the cache directory, so running an unchanged program
+ * skips compilation entirely:
+ *
+ *   - There is one entry per program (canonical path, name used to invoke it,
+ *     include path resolved from the current directory, coverage mode, bds
+ *     version and build). Entries are serialized Java objects, so they can
+ *     only be loaded by the same build that created them (see 'buildId()').
+ *
+ *   - Each entry starts with a manifest: The program file and all included
+ *     files, and the SHA-256 of their contents. An entry is only used if
+ *     none of the files changed, otherwise it is overwritten after compiling.
+ *
+ *   - Entries are written to a temporary file and renamed, so concurrent
+ *     processes never read partial entries.
+ *
+ *   - When the total size exceeds 'compileCache.maxSize' bytes, least
+ *     recently used entries are deleted.
+ *
+ * Note: The compiled program is cached before command line arguments are
+ * parsed (command line arguments may replace variable initializations,
+ * see BdsParseArgs).
+ *
+ * @author pcingola
+ */
+public class CompileCache {
+
+	public static final String CACHE_DIR = "compile_cache"; // Default cache directory (within BDS_HOME)
+	public static final String CACHE_EXT = ".bdsc";
+	public static final long DEFAULT_MAX_SIZE = 100L * 1024 * 1024; // Evict entries when total size exceeds this number of bytes
+
+	private static CompileCache compileCache;
+	private static String buildId;
+
+	/**
+	 * A compiled program
+	 */
+	public class CompiledProgram {
+		ProgramUnit programUnit;
+		List<Object> vmProgramObjects;
+
+		public ProgramUnit getProgramUnit() {
+			return programUnit;
+		}
+
+		/**
+		 * Create a VM using the compiled code
+		 */
+		public BdsVm newVm() {
+			BdsVm vm = new BdsVm();
+			vm.setProgramObjects(vmProgramObjects);
+			return vm;
+		}
+	}
+
+	boolean debug;
+	boolean enabled;
+	boolean verbose;
+	File dir; // Cache directory
+	long maxSize; // Maximum cache size (bytes)
+
+	// Metrics
+	AtomicInteger hits = new AtomicInteger();
+	AtomicInteger misses = new AtomicInteger();
+	AtomicInteger evictions = new AtomicInteger();
+
+	/**
+	 * Build fingerprint: The bds jar (or classes directory) and its latest modification
+	 */
+	static synchronized String buildId() {
+		if (buildId == null) {
+			try {
+				File build = new File(CompileCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+				long lastModified = build.lastModified();
+				if (build.isDirectory()) {
+					// Classes directory (e.g. development build): Latest class file
+					try (Stream<Path> paths = Files.walk(build.toPath())) {
+						lastModified = paths.mapToLong(p -> p.toFile().lastModified()).max().orElse(lastModified);
+					}
+				}
+				buildId = build + "\t" + build.length() + "\t" + lastModified;
+			} catch (Exception e) {
+				buildId = ""; // Unknown build, only version is used
+			}
+		}
+		return buildId;
+	}
+
+	public static synchronized CompileCache get() {
+		if (compileCache == null) {
+			Config config = Config.get();
+			String dir = config.getString(Config.COMPILE_CACHE_DIR, Config.BDS_HOME + "/" + CACHE_DIR);
+			compileCache = new CompileCache(dir, config.getBool(Config.COMPILE_CACHE, true));
+			compileCache.maxSize = Gpr.parseMemSafe(config.getString(Config.COMPILE_CACHE_MAX_SIZE, "" + DEFAULT_MAX_SIZE));
+			compileCache.debug = config.isDebug();
+			compileCache.verbose = config.isVerbose();
+		}
+		return compileCache;
+	}
+
+	public static synchronized void reset() {
+		compileCache = null;
+	}
+
+	/**
+	 * SHA-256 hash as a hex string
+	 */
+	static String sha256(byte[] data) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(data))
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * SHA-256 of a file's contents, null if the file cannot be read
+	 */
+	static String sha256File(String fileName) {
+		try {
+			return sha256(Files.readAllBytes(new File(fileName).toPath()));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	public CompileCache(String dir, boolean enabled) {
+		this.dir = new File(dir);
+		this.enabled = enabled;
+		maxSize = DEFAULT_MAX_SIZE;
+	}
+
+	/**
+	 * Cache entry for a program
+	 */
+	File entryFile(String programFileName, boolean coverage) {
+		// Include paths may be relative to the current directory (e.g. '.')
+		List<String> includePath = new ArrayList<>();
+		for (String incPath : Config.get().getIncludePath())
+			includePath.add(Gpr.getCanonicalFileName(new File(incPath)));
+
+		String id = Bds.VERSION //
+				+ "\t" + buildId() //
+				+ "\t" + Gpr.getCanonicalFileName(new File(programFileName)) //
+				+ "\t" + programFileName //
+				+ "\t" + includePath //
+				+ "\t" + coverage //
+		;
+		return new File(dir, sha256(id.getBytes(StandardCharsets.UTF_8)) + CACHE_EXT);
+	}
+
+	/**
+	 * Delete least recently used entries until the total size is below 'maxSize'
+	 * Note: Entry 'keep' (e.g. the one just saved) is not deleted
+	 */
+	void evict(File keep) {
+		File[] entries = dir.listFiles(f -> f.isFile() && f.getName().endsWith(CACHE_EXT));
+		if (entries == null) return;
+
+		long total = 0;
+		for (File entry : entries)
+			total += entry.length();
+		if (total <= maxSize) return;
+
+		// Delete least recently used first (entries are 'touched' when loaded)
+		Arrays.sort(entries, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+		for (File entry : entries) {
+			if (total <= maxSize) break;
+			if (entry.equals(keep)) continue;
+			long len = entry.length();
+			if (entry.delete()) {
+				total -= len;
+				evictions.incrementAndGet();
+				if (debug) Timer.showStdErr("CompileCache: Evicted '" + entry + "', " + len + " bytes");
+			}
+		}
+	}
+
+	public int getEvictions() {
+		return evictions.get();
+	}
+
+	public int getHits() {
+		return hits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Load a compiled program from the cache
+	 * Returns null if the program is not in the cache (or any source file changed)
+	 */
+	public CompiledProgram load(String programFileName, boolean coverage) {
+		File entry = entryFile(programFileName, coverage);
+		if (!entry.exists()) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+			// Check that no source file changed
+			int numFiles = in.readInt();
+			for (int i = 0; i < numFiles; i++) {
+				String fileName = in.readUTF();
+				String sha = in.readUTF();
+				if (!sha.equals(sha256File(fileName))) {
+					if (debug) Timer.showStdErr("CompileCache: File '" + fileName + "' changed, entry '" + entry + "' cannot be used");
+					misses.incrementAndGet();
+					return null;
+				}
+			}
+
+			// Load compiled program
+			@SuppressWarnings("unchecked")
+			List<Object> objs = (List<Object>) in.readObject();
+			CompiledProgram cp = new CompiledProgram();
+			cp.programUnit = (ProgramUnit) objs.get(0);
+			cp.vmProgramObjects = objs.subList(1, objs.size());
+
+			hits.incrementAndGet();
+			entry.setLastModified(System.currentTimeMillis()); // Latest access
+			if (verbose) Timer.showStdErr("CompileCache: Loaded program '" + programFileName + "' from '" + entry + "'");
+			return cp;
+		} catch (Exception e) {
+			// Corrupted entry or incompatible classes: Compile again
+			if (debug) Timer.showStdErr("CompileCache: Cannot load entry '" + entry + "': " + e);
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Save a compiled program to the cache
+	 * Note: Errors are not fatal, the program is just not cached
+	 */
+	public void save(String programFileName, boolean coverage, Collection<String> sourceFiles, ProgramUnit programUnit, BdsVm vm) {
+		File entry = entryFile(programFileName, coverage);
+		File tmp = new File(entry.getPath() + "." + ProcessHandle.current().pid() + "." + Thread.currentThread().getId() + ".tmp");
+
+		try {
+			dir.mkdirs();
+			try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				// Manifest: Source files and their hashes
+				out.writeInt(sourceFiles.size());
+				for (String fileName : sourceFiles) {
+					String sha = sha256File(fileName);
+					if (sha == null) throw new IOException("Cannot read file '" + fileName + "'");
+					out.writeUTF(fileName);
+					out.writeUTF(sha);
+				}
+
+				// Compiled program
+				List<Object> objs = new ArrayList<>();
+				objs.add(programUnit);
+				objs.addAll(vm.getProgramObjects());
+				out.writeObject(objs);
+			}
+
+			Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			if (debug) Timer.showStdErr("CompileCache: Saved program '" + programFileName + "' to '" + entry + "'");
+			evict(entry);
+		} catch (Exception e) {
+			if (debug) Timer.showStdErr("CompileCache: Cannot save entry '" + entry + "': " + e);
+			tmp.delete();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CompileCache '" + dir + "': hits " + hits + ", misses " + misses + ", evictions " + evictions;
+	}
+
+}
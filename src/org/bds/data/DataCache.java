@@ -0,0 +1,340 @@
+package org.bds.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bds.Config;
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * A shared, on-disk cache of remote files
+ *
+ * Several bds processes running on the same node (or the same process
+ * downloading into different local paths) often download the same remote
+ * files. Downloaded files are stored once in the cache directory and
+ * local files are copied from the cache entries:
+ *
+ *   - Entries are keyed by remote URL, ETag (when available), size and
+ *     modification time, so a remote file that changes gets a new entry.
+ *     Remote data without a size or modification time (e.g. dynamic
+ *     http content) is not cached.
+ *
+ *   - Each entry has a lock file. Processes downloading the same entry
+ *     are serialized using file locks (only one of them downloads it),
+ *     the lock file's modification time is the entry's latest access.
+ *
+ *   - When the total size exceeds 'dataCache.maxSize' bytes, least
+ *     recently used entries are deleted. Deleting an entry does not
+ *     affect local files already in use.
+ *
+ *   - Entries are read-only. If 'dataCache.link' is set, local files are
+ *     hard links to the entries instead of copies (saves time and space).
+ *     Since a hard link shares the entry's data, the local file is
+ *     read-only as well, so a program writing to it in place fails instead
+ *     of corrupting the cache. If an entry cannot be made read-only or a
+ *     hard link cannot be created (e.g. the local path is in a different
+ *     file system), the entry is copied.
+ *
+ * @author pcingola
+ */
+public class DataCache {
+
+	public static final String CACHE_DIR = ".cache"; // Default cache directory (within local data directory)
+	public static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024 * 1024; // Evict entries when total size exceeds this number of bytes
+	public static final String LOCK_EXT = ".lock";
+	public static final String EVICT_LOCK = "evict" + LOCK_EXT;
+
+	private static DataCache dataCache;
+
+	/**
+	 * Entry lock within this process (file locks are per process)
+	 */
+	static class EntryLock {
+		int users; // Number of threads using (or waiting for) this lock
+	}
+
+	boolean debug;
+	boolean verbose;
+	boolean link; // Local files are hard links to cache entries (instead of copies)
+	File dir; // Cache directory
+	long maxSize; // Maximum cache size (bytes), zero disables the cache
+	Map<String, EntryLock> locks; // Entry locks within this process, removed when no thread uses them
+
+	// Metrics
+	AtomicInteger hits = new AtomicInteger();
+	AtomicInteger misses = new AtomicInteger();
+	AtomicInteger evictions = new AtomicInteger();
+
+	public static synchronized DataCache get() {
+		if (dataCache == null) {
+			Config config = Config.get();
+			String dir = config.getString(Config.DATA_CACHE_DIR, config.getTmpDir() + "/" + DataRemote.TMP_BDS_DATA + "/" + CACHE_DIR);
+			long maxSize = Gpr.parseMemSafe(config.getString(Config.DATA_CACHE_MAX_SIZE, "" + DEFAULT_MAX_SIZE));
+			dataCache = new DataCache(dir, maxSize);
+			dataCache.link = config.getBool(Config.DATA_CACHE_LINK, false);
+			dataCache.debug = config.isDebug();
+			dataCache.verbose = config.isVerbose();
+		}
+		return dataCache;
+	}
+
+	public static synchronized void reset() {
+		dataCache = null;
+	}
+
+	public DataCache(String dir, long maxSize) {
+		this.dir = new File(dir);
+		this.maxSize = maxSize;
+		locks = new HashMap<>();
+	}
+
+	/**
+	 * Download 'remote' into 'local' using the cache
+	 */
+	public boolean download(DataRemote remote, Data local) {
+		String key = key(remote);
+		if (key == null) {
+			if (debug) Timer.showStdErr("DataCache: Not cacheable '" + remote + "'");
+			return remote.downloadRemote(local);
+		}
+
+		File entry = entryFile(key);
+		File localFile = new File(local.getAbsolutePath());
+		boolean added = false;
+
+		EntryLock entryLock = lock(key);
+		try {
+			synchronized (entryLock) {
+				entry.getParentFile().mkdirs();
+				try (RandomAccessFile raf = new RandomAccessFile(lockFile(entry), "rw"); //
+						FileChannel fc = raf.getChannel() //
+				) {
+					FileLock lock = fc.lock();
+					try {
+						localFile.delete(); // Never write into (or link over) an existing file, it may be a link to a cache entry
+
+						if (entry.exists()) {
+							hits.incrementAndGet();
+							if (verbose) Timer.showStdErr("DataCache: Found '" + remote + "' in cache");
+							copy(entry, localFile);
+						} else {
+							misses.incrementAndGet();
+							if (!remote.downloadRemote(local)) return false;
+							add(remote, localFile, entry);
+							added = true;
+						}
+
+						lockFile(entry).setLastModified(System.currentTimeMillis()); // Latest access
+					} finally {
+						lock.release();
+					}
+				} catch (IOException e) {
+					throw new RuntimeException("Error accessing data cache entry '" + entry + "', for '" + remote + "'", e);
+				}
+			}
+		} finally {
+			unlock(key, entryLock);
+		}
+
+		if (added) evict();
+		return true;
+	}
+
+	/**
+	 * Add a downloaded file to the cache
+	 */
+	void add(DataRemote remote, File localFile, File entry) throws IOException {
+		// Copy to a temporary name, then rename, so that other processes never see a partial entry
+		File tmp = new File(entry.getPath() + "." + ProcessHandle.current().pid() + "." + Thread.currentThread().getId() + ".tmp");
+		tmp.delete();
+		if (remote.lastModified != null) localFile.setLastModified(remote.lastModified.getTime());
+		copy(localFile, tmp);
+		tmp.setWritable(false, false); // Entries are never modified
+		Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		if (debug) Timer.showStdErr("DataCache: Added '" + remote + "' as '" + entry + "'");
+	}
+
+	/**
+	 * Create 'dst' from 'src': A hard link if 'link' is set and 'src' can
+	 * be made read-only, otherwise a copy
+	 */
+	void copy(File src, File dst) throws IOException {
+		dst.getParentFile().mkdirs();
+		if (link && src.setWritable(false, false)) {
+			try {
+				Files.createLink(dst.toPath(), src.toPath());
+				return;
+			} catch (IOException | UnsupportedOperationException e) {
+				if (debug) Timer.showStdErr("DataCache: Cannot link '" + dst + "' to '" + src + "', copying. " + e.getMessage());
+			}
+		}
+
+		Files.copy(src.toPath(), dst.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		dst.setLastModified(src.lastModified());
+	}
+
+	File entryFile(String key) {
+		return new File(dir, key.substring(0, 2) + "/" + key);
+	}
+
+	/**
+	 * Delete least recently used entries until the total size is below 'maxSize'
+	 */
+	synchronized void evict() {
+		File evictLock = new File(dir, EVICT_LOCK);
+		try (RandomAccessFile raf = new RandomAccessFile(evictLock, "rw"); //
+				FileChannel fc = raf.getChannel() //
+		) {
+			FileLock lock = fc.tryLock();
+			if (lock == null) return; // Another process is evicting entries
+
+			try {
+				// Find all entries and their latest access
+				List<File> entries = new ArrayList<>();
+				long total = 0;
+				File[] subDirs = dir.listFiles(File::isDirectory);
+				if (subDirs == null) return;
+				for (File sub : subDirs) {
+					File[] files = sub.listFiles(f -> f.isFile() && !f.getName().endsWith(LOCK_EXT) && !f.getName().endsWith(".tmp"));
+					if (files == null) continue;
+					for (File f : files) {
+						entries.add(f);
+						total += f.length();
+					}
+				}
+				if (total <= maxSize) return;
+
+				// Delete least recently used first
+				entries.sort((f1, f2) -> Long.compare(lockFile(f1).lastModified(), lockFile(f2).lastModified()));
+				for (File entry : entries) {
+					if (total <= maxSize) break;
+					long len = entry.length();
+					if (deleteEntry(entry)) {
+						total -= len;
+						evictions.incrementAndGet();
+						if (debug) Timer.showStdErr("DataCache: Evicted '" + entry + "', " + len + " bytes");
+					}
+				}
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			if (verbose) Timer.showStdErr("DataCache: Error evicting entries from '" + dir + "': " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Delete an entry, unless it's being used
+	 */
+	boolean deleteEntry(File entry) throws IOException {
+		String key = entry.getName();
+		EntryLock entryLock = lock(key);
+		try {
+			synchronized (entryLock) {
+				File lockFile = lockFile(entry);
+				try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw"); //
+						FileChannel fc = raf.getChannel() //
+				) {
+					FileLock lock = fc.tryLock();
+					if (lock == null) return false; // Entry in use by another process
+					try {
+						boolean ok = entry.delete();
+						lockFile.delete();
+						return ok;
+					} finally {
+						lock.release();
+					}
+				}
+			}
+		} finally {
+			unlock(key, entryLock);
+		}
+	}
+
+	public int getEvictions() {
+		return evictions.get();
+	}
+
+	public int getHits() {
+		return hits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Is the cache enabled?
+	 */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Cache key: A hash of remote URL, ETag, size and modification time
+	 * Returns null if the remote data cannot be cached
+	 */
+	String key(DataRemote remote) {
+		if (remote.needsUpdateInfo() && !remote.updateInfo()) return null;
+		if (!remote.isCacheable()) return null;
+
+		String id = remote.toString() //
+				+ "\t" + (remote.etag != null ? remote.etag : "") //
+				+ "\t" + remote.size //
+				+ "\t" + remote.lastModified.getTime() //
+		;
+
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(id.getBytes(StandardCharsets.UTF_8)))
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Get an entry's lock (must be released using 'unlock')
+	 */
+	EntryLock lock(String key) {
+		synchronized (locks) {
+			EntryLock entryLock = locks.computeIfAbsent(key, k -> new EntryLock());
+			entryLock.users++;
+			return entryLock;
+		}
+	}
+
+	File lockFile(File entry) {
+		return new File(entry.getPath() + LOCK_EXT);
+	}
+
+	@Override
+	public String toString() {
+		return "DataCache '" + dir + "': hits " + hits + ", misses " + misses + ", evictions " + evictions;
+	}
+
+	/**
+	 * Release an entry's lock. Remove it when no other thread uses it
+	 */
+	void unlock(String key, EntryLock entryLock) {
+		synchronized (locks) {
+			if (--entryLock.users <= 0) locks.remove(key);
+		}
+	}
+
+}
@@ -48,7 +48,7 @@ public class DataFtp extends DataRemote {
 	}
 
 	@Override
-	public boolean download(Data local) {
+	protected boolean downloadRemote(Data local) {
 		mkdirsLocal(local);
 		FtpConnectionFactory.get().download(uri, local.getAbsolutePath());
 		return true;
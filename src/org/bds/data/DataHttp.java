@@ -30,6 +30,7 @@ public class DataHttp extends DataRemote {
 	public static final int HTTP_NOTFOUND = 404; // The requested resource resides temporarily under a different URI
 
 	URLConnection connection;
+	boolean hasLastModified; // Did the server report a modification time? (dynamic content usually doesn't)
 
 	public DataHttp(String urlStr) {
 		super();
@@ -115,7 +116,7 @@ public class DataHttp extends DataRemote {
 	 * Download a file
 	 */
 	@Override
-	public boolean download(Data local) {
+	protected boolean downloadRemote(Data local) {
 		URLConnection connection = null;
 		try {
 			// Connect and update info
@@ -167,6 +168,14 @@ public class DataHttp extends DataRemote {
 		}
 	}
 
+	/**
+	 * Dynamic content (no 'Last-Modified' or 'ETag') is not cached
+	 */
+	@Override
+	protected boolean isCacheable() {
+		return super.isCacheable() && (hasLastModified || etag != null);
+	}
+
 	@Override
 	public ArrayList<Data> list() {
 		// Download a page and extract all 'hrefs'
@@ -225,8 +234,11 @@ public class DataHttp extends DataRemote {
 			canRead = true;
 			exists = true;
 
+			etag = connection.getHeaderField("ETag");
+
 			// Last modified
 			long lastMod = connection.getLastModified();
+			hasLastModified = (lastMod != 0);
 			if (lastMod == 0) lastMod = connection.getDate(); // If last_modified is not found, use 'date' (e.g. dynamic content)
 			lastModified = new Date(lastMod);
 
@@ -21,6 +21,7 @@ public abstract class DataRemote extends Data {
 	public static final long CACHE_TIMEOUT = 10 * 1000; // Timeout in milliseconds
 	protected boolean canRead;
 	protected boolean canWrite;
+	protected String etag; // Remote entity tag (null if not available)
 	protected boolean exists;
 	protected Boolean isDir;
 	protected Date lastModified;
@@ -64,6 +65,24 @@ public abstract class DataRemote extends Data {
 		return download(factory(localFile));
 	}
 
+	/**
+	 * Download a file (using the local data cache, if enabled)
+	 */
+	@Override
+	public boolean download(Data local) {
+		DataCache dataCache = DataCache.get();
+		if (dataCache.isEnabled() && isFile()) return dataCache.download(this, local);
+
+		// Note: Local file may be a link to a cache entry, don't overwrite it
+		(new File(local.getAbsolutePath())).delete();
+		return downloadRemote(local);
+	}
+
+	/**
+	 * Download remote file to 'local'
+	 */
+	protected abstract boolean downloadRemote(Data local);
+
 	@Override
 	public boolean exists() {
 		updateInfoIfNeeded();
@@ -114,6 +133,14 @@ public abstract class DataRemote extends Data {
 		return uri.getPath();
 	}
 
+	/**
+	 * Can this data be stored in the local data cache?
+	 * Note: Remote data without size or modification time (e.g. dynamic content) is never cached
+	 */
+	protected boolean isCacheable() {
+		return size > 0 && lastModified != null && lastModified.getTime() > 0;
+	}
+
 	@Override
 	public boolean isDirectory() {
 		if (isDir == null) {
@@ -288,10 +315,11 @@ public abstract class DataRemote extends Data {
 	 * Update last modified in local copy
 	 */
 	protected void updateLocalFileLastModified() {
-		if (lastModified != null) {
-			File file = new File(getLocalPath());
-			file.setLastModified(lastModified.getTime());
-		}
+		updateLocalFileLastModified(new File(getLocalPath()));
+	}
+
+	protected void updateLocalFileLastModified(File file) {
+		if (lastModified != null) file.setLastModified(lastModified.getTime());
 	}
 
 }
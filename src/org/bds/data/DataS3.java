@@ -2,11 +2,23 @@ package org.bds.data;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.Date;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bds.Config;
 import org.bds.util.Gpr;
@@ -14,6 +26,7 @@ import org.bds.util.Timer;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.AmazonS3URI;
@@ -25,10 +38,21 @@ import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 
 /**
  * A bucket / object in AWS S3
  *
+ * Large objects are transferred in parts of 's3.partSize' bytes, using
+ * up to 's3.threads' concurrent connections:
+ *   - Downloads use ranged GET requests, each part is written at its
+ *     offset in a temporary file, which is renamed to the local file
+ *     once all parts are downloaded
+ *   - Uploads use S3's multipart upload (see TransferManager)
+ *
+ * Note: An S3 compatible server can be used by setting 's3.endpoint'
+ *
  * @author pcingola
  */
 public class DataS3 extends DataRemote {
@@ -36,6 +60,10 @@ public class DataS3 extends DataRemote {
 	private static int BUFFER_SIZE = 100 * 1024;
 	public static final String AWS_DOMAIN = "amazonaws.com";
 	public static final String AWS_S3_PROTOCOL = "s3";
+	public static final String DEFAULT_REGION = "us-east-1";
+	public static final long DEFAULT_PART_SIZE = 64 * 1024 * 1024; // Transfer objects in parts of this size (bytes)
+	public static final int DEFAULT_THREADS = 8; // Number of parts transferred concurrently
+	public static final long MIN_PART_SIZE = 5 * 1024 * 1024; // S3 does not allow smaller parts in multipart uploads
 
 	public static final String ENV_PROXY_HTTTP = "http_proxy";
 	public static final String ENV_PROXY_HTTTPS = "https_proxy";
@@ -43,6 +71,8 @@ public class DataS3 extends DataRemote {
 	protected AmazonS3URI s3uri;
 	protected String bucketName;
 	protected String key;
+	protected long partSize; // Transfer objects in parts of this size (bytes)
+	protected int threads; // Number of parts transferred concurrently
 
 	public DataS3(String urlStr) {
 		super();
@@ -50,6 +80,7 @@ public class DataS3 extends DataRemote {
 		canWrite = false;
 		bucketName = s3uri.getBucket();
 		key = s3uri.getKey();
+		initTransfer();
 	}
 
 	public DataS3(URI uri) {
@@ -58,6 +89,7 @@ public class DataS3 extends DataRemote {
 		canWrite = false;
 		bucketName = s3uri.getBucket();
 		key = s3uri.getKey();
+		initTransfer();
 	}
 
 	@Override
@@ -76,52 +108,135 @@ public class DataS3 extends DataRemote {
 	 * Download a file
 	 */
 	@Override
-	public boolean download(Data local) {
+	protected boolean downloadRemote(Data local) {
 		try {
 			if (!isFile()) return false;
 			if (local != null) localPath = local.getAbsolutePath();
 
-			S3Object s3object = getS3().getObject(new GetObjectRequest(bucketName, key));
+			// Get object's size
+			ObjectMetadata om = getS3().getObjectMetadata(bucketName, key);
+			updateInfo(om);
 			if (verbose) System.out.println("Downloading '" + this + "'");
-			updateInfo(s3object);
 
 			// Create local file and directories
 			mkdirsLocal();
-			FileOutputStream os = new FileOutputStream(getLocalPath());
+			Timer timer = new Timer();
+
+			// Download to a temporary file, then rename. A partial download
+			// could otherwise look complete (see 'isDownloaded')
+			File file = new File(getLocalPath());
+			File tmp = new File(getLocalPath() + "." + ProcessHandle.current().pid() + ".part");
+			try {
+				// Large file? Download parts in parallel
+				long total;
+				if (size > partSize && threads > 1) total = downloadParts(tmp, om.getETag());
+				else total = downloadSingle(tmp);
+				if (verbose) Timer.showStdErr("Download finished. " + throughput(total, timer.elapsed()));
+
+				// Update last modified info
+				updateLocalFileLastModified(tmp);
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				tmp.delete(); // Remove partial download (nothing to do if it was renamed)
+			}
 
-			// Copy S3 object to file
-			S3ObjectInputStream is = s3object.getObjectContent();
-			int count = 0, total = 0, lastShown = 0;
+			return true;
+		} catch (Exception e) {
+			Timer.showStdErr("ERROR while downloading " + this);
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Download a range of bytes (both ends inclusive) and write them at the same position in 'fc'
+	 * @return Number of bytes downloaded
+	 */
+	protected long downloadPart(FileChannel fc, long start, long end, String eTag) throws IOException {
+		GetObjectRequest req = new GetObjectRequest(bucketName, key).withRange(start, end);
+		if (eTag != null) req.withMatchingETagConstraint(eTag); // Make sure the object did not change between parts
+
+		S3Object s3object = getS3().getObject(req);
+		if (s3object == null) throw new IOException("Object '" + this + "' changed while downloading");
+
+		long pos = start;
+		try (InputStream is = s3object.getObjectContent()) {
+			int count = 0;
 			byte data[] = new byte[BUFFER_SIZE];
 			while ((count = is.read(data, 0, BUFFER_SIZE)) != -1) {
-				os.write(data, 0, count);
-				total += count;
-
-				if (verbose) {
-					// Show every MB
-					if ((total - lastShown) > (1024 * 1024)) {
-						System.err.print(".");
-						lastShown = total;
-					}
-				}
+				ByteBuffer bb = ByteBuffer.wrap(data, 0, count);
+				while (bb.hasRemaining())
+					pos += fc.write(bb, pos);
 			}
-			if (verbose) System.err.println("");
+		}
 
-			// Close streams
-			is.close();
-			os.close();
-			if (verbose) Timer.showStdErr("Donwload finished. Total " + total + " bytes.");
+		if (pos != end + 1) throw new IOException("Incomplete download of '" + this + "', range " + start + "-" + end + ", received " + (pos - start) + " bytes");
+		return pos - start;
+	}
 
-			// Update last modified info
-			updateLocalFileLastModified();
+	/**
+	 * Download an object in parts (to 'file'), using ranged GET requests in parallel
+	 * @return Number of bytes downloaded
+	 */
+	protected long downloadParts(File file, String eTag) throws IOException, InterruptedException {
+		int numParts = (int) ((size + partSize - 1) / partSize);
+		if (debug) Timer.showStdErr("Downloading '" + this + "' in " + numParts + " parts, " + threads + " threads");
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, numParts));
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(size);
+			FileChannel fc = raf.getChannel();
+
+			// Download all parts
+			List<Future<Long>> parts = new ArrayList<>();
+			for (long start = 0; start < size; start += partSize) {
+				long pstart = start, pend = Math.min(start + partSize, size) - 1;
+				parts.add(executor.submit(() -> downloadPart(fc, pstart, pend, eTag)));
+			}
 
-			return true;
-		} catch (Exception e) {
-			Timer.showStdErr("ERROR while downloading " + this);
-			throw new RuntimeException(e);
+			// Wait for all parts to finish (fail if any part fails)
+			long total = 0;
+			for (Future<Long> part : parts)
+				total += part.get();
+			return total;
+		} catch (ExecutionException e) {
+			throw new IOException("Error downloading '" + this + "'", e.getCause());
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
+	/**
+	 * Download an object (to 'file') using a single request
+	 * @return Number of bytes downloaded
+	 */
+	protected long downloadSingle(File file) throws IOException {
+		S3Object s3object = getS3().getObject(new GetObjectRequest(bucketName, key));
+		FileOutputStream os = new FileOutputStream(file);
+
+		// Copy S3 object to file
+		S3ObjectInputStream is = s3object.getObjectContent();
+		long count = 0, total = 0, lastShown = 0;
+		byte data[] = new byte[BUFFER_SIZE];
+		while ((count = is.read(data, 0, BUFFER_SIZE)) != -1) {
+			os.write(data, 0, (int) count);
+			total += count;
+
+			if (verbose) {
+				// Show every MB
+				if ((total - lastShown) > (1024 * 1024)) {
+					System.err.print(".");
+					lastShown = total;
+				}
+			}
+		}
+		if (verbose) System.err.println("");
+
+		// Close streams
+		is.close();
+		os.close();
+		return total;
+	}
+
 	/**
 	 * Does the directory exist?
 	 */
@@ -190,23 +305,41 @@ public class DataS3 extends DataRemote {
 	 */
 	protected AmazonS3 getS3() {
 		if (s3 == null) {
-			URL proxyUrl = getProxyFromEnv();
+			// We need at least one connection per thread
+			ClientConfiguration config = new ClientConfiguration();
+			config.setMaxConnections(Math.max(config.getMaxConnections(), threads));
 
 			// Do we have proxy information?
-			if (proxyUrl == null) {
-				// No proxy? Use default client
-				s3 = AmazonS3ClientBuilder.defaultClient();
-			} else {
-				// Set proxy in config
-				ClientConfiguration config = new ClientConfiguration();
+			URL proxyUrl = getProxyFromEnv();
+			if (proxyUrl != null) {
 				config.setProxyHost(proxyUrl.getHost());
 				config.setProxyPort(proxyUrl.getPort());
-				s3 = AmazonS3ClientBuilder.standard().withClientConfiguration(config).build();
 			}
+
+			AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard().withClientConfiguration(config);
+
+			// Use a custom endpoint (e.g. an S3 compatible server)?
+			String endpoint = Config.get().getString(Config.S3_ENDPOINT, "");
+			if (!endpoint.isEmpty()) {
+				String region = Config.get().getString(Config.AWS_REGION, DEFAULT_REGION).toLowerCase().replace('_', '-'); // E.g. 'US_WEST_2' => 'us-west-2'
+				builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, region)) //
+						.withPathStyleAccessEnabled(true);
+			}
+
+			s3 = builder.build();
 		}
 		return s3;
 	}
 
+	/**
+	 * Initialize transfer parameters from config
+	 */
+	protected void initTransfer() {
+		Config config = Config.get();
+		partSize = Math.max(MIN_PART_SIZE, Gpr.parseMemSafe(config.getString(Config.S3_PART_SIZE, "" + DEFAULT_PART_SIZE)));
+		threads = Math.max(1, config.getInt(Config.S3_THREADS, DEFAULT_THREADS));
+	}
+
 	/**
 	 * Is this a bucket?
 	 */
@@ -291,6 +424,22 @@ public class DataS3 extends DataRemote {
 		return new AmazonS3URI(urlStr);
 	}
 
+	public void setPartSize(long partSize) {
+		this.partSize = partSize;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Transfer throughput information
+	 */
+	protected String throughput(long bytes, long elapsedMs) {
+		double secs = Math.max(elapsedMs, 1) / 1000.0;
+		return String.format("Total %d bytes in %.2f secs, %.2f MB/s", bytes, secs, (bytes / (1024.0 * 1024.0)) / secs);
+	}
+
 	@Override
 	public String toString() {
 		return s3uri.toString();
@@ -303,8 +452,8 @@ public class DataS3 extends DataRemote {
 	protected boolean updateInfo() {
 		try {
 			if (isFile()) {
-				S3Object s3object = getS3().getObject(new GetObjectRequest(bucketName, key));
-				return updateInfo(s3object);
+				// Note: Only request metadata (objects can be huge)
+				return updateInfo(getS3().getObjectMetadata(bucketName, key));
 			} else if (existsDir()) {
 				// Special case when keys are 'directories'
 				exists = true;
@@ -316,8 +465,9 @@ public class DataS3 extends DataRemote {
 				return true;
 			} else return false;
 		} catch (AmazonServiceException e) {
+			// Note: Metadata (HEAD) requests don't have an error code, only status 404
 			String errorCode = e.getErrorCode();
-			if (!errorCode.equals("NoSuchKey")) throw new RuntimeException("Error accessing S3 bucket '" + bucketName + "', key '" + key + "'" + this, e);
+			if (!"NoSuchKey".equals(errorCode) && e.getStatusCode() != 404) throw new RuntimeException("Error accessing S3 bucket '" + bucketName + "', key '" + key + "'" + this, e);
 
 			// The object does not exists
 			exists = false;
@@ -333,11 +483,9 @@ public class DataS3 extends DataRemote {
 	/**
 	 * Update object's information
 	 */
-	protected boolean updateInfo(S3Object s3object) {
-		// Read metadata
-		ObjectMetadata om = s3object.getObjectMetadata();
-
+	protected boolean updateInfo(ObjectMetadata om) {
 		// Update data
+		etag = om.getETag();
 		size = om.getContentLength();
 		canRead = true;
 		canWrite = true;
@@ -369,8 +517,33 @@ public class DataS3 extends DataRemote {
 
 		// Upload
 		File localFile = new File(local.getAbsolutePath());
-		getS3().putObject(new PutObjectRequest(bucketName, key, localFile));
+		Timer timer = new Timer();
+		if (localFile.length() > partSize && threads > 1) uploadParts(localFile);
+		else getS3().putObject(new PutObjectRequest(bucketName, key, localFile));
+		if (verbose) Timer.showStdErr("Upload finished. " + throughput(localFile.length(), timer.elapsed()));
 		return true;
 	}
 
+	/**
+	 * Upload a file using S3's multipart upload, sending parts in parallel
+	 */
+	protected void uploadParts(File localFile) {
+		if (debug) Timer.showStdErr("Uploading '" + this + "' in parts of " + partSize + " bytes, " + threads + " threads");
+
+		TransferManager tm = TransferManagerBuilder.standard() //
+				.withS3Client(getS3()) //
+				.withMultipartUploadThreshold(partSize) //
+				.withMinimumUploadPartSize(partSize) //
+				.withExecutorFactory(() -> Executors.newFixedThreadPool(threads)) //
+				.build();
+
+		try {
+			tm.upload(new PutObjectRequest(bucketName, key, localFile)).waitForCompletion();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Upload interrupted '" + this + "'", e);
+		} finally {
+			tm.shutdownNow(false); // Don't shutdown S3 client
+		}
+	}
+
 }
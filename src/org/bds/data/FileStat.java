@@ -0,0 +1,76 @@
+package org.bds.data;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * File metadata: existence, type, size and modification time
+ *
+ * @author pcingola
+ */
+public class FileStat {
+
+	boolean exists;
+	boolean isDirectory;
+	boolean isFile;
+	long lastModified; // Modification time (milliseconds since epoch)
+	long size;
+	long time; // Time when this information was obtained (milliseconds, see 'FileStatCache.now')
+	Boolean isEmptyDir; // Is this an empty directory? (lazily calculated, null if unknown)
+
+	/**
+	 * File not found
+	 */
+	FileStat() {
+		exists = false;
+		lastModified = 0;
+		size = 0;
+	}
+
+	FileStat(BasicFileAttributes attrs) {
+		exists = true;
+		isDirectory = attrs.isDirectory();
+		isFile = attrs.isRegularFile();
+		lastModified = attrs.lastModifiedTime().toMillis();
+		size = attrs.size();
+	}
+
+	FileStat(Data data) {
+		exists = data.exists();
+		if (exists) {
+			isDirectory = data.isDirectory();
+			isFile = data.isFile();
+			lastModified = data.getLastModified().getTime();
+			size = data.size();
+		}
+	}
+
+	public boolean exists() {
+		return exists;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public boolean isDirectory() {
+		return isDirectory;
+	}
+
+	public boolean isFile() {
+		return isFile;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		if (!exists) return "not found";
+		return (isDirectory ? "dir" : (isFile ? "file" : "other")) //
+				+ ", size: " + size //
+				+ ", modified: " + lastModified //
+		;
+	}
+
+}
@@ -0,0 +1,369 @@
+package org.bds.data;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bds.Config;
+import org.bds.util.Timer;
+
+/**
+ * A process-wide cache of file metadata (existence, type, size and modification time)
+ *
+ * Dependency evaluation ('<-' operator, goals, checking task outputs) queries the
+ * same files over and over. On network file systems each query is at least one
+ * round trip to the server, so results are cached:
+ *
+ *   - Local files are queried using a single 'stat' (Files.readAttributes)
+ *
+ *   - After several misses in the same directory, the directory is listed once.
+ *     Queries for files not in the listing are answered without any system call.
+ *
+ *   - Listed (local) directories are watched and invalidated on changes (WatchService)
+ *
+ *   - Entries expire after 'fileStatCacheTtl' milliseconds (zero disables the cache).
+ *     Operations that change files (tasks finishing, 'sys' commands, deleting or
+ *     writing files from bds code) invalidate entries explicitly (see 'invalidate').
+ *     Tasks and 'sys' commands can write any file, so they invalidate all entries.
+ *     Note that file system watches don't work on network file systems, so files
+ *     changed by external processes may be seen up to 'fileStatCacheTtl' later.
+ *
+ * Note: Data methods (e.g. 'exists()', 'getSize()', 'getLastModified()') don't use
+ * this cache, so bds code querying files (e.g. polling until a file exists) always
+ * sees the current state.
+ *
+ * @author pcingola
+ */
+public class FileStatCache {
+
+	public static final long DEFAULT_TTL = 10 * 1000; // Cache entries expire after this time (milliseconds)
+	public static final int DIR_LIST_MISSES = 8; // List a directory after this many misses
+	public static final int MAX_WATCHED_DIRS = 1024; // Don't watch more than this number of directories (watches are a limited resource)
+
+	private static FileStatCache fileStatCache;
+
+	/**
+	 * Directory information
+	 */
+	class DirInfo {
+		int misses; // Number of cache misses since the latest listing
+		long listTime = -1; // Time when the directory was listed, negative if there is no valid listing
+		Set<String> names; // File names in directory (valid only if 'listTime' is not expired)
+		boolean watched; // Is the directory watched?
+	}
+
+	boolean debug;
+	long ttl; // Cache entries expire after this time (milliseconds)
+	Map<String, FileStat> stats; // File information by path
+	Map<String, DirInfo> dirs; // Directory information by path
+	WatchService watchService; // Watch directories for changes (null if not available)
+	int watchedDirs;
+
+	public static synchronized FileStatCache get() {
+		if (fileStatCache == null) {
+			Config config = Config.get();
+			long ttl = config != null ? config.getLong(Config.FILE_STAT_CACHE_TTL, DEFAULT_TTL) : DEFAULT_TTL;
+			fileStatCache = new FileStatCache(ttl);
+			if (config != null) fileStatCache.debug = config.isDebug();
+		}
+		return fileStatCache;
+	}
+
+	/**
+	 * Is this a remote path (URL)?
+	 */
+	static boolean isRemote(String path) {
+		int idx = path.indexOf(Data.PROTOCOL_SEP);
+		return idx > 0 && !Data.parseProtoHost(path).first.equals("file");
+	}
+
+	/**
+	 * Reset cache (e.g. before running a new program)
+	 */
+	public static synchronized void reset() {
+		if (fileStatCache != null) fileStatCache.close();
+		fileStatCache = null;
+	}
+
+	public FileStatCache(long ttl) {
+		this.ttl = ttl;
+		stats = new ConcurrentHashMap<>();
+		dirs = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Stop watching directories
+	 */
+	synchronized void close() {
+		if (watchService == null) return;
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	DirInfo dirInfo(String dir) {
+		return dirs.computeIfAbsent(dir, d -> new DirInfo());
+	}
+
+	boolean expired(long time, long now) {
+		return time < 0 || (now - time) > ttl;
+	}
+
+	/**
+	 * Invalidate all entries
+	 */
+	public void invalidate() {
+		stats.clear();
+		for (DirInfo di : dirs.values())
+			synchronized (di) {
+				di.listTime = -1;
+				di.names = null;
+			}
+	}
+
+	/**
+	 * Invalidate a file (and it's local copy, if it's remote)
+	 */
+	public void invalidate(Data data) {
+		if (data.isRemote()) {
+			invalidate(data.toString());
+			invalidate(data.getLocalPath());
+		} else invalidate(data.getAbsolutePath());
+	}
+
+	/**
+	 * Invalidate a list of paths (e.g. task's output files)
+	 */
+	public void invalidate(Collection<String> paths) {
+		if (paths == null) return;
+		for (String path : paths)
+			invalidate(path);
+	}
+
+	/**
+	 * Invalidate a file (or URL). Parent directory's information is invalidated as well
+	 */
+	public void invalidate(String path) {
+		stats.remove(path);
+		if (isRemote(path)) return;
+
+		Path parent = Paths.get(path).getParent();
+		if (parent == null) return;
+
+		String dir = parent.toString();
+		stats.remove(dir); // Directory's modification time (or emptiness) may have changed
+
+		DirInfo di = dirs.get(dir);
+		if (di != null) synchronized (di) {
+			di.listTime = -1;
+			di.names = null;
+		}
+	}
+
+	/**
+	 * Is 'path' an empty directory?
+	 */
+	public boolean isEmptyDir(String path) {
+		FileStat st = stat(path);
+		if (!st.isDirectory()) return false;
+
+		if (st.isEmptyDir == null) {
+			if (isRemote(path)) {
+				st.isEmptyDir = Data.factory(path).list().isEmpty();
+			} else {
+				try (DirectoryStream<Path> ds = Files.newDirectoryStream(Paths.get(path))) {
+					st.isEmptyDir = !ds.iterator().hasNext();
+				} catch (IOException e) {
+					st.isEmptyDir = true; // Cannot list directory: Consider it empty
+				}
+			}
+		}
+
+		return st.isEmptyDir;
+	}
+
+	/**
+	 * List a directory: Keep file names (not file information)
+	 */
+	void list(Path dir, DirInfo di, long now) {
+		di.misses = 0;
+		Set<String> names = new HashSet<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+			for (Path p : ds)
+				names.add(p.getFileName().toString());
+		} catch (IOException e) {
+			return; // Directory does not exist or cannot be read
+		}
+
+		di.names = names;
+		di.listTime = now;
+		if (debug) log("Listed directory '" + dir + "', " + names.size() + " entries");
+		watch(dir, di);
+	}
+
+	void log(String msg) {
+		Timer.showStdErr(getClass().getSimpleName() + ": " + msg);
+	}
+
+	long now() {
+		return System.currentTimeMillis();
+	}
+
+	FileStat put(String path, FileStat st, long now) {
+		st.time = now;
+		stats.put(path, st);
+		return st;
+	}
+
+	/**
+	 * Get file information. The path must be absolute (or a URL)
+	 */
+	public FileStat stat(String path) {
+		if (ttl <= 0) return statNoCache(path);
+
+		long now = now();
+		FileStat st = stats.get(path);
+		if (st != null && !expired(st.time, now)) return st;
+
+		// Remote file
+		if (isRemote(path)) return put(path, new FileStat(Data.factory(path)), now);
+
+		// Local file: Check directory listing
+		Path p = Paths.get(path);
+		Path parent = p.getParent();
+		if (parent != null && p.getFileName() != null) {
+			DirInfo di = dirInfo(parent.toString());
+			synchronized (di) {
+				// Listing too old? Invalidate it. List directory if there were too many misses
+				if (expired(di.listTime, now)) {
+					di.listTime = -1;
+					di.names = null;
+					if (++di.misses >= DIR_LIST_MISSES) list(parent, di, now);
+				}
+
+				// File not in directory listing? It doesn't exist
+				if (di.names != null && !di.names.contains(p.getFileName().toString())) return put(path, new FileStat(), now);
+			}
+		}
+
+		return put(path, statLocal(p), now);
+	}
+
+	/**
+	 * Get local file information
+	 */
+	FileStat statLocal(Path p) {
+		try {
+			return new FileStat(Files.readAttributes(p, BasicFileAttributes.class));
+		} catch (NoSuchFileException e) {
+			return new FileStat();
+		} catch (IOException e) {
+			return new FileStat(new DataFile(p.toString())); // Cannot read attributes, try using Data
+		}
+	}
+
+	/**
+	 * Get file information without using the cache
+	 */
+	FileStat statNoCache(String path) {
+		if (isRemote(path)) return new FileStat(Data.factory(path));
+		return statLocal(Paths.get(path));
+	}
+
+	/**
+	 * Watch a directory for changes
+	 */
+	synchronized void watch(Path dir, DirInfo di) {
+		if (di.watched || watchedDirs >= MAX_WATCHED_DIRS) return;
+
+		try {
+			if (watchService == null) {
+				watchService = FileSystems.getDefault().newWatchService();
+				Thread watcher = new Thread(() -> watchLoop(), getClass().getSimpleName());
+				watcher.setDaemon(true);
+				watcher.start();
+			}
+
+			dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			di.watched = true;
+			watchedDirs++;
+		} catch (IOException | UnsupportedOperationException e) {
+			if (debug) log("Cannot watch directory '" + dir + "': " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Process events from watched directories
+	 */
+	void watchLoop() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			Path dir = (Path) key.watchable();
+			String dirStr = dir.toString();
+			DirInfo di = dirs.get(dirStr);
+			stats.remove(dirStr);
+
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					// Events lost: Invalidate all entries in this directory
+					for (Iterator<String> it = stats.keySet().iterator(); it.hasNext();) {
+						Path p = Paths.get(it.next());
+						if (dir.equals(p.getParent())) it.remove();
+					}
+					if (di != null) synchronized (di) {
+						di.listTime = -1;
+						di.names = null;
+					}
+					continue;
+				}
+
+				// Update directory listing and remove file information
+				String name = event.context().toString();
+				stats.remove(dir.resolve(name).toString());
+				if (di != null) synchronized (di) {
+					if (di.names != null) {
+						if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) di.names.add(name);
+						else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) di.names.remove(name);
+					}
+				}
+			}
+
+			if (!key.reset()) {
+				// Directory no longer accessible
+				if (di != null) synchronized (di) {
+					di.watched = false;
+					di.listTime = -1;
+					di.names = null;
+				}
+				synchronized (this) {
+					watchedDirs--;
+				}
+			}
+		}
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -29,13 +30,19 @@ import org.bds.util.Timer;
  */
 public class CheckTasksRunning {
 
-	public static final int CHECK_TASK_RUNNING_INTERVAL = 60;
+	public static final int CHECK_TASK_RUNNING_INTERVAL = 60; // Minimum interval between checks (seconds)
+	public static final int CHECK_TASK_RUNNING_INTERVAL_MAX = 180; // Default maximum interval between checks, when the queue is 'quiet' (seconds)
 	public static final int TASK_STATE_MIN_START_TIME = 30; // We assume that in less then this number of seconds we might not have a task reported by the cluster system
 	public static final int TASK_NOT_FOUND_DISAPPEARED = 3; // How many times do we have to 'not find' a task to consider it gone
 
 	protected boolean debug;
 	protected boolean verbose;
 	protected Timer time; // Timer for checking that tasks are still running
+	protected int checkInterval; // Current interval between checks (seconds). It adapts to queue activity
+	protected int checkIntervalMax; // Maximum interval between checks (seconds)
+	protected Map<String, List<Task>> tasksByPid; // Running tasks indexed by PID (and by PID's first part, see 'parsePidPart')
+	protected Map<String, List<Task>> tasksByPidArray; // Running job array elements, indexed by the job array's PID
+	protected Set<Task> tasksRunningPrev; // Tasks running in the previous check
 	protected String[] defaultCmdArgs;
 	protected Executioner executioner;
 	protected ExecResult cmdExecResult;
@@ -48,6 +55,11 @@ public class CheckTasksRunning {
 		this.executioner = executioner;
 		defaultCmdArgs = new String[0];
 		missingCount = new HashMap<>();
+		tasksByPid = new HashMap<>();
+		tasksByPidArray = new HashMap<>();
+		tasksRunningPrev = new HashSet<>();
+		checkInterval = CHECK_TASK_RUNNING_INTERVAL;
+		checkIntervalMax = Math.max(CHECK_TASK_RUNNING_INTERVAL, (int) config.getLong(Config.CLUSTER_STAT_INTERVAL_MAX, CHECK_TASK_RUNNING_INTERVAL_MAX));
 
 		// Set debug
 		debug = config.isDebug();
@@ -78,35 +90,84 @@ public class CheckTasksRunning {
 		if (!shouldCheck()) return; // Check every now and then
 
 		// Run a command to query running PIDs
+		List<Task> tasksRunning = executioner.getTasksRunning();
 		if (!runCommand()) return;
 
-		// Parse command output, extract all PIDs
-		Set<Task> taskFoundId = parseCommandOutput();
+		// Parse command output, find tasks by PID
+		Set<Task> taskFoundId = findRunningTasks(tasksRunning, cmdExecResult.stdOut);
 
 		// If any 'running' tasks was not not found, mark is as finished ('ERROR')
 		tasksRunning(taskFoundId);
+
+		// Adapt interval to queue activity
+		updateCheckInterval(tasksRunning);
+	}
+
+	/**
+	 * Find running tasks matching a PID
+	 * @return true if any task was found
+	 */
+	protected boolean findRunningTaskByPid(String pid, Map<String, List<Task>> taskIndex, Set<Task> tasks) {
+		List<Task> tasksPid = taskIndex.get(pid);
+		if (tasksPid == null) return false;
+
+		for (Task t : tasksPid) {
+			if (tasks.add(t) && debug) log("Found task PID '" + t.getPid() + "'");
+		}
+		return true;
 	}
 
 	/**
-	 * Find a running task given a PID
+	 * Find running tasks given a set of PIDs
 	 */
 	protected Set<Task> findRunningTaskByPid(Set<String> pids) {
 		HashSet<Task> tasks = new HashSet<>();
+		for (String pid : pids)
+			findRunningTaskByPid(pid, tasksByPid, tasks);
+		return tasks;
+	}
+
+	/**
+	 * Find running tasks reported in the output of a 'stat' command (e.g. qstat)
+	 */
+	public Set<Task> findRunningTasks(List<Task> tasksRunning, String out) {
+		indexTasksByPid(tasksRunning);
+		return parseCommandOutput(out);
+	}
 
-		// Find task by PID
-		for (Task t : executioner.getTasksRunning()) {
+	/**
+	 * Index running tasks by PID
+	 * Note: Tasks are also indexed by the first part of the PID (e.g. '123.server'
+	 *       is indexed as '123'). Job array elements are only indexed by their
+	 *       own PID (e.g. '123.1' and '123.2' are different tasks) and by the
+	 *       job array's PID in 'tasksByPidArray'
+	 */
+	protected void indexTasksByPid(List<Task> tasksRunning) {
+		tasksByPid.clear();
+		tasksByPidArray.clear();
+		for (Task t : tasksRunning) {
 			String pid = t.getPid();
+			if (pid == null) continue;
 
-			if (pid != null) {
-				// Matches pid?
-				if (pids.contains(pid) || pids.contains(parsePidPart(pid))) {
-					if (debug) log("Found task PID '" + pid + "'");
-					tasks.add(t);
-				}
+			indexTaskByPid(pid, t, tasksByPid);
+
+			String pidArray = t.getPidArray();
+			if (pidArray != null) {
+				indexTaskByPid(pidArray, t, tasksByPidArray);
+			} else {
+				String pidPart = parsePidPart(pid);
+				if (!pidPart.equals(pid)) indexTaskByPid(pidPart, t, tasksByPid);
 			}
 		}
+	}
 
-		return tasks;
+	void indexTaskByPid(String pid, Task task, Map<String, List<Task>> taskIndex) {
+		List<Task> tasks = taskIndex.get(pid);
+		if (tasks == null) {
+			tasks = new ArrayList<>(1);
+			taskIndex.put(pid, tasks);
+		}
+		tasks.add(task);
 	}
 
 	/**
@@ -127,65 +188,91 @@ public class CheckTasksRunning {
 	}
 
 	/**
-	 * Parse command output, extract all PIDs
+	 * Parse command output, find running tasks matching the PIDs
+	 * Note: Lines are parsed one by one and looked up in the PID
+	 *       index, we don't keep a set of all PIDs in the output
+	 * Note: A job array element is found by its own PID. Only if a line
+	 *       does not match any task, we check whether it reports a job
+	 *       array as a whole (some schedulers show one line per array, or
+	 *       the array's PID and the element's index in separate columns)
 	 */
-	protected Set<Task> parseCommandOutput() {
-		// For each line in stdout...
-		String lines[] = cmdExecResult.stdOut.split("\n");
+	protected Set<Task> parseCommandOutput(String out) {
+		Set<Task> tasks = new HashSet<>();
+		Set<String> pids = new HashSet<>();
+
+		for (int start = 0, end; start < out.length(); start = end + 1) {
+			end = out.indexOf('\n', start);
+			if (end < 0) end = out.length();
 
-		// Parse PIDs
-		Set<String> pids = parseCommandOutput(lines);
+			pids.clear();
+			parseCommandOutputLine(out.substring(start, end), pids);
 
-		// Find a tasks matching these PIDs
-		return findRunningTaskByPid(pids);
+			boolean found = false;
+			for (String pid : pids)
+				found |= findRunningTaskByPid(pid, tasksByPid, tasks);
+
+			if (!found) {
+				for (String pid : pids)
+					findRunningTaskByPid(pid, tasksByPidArray, tasks);
+			}
+		}
+
+		return tasks;
 	}
 
 	/**
 	 * Parse command output, extract all PIDs
-	 * For each PID, find the corresponding task, add task 'taskFoundId' (HashSet<String>)
 	 */
 	public Set<String> parseCommandOutput(String lines[]) {
 		HashSet<String> pids = new HashSet<>();
 
 		// Parse lines
-		for (String line : lines) {
-			line = line.trim();
+		for (String line : lines)
+			parseCommandOutputLine(line, pids);
 
-			if (debug) log("Parsing line:\t" + line);
-			String pid = parsePidLine(line);
+		return pids;
+	}
 
-			// Any results?
-			if (pid != null && !pid.isEmpty()) {
-				// PID parsed OK
-				if (pids.add(pid)) {
-					if (debug) log("\tAdding ID: '" + pid + "'");
-				}
-			} else {
-				// PID not matched by 'pidRegexCheckTaskRunning' regex (or regex not set)?
-				// => Try other methods
+	/**
+	 * Parse one line of command output, add PIDs to 'pids'
+	 */
+	protected void parseCommandOutputLine(String line, Set<String> pids) {
+		line = line.trim();
 
-				// Split fields
-				String fields[] = line.split("\\s+");
+		if (debug) log("Parsing line:\t" + line);
+		String pid = parsePidLine(line);
 
-				// Obtain PID (found in column number 'cmdPidColumn')
-				if ((0 <= cmdPidColumn) && (cmdPidColumn < fields.length)) {
-					pid = fields[cmdPidColumn];
+		// Any results?
+		if (pid != null && !pid.isEmpty()) {
+			// PID parsed OK
+			if (pids.add(pid)) {
+				if (debug) log("\tAdding ID: '" + pid + "'");
+			}
+		} else {
+			// PID not matched by 'pidRegexCheckTaskRunning' regex (or regex not set)?
+			// => Try other methods
 
-					// Add first column (whole pid)
-					if (pids.add(pid)) {
-						if (debug) log("\tAdding ID (column number " + cmdPidColumn + "): '" + pid + "'");
-					}
+			// Split fields
+			String fields[] = line.split("\\s+");
+
+			// Obtain PID (found in column number 'cmdPidColumn')
+			if ((0 <= cmdPidColumn) && (cmdPidColumn < fields.length)) {
+				pid = fields[cmdPidColumn];
+
+				// Add first column (whole pid)
+				if (pids.add(pid)) {
+					if (debug) log("\tAdding ID (column number " + cmdPidColumn + "): '" + pid + "'");
+				}
 
-					// Use only first part (split using dot)
-					String pidPart = parsePidPart(pid);
+				// Use only first parts (split using dot), e.g. '123.1.server' => '123' and '123.1'
+				for (int idx = pid.indexOf('.'); idx > 0; idx = pid.indexOf('.', idx + 1)) {
+					String pidPart = pid.substring(0, idx);
 					if (pids.add(pidPart)) {
-						if (debug) log("\tAdding ID (using string before fisrt dot): '" + pidPart + "'");
+						if (debug) log("\tAdding ID (using string before dot): '" + pidPart + "'");
 					}
 				}
 			}
 		}
-
-		return pids;
 	}
 
 	/**
@@ -286,7 +373,8 @@ public class CheckTasksRunning {
 	 */
 	protected boolean shouldCheck() {
 		if (time == null) time = new Timer();
-		if (time.elapsedSecs() > CHECK_TASK_RUNNING_INTERVAL) {
+		if (!executioner.hasTaskRunning()) return false; // No tasks running, nothing to check
+		if (time.elapsedSecs() > checkInterval) {
 			time.start(); // Restart timer
 			return true;
 		}
@@ -335,4 +423,22 @@ public class CheckTasksRunning {
 		}
 	}
 
+	/**
+	 * Adapt interval between checks to queue activity: If tasks started, finished
+	 * or are missing, check often. Otherwise double the interval (up to a maximum)
+	 */
+	protected void updateCheckInterval(List<Task> tasksRunning) {
+		boolean active = !missingCount.isEmpty() // Some tasks are missing
+				|| (tasksRunning.size() != tasksRunningPrev.size()) // Tasks started or finished
+				|| !tasksRunningPrev.containsAll(tasksRunning) //
+		;
+
+		if (active) checkInterval = CHECK_TASK_RUNNING_INTERVAL;
+		else checkInterval = Math.min(2 * checkInterval, checkIntervalMax);
+
+		tasksRunningPrev.clear();
+		tasksRunningPrev.addAll(tasksRunning);
+		if (debug) log("Next check in " + checkInterval + " seconds");
+	}
+
 }
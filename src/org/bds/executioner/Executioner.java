@@ -5,11 +5,15 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.bds.Config;
 import org.bds.cluster.Cluster;
 import org.bds.cluster.host.Host;
 import org.bds.cluster.host.HostLocal;
+import org.bds.cluster.host.HostResources;
+import org.bds.cluster.placement.PlacementPolicy;
 import org.bds.osCmd.Cmd;
 import org.bds.osCmd.Exec;
 import org.bds.run.BdsThread;
@@ -34,16 +38,20 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	public static final int SLEEP_TIME_LONG = 500; // Milliseconds
 	public static final int SLEEP_TIME_MID = 200; // Milliseconds
 	public static final int SLEEP_TIME_SHORT = 10; // Milliseconds
+	public static final String TASK_ORDER_CRITICAL_PATH = "criticalPath";
+	public static final String TASK_ORDER_FIFO = "fifo";
 
 	protected CheckTasksRunning checkTasksRunning;
 	protected Cluster cluster; // Local computer is the 'server' (localhost)
 	private Map<String, Cmd> cmdById;
 	protected Config config;
 	protected boolean debug;
+	protected Queue<Task> dependenciesDone; // Tasks finished (in any executioner) since last 'selectTask'
 	protected LinkedList<Task> finishTask;
 	protected int hostIdx = 0;
 	protected boolean log;
 	protected MonitorTask monitorTask;
+	protected PlacementPolicy placementPolicy; // Select a host to run a task
 	protected boolean removeTaskCannotExecute; // Should a task be finished if there are no resources to execute it? In most cases yes, but some clusters host are dynamic (they appear and disappear), so even if there are no resources now there might be resources in the future.
 	protected boolean running, valid;
 	protected Tail tail;
@@ -51,16 +59,21 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	protected Map<String, Task> tasksDone; // Tasks that finished
 	protected Map<String, Task> tasksRunning; // Tasks running
 	protected Map<Task, Host> tasksSelected; // Tasks that has been selected and it will be immediately start execution in host
-	protected List<Task> tasksToRun; // Tasks queued for execution
+	protected TaskRuntimeHistory taskRuntimeHistory; // Historical task run times (only used for 'criticalPath' task ordering)
+	protected TaskQueue tasksToRun; // Tasks queued for execution
 	protected List<Tuple<Task, TaskState>> taskUpdateStates; // Tasks to be updated
 	protected Timer timer; // Task timer (when was the task started)
 	protected boolean verbose;
+	private final Object wakeUpLock = new Object(); // Executioner's thread waits on this object for events (see 'wakeUp')
+	private boolean wakeUpPending; // An event arrived while executioner's thread was busy
 
 	public Executioner(Config config) {
 		super();
 		valid = true;
 		this.config = config;
-		tasksToRun = new ArrayList<>();
+		if (config.getString(Config.TASK_ORDER, TASK_ORDER_FIFO).equals(TASK_ORDER_CRITICAL_PATH)) taskRuntimeHistory = TaskRuntimeHistory.get();
+		tasksToRun = new TaskQueue(taskRuntimeHistory);
+		dependenciesDone = new ConcurrentLinkedQueue<>();
 		taskUpdateStates = new ArrayList<>();
 		tail = config.getTail();
 		taskLogger = config.getTaskLogger();
@@ -76,6 +89,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		verbose = config.isVerbose();
 		debug = config.isDebug();
 		log = config.isLog();
+		placementPolicy = PlacementPolicy.factory(config.getString(Config.PLACEMENT_POLICY, PlacementPolicy.FIRST_FIT));
 
 		// Create a cluster having only one host (this computer)
 		cluster = new Cluster();
@@ -89,6 +103,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		if (debug) log("Queuing task: " + task.getId());
 		task.state(TaskState.SCHEDULED);
 		tasksToRun.add(task);
+		wakeUp();
 	}
 
 	protected synchronized void addCmd(Task task, Cmd cmd) {
@@ -108,6 +123,15 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		return count;
 	}
 
+	/**
+	 * A task finished (it could be running on any executioner): Tasks
+	 * depending on it might be ready to run
+	 */
+	public void dependencyDone(Task task) {
+		dependenciesDone.add(task);
+		wakeUp();
+	}
+
 	/**
 	 * Create a command form a task
 	 */
@@ -262,12 +286,16 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		// Kill all 'tasksToRun'.
 		// Note: We need to create a new list to avoid concurrent modification exceptions
 		ArrayList<Task> tokill = new ArrayList<>();
-		tokill.addAll(tasksToRun);
+		for (Task t : tasksToRun)
+			tokill.add(t);
 		tokill.addAll(tasksRunning.values());
 		for (Task t : tokill)
 			kill(t);
 
+		if (taskRuntimeHistory != null) taskRuntimeHistory.save();
+
 		running = valid = false;
+		wakeUp();
 	}
 
 	/**
@@ -379,6 +407,20 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		if (debug) log("Finished running");
 	}
 
+	/**
+	 * Does 'taskResources' require at least the resources of any of 'resourcesList'?
+	 * I.e. if a task requiring any of 'resourcesList' cannot be assigned a host,
+	 * neither can a task requiring 'taskResources'
+	 */
+	protected boolean requiresAtLeast(HostResources taskResources, List<HostResources> resourcesList) {
+		for (HostResources hr : resourcesList) {
+			if ((taskResources.getCpus() >= hr.getCpus()) //
+					&& ((hr.getMem() <= 0) || (taskResources.getMem() >= hr.getMem())) //
+			) return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Run task queues
 	 */
@@ -395,7 +437,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 					if (debug) log("Queue: No more tasks to run.");
 				}
 
-				sleepLong();
+				waitWakeUp(SLEEP_TIME_LONG);
 			}
 		} catch (Throwable t) {
 			running = valid = false;
@@ -415,6 +457,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	protected boolean runExecutionerLoop() {
 		// Nothing to run?
 		if (!hasTaskToRun()) {
+			updateDependenciesDone();
 			reportsChecksUpdates();
 			return false;
 		}
@@ -423,7 +466,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		while (running && hasTaskToRun()) {
 			// Are executioner frozen?
 			if (Executioners.getInstance().isFreeze()) {
-				sleepMid();
+				waitWakeUp(SLEEP_TIME_MID);
 				continue;
 			}
 
@@ -435,12 +478,16 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 				// Get next task and run it
 				runTask(taskHostPair.first, taskHostPair.second);
 			} else {
-				sleepMid();
+				// No task can run now: Wait until a task is added, changes
+				// state or finishes (in any executioner)
+				runTasksDeferred();
+				waitWakeUp(SLEEP_TIME_MID);
 			}
 
 			reportsChecksUpdates();
 		}
 
+		if (running) runTasksDeferred(); // Don't submit deferred tasks after being killed
 		return true;
 	}
 
@@ -449,6 +496,9 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	 */
 	protected void runExecutionerLoopAfter() {
 		reportsChecksUpdates(); // Make sure all tasks states are updated
+
+		// Tasks that finished after 'kill()' were just added to the history
+		if (taskRuntimeHistory != null) taskRuntimeHistory.save();
 	}
 
 	/**
@@ -463,7 +513,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	 * @param host : Host to run task (can be null)
 	 */
 	protected void runTask(Task task, Host host) {
-		if (config.getMaxThreads() > 0) {
+		if (config.getMaxThreads() > 0 && runTaskUsesThread()) {
 			// Don't run too many threads at once
 			// The reason for this is that we can reach the maximum
 			// number of threads available in the operating system.
@@ -485,7 +535,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		}
 
 		host.add(task);
-		if (cmd != null) cmd.start();
+		if (cmd != null) cmd.startCmd();
 
 		// Wait some milliseconds?
 		int waitTime = config.getWaitAfterTaskRun();
@@ -498,6 +548,22 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		}
 	}
 
+	/**
+	 * Does running a task use (block) a thread while the task is running?
+	 * If so, the number of running tasks is limited by 'maxThreads'
+	 */
+	protected boolean runTaskUsesThread() {
+		return true;
+	}
+
+	/**
+	 * Run tasks deferred by 'runTask' (e.g. tasks submitted in batches)
+	 * This is invoked when there are no more tasks to select
+	 */
+	protected void runTasksDeferred() {
+		// Nothing to do
+	}
+
 	/**
 	 * Select next task to run and assign host.
 	 * Note: Some clusters can be viewed as having "single host with almost infinite capacity", so
@@ -506,13 +572,19 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	 *       many clusters the deciding where to run is trivial.
 	 */
 	protected synchronized Tuple<Task, Host> selectTask() {
+		updateDependenciesDone();
+
 		// Nothing to run?
 		if (tasksToRun.isEmpty()) return null;
 
 		finishTask = null;
+		List<Task> waiting = null;
+		List<HostResources> noHost = null; // Resources of tasks that could not be assigned a host
 
 		// Try to find a task matching a host
-		for (Task task : tasksToRun) {
+		// Note: Only tasks having all dependencies finished are considered
+		Tuple<Task, Host> taskHostSelected = null;
+		for (Task task : tasksToRun.getReady()) {
 			// Already selected? Skip
 			if (tasksSelected.containsKey(task)) continue;
 
@@ -525,6 +597,9 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 					break;
 
 				case WAIT:
+					// A dependency was re-scheduled (e.g. re-trying a failed task)
+					if (waiting == null) waiting = new LinkedList<>();
+					waiting.add(task);
 					continue;
 
 				case ERROR:
@@ -538,12 +613,29 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 
 				}
 
+				// A task requiring at least the same resources could not
+				// be assigned a host in this round? Don't bother trying
+				if (noHost != null && requiresAtLeast(task.getResources(), noHost)) continue;
+
 				// Select a suitable host in the cluster that satisfies task resources
-				Tuple<Task, Host> taskHost = selectTask(task);
-				if (taskHost != null) return taskHost;
+				int finishTaskSize = (finishTask != null ? finishTask.size() : 0);
+				taskHostSelected = selectTask(task);
+				if (taskHostSelected != null) break;
+
+				// No host available (but the task can be executed in the future)
+				if (finishTask == null || finishTask.size() == finishTaskSize) {
+					if (noHost == null) noHost = new ArrayList<>();
+					noHost.add(task.getResources());
+				}
 			}
 		}
 
+		// Update dependency counters for tasks that must wait
+		if (waiting != null) {
+			for (Task task : waiting)
+				tasksToRun.waiting(task);
+		}
+
 		// These tasks cannot be executed due to "lack of resources"
 		if (finishTask != null) {
 			for (Task task : finishTask) {
@@ -553,42 +645,42 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 			finishTask = null;
 		}
 
-		// Cannot run any task in any host
-		return null;
+		// Cannot run any task in any host?
+		return taskHostSelected;
 	}
 
 	/**
 	 * Select a suitable host for this task
 	 */
 	protected synchronized Tuple<Task, Host> selectTask(Task task) {
-		boolean canBeExecuted = false;
-
 		//---
-		// Select the first host in the cluster that satisfies requirements
+		// Select a host in the cluster that satisfies requirements (see 'placementPolicy')
 		//---
-		for (Host host : cluster) {
-			// Host is not alive?
-			if (!host.isAlive()) {
-				canBeExecuted = true; // May be this host can actually execute this task, we don't know.
-				continue;
-			}
+		Host host = placementPolicy.select(task.getResources(), cluster);
+		if (host != null) {
+			// OK, execute this task in this host
+			if (debug) log("Selected task:" //
+					+ "\n\ttask ID        : " + task.getId() //
+					+ "\n\ttask hint      : " + task.getProgramHint()//
+					+ "\n\ttask resources : " + task.getResources() //
+					+ "\n\thost           : " + host //
+					+ "\n\thost resources : " + host.getResourcesAvaialble() //
+					+ "\n\tplacement      : " + placementPolicy //
+			);
 
-			// Do we have enough resources to run this task in this host?
-			if (host.getResourcesAvaialble().hasResources(task.getResources())) {
-				// OK, execute this task in this host
-				if (debug) log("Selected task:" //
-						+ "\n\ttask ID        : " + task.getId() //
-						+ "\n\ttask hint      : " + task.getProgramHint()//
-						+ "\n\ttask resources : " + task.getResources() //
-						+ "\n\thost           : " + host //
-						+ "\n\thost resources : " + host.getResourcesAvaialble() //
-				);
-
-				selectTask(task, host); // Add task to host (make sure resources are reserved)
-				return new Tuple<>(task, host);
-			} else if (!canBeExecuted) {
-				// Can any host actually run this task?
-				canBeExecuted = host.getResources().hasResources(task.getResources());
+			selectTask(task, host); // Add task to host (make sure resources are reserved)
+			return new Tuple<>(task, host);
+		}
+
+		//---
+		// Can any host actually run this task?
+		//---
+		boolean canBeExecuted = false;
+		for (Host h : cluster) {
+			// Host is not alive? May be this host can actually execute this task, we don't know.
+			if (!h.isAlive() || h.getResources().hasResources(task.getResources())) {
+				canBeExecuted = true;
+				break;
 			}
 		}
 
@@ -636,14 +728,6 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		}
 	}
 
-	void sleepMid() {
-		try {
-			sleep(SLEEP_TIME_SHORT);
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	void sleepShort() {
 		try {
 			sleep(SLEEP_TIME_SHORT);
@@ -667,6 +751,7 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		}
 
 		taskUpdateStates.add(new Tuple<>(task, taskState));
+		wakeUp();
 	}
 
 	/**
@@ -675,12 +760,13 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	@Override
 	public synchronized void taskRunning(Task task) {
 		taskUpdateStates.add(new Tuple<>(task, TaskState.RUNNING));
-
+		wakeUp();
 	}
 
 	@Override
 	public synchronized void taskStarted(Task task) {
 		taskUpdateStates.add(new Tuple<>(task, TaskState.STARTED));
+		wakeUp();
 	}
 
 	/**
@@ -713,26 +799,40 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 		if (!log) task.deleteOnExit();
 
 		// Set task state
-		task.state(taskState);
-
-		// Task finished in error condition?
-		if (task.isFailed()) {
-			// Can we re-try?
-			if (!task.isCanFail() && task.canRetry()) {
-				// Retry task
-				log("Task failed, retrying ( " + task.getMaxFailCount() + " remaining retries ): task ID '" + task.getId() + "'" + (debug ? "\n" : ", ") + task.toString(verbose));
-
-				// Move task form 'taskDone' back to 'tasksToRun' queue
-				task.reset(); // Prepare to re-run task
-				tasksDone.remove(task.getId());
-				tasksToRun.add(task);
-				task.state(TaskState.SCHEDULED);
-			} else {
-				// May be we can look for additional information to asses the error
-				postMortemInfo(task);
+		// Note: We hold the task's lock until we know whether the task is re-tried, otherwise
+		//       threads waiting for the task (see Task.waitDone) could see it as 'done'
+		boolean postMortem = false;
+		synchronized (task) {
+			task.state(taskState);
+
+			// Task finished in error condition?
+			if (task.isFailed()) {
+				// Can we re-try?
+				if (!task.isCanFail() && task.canRetry()) {
+					// Retry task
+					log("Task failed, retrying ( " + task.getMaxFailCount() + " remaining retries ): task ID '" + task.getId() + "'" + (debug ? "\n" : ", ") + task.toString(verbose));
+
+					// Move task form 'taskDone' back to 'tasksToRun' queue
+					task.reset(); // Prepare to re-run task
+					tasksDone.remove(task.getId());
+					tasksToRun.add(task);
+					task.state(TaskState.SCHEDULED);
+				} else postMortem = true;
 			}
 		}
 
+		// May be we can look for additional information to asses the error
+		if (postMortem) postMortemInfo(task);
+
+		// Record run time, used to estimate future runs
+		if (taskRuntimeHistory != null && taskState == TaskState.FINISHED && task.isDone()) taskRuntimeHistory.add(task);
+
+		// Tasks depending on this one may be ready to run
+		if (task.isDone()) {
+			Executioners executioners = Executioners.getInstance();
+			if (executioners != null) executioners.taskDone(task);
+		}
+
 		return true;
 	}
 
@@ -750,6 +850,10 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 
 		// A "detached" task is considered to be successful right after starting, we don't follow it
 		if (!task.isDetached()) follow(task); // Follow STDOUT and STDERR
+		else {
+			Executioners executioners = Executioners.getInstance();
+			if (executioners != null) executioners.taskDone(task);
+		}
 
 		return true;
 	}
@@ -856,9 +960,43 @@ public abstract class Executioner extends Thread implements NotifyTaskState, Pid
 	 * Wait for a task to start
 	 */
 	protected void waitStart(Task task) {
-		// Busy wait, probably not the smartest thing to do...
+		// Task's state changes wake up threads waiting on the task (see Task.state)
 		while (!task.isStarted())
-			sleepShort();
+			task.waitStarted(SLEEP_TIME_SHORT);
+	}
+
+	/**
+	 * Update dependency counters (tasks that finished since last update)
+	 */
+	protected synchronized void updateDependenciesDone() {
+		for (Task task = dependenciesDone.poll(); task != null; task = dependenciesDone.poll())
+			tasksToRun.taskDone(task);
+	}
+
+	/**
+	 * Wait until an event wakes up the executioner (see 'wakeUp') or 'timeoutMs' milliseconds elapse
+	 * Note: The timeout is used for periodic tasks, such as monitoring tasks and reports
+	 */
+	protected void waitWakeUp(long timeoutMs) {
+		synchronized (wakeUpLock) {
+			try {
+				if (!wakeUpPending) wakeUpLock.wait(timeoutMs);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			wakeUpPending = false;
+		}
+	}
+
+	/**
+	 * Wake up executioner's thread: There are events to process
+	 * (e.g. a task was added, started or finished)
+	 */
+	public void wakeUp() {
+		synchronized (wakeUpLock) {
+			wakeUpPending = true;
+			wakeUpLock.notifyAll();
+		}
 	}
 
 }
@@ -3,7 +3,10 @@ package org.bds.executioner;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -16,9 +19,12 @@ import org.bds.osCmd.Cmd;
 import org.bds.osCmd.CmdCluster;
 import org.bds.osCmd.Exec;
 import org.bds.osCmd.ExecResult;
+import org.bds.run.BdsThread;
 import org.bds.task.Task;
+import org.bds.task.TaskState;
 import org.bds.util.Gpr;
 import org.bds.util.Timer;
+import org.bds.util.Tuple;
 
 /**
  * Execute tasks in a MOAB cluster.
@@ -43,6 +49,8 @@ public class ExecutionerCluster extends Executioner {
 	protected String clusterRunAdditionalArgs[];
 	protected String clusterKillAdditionalArgs[];
 	protected String clusterStatAdditionalArgs[];
+	protected String clusterStatUserOption; // Command line option to restrict 'stat' command to the user's jobs (null if not supported)
+	protected boolean statOwnJobsOnly; // Only query the status of the user's jobs
 	protected String clusterPostMortemAdditionalArgs[];
 
 	protected String bdsCommand = "bds exec ";
@@ -54,6 +62,11 @@ public class ExecutionerCluster extends Executioner {
 	protected boolean postMortemDisabled; // Disable post-mortem taks info?
 	protected boolean useShellScript; // Use shell script or STDIN for feeding the commands?
 
+	protected int batchSize; // Submit up to 'batchSize' compatible tasks as a single job array. Zero (or one) means 'submit each task as a job'
+	protected Map<String, List<Tuple<Task, Host>>> batches; // Tasks waiting to be submitted, grouped by submission arguments (resources and queue)
+	protected String arrayIndexVar; // Environment variable holding the job array's element index
+	protected String clusterKillArrayOption; // Command line option to kill a single job array element, e.g. SGE's 'qdel jobId -t idx' (null if the element's PID is used)
+
 	public int MIN_EXTRA_TIMEOUT = 60;
 	public int MAX_EXTRA_TIMEOUT = 120;
 
@@ -81,6 +94,8 @@ public class ExecutionerCluster extends Executioner {
 		clusterRunAdditionalArgs = config.getStringArray(Config.CLUSTER_RUN_ADDITIONAL_ARGUMENTS);
 		clusterKillAdditionalArgs = config.getStringArray(Config.CLUSTER_KILL_ADDITIONAL_ARGUMENTS);
 		clusterStatAdditionalArgs = config.getStringArray(Config.CLUSTER_STAT_ADDITIONAL_ARGUMENTS);
+		clusterStatUserOption = null; // Only set for schedulers whose 'stat' output is the same when filtering by user
+		statOwnJobsOnly = config.getBool(Config.CLUSTER_STAT_OWN_JOBS_ONLY, false);
 		clusterPostMortemAdditionalArgs = config.getStringArray(Config.CLUSTER_POSTMORTEMINFO_ADDITIONAL_ARGUMENTS);
 
 		postMortemDisabled = config.getBool(Config.CLUSTER_POSTMORTEMINFO_DISABLED, false);
@@ -91,6 +106,12 @@ public class ExecutionerCluster extends Executioner {
 
 		useShellScript = false;
 
+		// Batch submission (job arrays)
+		batchSize = (int) config.getLong(Config.CLUSTER_BATCH_SIZE, 0);
+		batches = new LinkedHashMap<>();
+		arrayIndexVar = "PBS_ARRAYID";
+		clusterKillArrayOption = null;
+
 		// PID regex matcher
 		pidRegexStr = config.getPidRegex("");
 		if (!pidRegexStr.isEmpty()) {
@@ -126,6 +147,15 @@ public class ExecutionerCluster extends Executioner {
 		return args.toArray(new String[0]);
 	}
 
+	/**
+	 * Add job array options to command line parameters
+	 * @param size : Number of elements in the array (indexes are one-based)
+	 */
+	protected void addArray(int size, List<String> args) {
+		args.add("-t");
+		args.add("1-" + size);
+	}
+
 	/**
 	 * Add resource options to command line parameters
 	 */
@@ -185,6 +215,21 @@ public class ExecutionerCluster extends Executioner {
 		return bdsCmd.toString();
 	}
 
+	/**
+	 * Create job array commands: Each element of the
+	 * array runs the bds command for the corresponding task
+	 */
+	protected String bdsCommandArray(List<Task> tasks) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("case \"$" + arrayIndexVar + "\" in\n");
+		int idx = 1;
+		for (Task task : tasks)
+			sb.append((idx++) + ") " + bdsCommand(task) + ";;\n");
+		sb.append("*) echo \"Unknown job array index '$" + arrayIndexVar + "'\" >&2 ; exit 1 ;;\n");
+		sb.append("esac\n");
+		return sb.toString();
+	}
+
 	/**
 	 * Calculate timeout parameter. We want to assign slightly larger timeout
 	 * to the cluster (qsub/msub), because we prefer bds to kill the process (it's
@@ -216,6 +261,35 @@ public class ExecutionerCluster extends Executioner {
 		return fileName + ".cluster";
 	}
 
+	/**
+	 * Arguments identifying a job array's element for the 'kill' command
+	 * @param task : A job array's element (i.e. 'pidArray' is set)
+	 */
+	public List<String> arrayElementKillArgs(Task task) {
+		List<String> args = new ArrayList<>();
+		String pid = task.getPid();
+		String pidArray = task.getPidArray();
+
+		// Element's PID is 'jobId.idx', but the cluster kills elements using 'jobId option idx'
+		if (clusterKillArrayOption != null && pid.startsWith(pidArray + ".")) {
+			args.add(pidArray);
+			args.add(clusterKillArrayOption);
+			args.add(pid.substring(pidArray.length() + 1));
+		} else args.add(pid);
+
+		return args;
+	}
+
+	/**
+	 * PID of a job array's element
+	 * @param pid : Job array PID, as reported by the cluster's submit command
+	 * @param idx : Element index (one-based)
+	 */
+	public String arrayElementPid(String pid, int idx) {
+		if (pid.contains("[]")) return pid.replace("[]", "[" + idx + "]"); // E.g. Torque: '123[].server' => '123[1].server'
+		return pid + "." + idx;
+	}
+
 	@Override
 	public Cmd createRunCmd(Task task) {
 		task.createProgramFile(); // We must create a program file
@@ -302,6 +376,27 @@ public class ExecutionerCluster extends Executioner {
 		return fileName;
 	}
 
+	/**
+	 * Create a job array shell script (see 'bdsCommandArray')
+	 * @return Shell script name
+	 */
+	protected String createShellScriptArray(List<Task> tasks) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("#!" + Config.get().getTaskShell() + "\n\n");
+		sb.append(bdsCommandArray(tasks));
+
+		// Save to file
+		String fileName = Gpr.removeExt(tasks.get(0).getProgramFileName()) + ".array.sh";
+		Gpr.toFile(fileName, sb.toString());
+
+		// Make sure file is executable
+		File f = new File(fileName);
+		f.setExecutable(true);
+		if (!log) f.deleteOnExit();
+
+		return fileName;
+	}
+
 	@Override
 	protected void followStop(Task task) {
 		super.followStop(task);
@@ -336,7 +431,67 @@ public class ExecutionerCluster extends Executioner {
 	}
 
 	public String[] getCommandStat() {
-		return additionalCommandLineArgs(clusterStatCommand, clusterStatAdditionalArgs);
+		String args[] = additionalCommandLineArgs(clusterStatCommand, clusterStatAdditionalArgs);
+		if (!statOwnJobsOnly || clusterStatUserOption == null) return args;
+
+		// Query only our own jobs, this reduces the load on the cluster's scheduler
+		String user = System.getProperty("user.name");
+		if (user == null || user.isEmpty()) return args;
+
+		String argsUser[] = Arrays.copyOf(args, args.length + 2);
+		argsUser[args.length] = clusterStatUserOption;
+		argsUser[args.length + 1] = user;
+		return argsUser;
+	}
+
+	/**
+	 * Stop executioner and kill all tasks
+	 * Note: Tasks waiting in a batch were never submitted to the
+	 *       cluster, so they are only marked as killed
+	 */
+	@Override
+	public synchronized void kill() {
+		List<Tuple<Task, Host>> pending = new ArrayList<>();
+		for (List<Tuple<Task, Host>> batch : batches.values())
+			pending.addAll(batch);
+		batches.clear();
+
+		for (Tuple<Task, Host> th : pending) {
+			remove(th.first, th.second);
+			kill(th.first);
+		}
+
+		super.kill();
+	}
+
+	/**
+	 * Kill a task
+	 * Note: Job array elements don't have a 'Cmd' (the whole job
+	 *       array was submitted at once), so we have to remove them
+	 *       from the cluster's queue
+	 */
+	@Override
+	public synchronized void kill(Task task) {
+		if (!task.isDone() && task.getPidArray() != null && getCmd(task) == null) killArrayElement(task);
+		super.kill(task);
+	}
+
+	/**
+	 * Remove a job array's element from the cluster (e.g. 'qdel')
+	 */
+	protected void killArrayElement(Task task) {
+		ArrayList<String> args = new ArrayList<>();
+		for (String arg : getCommandKill())
+			args.add(arg);
+		args.addAll(arrayElementKillArgs(task));
+
+		if (debug) log("Killing job array element, task '" + task.getId() + "', command: " + args);
+		ExecResult cmdExecResult = Exec.exec(args, true);
+		if (cmdExecResult.exitValue != 0) log("Error killing job array element, task '" + task.getId() + "', PID '" + task.getPid() + "'" //
+				+ "\n\tCommand executed : " + args //
+				+ "\n\tExit value       : " + cmdExecResult.exitValue //
+				+ "\n\tStderr           : " + cmdExecResult.stdErr //
+		);
 	}
 
 	/**
@@ -347,6 +502,13 @@ public class ExecutionerCluster extends Executioner {
 		return getCommandKill();
 	}
 
+	/**
+	 * Parse PID line from 'qsub' when submitting a job array
+	 */
+	public String parseArrayPidLine(String line) {
+		return parsePidLine(line);
+	}
+
 	/**
 	 * Parse PID line from 'qsub'
 	 */
@@ -420,6 +582,158 @@ public class ExecutionerCluster extends Executioner {
 
 	@Override
 	protected void runTask(Task task, Host host) {
+		// Batch submission? Task will be submitted later, as part of a job array
+		if (batchSize > 1) runTaskBatchAdd(task, host);
+		else runTaskJob(task, host);
+	}
+
+	/**
+	 * Submit a batch of tasks as a job array
+	 */
+	protected void runTaskBatch(List<Tuple<Task, Host>> batch) {
+		// Don't submit tasks that were killed (or finished) while waiting in the batch
+		batch = runTaskBatchPending(batch);
+		if (batch.isEmpty()) return;
+
+		// Only one task? Submit it as a job
+		if (batch.size() == 1) {
+			runTaskJob(batch.get(0).first, batch.get(0).second);
+			return;
+		}
+
+		List<Task> tasks = new ArrayList<>();
+		for (Tuple<Task, Host> th : batch) {
+			th.first.createProgramFile(); // We must create a program file
+			tasks.add(th.first);
+		}
+
+		//---
+		// Create command line to dispatch the job array
+		//---
+		String arrayBase = Gpr.removeExt(tasks.get(0).getProgramFileName()) + ".array";
+
+		ArrayList<String> args = new ArrayList<>();
+		for (String arg : getCommandRun())
+			args.add(arg);
+
+		// All tasks in the batch have the same resources
+		addResources(tasks.get(0), args);
+		addArray(tasks.size(), args);
+
+		// Cluster's STDOUT and STDERR (we don't use them, see 'clusterStdFile')
+		if (clusterRunCommandStdOutOption != null) {
+			args.add(clusterRunCommandStdOutOption);
+			args.add(clusterStdFile(arrayBase + ".stdout"));
+		}
+
+		if (clusterRunCommandStdErrOption != null) {
+			args.add(clusterRunCommandStdErrOption);
+			args.add(clusterStdFile(arrayBase + ".stderr"));
+		}
+
+		// Add commands either by shell script or STDIN
+		String cmdStdin = null;
+		if (useShellScript) args.add(createShellScriptArray(tasks));
+		else cmdStdin = bdsCommandArray(tasks);
+
+		if (debug) log("Running job array (" + tasks.size() + " tasks), command: " + args);
+
+		//---
+		// Submit and parse job array PID
+		//---
+		ExecResult cmdExecResult = Exec.exec(args, cmdStdin, true);
+		String pid = "";
+		if (cmdExecResult.exitValue == 0) {
+			for (String line : cmdExecResult.stdOut.split("\n")) {
+				pid = parseArrayPidLine(line);
+				if (!pid.isEmpty()) break;
+			}
+		}
+
+		// Update tasks
+		int idx = 1;
+		for (Tuple<Task, Host> th : batch) {
+			Task task = th.first;
+			th.second.remove(task); // Task is in the cluster's queue, it no longer consumes host's resources
+
+			if (pid.isEmpty()) {
+				// Error sending job array to cluster
+				task.setErrorMsg("Error queuing job array in cluster.\n\tCommand: " + args + "\n\tExit value: " + cmdExecResult.exitValue + "\n\tStderr: " + cmdExecResult.stdErr);
+				task.setExitValue(BdsThread.EXITCODE_ERROR);
+				taskFinished(task, TaskState.START_FAILED);
+			} else {
+				runTaskBatchStarted(task, arrayElementPid(pid, idx++), pid);
+			}
+		}
+	}
+
+	/**
+	 * Add task to a batch of compatible tasks (i.e. same submission
+	 * arguments). Submit the batch when it is full.
+	 */
+	protected void runTaskBatchAdd(Task task, Host host) {
+		List<String> resArgs = new ArrayList<>();
+		addResources(task, resArgs);
+		String key = String.join("\t", resArgs);
+
+		List<Tuple<Task, Host>> batch;
+		synchronized (this) {
+			host.add(task);
+
+			batch = batches.get(key);
+			if (batch == null) {
+				batch = new ArrayList<>();
+				batches.put(key, batch);
+			}
+			batch.add(new Tuple<>(task, host));
+
+			// Batch is not full yet? Submit it later
+			if (batch.size() < batchSize) return;
+			batches.remove(key);
+		}
+
+		runTaskBatch(batch);
+	}
+
+	/**
+	 * Tasks in a batch that should still be submitted
+	 * Tasks that are already done (e.g. killed while waiting in
+	 * the batch) are removed from their host. If the executioner
+	 * was stopped, the remaining tasks are killed.
+	 */
+	protected synchronized List<Tuple<Task, Host>> runTaskBatchPending(List<Tuple<Task, Host>> batch) {
+		List<Tuple<Task, Host>> pending = new ArrayList<>(batch.size());
+		for (Tuple<Task, Host> th : batch) {
+			Task task = th.first;
+			if (!running && !task.isDone()) kill(task);
+
+			if (task.isDone()) remove(task, th.second);
+			else pending.add(th);
+		}
+		return pending;
+	}
+
+	/**
+	 * A job array's element was submitted
+	 * Note: The task may have been killed while the job array was
+	 *       being submitted, so the element is removed from the cluster
+	 */
+	protected synchronized void runTaskBatchStarted(Task task, String pid, String pidArray) {
+		task.setPid(pid);
+		task.setPidArray(pidArray);
+
+		if (task.isDone()) {
+			killArrayElement(task);
+		} else {
+			taskStarted(task);
+			taskRunning(task);
+		}
+	}
+
+	/**
+	 * Submit a task as a job
+	 */
+	protected void runTaskJob(Task task, Host host) {
 		// Create a (shell) command to run task in cluster
 		Cmd cmd = createRunCmd(task);
 		if (cmd != null) {
@@ -446,6 +760,22 @@ public class ExecutionerCluster extends Executioner {
 
 	}
 
+	/**
+	 * Submit all pending batches
+	 */
+	@Override
+	protected void runTasksDeferred() {
+		List<List<Tuple<Task, Host>>> bs;
+		synchronized (this) {
+			if (batches.isEmpty()) return;
+			bs = new ArrayList<>(batches.values());
+			batches.clear();
+		}
+
+		for (List<Tuple<Task, Host>> batch : bs)
+			runTaskBatch(batch);
+	}
+
 	/**
 	 * Create a shell file name for a slurm script (basically invoke bds command)
 	 * @param task
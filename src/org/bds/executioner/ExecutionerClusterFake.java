@@ -25,6 +25,10 @@ public class ExecutionerClusterFake extends ExecutionerCluster {
 		clusterKillCommand = killCommand;
 		clusterStatCommand = statCommand;
 		clusterPostMortemInfoCommand = postMortemInfoCommand;
+
+		// Fake 'qsub' and 'qdel' emulate SGE's job arrays
+		arrayIndexVar = "SGE_TASK_ID";
+		clusterKillArrayOption = "-t";
 	}
 
 }
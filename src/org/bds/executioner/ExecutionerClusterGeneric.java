@@ -32,6 +32,9 @@ public class ExecutionerClusterGeneric extends ExecutionerCluster {
 		clusterKillAdditionalArgs = new String[0];
 		clusterStatAdditionalArgs = new String[0];
 		clusterPostMortemAdditionalArgs = new String[0];
+
+		// Generic cluster scripts do not support job arrays
+		batchSize = 0;
 	}
 
 	@Override
@@ -24,6 +24,9 @@ public class ExecutionerClusterMoab extends ExecutionerCluster {
 		clusterKillCommand = killCommand;
 		clusterStatCommand = statCommand;
 		clusterPostMortemInfoCommand = postMortemInfoCommand;
+
+		// Job arrays are not supported using 'msub'
+		batchSize = 0;
 	}
 
 }
@@ -24,5 +24,8 @@ public class ExecutionerClusterPbs extends ExecutionerCluster {
 		clusterKillCommand = killCommand;
 		clusterStatCommand = statCommand;
 		clusterPostMortemInfoCommand = postMortemInfoCommand;
+
+		// Job arrays are not supported using 'msub'
+		batchSize = 0;
 	}
 }
@@ -1,6 +1,7 @@
 package org.bds.executioner;
 
 import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.bds.Config;
@@ -16,6 +17,7 @@ import org.bds.util.Timer;
 public class ExecutionerClusterSge extends ExecutionerCluster {
 
 	public static final String PID_REGEX_DEFAULT = "Your job (\\S+)";
+	public static final Pattern PID_REGEX_ARRAY = Pattern.compile("Your job-array (\\d+)");
 
 	String sgePe = "", sgeMem = "", sgeTimeOut = "", sgeTimeOutSoft = "";
 	boolean timeInSecs = false;
@@ -37,6 +39,13 @@ public class ExecutionerClusterSge extends ExecutionerCluster {
 		pidRegex = Pattern.compile(pidRegexStr);
 		if (debug) log("Using pidRegex '" + pidRegexStr + "'");
 
+		// Job array element's index. Elements are killed using 'qdel jobId -t idx'
+		arrayIndexVar = "SGE_TASK_ID";
+		clusterKillArrayOption = "-t";
+
+		// Query only the user's jobs ('qstat -u user' output has the same format)
+		clusterStatUserOption = "-u";
+
 		// SGE parameters from config file
 		sgePe = config.getString(Config.CLUSTER_SGE_PE, "");
 		if (sgePe.isEmpty()) throw new RuntimeException("Missing config file entry '" + Config.CLUSTER_SGE_PE + "'.");
@@ -97,6 +106,19 @@ public class ExecutionerClusterSge extends ExecutionerCluster {
 		}
 	}
 
+	/**
+	 * Parse PID line from 'qsub' when submitting a job array. E.g.:
+	 *
+	 *		$ qsub -t 1-3 script.sh
+	 *		Your job-array 33.1-3:1 ("script.sh") has been submitted
+	 */
+	@Override
+	public String parseArrayPidLine(String line) {
+		Matcher matcher = PID_REGEX_ARRAY.matcher(line);
+		if (matcher.find()) return matcher.group(1);
+		return super.parseArrayPidLine(line);
+	}
+
 	/**
 	 * Represent a time according for 'qsub' command line arguments
 	 */
@@ -20,6 +20,7 @@ public class ExecutionerClusterSlurm extends ExecutionerCluster {
 	public static final String KILL_COMMAND[] = { "scancel" };
 	public static final String POST_MORTEM_COMMAND[] = { "scontrol", "-d", "show", "job" };
 	public static final String STAT_COMMAND[] = { "squeue", "-h", "-a", "-o", "%A" };
+	public static final String STAT_COMMAND_ARRAY[] = { "squeue", "-h", "-a", "-r", "-o", "%i" }; // Show one line per job array element (format 'jobId_index')
 	public static final String RUN_COMMAND[] = { "sbatch", "--parsable", "--no-requeue" };
 
 	public static final String PID_REGEX_DEFAULT = "(\\d+)";
@@ -29,7 +30,7 @@ public class ExecutionerClusterSlurm extends ExecutionerCluster {
 
 		clusterRunCommand = RUN_COMMAND;
 		clusterKillCommand = KILL_COMMAND;
-		clusterStatCommand = STAT_COMMAND;
+		clusterStatCommand = (batchSize > 1 ? STAT_COMMAND_ARRAY : STAT_COMMAND);
 		clusterPostMortemInfoCommand = POST_MORTEM_COMMAND;
 		clusterRunCommandStdOutOption = "--output";
 		clusterRunCommandStdErrOption = "--error";
@@ -39,6 +40,8 @@ public class ExecutionerClusterSlurm extends ExecutionerCluster {
 		wallTimeParam = "-t";
 
 		useShellScript = true;
+		arrayIndexVar = "SLURM_ARRAY_TASK_ID";
+		clusterStatUserOption = "-u"; // Query only the user's jobs ('squeue -u user' output has the same format)
 
 		// When running sbatch you get a line lie this:
 		//
@@ -54,6 +57,14 @@ public class ExecutionerClusterSlurm extends ExecutionerCluster {
 		if (debug) log("Using pidRegex '" + pidRegexStr + "'");
 	}
 
+	/**
+	 * Add job array options to command line parameters
+	 */
+	@Override
+	protected void addArray(int size, List<String> args) {
+		args.add("--array=1-" + size);
+	}
+
 	/**
 	 * Add resource options to command line parameters
 	 */
@@ -100,6 +111,14 @@ public class ExecutionerClusterSlurm extends ExecutionerCluster {
 		args.add(shellScripFile);
 	}
 
+	/**
+	 * Job array elements' PIDs are 'jobId_index'
+	 */
+	@Override
+	public String arrayElementPid(String pid, int idx) {
+		return pid + "_" + idx;
+	}
+
 	/**
 	 * Represent a time according for 'sbatch' command line arguments
 	 */
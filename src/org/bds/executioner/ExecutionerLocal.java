@@ -117,6 +117,7 @@ public class ExecutionerLocal extends Executioner {
 		CmdLocal cmd = new CmdLocal(task.getId(), args);
 		cmd.setDebug(debug);
 		cmd.setReadPid(true); // We execute using "bds exec" which prints PID number before executing the sub-process
+		cmd.setAsync(config.isLocalExecAsync());
 
 		return cmd;
 	}
@@ -153,4 +154,12 @@ public class ExecutionerLocal extends Executioner {
 		// So, there is no need for special commands
 		return null;
 	}
+
+	/**
+	 * In asynchronous mode, no thread is waiting for each running task
+	 */
+	@Override
+	protected boolean runTaskUsesThread() {
+		return !config.isLocalExecAsync();
+	}
 }
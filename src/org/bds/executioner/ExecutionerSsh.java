@@ -7,6 +7,7 @@ import org.bds.cluster.ClusterSsh;
 import org.bds.cluster.host.HostSsh;
 import org.bds.osCmd.Cmd;
 import org.bds.osCmd.CmdSsh;
+import org.bds.osCmd.SshSessionPool;
 import org.bds.task.Task;
 import org.bds.util.Timer;
 
@@ -83,6 +84,10 @@ public class ExecutionerSsh extends Executioner {
 	public synchronized void kill() {
 		((ClusterSsh) cluster).stopHostInfoUpdaters();
 		super.kill();
+
+		// Close ssh connections
+		if (verbose) log(SshSessionPool.get().toString());
+		SshSessionPool.reset();
 	}
 
 	@Override
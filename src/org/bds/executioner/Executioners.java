@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.bds.Config;
+import org.bds.task.Task;
 import org.bds.util.Timer;
 
 /**
@@ -182,6 +183,24 @@ public class Executioners {
 
 	public void setFreeze(boolean freeze) {
 		this.freeze = freeze;
+		if (!freeze) wakeUpAll();
+	}
+
+	/**
+	 * A task finished: Notify all executioners (tasks depending on it may be ready to run)
+	 */
+	public void taskDone(Task task) {
+		for (Executioner ex : executioners.values())
+			ex.dependencyDone(task);
+	}
+
+	/**
+	 * Wake up all executioners' threads (e.g. a task finished, so
+	 * tasks depending on it may be ready to run)
+	 */
+	public void wakeUpAll() {
+		for (Executioner ex : executioners.values())
+			ex.wakeUp();
 	}
 
 }
@@ -2,8 +2,10 @@ package org.bds.executioner;
 
 import java.io.File;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.bds.run.BdsThread;
 import org.bds.task.Task;
@@ -14,6 +16,12 @@ import org.bds.util.Timer;
 /**
  * Monitor a task: Check if a task finished by checking if 'exitFile' exists
  *
+ * Tasks are indexed by the directory containing their 'exitFile'. When many
+ * tasks share a directory (e.g. thousands of cluster tasks writing to the same
+ * log directory), the directory is listed once per check instead of checking
+ * each 'exitFile'. This reduces the number of metadata operations on shared
+ * file systems (NFS, Lustre) from one per task to one per directory.
+ *
  * @author pcingola
  */
 public class MonitorTask implements Serializable {
@@ -24,13 +32,20 @@ public class MonitorTask implements Serializable {
 	// Reducing this sleep time adds processing and probably has not many benefits.
 	public static final int SLEEP_TIME = 500;
 
+	// Minimum number of tasks in a directory to use a directory listing.
+	// Listing a directory having many files is more expensive than checking a few exit files.
+	public static final int DIR_LIST_MIN_TASKS = 8;
+
 	boolean debug = false;
 	boolean verbose;
+	int dirListMinTasks = DIR_LIST_MIN_TASKS;
 	HashMap<Task, Executioner> execByTask;
+	HashMap<String, HashMap<String, Task>> tasksByDir; // Tasks indexed by 'exitFile' directory and name
 	Timer latestUpdate;
 
 	public MonitorTask() {
 		execByTask = new HashMap<>();
+		tasksByDir = new HashMap<>();
 		latestUpdate = new Timer();
 	}
 
@@ -44,6 +59,17 @@ public class MonitorTask implements Serializable {
 		if (debug) Timer.showStdErr("MonitorTask: Adding task " + task.getId());
 		if (task == null) return;
 		execByTask.put(task, executioner);
+
+		// Add to index
+		File exitFile = exitFile(task);
+		if (exitFile == null) return;
+		String dir = exitFileDir(exitFile);
+		HashMap<String, Task> tasksByName = tasksByDir.get(dir);
+		if (tasksByName == null) {
+			tasksByName = new HashMap<>();
+			tasksByDir.put(dir, tasksByName);
+		}
+		tasksByName.put(exitFile.getName(), task);
 	}
 
 	/**
@@ -57,18 +83,101 @@ public class MonitorTask implements Serializable {
 		latestUpdate.start();
 	}
 
+	/**
+	 * Exit file for a task (null if not available)
+	 */
+	File exitFile(Task task) {
+		String exitFileName = task.getExitCodeFile();
+		return exitFileName != null ? new File(exitFileName) : null;
+	}
+
+	String exitFileDir(File exitFile) {
+		String dir = exitFile.getParent();
+		return dir != null ? dir : ".";
+	}
+
+	/**
+	 * Check that 'exitFile' exists and it is not zero length
+	 * From 'Fedor Gusev':
+	 *     ...here NFS is somewhat slow, and the file is still empty
+	 *     and it report exit code as 1. But if I check the file manually, it
+	 *     has 0 in it. I've introduced a check for non-zero length of
+	 *     the file and the problem is gone.
+	 */
+	boolean exitFileOk(File exitFile) {
+		return exitFile.exists() && exitFile.length() > 0;
+	}
+
+	/**
+	 * Find tasks that finished (i.e. 'exitFile' exists) or timed out
+	 */
+	public synchronized Set<Task> findFinished() {
+		Set<Task> finished = new LinkedHashSet<>();
+
+		for (Map.Entry<String, HashMap<String, Task>> e : tasksByDir.entrySet()) {
+			String dir = e.getKey();
+			HashMap<String, Task> tasksByName = e.getValue();
+
+			// List directory (only if there are enough tasks in this directory)
+			String[] names = tasksByName.size() >= dirListMinTasks ? new File(dir).list() : null;
+
+			if (names != null) {
+				// Only exit files found in the directory listing need to be checked
+				for (String name : names) {
+					Task task = tasksByName.get(name);
+					if (task != null && exitFileOk(new File(dir, name))) finished(finished, task);
+				}
+			} else {
+				// Check each exit file
+				for (Map.Entry<String, Task> et : tasksByName.entrySet())
+					if (exitFileOk(new File(dir, et.getKey()))) finished(finished, et.getValue());
+			}
+		}
+
+		// Check timed out tasks
+		for (Task task : execByTask.keySet()) {
+			if (!finished.contains(task) && task.isTimedOut()) {
+				if (debug) Timer.showStdErr("MonitorTask.findFinished(): Task timed out '" + task.getId() + "'");
+				finished.add(task);
+			}
+		}
+
+		return finished;
+	}
+
+	/**
+	 * Add task to list of finished tasks
+	 */
+	void finished(Set<Task> finished, Task task) {
+		if (debug) Timer.showStdErr("MonitorTask.findFinished(): Found exit file '" + task.getExitCodeFile() + "', adding task to list of finished tasks '" + task.getId() + "'");
+		finished.add(task);
+	}
+
 	/**
 	 * Remove task (do not monitor)
 	 */
 	public synchronized void remove(Task task) {
 		if (debug) Timer.showStdErr("MonitorTask: Removing task " + task.getId());
 		execByTask.remove(task);
+
+		// Remove from index
+		File exitFile = exitFile(task);
+		if (exitFile == null) return;
+		String dir = exitFileDir(exitFile);
+		HashMap<String, Task> tasksByName = tasksByDir.get(dir);
+		if (tasksByName == null) return;
+		if (tasksByName.get(exitFile.getName()) == task) tasksByName.remove(exitFile.getName());
+		if (tasksByName.isEmpty()) tasksByDir.remove(dir);
 	}
 
 	public void setDebug(boolean debug) {
 		this.debug = debug;
 	}
 
+	public void setDirListMinTasks(int dirListMinTasks) {
+		this.dirListMinTasks = dirListMinTasks;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
@@ -78,35 +187,9 @@ public class MonitorTask implements Serializable {
 	 * Check if 'exitFile' exist and update states accordingly
 	 */
 	synchronized void updateFinished() {
-		ArrayList<Task> toUpdate = null;
-
-		for (Task task : execByTask.keySet()) {
-			String exitFileName = task.getExitCodeFile();
-
-			// Check that 'exitFile' exists and it is not zero length
-			// From 'Fedor Gusev':
-			//     ...here NFS is somewhat slow, and the file is still empty
-			//     and it report exit code as 1. But if I check the file manually, it
-			//     has 0 in it. I've introduced a check for non-zero length of
-			//     the file and the problem is gone.
-			File exitFile = new File(exitFileName);
-			boolean exitFileOk = exitFile.exists() && exitFile.length() > 0;
-			if (exitFileOk && debug) Timer.showStdErr("MonitorTask.updateFinished(): Found exit file '" + exitFileName + "'");
-
-			if (exitFileOk || task.isTimedOut()) {
-				if (debug) Timer.showStdErr("MonitorTask.updateFinished(): Adding task to list of finished tasks '" + task.getId() + "'");
-				// Create (or add) to tasks to delete
-				if (toUpdate == null) toUpdate = new ArrayList<>();
-				toUpdate.add(task);
-			}
-		}
-
-		// An task to delete?
-		if (toUpdate != null) {
-			for (Task task : toUpdate) {
-				updateFinished(task);
-				remove(task); // We don't need to monitor this task any more
-			}
+		for (Task task : findFinished()) {
+			updateFinished(task);
+			remove(task); // We don't need to monitor this task any more
 		}
 	}
 
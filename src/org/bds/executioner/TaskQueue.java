@@ -0,0 +1,236 @@
+package org.bds.executioner;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bds.task.Task;
+
+/**
+ * Tasks queued for execution, indexed by dependency state
+ *
+ * Tasks having unfinished dependencies are 'waiting', we keep a counter
+ * of unfinished dependencies (in-degree) for each of them. When a task
+ * finishes (see 'taskDone') the counters of the tasks depending on it
+ * are decremented and tasks reaching zero are moved to the 'ready' set.
+ * This way selecting a task to run does not require scanning (and
+ * evaluating dependencies for) every queued task.
+ *
+ * Ready tasks are ordered by (user defined) priority, higher first. When
+ * 'critical path' ordering is enabled, tasks having the same priority are
+ * ordered by the length of the longest chain of queued tasks depending on
+ * them (estimated from historical run times, see TaskRuntimeHistory), so
+ * long dependency chains start as soon as possible. Remaining ties are
+ * broken by queuing order (i.e. FIFO).
+ *
+ * Note: This class is not thread safe, it is guarded by the executioner's lock
+ *
+ * @author pcingola
+ */
+public class TaskQueue implements Iterable<Task> {
+
+	Set<Task> tasks; // All queued tasks (in queuing order)
+	Set<Task> ready; // Queued tasks having all dependencies finished
+	Map<Task, Integer> pending; // Number of unfinished dependencies, for tasks that are not ready
+	Map<Task, Set<Task>> dependents; // Queued tasks waiting for a task (i.e. reverse dependency edges)
+	Map<Task, Long> seq; // Queuing order
+	Map<Task, Double> pathLength; // Critical path length: Estimated time to finish a task and all queued tasks depending on it
+	TaskRuntimeHistory runtimeHistory; // Run time estimates, null if critical path ordering is disabled
+	long nextSeq;
+
+	public TaskQueue() {
+		this(null);
+	}
+
+	/**
+	 * Create a queue using critical path ordering (if 'runtimeHistory' is not null)
+	 */
+	public TaskQueue(TaskRuntimeHistory runtimeHistory) {
+		this.runtimeHistory = runtimeHistory;
+		tasks = new LinkedHashSet<>();
+		ready = new TreeSet<>(this::compare);
+		pending = new HashMap<>();
+		dependents = new HashMap<>();
+		seq = new HashMap<>();
+		pathLength = new HashMap<>();
+	}
+
+	/**
+	 * Queue a task
+	 */
+	public void add(Task task) {
+		if (!tasks.add(task)) return;
+		seq.put(task, nextSeq++);
+		if (isCriticalPath()) updatePathLength(task);
+		index(task);
+	}
+
+	/**
+	 * Order in which ready tasks are selected
+	 */
+	int compare(Task t1, Task t2) {
+		int cmp = Integer.compare(t2.getPriority(), t1.getPriority());
+		if (cmp != 0) return cmp;
+
+		if (isCriticalPath()) {
+			cmp = Double.compare(getPathLength(t2), getPathLength(t1));
+			if (cmp != 0) return cmp;
+		}
+
+		return Long.compare(seq.get(t1), seq.get(t2));
+	}
+
+	/**
+	 * Critical path length (estimated seconds)
+	 */
+	public double getPathLength(Task task) {
+		Double len = pathLength.get(task);
+		return len != null ? len : 0.0;
+	}
+
+	/**
+	 * Tasks ready to run (i.e. all dependencies finished)
+	 * Note: Dependencies may still have finished in an error state
+	 */
+	public Collection<Task> getReady() {
+		return ready;
+	}
+
+	/**
+	 * Update task's dependency counters
+	 */
+	void index(Task task) {
+		int count = 0;
+		for (Task dep : task.getDependencies()) {
+			if (dep.isDone()) continue;
+
+			Set<Task> deps = dependents.get(dep);
+			if (deps == null) {
+				deps = new LinkedHashSet<>();
+				dependents.put(dep, deps);
+			}
+			if (deps.add(task)) count++;
+		}
+
+		if (count > 0) {
+			pending.put(task, count);
+			ready.remove(task);
+		} else {
+			pending.remove(task);
+			ready.add(task);
+		}
+	}
+
+	public boolean isCriticalPath() {
+		return runtimeHistory != null;
+	}
+
+	public boolean isEmpty() {
+		return tasks.isEmpty();
+	}
+
+	@Override
+	public Iterator<Task> iterator() {
+		return tasks.iterator();
+	}
+
+	/**
+	 * Remove a task from the queue
+	 */
+	public void remove(Task task) {
+		if (!tasks.remove(task)) return;
+		ready.remove(task); // Note: Remove from 'ready' before removing ordering keys
+		if (pending.remove(task) != null) unindex(task);
+		seq.remove(task);
+		pathLength.remove(task);
+	}
+
+	public int size() {
+		return tasks.size();
+	}
+
+	/**
+	 * A task finished: Update counters for tasks depending on it
+	 */
+	public void taskDone(Task task) {
+		Set<Task> deps = dependents.remove(task);
+		if (deps == null) return;
+
+		for (Task t : deps) {
+			Integer count = pending.get(t);
+			if (count == null) continue;
+
+			if (count > 1) {
+				pending.put(t, count - 1);
+			} else {
+				pending.remove(t);
+				ready.add(t);
+			}
+		}
+	}
+
+	/**
+	 * Remove task from reverse dependency edges
+	 */
+	void unindex(Task task) {
+		for (Task dep : task.getDependencies()) {
+			Set<Task> deps = dependents.get(dep);
+			if (deps != null) {
+				deps.remove(task);
+				if (deps.isEmpty()) dependents.remove(dep);
+			}
+		}
+	}
+
+	/**
+	 * Set a task's critical path length and propagate it to the queued tasks
+	 * it depends on: path(dep) = max(path(dep), estimate(dep) + path(task))
+	 */
+	void updatePathLength(Task task) {
+		// Longest path of queued tasks depending on this one (e.g. if a failed task is re-queued)
+		double max = 0;
+		Set<Task> deps = dependents.get(task);
+		if (deps != null) {
+			for (Task t : deps)
+				max = Math.max(max, getPathLength(t));
+		}
+		pathLength.put(task, runtimeHistory.estimate(task) + max);
+
+		Deque<Task> update = new ArrayDeque<>();
+		update.add(task);
+		while (!update.isEmpty()) {
+			Task t = update.poll();
+			double len = getPathLength(t);
+
+			for (Task dep : t.getDependencies()) {
+				if (dep.isDone() || !tasks.contains(dep)) continue;
+
+				double depLen = runtimeHistory.estimate(dep) + len;
+				if (depLen <= getPathLength(dep)) continue;
+
+				// Ordering key changes: Re-insert into 'ready'
+				boolean isReady = ready.remove(dep);
+				pathLength.put(dep, depLen);
+				if (isReady) ready.add(dep);
+				update.add(dep);
+			}
+		}
+	}
+
+	/**
+	 * A 'ready' task has unfinished dependencies (e.g. a dependency was re-scheduled
+	 * after failing): Update its counters
+	 */
+	public void waiting(Task task) {
+		if (!tasks.contains(task)) return;
+		unindex(task);
+		index(task);
+	}
+
+}
@@ -0,0 +1,157 @@
+package org.bds.executioner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bds.Config;
+import org.bds.task.Task;
+import org.bds.util.Gpr;
+import org.bds.util.Timer;
+
+/**
+ * Historical task run times, used to estimate how long a task will run
+ *
+ * Tasks are identified by the program location that created them
+ * (i.e. 'file:line'), so all tasks created by the same 'task' statement
+ * share an estimate. Estimates are a moving average of the latest runs.
+ *
+ * History is stored in a text file ('taskRuntimeHistory'), one line per
+ * program location: 'location \t count \t mean_seconds'
+ *
+ * @author pcingola
+ */
+public class TaskRuntimeHistory {
+
+	public static final String DEFAULT_FILE_NAME = "task_runtimes.txt";
+	public static final int MAX_COUNT = 10; // Moving average over (approximately) this many runs
+
+	private static TaskRuntimeHistory taskRuntimeHistory;
+
+	/**
+	 * Run time statistics for a program location
+	 */
+	class Entry {
+		int count;
+		double mean; // Mean run time (seconds)
+	}
+
+	boolean debug;
+	boolean changed; // Has history changed since it was loaded?
+	String fileName;
+	Map<String, Entry> entries;
+	double meanAll; // Mean of all entries (used for tasks without history)
+
+	public static synchronized TaskRuntimeHistory get() {
+		if (taskRuntimeHistory == null) {
+			Config config = Config.get();
+			String fileName = config.getString(Config.TASK_RUNTIME_HISTORY, Config.BDS_HOME + "/" + DEFAULT_FILE_NAME);
+			taskRuntimeHistory = new TaskRuntimeHistory(fileName);
+			taskRuntimeHistory.debug = config.isDebug();
+			taskRuntimeHistory.load();
+		}
+		return taskRuntimeHistory;
+	}
+
+	public static synchronized void reset() {
+		taskRuntimeHistory = null;
+	}
+
+	public TaskRuntimeHistory(String fileName) {
+		this.fileName = fileName;
+		entries = new HashMap<>();
+	}
+
+	/**
+	 * Add a task's run time
+	 */
+	public synchronized void add(Task task) {
+		if (task.getRunningStartTime() == null || task.getRunningEndTime() == null) return;
+		double secs = (task.getRunningEndTime().getTime() - task.getRunningStartTime().getTime()) / 1000.0;
+		add(task.getProgramLocation(), secs);
+	}
+
+	public synchronized void add(String location, double secs) {
+		Entry e = entries.get(location);
+		if (e == null) {
+			e = new Entry();
+			entries.put(location, e);
+		}
+
+		if (e.count < MAX_COUNT) e.count++;
+		e.mean += (secs - e.mean) / e.count;
+		changed = true;
+		updateMeanAll();
+	}
+
+	/**
+	 * Estimated run time (seconds)
+	 * Tasks without history are estimated using the mean of all tasks
+	 */
+	public synchronized double estimate(Task task) {
+		Entry e = entries.get(task.getProgramLocation());
+		return e != null ? e.mean : meanAll;
+	}
+
+	/**
+	 * Load history from file
+	 */
+	void load() {
+		if (!Gpr.exists(fileName)) return;
+
+		for (String line : Gpr.readFile(fileName, false).split("\n")) {
+			String fields[] = line.split("\t");
+			if (fields.length < 3) continue;
+
+			Entry e = new Entry();
+			e.count = Gpr.parseIntSafe(fields[1]);
+			e.mean = Gpr.parseDoubleSafe(fields[2]);
+			entries.put(fields[0], e);
+		}
+
+		updateMeanAll();
+		if (debug) Timer.showStdErr("Task run time history: Loaded " + entries.size() + " entries from '" + fileName + "'");
+	}
+
+	/**
+	 * Save history (only if it changed)
+	 */
+	public synchronized void save() {
+		if (!changed) return;
+
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Entry> me : entries.entrySet())
+			sb.append(me.getKey() + "\t" + me.getValue().count + "\t" + me.getValue().mean + "\n");
+
+		// Write to a temporary file and rename, so that other processes never read a partial file
+		try {
+			File file = new File(fileName);
+			File tmp = new File(fileName + "." + ProcessHandle.current().pid() + ".tmp");
+			if (file.getParentFile() != null) file.getParentFile().mkdirs();
+			Files.write(tmp.toPath(), sb.toString().getBytes());
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			changed = false;
+		} catch (Exception e) {
+			Timer.showStdErr("WARNING: Cannot save task run time history to '" + fileName + "': " + e.getMessage());
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	void updateMeanAll() {
+		if (entries.isEmpty()) {
+			meanAll = 1;
+			return;
+		}
+
+		double sum = 0;
+		for (Entry e : entries.values())
+			sum += e.mean;
+		meanAll = sum / entries.size();
+	}
+
+}
@@ -38,6 +38,7 @@ public class ExpressionTask extends ExpressionWithScope {
 	public static final String TASK_OPTION_MEM = "mem";
 	public static final String TASK_OPTION_NODE = "node";
 	public static final String TASK_OPTION_PHYSICAL_PATH = "ppwd";
+	public static final String TASK_OPTION_PRIORITY = "priority";
 	public static final String TASK_OPTION_QUEUE = "queue";
 	public static final String TASK_OPTION_RETRY = "retry";
 	public static final String TASK_OPTION_SYSTEM = "system";
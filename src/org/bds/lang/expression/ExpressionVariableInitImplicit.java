@@ -4,6 +4,7 @@ import org.antlr.v4.runtime.tree.ParseTree;
 import org.bds.compile.CompilerMessage.MessageType;
 import org.bds.compile.CompilerMessages;
 import org.bds.lang.BdsNode;
+import org.bds.lang.statement.FunctionDeclaration;
 import org.bds.lang.statement.VariableInitImplicit;
 import org.bds.lang.type.Type;
 import org.bds.symbol.SymbolTable;
@@ -62,7 +63,10 @@ public class ExpressionVariableInitImplicit extends Expression {
 		// Calculate implicit data type
 		Type type = vInit.getExpression().returnType(symtab);
 
-		// Add variable to scope
-		if ((varName != null) && (type != null)) symtab.addVariable(varName, type);
+		// Add variable to scope (local variables within a function are stored in slots)
+		if ((varName != null) && (type != null)) {
+			vInit.newSlot(FunctionDeclaration.findSlotFunctionDeclaration(this));
+			symtab.addVariable(varName, type, vInit);
+		}
 	}
 }
@@ -21,6 +21,7 @@ public class ReferenceVar extends Reference {
 
 	protected boolean classField;
 	protected String name;
+	protected int slot = -1; // Local variable slot (-1 if the variable is accessed by name)
 
 	public ReferenceVar(BdsNode parent, ParseTree tree) {
 		super(parent, tree);
@@ -98,12 +99,14 @@ public class ReferenceVar extends Reference {
 	public String toAsm() {
 		String name = (isSuper() ? ClassDeclaration.VAR_THIS : this.name);
 		if (classField) return "load this\nreffield " + name + "\n";
+		if (slot >= 0) return "loadl " + slot + "\n";
 		return "load " + name + "\n";
 	}
 
 	@Override
 	public String toAsmSet() {
 		if (classField) return "load this\nsetfield " + name + "\n";
+		if (slot >= 0) return "storel " + slot + "\n"; // Leave value in the stack
 		return "store " + name + "\n"; // Leave value in the stack
 	}
 
@@ -119,6 +122,8 @@ public class ReferenceVar extends Reference {
 
 		if (returnType == null) {
 			compilerMessages.add(this, "Symbol '" + name + "' cannot be resolved", MessageType.ERROR);
+		} else if (!classField && !isSuper()) {
+			slot = symtab.getVariableSlot(name, this);
 		}
 	}
 
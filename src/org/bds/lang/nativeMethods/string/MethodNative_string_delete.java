@@ -1,5 +1,7 @@
 package org.bds.lang.nativeMethods.string;
 
+import org.bds.data.Data;
+import org.bds.data.FileStatCache;
 import org.bds.lang.Parameters;
 import org.bds.lang.type.Type;
 import org.bds.lang.type.Types;
@@ -27,7 +29,10 @@ public class MethodNative_string_delete extends MethodNativeString {
 
 	@Override
 	protected Object runMethodNative(BdsThread bdsThread, Object objThis) {
-		return (bdsThread.data(objThis.toString())).delete();
+		Data data = bdsThread.data(objThis.toString());
+		boolean ok = data.delete();
+		FileStatCache.get().invalidate(data);
+		return ok;
 	}
 
 }
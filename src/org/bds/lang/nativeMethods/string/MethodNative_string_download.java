@@ -1,6 +1,7 @@
 package org.bds.lang.nativeMethods.string;
 
 import org.bds.data.Data;
+import org.bds.data.FileStatCache;
 import org.bds.lang.Parameters;
 import org.bds.lang.type.Type;
 import org.bds.lang.type.Types;
@@ -29,7 +30,9 @@ public class MethodNative_string_download extends MethodNativeString {
 	@Override
 	protected Object runMethodNative(BdsThread bdsThread, Object objThis) {
 		Data data = bdsThread.data(objThis.toString());
-		if (!data.download()) return "";
+		boolean ok = data.download();
+		FileStatCache.get().invalidate(data);
+		if (!ok) return "";
 		return data.getLocalPath();
 	}
 }
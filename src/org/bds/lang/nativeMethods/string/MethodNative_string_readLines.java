@@ -7,8 +7,10 @@ import org.bds.lang.type.TypeList;
 import org.bds.lang.type.Types;
 import org.bds.lang.value.Value;
 import org.bds.lang.value.ValueList;
+import org.bds.lang.value.ValueString;
 import org.bds.run.BdsThread;
 import org.bds.util.Gpr;
+import org.bds.util.LineReader;
 
 public class MethodNative_string_readLines extends MethodNativeString {
 
@@ -46,9 +48,10 @@ public class MethodNative_string_readLines extends MethodNativeString {
 		// Local file doesn't exist? Return an empty list
 		if (!Gpr.exists(data.getLocalPath())) return vlist;
 
-		// Read file and split it
+		// Read file line by line (the whole file is never in memory)
 		// Note: If the file is empty, it should return a list with a single empty string (not an empty list)
-		return arrayString2valuelist(Gpr.readFile(data.getLocalPath(), false).split("\n"));
+		LineReader.readLines(data.getLocalPath(), line -> vlist.add(new ValueString(line)));
+		return vlist;
 	}
 
 	@Override
@@ -0,0 +1,64 @@
+package org.bds.lang.nativeMethods.string;
+
+import org.bds.data.Data;
+import org.bds.lang.Parameters;
+import org.bds.lang.type.Type;
+import org.bds.lang.type.TypeList;
+import org.bds.lang.type.Types;
+import org.bds.lang.value.Value;
+import org.bds.lang.value.ValueList;
+import org.bds.lang.value.ValueString;
+import org.bds.run.BdsThread;
+import org.bds.util.Gpr;
+import org.bds.util.LineReader;
+
+public class MethodNative_string_readLines_start_num extends MethodNativeString {
+
+	private static final long serialVersionUID = 4583090472617338012L;
+
+	public MethodNative_string_readLines_start_num() {
+		super();
+	}
+
+	@Override
+	protected void initMethod() {
+		functionName = "readLines";
+		classType = Types.STRING;
+		returnType = TypeList.get(Types.STRING);
+
+		String argNames[] = { "this", "start", "num" };
+		Type argTypes[] = { Types.STRING, Types.INT, Types.INT };
+		parameters = Parameters.get(argTypes, argNames);
+		addNativeMethodToClassScope();
+	}
+
+	@Override
+	public Value runMethod(BdsThread bdsThread, Value vThis) {
+		// Download data if necessary
+		String fileName = vThis.asString();
+		Data data = bdsThread.data(fileName);
+
+		// Download remote file
+		ValueList vlist = new ValueList(returnType);
+		if (data.isRemote() //
+				&& !data.isDownloaded() //
+				&& !data.download() //
+		) return vlist; // Download error
+
+		// Local file doesn't exist? Return an empty list
+		if (!Gpr.exists(data.getLocalPath())) return vlist;
+
+		// Read up to 'num' lines, starting at line 'start'
+		// Note: Only 'num' lines are in memory, so big files can be read in chunks
+		long start = bdsThread.getInt("start");
+		int num = (int) bdsThread.getInt("num");
+		for (String line : LineReader.readLines(data.getLocalPath(), start, num))
+			vlist.add(new ValueString(line));
+		return vlist;
+	}
+
+	@Override
+	protected Object runMethodNative(BdsThread bdsThread, Object objThis) {
+		throw new RuntimeException("This method should never be invoked!");
+	}
+}
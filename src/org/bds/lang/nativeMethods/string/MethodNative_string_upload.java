@@ -1,6 +1,7 @@
 package org.bds.lang.nativeMethods.string;
 
 import org.bds.data.Data;
+import org.bds.data.FileStatCache;
 import org.bds.lang.Parameters;
 import org.bds.lang.type.Type;
 import org.bds.lang.type.Types;
@@ -30,6 +31,8 @@ public class MethodNative_string_upload extends MethodNativeString {
 	@Override
 	protected Object runMethodNative(BdsThread bdsThread, Object objThis) {
 		Data data = bdsThread.data(objThis.toString());
-		return data.upload();
+		boolean ok = data.upload();
+		FileStatCache.get().invalidate(data);
+		return ok;
 	}
 }
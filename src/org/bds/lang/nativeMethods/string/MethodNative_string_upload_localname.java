@@ -1,6 +1,7 @@
 package org.bds.lang.nativeMethods.string;
 
 import org.bds.data.Data;
+import org.bds.data.FileStatCache;
 import org.bds.lang.Parameters;
 import org.bds.lang.type.Type;
 import org.bds.lang.type.Types;
@@ -31,6 +32,8 @@ public class MethodNative_string_upload_localname extends MethodNativeString {
 		String localName = bdsThread.getString("localName");
 		Data data = bdsThread.data(objThis.toString());
 		Data localData = bdsThread.data(localName);
-		return data.upload(localData);
+		boolean ok = data.upload(localData);
+		FileStatCache.get().invalidate(data);
+		return ok;
 	}
 }
@@ -3,6 +3,7 @@ package org.bds.lang.nativeMethods.string;
 import org.bds.data.Data;
 import org.bds.data.DataFile;
 import org.bds.data.DataRemote;
+import org.bds.data.FileStatCache;
 import org.bds.lang.Parameters;
 import org.bds.lang.type.Type;
 import org.bds.lang.type.Types;
@@ -55,6 +56,7 @@ public class MethodNative_string_write_str extends MethodNativeString {
 			// Save to local file
 			Gpr.toFile(data.getLocalPath(), str);
 		}
+		FileStatCache.get().invalidate(data);
 
 		// OK
 		return str;
@@ -54,6 +54,7 @@ public class NativeLibraryString {
 			, "org.bds.lang.nativeMethods.string.MethodNative_string_pathName" //
 			, "org.bds.lang.nativeMethods.string.MethodNative_string_read" //
 			, "org.bds.lang.nativeMethods.string.MethodNative_string_readLines" //
+			, "org.bds.lang.nativeMethods.string.MethodNative_string_readLines_start_num" //
 			, "org.bds.lang.nativeMethods.string.MethodNative_string_removeExt" //
 			, "org.bds.lang.nativeMethods.string.MethodNative_string_removeExt_ext" //
 			, "org.bds.lang.nativeMethods.string.MethodNative_string_rm" //
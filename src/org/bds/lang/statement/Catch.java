@@ -39,6 +39,7 @@ public class Catch extends StatementWithScope {
 		typeClassException = (TypeClass) factory(tree, idx++);
 		varName = tree.getChild(idx++).getText();
 		declareExceptionVar = VarDeclaration.get(this, typeClassException, varName, null);
+		declareExceptionVar.setUseSlots(false); // Exception variable is added by name when the exception is caught
 		if (isTerminal(tree, idx, ")")) idx++;
 		statement = (Statement) factory(tree, idx++);
 		return idx;
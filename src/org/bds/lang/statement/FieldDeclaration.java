@@ -22,7 +22,7 @@ public class FieldDeclaration extends VarDeclaration {
 	 * Add variable to symbol table
 	 */
 	@Override
-	protected void addVar(SymbolTable symtab, CompilerMessages compilerMessages, String varName) {
+	protected void addVar(SymbolTable symtab, CompilerMessages compilerMessages, VariableInit vi) {
 		// Fields are added during class parsing. Nothing to do here
 	}
 
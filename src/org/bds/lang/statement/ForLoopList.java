@@ -74,7 +74,6 @@ public class ForLoopList extends StatementWithScope {
 
 		// Loop variable
 		VariableInit vinit = beginVarDecl.getVarInit()[0];
-		String varName = vinit.getVarName();
 
 		// Internal state variables
 		String varExpr = baseVarName() + "expr";
@@ -128,7 +127,7 @@ public class ForLoopList extends StatementWithScope {
 		sb.append(toAsmForInitGetHashCode(varExpr, methodHashCode, varHashCode)); // Get hashcode
 		sb.append(toAsmForStart(loopInitLabel, vinit, varCounter)); // For loop start
 		sb.append(toAsmForCond(loopStartLabel, varCounter, varMaxCounter, loopEndLabel)); // For loop conditional
-		sb.append(toAsmForVarAssign(varCounter, varList, varName)); // For loop variable assignment
+		sb.append(toAsmForVarAssign(varCounter, varList, vinit)); // For loop variable assignment
 		sb.append(statement.toAsm()); // Execute statements: 'statements' inside the loop
 		sb.append(toAsmForEnd(loopContinueLabel, varExpr, varHashCode, methodHashCode, varCounter, loopStartLabel)); // For loop end		// Loop end part
 
@@ -246,12 +245,12 @@ public class ForLoopList extends StatementWithScope {
 	 *         var = list[$count]
 	 *     }
 	 */
-	protected String toAsmForVarAssign(String varCounter, String varList, String varName) {
+	protected String toAsmForVarAssign(String varCounter, String varList, VariableInit vinit) {
 		// Assign loop variable: 'var = list[$count]'
 		return "load " + varCounter + "\n" //
 				+ "load " + varList + "\n" //
 				+ "reflist\n" //
-				+ "storepop " + varName + "\n" //
+				+ (vinit.getSlot() >= 0 ? "storelpop " + vinit.getSlot() : "storepop " + vinit.getVarName()) + "\n" //
 		;
 
 	}
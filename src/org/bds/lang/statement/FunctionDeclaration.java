@@ -1,6 +1,7 @@
 package org.bds.lang.statement;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -12,6 +13,7 @@ import org.bds.compile.CompilerMessage.MessageType;
 import org.bds.compile.CompilerMessages;
 import org.bds.lang.BdsNode;
 import org.bds.lang.Parameters;
+import org.bds.lang.expression.ExpressionParallel;
 import org.bds.lang.type.Type;
 import org.bds.lang.type.TypeFunction;
 import org.bds.lang.type.Types;
@@ -35,6 +37,32 @@ public class FunctionDeclaration extends StatementWithScope {
 	protected Statement statement;
 	protected String signature;
 	protected List<String> parameterNames;
+	protected Integer[] parameterSlots; // Local variable slot for each parameter (-1 if the parameter is not stored in a slot). Note: BdsNodeWalker only handles arrays of objects
+	protected String[] slotNames = new String[0]; // Names of local variables stored in slots (see VariableInit.slot)
+
+	/**
+	 * Find the function (or method) declaration enclosing 'node'
+	 * @return Function declaration or null if 'node' is not within a function
+	 */
+	public static FunctionDeclaration findFunctionDeclaration(BdsNode node) {
+		for (BdsNode n = node; n != null; n = n.getParent())
+			if (n instanceof FunctionDeclaration) return (FunctionDeclaration) n;
+		return null;
+	}
+
+	/**
+	 * Find the function whose local variable slots store variables declared in 'node'
+	 * Returns null if the variables must be stored by name. This is the case within a 'par'
+	 * body: Parallel threads share the function's slots, so variables declared in a 'par'
+	 * must be stored in each thread's own scope
+	 */
+	public static FunctionDeclaration findSlotFunctionDeclaration(BdsNode node) {
+		for (BdsNode n = node; n != null; n = n.getParent()) {
+			if (n instanceof FunctionDeclaration) return (FunctionDeclaration) n;
+			if (n instanceof ExpressionParallel) return null;
+		}
+		return null;
+	}
 
 	public FunctionDeclaration(BdsNode parent, ParseTree tree) {
 		super(parent, tree);
@@ -89,10 +117,30 @@ public class FunctionDeclaration extends StatementWithScope {
 		return parameters;
 	}
 
+	/**
+	 * Local variable slot for each parameter
+	 */
+	public Integer[] getParameterSlots() {
+		if (parameterSlots != null) return parameterSlots;
+
+		Integer[] pslots = new Integer[parameterNames.size()];
+		int i = 0;
+		for (VarDeclaration vd : parameters.getVarDecl())
+			for (VariableInit vi : vd.getVarInit())
+				pslots[i++] = vi.getSlot();
+
+		parameterSlots = pslots;
+		return parameterSlots;
+	}
+
 	public int getPc() {
 		return pc;
 	}
 
+	public String[] getSlotNames() {
+		return slotNames;
+	}
+
 	public Statement getStatement() {
 		return statement;
 	}
@@ -136,6 +184,17 @@ public class FunctionDeclaration extends StatementWithScope {
 		return false;
 	}
 
+	/**
+	 * Allocate a new local variable slot
+	 * @return Slot index
+	 */
+	public synchronized int newSlot(String varName) {
+		int idx = slotNames.length;
+		slotNames = Arrays.copyOf(slotNames, idx + 1);
+		slotNames[idx] = varName;
+		return idx;
+	}
+
 	protected List<String> parameterNames() {
 		if (parameters == null) return null;
 
@@ -24,6 +24,7 @@ public class VarDeclaration extends Statement {
 	private static final long serialVersionUID = -3860625762449262210L;
 
 	protected boolean implicit;
+	protected boolean useSlots = true; // Store local variables in function's slots (see VariableInit.slot)
 	protected Type type;
 	protected VariableInit varInit[];
 
@@ -46,8 +47,13 @@ public class VarDeclaration extends Statement {
 	/**
 	 * Add variable to symbol table
 	 */
-	protected void addVar(SymbolTable symtab, CompilerMessages compilerMessages, String varName) {
-		if ((varName != null) && (type != null)) symtab.addVariable(varName, type);
+	protected void addVar(SymbolTable symtab, CompilerMessages compilerMessages, VariableInit vi) {
+		String varName = vi.getVarName();
+		if ((varName == null) || (type == null)) return;
+
+		// Local variables within a function are stored in slots
+		if (useSlots) vi.newSlot(FunctionDeclaration.findSlotFunctionDeclaration(this));
+		symtab.addVariable(varName, type, vi);
 	}
 
 	public Type getType() {
@@ -92,6 +98,10 @@ public class VarDeclaration extends Statement {
 		}
 	}
 
+	public void setUseSlots(boolean useSlots) {
+		this.useSlots = useSlots;
+	}
+
 	@Override
 	public String toAsm() {
 		StringBuilder sb = new StringBuilder();
@@ -147,7 +157,7 @@ public class VarDeclaration extends Statement {
 				typeCheckClass(symtab, compilerMessages, varName);
 
 				// Add variable
-				addVar(symtab, compilerMessages, varName);
+				addVar(symtab, compilerMessages, vi);
 			}
 		}
 	}
@@ -23,6 +23,7 @@ public class VariableInit extends BdsNode {
 	protected boolean fieldInit; // Is this a 'field' initialization in a class declaration?
 	protected Expression expression;
 	protected String help;
+	protected int slot = -1; // Local variable slot within the enclosing function (-1 if the variable is accessed by name)
 	protected VarDeclaration varDeclaration;
 	protected String varName;
 
@@ -60,6 +61,10 @@ public class VariableInit extends BdsNode {
 		return help;
 	}
 
+	public int getSlot() {
+		return slot;
+	}
+
 	public String getVarName() {
 		return varName;
 	}
@@ -86,6 +91,14 @@ public class VariableInit extends BdsNode {
 		}
 	}
 
+	/**
+	 * Store this variable in a local variable slot of function 'fdecl'
+	 */
+	public void newSlot(FunctionDeclaration fdecl) {
+		if (fdecl == null || slot >= 0) return;
+		slot = fdecl.newSlot(varName);
+	}
+
 	public void setExpression(Expression expression) {
 		this.expression = expression;
 	}
@@ -149,7 +162,7 @@ public class VariableInit extends BdsNode {
 				+ (expression != null ? expression.toAsm() : toAsmDefaultValue()) //
 				+ (help != null ? "# help: " + help + "\n" : "") //
 				+ toAsmCast() //
-				+ "varpop " + varName + "\n" //
+				+ (slot >= 0 ? "varlpop " + slot : "varpop " + varName) + "\n" //
 		;
 	}
 
@@ -18,11 +18,17 @@ import org.bds.lang.value.ValueClass;
  */
 public class TypeClass extends TypeComposite {
 
+	private static volatile int declarationVersion = 0; // Incremented every time a class declaration changes (see InlineCache)
+
 	protected String className;
 
 	protected ClassDeclaration classDecl;
 	private static final long serialVersionUID = -6173442643563941413L;
 
+	public static int getDeclarationVersion() {
+		return declarationVersion;
+	}
+
 	/**
 	 * This constructor creates a "stub" TypeClass
 	 * (it does NOT have classDeclaration information)
@@ -47,6 +53,7 @@ public class TypeClass extends TypeComposite {
 	 * Add all methods to symbol table
 	 */
 	public void addToSymbolTable() {
+		declarationVersion++; // Class methods may change
 		// Add all fields
 		for (FieldDeclaration fd : classDecl.getFieldDecl()) {
 			Type type = fd.getType();
@@ -208,6 +215,7 @@ public class TypeClass extends TypeComposite {
 	 * Set parameters from another class definition
 	 */
 	void set(TypeClass t) {
+		declarationVersion++; // Class declaration changed
 		classDecl = t.classDecl;
 		symbolTable = t.symbolTable;
 	}
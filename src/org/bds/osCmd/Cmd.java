@@ -55,7 +55,43 @@ public abstract class Cmd extends Thread {
 	 * @return exitCode
 	 */
 	public int exec() {
-		// Prepare to execute task
+		// Prepare and launch
+		if (!execBefore()) return exitValue;
+
+		// Execute command or wait for execution to finish
+		try {
+			execCmd();
+		} catch (Throwable t) {
+			execError(t, TaskState.ERROR, BdsThread.EXITCODE_ERROR);
+			return exitValue;
+		}
+
+		// OK, we are done. Clean up and notify.
+		return execAfter();
+	}
+
+	/**
+	 * Command finished executing: Update states, clean up and notify
+	 * @return exitCode
+	 */
+	protected int execAfter() {
+		try {
+			stateRunningAfter(); // Change state after executing command (e.g. when sending a task to a cluster system)
+		} catch (Throwable t) {
+			execError(t, TaskState.ERROR, BdsThread.EXITCODE_ERROR);
+			return exitValue;
+		}
+
+		if (debug) log("Done");
+		execDone();
+		return exitValue;
+	}
+
+	/**
+	 * Prepare to execute task and update states
+	 * @return true if the command can be executed
+	 */
+	protected boolean execBefore() {
 		try {
 			if (debug) log("Start");
 			executing = true;
@@ -64,28 +100,22 @@ public abstract class Cmd extends Thread {
 			if (execPrepare()) stateStarted(); // We are ready to launch. Update states
 			else {
 				execError(null, TaskState.START_FAILED, BdsThread.EXITCODE_ERROR);
-				return exitValue;
+				return false;
 			}
 		} catch (Throwable t) {
 			execError(t, TaskState.START_FAILED, BdsThread.EXITCODE_ERROR);
-			return exitValue;
+			return false;
 		}
 
-		// Execute command or wait for execution to finish
 		try {
 			stateRunningBefore(); // Change state before executing command
 			if (debug) log("Running");
-			execCmd();
-			stateRunningAfter(); // Change state after executing command (e.g. when sending a task to a cluster system)
 		} catch (Throwable t) {
 			execError(t, TaskState.ERROR, BdsThread.EXITCODE_ERROR);
-			return exitValue;
+			return false;
 		}
 
-		// OK, we are done. Clean up and notify.
-		if (debug) log("Done");
-		execDone();
-		return exitValue;
+		return true;
 	}
 
 	/**
@@ -225,6 +255,14 @@ public abstract class Cmd extends Thread {
 		this.task = task;
 	}
 
+	/**
+	 * Start executing the command.
+	 * By default, the command is executed in this thread (see 'run()')
+	 */
+	public void startCmd() {
+		start();
+	}
+
 	/**
 	 * We are done. Either process finished or an pendingException was raised.
 	 */
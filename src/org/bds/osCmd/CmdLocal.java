@@ -6,9 +6,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.bds.executioner.Executioner;
 import org.bds.executioner.ExecutionerLocal;
+import org.bds.run.BdsThread;
+import org.bds.task.TaskState;
 import org.bds.util.Gpr;
 import org.bds.util.Timer;
 
@@ -26,6 +30,10 @@ import org.bds.util.Timer;
  *
  * WARNING: In this case, we assume the child process takes care of redirections and we DO NOT take care of STDIN, STDOUT or timeout
  *
+ * Asynchronous mode: Instead of having one thread per command waiting for the
+ * process to finish, the process is launched from a small shared pool of threads
+ * and the command finishes when the process exits (see Process.onExit())
+ *
  * @author pcingola
  */
 public class CmdLocal extends Cmd {
@@ -33,15 +41,52 @@ public class CmdLocal extends Cmd {
 	public static final int MAX_PID_LINE_LENGTH = 1024; // A 'PID line' should not be longer than this...
 	public static final int MAX_STDOUT_WAIT = 1000; // Maximum wait until STDOUT becomes avaialble
 
+	private static ExecutorService launcher; // Launch processes in asynchronous mode
+
+	protected boolean async; // Asynchronous mode: Do not block a thread while the process is running
+
 	protected Process process; // Java process (the one that actually executes our command)
 	protected boolean readPid;
 	protected String pid; // Only if child process reports PID and readPid is true
 	protected String feedStdin; // Feed this string to stdin when the process starts
 
+	/**
+	 * Shared pool used to launch processes in asynchronous mode
+	 * Note: Launching a process blocks until the child reports its PID, so
+	 * we use a few threads to be able to launch processes concurrently
+	 */
+	protected static synchronized ExecutorService getLauncher() {
+		if (launcher == null) {
+			int numThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+			launcher = Executors.newFixedThreadPool(numThreads, r -> {
+				Thread t = new Thread(r, "CmdLocal.launcher");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return launcher;
+	}
+
 	public CmdLocal(String id, String args[]) {
 		super(id, args);
 	}
 
+	/**
+	 * Asynchronous execution: Launch process and finish when the process exits
+	 */
+	protected void execAsync() {
+		if (!execBefore()) return;
+
+		process.onExit().whenComplete((p, t) -> {
+			if (t != null) {
+				execError(t, TaskState.ERROR, BdsThread.EXITCODE_ERROR);
+				return;
+			}
+			exitValue = p.exitValue();
+			execAfter();
+		});
+	}
+
 	@Override
 	protected void execCmd() throws Exception {
 		// Wait for the process to finish and store exit value
@@ -215,6 +260,10 @@ public class CmdLocal extends Cmd {
 		return true;
 	}
 
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
 	public void setReadPid(boolean readPid) {
 		this.readPid = readPid;
 	}
@@ -222,4 +271,10 @@ public class CmdLocal extends Cmd {
 	public void setStdin(String stdin) {
 		feedStdin = stdin;
 	}
+
+	@Override
+	public void startCmd() {
+		if (async) getLauncher().execute(this::execAsync);
+		else super.startCmd();
+	}
 }
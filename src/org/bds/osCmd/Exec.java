@@ -1,6 +1,8 @@
 package org.bds.osCmd;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.OutputStreamWriter;
 import java.lang.management.ManagementFactory;
 import java.util.List;
 
@@ -24,6 +26,7 @@ public class Exec {
 
 	boolean quiet;
 	boolean saveLinesInMemory;
+	String stdin; // Feed this string to the process' STDIN (if not null)
 	int exitValue;
 	String stdOutStr;
 	String stdErrStr;
@@ -45,6 +48,28 @@ public class Exec {
 		return exec.run(args);
 	}
 
+	/**
+	 * Execute a program
+	 * @param saveLinesInMemory : Collect output in ExecResult (if false, output is only shown)
+	 */
+	public static ExecResult exec(List<String> args, boolean quiet, boolean saveLinesInMemory) {
+		Exec exec = new Exec();
+		exec.setQuiet(quiet);
+		exec.setSaveLinesInMemory(saveLinesInMemory);
+		return exec.run(args);
+	}
+
+	/**
+	 * Execute a program, feeding 'stdin' to the process' STDIN
+	 */
+	public static ExecResult exec(List<String> args, String stdin, boolean quiet) {
+		Exec exec = new Exec();
+		exec.setQuiet(quiet);
+		exec.setSaveLinesInMemory(true);
+		exec.setStdin(stdin);
+		return exec.run(args);
+	}
+
 	protected ExecResult run(List<String> args) {
 		Config conf = Config.get();
 		if (conf.isVerbose() || conf.isDebug() || conf.isLog()) Timer.showStdErr("Executing command. Arguments: " + args);
@@ -77,28 +102,56 @@ public class Exec {
 			stdout.setSaveLinesInMemory(saveLinesInMemory);
 			stderr.setSaveLinesInMemory(saveLinesInMemory);
 
+			// Output larger than 'memMax' is spilled to disk while the process is running
+			int memMax = (int) conf.getLong(Config.SYS_OUTPUT_MEM_MAX, StreamGobbler.DEFAULT_MEM_MAX);
+			File spillDir = conf.getTmpDir() != null ? new File(conf.getTmpDir()) : null;
+			stdout.setMemMax(memMax);
+			stderr.setMemMax(memMax);
+			stdout.setSpillDir(spillDir);
+			stderr.setSpillDir(spillDir);
+
 			if (quiet) {
 				stdout.setQuietMode();
 				stderr.setQuietMode();
 			}
-			stdout.start();
 			stderr.start();
 
+			if (stdin != null) {
+				// Feed STDIN (we need to read STDOUT at the same time, otherwise the process may block)
+				stdout.start();
+				BufferedWriter bos = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+				bos.write(stdin);
+				bos.flush();
+				bos.close();
+			} else {
+				// Nothing to feed: Read STDOUT in this thread (no need to start a new one)
+				stdout.run();
+			}
+
 			// Wait for process to finish
 			exitValue = process.waitFor();
 
 			// Wait for Gobblers to finish (otherwise we may have an incomplete stdout/stderr)
-			stdout.join();
+			stdout.join(); // Note: Returns immediately if it was not started
 			stderr.join();
 
 			if (debug) Gpr.debug("Exit value: " + exitValue);
 		} catch (Exception e) {
+			// Remove spill files (if any)
+			if (stdout != null) stdout.resetBuffer();
+			if (stderr != null) stderr.resetBuffer();
 			throw new RuntimeException("Cannot execute commnads: '" + commands + "'", e);
 		}
 
-		// Collect output
-		if (stdout != null) stdOutStr = stdout.getAllLines();
-		if (stderr != null) stdErrStr = stderr.getAllLines();
+		// Collect output (and remove spill files, if any)
+		if (stdout != null) {
+			stdOutStr = stdout.getAllLines();
+			stdout.resetBuffer();
+		}
+		if (stderr != null) {
+			stdErrStr = stderr.getAllLines();
+			stderr.resetBuffer();
+		}
 
 		return new ExecResult(stdOutStr, stdErrStr, exitValue);
 	}
@@ -110,4 +163,8 @@ public class Exec {
 	public void setSaveLinesInMemory(boolean saveLinesInMemory) {
 		this.saveLinesInMemory = saveLinesInMemory;
 	}
+
+	public void setStdin(String stdin) {
+		this.stdin = stdin;
+	}
 }
@@ -7,13 +7,12 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.bds.cluster.host.Host;
+import org.bds.osCmd.SshSessionPool.PooledSession;
 import org.bds.util.Gpr;
 
 import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.ChannelExec;
-import com.jcraft.jsch.JSch;
-import com.jcraft.jsch.Session;
-import com.jcraft.jsch.UserInfo;
+import com.jcraft.jsch.JSchException;
 
 /**
  * Executes an command in a remote host, via ssh
@@ -28,6 +27,9 @@ import com.jcraft.jsch.UserInfo;
  * have a mechanism to log into the server and kill the processes (which may not
  * be feasible if the network is down).
  *
+ * Connections (sessions) are shared with other commands to the same host,
+ * see SshSessionPool. Disconnecting only closes this command's channel.
+ *
  * @author pcingola
  */
 public class Ssh {
@@ -44,8 +46,7 @@ public class Ssh {
 	boolean debug = false;
 	boolean showStdout = false;
 	int exitValue;
-	JSch jsch;
-	Session session;
+	PooledSession pooledSession;
 	Channel channel;
 	Host host;
 	byte[] tmp = new byte[BUFFER_SIZE];
@@ -89,25 +90,20 @@ public class Ssh {
 	}
 
 	/**
-	 * Connect to a remote host and return a channel (session and jsch are set)
+	 * Connect to a remote host and return a channel (session is taken from the pool)
 	 */
 	Channel connect(String channleType, String sshCommand) throws Exception {
-		JSch.setConfig("StrictHostKeyChecking", "no"); // Not recommended, but useful
-		jsch = new JSch();
-
-		// Some "reasonable" defaults
-		if (Gpr.exists(defaultKnownHosts)) jsch.setKnownHosts(defaultKnownHosts);
-		for (String identity : defaultKnownIdentity)
-			if (Gpr.exists(identity)) jsch.addIdentity(identity);
-
-		// Create session and connect
-		if (debug) Gpr.debug("Create conection:\n\tuser: '" + host.getUserName() + "'\n\thost : '" + host.getHostName() + "'\n\tport : " + host.getPort());
-		session = jsch.getSession(host.getUserName(), host.getHostName(), host.getPort());
-		session.setUserInfo(new SshUserInfo());
-		session.connect();
+		pooledSession = SshSessionPool.get().acquire(host);
 
 		// Create channel
-		channel = session.openChannel(channleType);
+		try {
+			channel = pooledSession.openChannel(channleType);
+		} catch (JSchException e) {
+			// Session was dropped (it's been retired): Try once more using another session
+			releaseSession();
+			pooledSession = SshSessionPool.get().acquire(host);
+			channel = pooledSession.openChannel(channleType);
+		}
 		if ((sshCommand != null) && (channel instanceof ChannelExec)) ((ChannelExec) channel).setCommand(sshCommand);
 
 		return channel;
@@ -130,14 +126,7 @@ public class Ssh {
 			channel = null;
 		}
 
-		// Close session
-		if (session != null) {
-			session.disconnect();
-			session = null;
-		}
-
-		if (jsch != null) jsch = null;
-
+		releaseSession();
 		return exitValue;
 	}
 
@@ -171,6 +160,7 @@ public class Ssh {
 			return result;
 		} catch (Exception e) {
 			e.printStackTrace();
+			disconnect(true);
 			return null;
 		}
 	}
@@ -226,6 +216,17 @@ public class Ssh {
 		return stdout.toString();
 	}
 
+	/**
+	 * Release session: It remains connected, other commands can use it
+	 * Note: Both 'kill()' and the thread executing the command may try to release it
+	 */
+	synchronized void releaseSession() {
+		if (pooledSession != null) {
+			pooledSession.release();
+			pooledSession = null;
+		}
+	}
+
 	/**
 	 * Copy a local file to a remote file
 	 *
@@ -236,40 +237,45 @@ public class Ssh {
 	 */
 	public void scpTo(String localFileName, String remoteFileName) throws Exception {
 		if (debug) Gpr.debug("SCP " + localFileName + " " + remoteFileName);
-		String scpcommand = "scp -t " + remoteFileName;
-		channel = connect("exec", scpcommand);
-		File lfile = new File(localFileName);
-
-		// Get I/O streams for remote scp
-		OutputStream out = channel.getOutputStream();
-		InputStream in = channel.getInputStream();
-
-		// Connect
-		channel.connect();
-		if (checkAck(null, out, in) != 0) throw new Exception("Error in SCP (connect command was not acknoledged)");
-
-		// Send "C0644 fileSize fileName", where filename should not include '/'
-		long filesize = lfile.length();
-		scpcommand = "C0644 " + filesize + " " + Gpr.baseName(localFileName) + "\n";
-		if (checkAck(scpcommand, out, in) != 0) throw new Exception("Error in SCP ('C' command was not acknoledged)");
-
-		// Send a contents of localFileName
-		FileInputStream fis = new FileInputStream(localFileName);
-		byte[] buf = new byte[BUFFER_SIZE];
-		while (true) {
-			int len = fis.read(buf, 0, buf.length);
-			if (len <= 0) break;
-			out.write(buf, 0, len); //out.flush();
-		}
-		fis.close();
-		fis = null;
-		// send '\0'
-		buf[0] = 0;
-		out.write(buf, 0, 1);
-		out.flush();
+		try {
+			String scpcommand = "scp -t " + remoteFileName;
+			channel = connect("exec", scpcommand);
+			File lfile = new File(localFileName);
+
+			// Get I/O streams for remote scp
+			OutputStream out = channel.getOutputStream();
+			InputStream in = channel.getInputStream();
+
+			// Connect
+			channel.connect();
+			if (checkAck(null, out, in) != 0) throw new Exception("Error in SCP (connect command was not acknoledged)");
+
+			// Send "C0644 fileSize fileName", where filename should not include '/'
+			long filesize = lfile.length();
+			scpcommand = "C0644 " + filesize + " " + Gpr.baseName(localFileName) + "\n";
+			if (checkAck(scpcommand, out, in) != 0) throw new Exception("Error in SCP ('C' command was not acknoledged)");
+
+			// Send a contents of localFileName
+			FileInputStream fis = new FileInputStream(localFileName);
+			byte[] buf = new byte[BUFFER_SIZE];
+			while (true) {
+				int len = fis.read(buf, 0, buf.length);
+				if (len <= 0) break;
+				out.write(buf, 0, len); //out.flush();
+			}
+			fis.close();
+			fis = null;
+			// send '\0'
+			buf[0] = 0;
+			out.write(buf, 0, 1);
+			out.flush();
 
-		if (checkAck(null, out, in) != 0) throw new Exception("Error in SCP ('C' command was not acknoledged)");
-		out.close();
+			if (checkAck(null, out, in) != 0) throw new Exception("Error in SCP ('C' command was not acknoledged)");
+			out.close();
+		} catch (Exception e) {
+			disconnect(true);
+			throw e;
+		}
 
 		disconnect(false);
 	}
@@ -299,41 +305,3 @@ public class Ssh {
 		if (debug) Gpr.debug("\t\tSSH disconnect:\tclosed: " + channel.isClosed() + "\teof: " + channel.isEOF() + "\tconnected: " + channel.isConnected());
 	}
 }
-
-class SshUserInfo implements UserInfo {
-
-	boolean debug = false;
-
-	@Override
-	public String getPassphrase() {
-		return null;
-	}
-
-	@Override
-	public String getPassword() {
-		return null;
-	}
-
-	@Override
-	public boolean promptPassphrase(String arg0) {
-		if (debug) Gpr.debug("SSH Message: " + arg0);
-		return false;
-	}
-
-	@Override
-	public boolean promptPassword(String arg0) {
-		if (debug) Gpr.debug("SSH Message: " + arg0);
-		return true;
-	}
-
-	@Override
-	public boolean promptYesNo(String arg0) {
-		if (debug) Gpr.debug("SSH Message: " + arg0);
-		return true;
-	}
-
-	@Override
-	public void showMessage(String arg0) {
-		System.err.println("SSH Message: " + arg0);
-	}
-}
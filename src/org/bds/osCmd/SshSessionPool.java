@@ -0,0 +1,308 @@
+package org.bds.osCmd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bds.Config;
+import org.bds.cluster.host.Host;
+import org.bds.util.Gpr;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+/**
+ * A process-wide pool of ssh sessions
+ *
+ * Connecting to a host (TCP connection, key exchange, authentication) is
+ * expensive, so sessions are kept open and channels (i.e. commands) are
+ * multiplexed over them:
+ *
+ *   - Each session carries at most 'ssh.maxChannels' open channels (ssh
+ *     servers limit the number of channels per session, e.g. OpenSSH's
+ *     'MaxSessions' defaults to 10). When all sessions to a host are busy,
+ *     a new session is created.
+ *
+ *   - Sessions send keep-alive messages every 'ssh.keepAlive' seconds, so
+ *     idle sessions are not dropped by firewalls.
+ *
+ *   - Sessions that are found disconnected (or fail to open a channel) are
+ *     retired: they are no longer handed out, but channels still open on them
+ *     are not affected. A retired session is disconnected once all its channels
+ *     are released. New channels use other sessions (a new one is created if
+ *     needed).
+ *
+ * @author pcingola
+ */
+public class SshSessionPool {
+
+	public static final int DEFAULT_KEEP_ALIVE = 30; // Keep alive interval (seconds)
+	public static final int DEFAULT_MAX_CHANNELS = 8; // Maximum number of open channels per session
+	public static final int KEEP_ALIVE_COUNT_MAX = 3; // Disconnect after this many keep alive messages are not answered
+
+	private static SshSessionPool sshSessionPool;
+
+	/**
+	 * A session and the number of channels currently open
+	 */
+	public class PooledSession {
+		Host host;
+		Session session;
+		List<PooledSession> sessions; // All sessions to the same host (also used as lock)
+		int channels; // Number of channels in use
+		boolean retired; // Retired sessions are not handed out, they are disconnected after all channels are released
+
+		PooledSession(Host host, Session session, List<PooledSession> sessions) {
+			this.host = host;
+			this.session = session;
+			this.sessions = sessions;
+		}
+
+		public int getChannels() {
+			synchronized (sessions) {
+				return channels;
+			}
+		}
+
+		public Session getSession() {
+			return session;
+		}
+
+		public boolean isRetired() {
+			synchronized (sessions) {
+				return retired;
+			}
+		}
+
+		/**
+		 * Open a channel
+		 * Note: If the channel cannot be opened (e.g. the session was dropped),
+		 * the session is retired and the exception is re-thrown. The caller
+		 * should release this session and acquire another one
+		 */
+		public Channel openChannel(String channelType) throws JSchException {
+			try {
+				return session.openChannel(channelType);
+			} catch (JSchException e) {
+				if (debug) Gpr.debug("Could not open channel to host '" + host + "', retiring session: " + e.getMessage());
+				retire();
+				throw e;
+			}
+		}
+
+		/**
+		 * Channel closed: Session can be reused (or disconnected if it was retired)
+		 */
+		public void release() {
+			synchronized (sessions) {
+				channels--;
+				if (retired && channels <= 0) disconnect(session);
+			}
+		}
+
+		/**
+		 * Stop handing out this session. Channels still open are not
+		 * affected: the session is disconnected after they are released
+		 */
+		public void retire() {
+			synchronized (sessions) {
+				if (retired) return;
+				retired = true;
+				sessions.remove(this);
+				sessionsRetired.incrementAndGet();
+				if (channels <= 0) disconnect(session);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return host + ", channels: " + channels + ", connected: " + isConnected(session) + (retired ? ", retired" : "");
+		}
+	}
+
+	boolean debug;
+	int keepAlive; // Keep alive interval (seconds)
+	int maxChannels; // Maximum number of open channels per session
+	JSch jsch;
+	Map<String, List<PooledSession>> sessionsByHost;
+
+	// Metrics
+	AtomicInteger channelsOpened = new AtomicInteger(); // Total number of channels (i.e. commands)
+	AtomicInteger sessionsCreated = new AtomicInteger(); // Total number of sessions (i.e. connections)
+	AtomicInteger sessionsReused = new AtomicInteger(); // Number of times a connected session was reused
+	AtomicInteger sessionsRetired = new AtomicInteger(); // Number of sessions retired (e.g. found disconnected)
+
+	public static synchronized SshSessionPool get() {
+		if (sshSessionPool == null) {
+			Config config = Config.get();
+			int keepAlive = (int) config.getLong(Config.SSH_KEEP_ALIVE, DEFAULT_KEEP_ALIVE);
+			int maxChannels = (int) config.getLong(Config.SSH_MAX_CHANNELS, DEFAULT_MAX_CHANNELS);
+			sshSessionPool = new SshSessionPool(maxChannels, keepAlive);
+			sshSessionPool.debug = config.isDebug();
+		}
+		return sshSessionPool;
+	}
+
+	/**
+	 * Disconnect all sessions and reset pool
+	 */
+	public static synchronized void reset() {
+		if (sshSessionPool != null) sshSessionPool.close();
+		sshSessionPool = null;
+	}
+
+	public SshSessionPool(int maxChannels, int keepAlive) {
+		this.maxChannels = Math.max(1, maxChannels);
+		this.keepAlive = keepAlive;
+		sessionsByHost = new HashMap<>();
+	}
+
+	/**
+	 * Get a session to 'host' having at most 'maxChannels - 1' channels open
+	 * Note: The session must be released after the channel is closed (see PooledSession.release())
+	 */
+	public PooledSession acquire(Host host) throws JSchException {
+		List<PooledSession> sessions;
+		synchronized (this) {
+			sessions = sessionsByHost.computeIfAbsent(key(host), k -> new ArrayList<>());
+		}
+
+		// Note: We only synchronize on the host's list, so that connecting
+		// to a (slow) host does not block other hosts
+		synchronized (sessions) {
+			// Find a connected session with free channels
+			for (int i = 0; i < sessions.size(); i++) {
+				PooledSession ps = sessions.get(i);
+				if (!isConnected(ps.session)) {
+					if (debug) Gpr.debug("Session disconnected: " + ps);
+					ps.retire(); // Removes session from list
+					i--;
+				} else if (ps.channels < maxChannels) {
+					ps.channels++;
+					channelsOpened.incrementAndGet();
+					sessionsReused.incrementAndGet();
+					return ps;
+				}
+			}
+
+			// No session available: Create a new one
+			PooledSession ps = new PooledSession(host, connect(host), sessions);
+			sessionsCreated.incrementAndGet();
+			ps.channels++;
+			channelsOpened.incrementAndGet();
+			sessions.add(ps);
+			return ps;
+		}
+	}
+
+	/**
+	 * Disconnect all sessions
+	 */
+	public void close() {
+		// Note: Sessions are disconnected outside the pool's lock (lock order is 'host list' then 'pool')
+		List<List<PooledSession>> sessionLists;
+		synchronized (this) {
+			sessionLists = new ArrayList<>(sessionsByHost.values());
+			sessionsByHost.clear();
+		}
+
+		for (List<PooledSession> sessions : sessionLists) {
+			synchronized (sessions) {
+				for (PooledSession ps : sessions)
+					disconnect(ps.session);
+				sessions.clear();
+			}
+		}
+	}
+
+	/**
+	 * Create a new session and connect
+	 */
+	protected Session connect(Host host) throws JSchException {
+		Session session = jsch().getSession(host.getUserName(), host.getHostName(), host.getPort());
+		session.setUserInfo(new SshUserInfo());
+		session.setDaemonThread(true); // Don't prevent JVM from exiting
+		if (keepAlive > 0) {
+			session.setServerAliveInterval(keepAlive * 1000);
+			session.setServerAliveCountMax(KEEP_ALIVE_COUNT_MAX);
+		}
+
+		if (debug) Gpr.debug("Create conection:\n\tuser: '" + host.getUserName() + "'\n\thost : '" + host.getHostName() + "'\n\tport : " + host.getPort());
+		session.connect();
+		return session;
+	}
+
+	protected void disconnect(Session session) {
+		session.disconnect();
+	}
+
+	public int getChannelsOpened() {
+		return channelsOpened.get();
+	}
+
+	/**
+	 * Number of sessions to 'host' that can be handed out (i.e. not retired)
+	 */
+	public int getSessions(Host host) {
+		List<PooledSession> sessions;
+		synchronized (this) {
+			sessions = sessionsByHost.get(key(host));
+		}
+		if (sessions == null) return 0;
+
+		synchronized (sessions) {
+			return sessions.size();
+		}
+	}
+
+	public int getSessionsCreated() {
+		return sessionsCreated.get();
+	}
+
+	public int getSessionsRetired() {
+		return sessionsRetired.get();
+	}
+
+	public int getSessionsReused() {
+		return sessionsReused.get();
+	}
+
+	protected boolean isConnected(Session session) {
+		return session.isConnected();
+	}
+
+	/**
+	 * Create JSch object (identities and known hosts are read only once)
+	 */
+	synchronized JSch jsch() throws JSchException {
+		if (jsch == null) {
+			JSch.setConfig("StrictHostKeyChecking", "no"); // Not recommended, but useful
+			jsch = new JSch();
+
+			// Some "reasonable" defaults
+			if (Gpr.exists(Ssh.defaultKnownHosts)) jsch.setKnownHosts(Ssh.defaultKnownHosts);
+			for (String identity : Ssh.defaultKnownIdentity)
+				if (Gpr.exists(identity)) jsch.addIdentity(identity);
+		}
+		return jsch;
+	}
+
+	String key(Host host) {
+		return host.getUserName() + "@" + host.getHostName() + ":" + host.getPort();
+	}
+
+	@Override
+	public String toString() {
+		int opened = channelsOpened.get();
+		int reusePerc = opened > 0 ? (100 * sessionsReused.get()) / opened : 0;
+		return "SshSessionPool: channels opened " + opened //
+				+ ", sessions created " + sessionsCreated //
+				+ ", sessions reused " + sessionsReused + " (" + reusePerc + "%)" //
+				+ ", sessions retired " + sessionsRetired //
+		;
+	}
+}
@@ -0,0 +1,48 @@
+package org.bds.osCmd;
+
+import org.bds.util.Gpr;
+
+import com.jcraft.jsch.UserInfo;
+
+/**
+ * Ssh user information: Nothing is prompted interactively (identity files are used to authenticate)
+ *
+ * @author pcingola
+ */
+class SshUserInfo implements UserInfo {
+
+	boolean debug = false;
+
+	@Override
+	public String getPassphrase() {
+		return null;
+	}
+
+	@Override
+	public String getPassword() {
+		return null;
+	}
+
+	@Override
+	public boolean promptPassphrase(String arg0) {
+		if (debug) Gpr.debug("SSH Message: " + arg0);
+		return false;
+	}
+
+	@Override
+	public boolean promptPassword(String arg0) {
+		if (debug) Gpr.debug("SSH Message: " + arg0);
+		return true;
+	}
+
+	@Override
+	public boolean promptYesNo(String arg0) {
+		if (debug) Gpr.debug("SSH Message: " + arg0);
+		return true;
+	}
+
+	@Override
+	public void showMessage(String arg0) {
+		System.err.println("SSH Message: " + arg0);
+	}
+}
@@ -2,16 +2,22 @@ package org.bds.osCmd;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
 
 /**
  * Read the contents of a stream in a separate thread
  * This class is used when executing OS commands in order to read STDOUT / STDERR and prevent process blocking
  * It can alert an AlertListener when a given string is in the stream
+ *
+ * Output saved in memory is bounded: once it exceeds 'memMax' characters
+ * it is spilled to a temporary file (see 'getAllLines()'). The spill file
+ * must be removed by calling 'resetBuffer()' once the output was collected.
  * 
  * @author pcingola
  */
@@ -19,6 +25,7 @@ public class StreamGobbler extends Thread {
 
 	public static int HEAD_SIZE = 100;
 	public static int BUFFER_SIZE = 100 * 1024;
+	public static int DEFAULT_MEM_MAX = 16 * 1024 * 1024; // Maximum number of characters saved in memory
 
 	InputStream is;
 	boolean binary = false; // Is this a binary stream?
@@ -31,6 +38,10 @@ public class StreamGobbler extends Thread {
 	String alert = null;
 	Object alertNotify = null;
 	StringBuffer head = null;
+	int memMax = DEFAULT_MEM_MAX; // Spill 'allLines' to a file when it's larger than this
+	File spillDir; // Directory for spill files (null means system's temporary dir)
+	File spillFile; // Saved output, when it didn't fit in memory
+	BufferedWriter spillWriter;
 	Progress progress = null;
 	String redirectTo = null;
 	BufferedReader lineInputReader = null;
@@ -63,8 +74,18 @@ public class StreamGobbler extends Thread {
 		return alertNotify;
 	}
 
+	/**
+	 * All lines saved (see 'saveLinesInMemory')
+	 * Note: If the output was spilled to disk, it is read from the spill file
+	 */
 	public String getAllLines() {
-		return allLines.toString();
+		if (spillFile == null) return allLines.toString();
+
+		try {
+			return new String(Files.readAllBytes(spillFile.toPath()));
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read output from file '" + spillFile + "'", e);
+		}
 	}
 
 	/**
@@ -91,8 +112,15 @@ public class StreamGobbler extends Thread {
 		return running;
 	}
 
+	/**
+	 * Remove saved lines (and spill file, if any)
+	 */
 	public void resetBuffer() {
 		allLines = new StringBuffer();
+		if (spillFile != null) {
+			spillFile.delete();
+			spillFile = null;
+		}
 	}
 
 	@Override
@@ -173,7 +201,7 @@ public class StreamGobbler extends Thread {
 				if (redirectWriter != null) redirectWriter.write(line + "\n");
 
 				// Keep in memory copy?
-				if (saveLinesInMemory) allLines.append(line + "\n");
+				if (saveLinesInMemory) save(line);
 				if (lineNum < HEAD_SIZE) head.append(line + "\n");
 
 				// Report progress
@@ -195,9 +223,10 @@ public class StreamGobbler extends Thread {
 		} finally {
 			close();
 
-			// Close redirect
+			// Close redirect and spill file
 			try {
 				if (redirectWriter != null) redirectWriter.close();
+				if (spillWriter != null) spillWriter.close();
 			} catch (IOException ioe) {
 				running = false;
 				throw new RuntimeException(ioe);
@@ -207,6 +236,20 @@ public class StreamGobbler extends Thread {
 		}
 	}
 
+	/**
+	 * Save a line. If there are too many lines in memory, spill them to a file
+	 */
+	void save(String line) throws IOException {
+		if (spillWriter != null) {
+			spillWriter.write(line);
+			spillWriter.write('\n');
+			return;
+		}
+
+		allLines.append(line).append('\n');
+		if (allLines.length() > memMax) spill();
+	}
+
 	public void setAlert(String alert) {
 		alertDone = false;
 		this.alert = alert;
@@ -224,6 +267,10 @@ public class StreamGobbler extends Thread {
 		this.lineFilter = lineFilter;
 	}
 
+	public void setMemMax(int memMax) {
+		this.memMax = memMax;
+	}
+
 	public void setProgress(Progress progress) {
 		this.progress = progress;
 	}
@@ -240,4 +287,20 @@ public class StreamGobbler extends Thread {
 	public void setSaveLinesInMemory(boolean saveLinesInMemory) {
 		this.saveLinesInMemory = saveLinesInMemory;
 	}
+
+	public void setSpillDir(File spillDir) {
+		this.spillDir = spillDir;
+	}
+
+	/**
+	 * Move lines saved in memory to a (temporary) file.
+	 * All lines saved after this are appended to the file
+	 * Note: The file is deleted in 'resetBuffer()'
+	 */
+	void spill() throws IOException {
+		spillFile = File.createTempFile("bds_output_", ".txt", spillDir);
+		spillWriter = new BufferedWriter(new FileWriter(spillFile));
+		spillWriter.append(allLines);
+		allLines = new StringBuffer();
+	}
 }
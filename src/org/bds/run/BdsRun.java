@@ -1,21 +1,21 @@
 package org.bds.run;
 
 import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
+import java.util.Set;
 
 import org.bds.Bds;
 import org.bds.BdsParseArgs;
 import org.bds.Config;
 import org.bds.compile.BdsCompiler;
 import org.bds.compile.BdsNodeWalker;
+import org.bds.compile.CompileCache;
+import org.bds.compile.CompileCache.CompiledProgram;
 import org.bds.compile.CompilerMessages;
-import org.bds.data.Data;
+import org.bds.data.FileStatCache;
 import org.bds.data.FtpConnectionFactory;
 import org.bds.executioner.Executioner;
 import org.bds.executioner.Executioners;
@@ -62,6 +62,7 @@ public class BdsRun {
 	Coverage coverageCounter; // Keep track of coverage between test runs
 	boolean debug; // debug mode
 	boolean log; // Log everything (keep STDOUT, SDTERR and ExitCode files)
+	boolean programModified; // Have command line arguments modified the program?
 	boolean stackCheck; // Check stack size when thread finishes runnig (should be zero)
 	boolean verbose; // Verbose mode
 	int exitValue;
@@ -73,6 +74,7 @@ public class BdsRun {
 	BdsThread bdsThread;
 	ProgramUnit programUnit; // Program (parsed nodes)
 	List<String> programArgs; // Command line arguments for BigDataScript program
+	Set<String> sourceFiles; // Program and included files
 
 	public BdsRun() {
 		bdsAction = BdsAction.RUN;
@@ -135,8 +137,13 @@ public class BdsRun {
 	 * @returns: -1 on compile errors; 0 if run OK, 1 if run with errors
 	 */
 	public CompileCode compile() {
-		// COmpile bds to VM ASM
-		if (!compileBds()) return CompileCode.ERROR;
+		// Compile bds to VM ASM (or load compiled program from cache)
+		BdsVm vmCompiled = null;
+		CompileCache compileCache = CompileCache.get();
+		if (compileCache.isEnabled()) {
+			vmCompiled = compileCached(compileCache);
+			if (vmCompiled == null) return CompileCode.ERROR;
+		} else if (!compileBds()) return CompileCode.ERROR;
 
 		// Parse command line args & show automatic help
 		// Note: Command line arguments set variables by changing VarInit
@@ -144,8 +151,8 @@ public class BdsRun {
 		//       compilation.
 		if (parseCmdLineArgs()) return CompileCode.OK_HELP;
 
-		// Compile assembly
-		vm = compileAsm(programUnit);
+		// Compile assembly (the cached VM can only be used if the program was not modified)
+		vm = (vmCompiled != null && !programModified) ? vmCompiled : compileAsm(programUnit);
 		return vm != null ? CompileCode.OK : CompileCode.ERROR;
 	}
 
@@ -181,6 +188,7 @@ public class BdsRun {
 		if (debug) Timer.showStdErr("Parsing");
 		BdsCompiler compiler = new BdsCompiler(programFileName);
 		programUnit = compiler.compile();
+		sourceFiles = compiler.getSourceFiles();
 
 		// Show errors and warnings, if any
 		if ((programUnit == null) && !CompilerMessages.get().isEmpty()) {
@@ -190,6 +198,39 @@ public class BdsRun {
 		return programUnit != null;
 	}
 
+	/**
+	 * Compile program using the compile cache: bds -> BdsNodes -> VM ASM -> VM OpCodes
+	 * Note: Command line arguments are not parsed yet, so the VM is compiled from the
+	 *       program 'as written'
+	 * @return A BdsVm with all compiled assembly code, null on error
+	 */
+	BdsVm compileCached(CompileCache compileCache) {
+		CompiledProgram cp = compileCache.load(programFileName, coverage);
+		if (cp != null) {
+			if (debug) Timer.showStdErr("Compiled program loaded from cache");
+			CompilerMessages.reset();
+			programUnit = cp.getProgramUnit();
+
+			// Add all nodes and symbols (functions, classes), as the compiler would do
+			for (BdsNode n : BdsNodeWalker.findNodes(programUnit, null, true, true))
+				BdsNodeFactory.get().addNode(n);
+			programUnit.addSymbols(GlobalSymbolTable.get());
+
+			BdsVm vmCached = cp.newVm();
+			vmCached.setDebug(debug);
+			vmCached.setVerbose(verbose);
+			return vmCached;
+		}
+
+		// Compile and add to cache
+		if (!compileBds()) return null;
+		BdsVm vmCompiled = compileAsm(programUnit);
+
+		// Only programs compiled without any messages (e.g. warnings) are cached
+		if (vmCompiled != null && CompilerMessages.get().isEmpty()) compileCache.save(programFileName, coverage, sourceFiles, programUnit, vmCompiled);
+		return vmCompiled;
+	}
+
 	public BdsAction getBdsAction() {
 		return bdsAction;
 	}
@@ -301,19 +342,7 @@ public class BdsRun {
 	BdsThread loadCheckpoint() {
 		// Load checkpoint file
 		if (verbose) Timer.showStdErr("Loading checkpoint: " + chekcpointRestoreFile);
-		BdsThread bdsThreadRoot;
-		try {
-			// If the checkpoint is remote, download it
-			Data d = Data.factory(chekcpointRestoreFile);
-			String localFile = d.isRemote() ? d.getLocalPath() : d.getAbsolutePath();
-			if (d.isRemote()) d.download();
-			// Load data from local file
-			ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new FileInputStream(localFile)));
-			bdsThreadRoot = (BdsThread) in.readObject();
-			in.close();
-		} catch (Exception e) {
-			throw new RuntimeException("Error while reading checkpoint file '" + chekcpointRestoreFile + "'", e);
-		}
+		BdsThread bdsThreadRoot = Checkpoint.load(chekcpointRestoreFile);
 
 		// Set main thread's programUnit running scope (mostly for debugging and test cases)
 		// ProgramUnit's scope it the one before 'global'
@@ -341,6 +370,7 @@ public class BdsRun {
 		BdsParseArgs bdsParseArgs = new BdsParseArgs(programUnit, programArgs);
 		bdsParseArgs.setDebug(debug);
 		bdsParseArgs.parse();
+		programModified = bdsParseArgs.isProgramModified();
 
 		// Show script's automatic help message
 		if (bdsParseArgs.isShowHelp()) {
@@ -361,6 +391,7 @@ public class BdsRun {
 		initialize();
 		Executioners executioners = Executioners.getInstance(config);
 		TaskDependecies.reset();
+		FileStatCache.reset();
 
 		//---
 		// Run
@@ -592,6 +623,7 @@ public class BdsRun {
 
 		// Compile and create vm
 		BdsVm vmtest = compileAsm(puTest);
+		vmtest.getScope().newSlots(testFunc.getSlotNames()); // Function's body uses the function's local variable slots
 		BdsThread bdsThreadTest = new BdsThread(puTest, config, vmtest);
 
 		// Run thread and check exit code
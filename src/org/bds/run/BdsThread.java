@@ -1,8 +1,6 @@
 package org.bds.run;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -13,7 +11,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
 
 import org.bds.Config;
 import org.bds.compile.BdsNodeWalker;
@@ -163,7 +160,8 @@ public class BdsThread extends Thread implements Serializable {
 	}
 
 	/**
-	 * Create a checkpoint file
+	 * Create a checkpoint file (e.g. on a fatal error)
+	 * Note: The program image is embedded, so the checkpoint is a single file
 	 */
 	public String checkpoint(BdsNode node) {
 		// Skip checkpoint file?
@@ -176,13 +174,22 @@ public class BdsThread extends Thread implements Serializable {
 		if (!programFile.equals(nodeFile)) checkpointFileName += "." + Gpr.baseName(node.getFileName(), ".bds");
 		checkpointFileName += ".line_" + node.getLineNum() + ".chp";
 
-		return checkpoint(checkpointFileName);
+		return checkpoint(checkpointFileName, true);
 	}
 
 	/**
 	 * Create a checkpoint
 	 */
 	public String checkpoint(String checkpointFileName) {
+		return checkpoint(checkpointFileName, false);
+	}
+
+	/**
+	 * Create a checkpoint
+	 * @param embedImage : Create a single checkpoint file (i.e. program image is
+	 *                     stored in the checkpoint file instead of a shared image file)
+	 */
+	public String checkpoint(String checkpointFileName, boolean embedImage) {
 		// Default file name
 		if (checkpointFileName == null) {
 			checkpointFileName = statement.getFileNameCanonical() + ".chp";
@@ -200,13 +207,15 @@ public class BdsThread extends Thread implements Serializable {
 			Freeze.freeze();
 
 			// Serialize root BdsThred to file
+			BdsThread root = getRoot();
 			String localPath = d.isRemote() ? d.getLocalPath() : checkpointFileName;
-			ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(localPath)));
-			out.writeObject(getRoot());
-			out.close();
-
-			// Upload remote file
-			if (d.isRemote()) d.upload();
+			Checkpoint checkpoint = Checkpoint.get(root);
+			if (checkpoint != null) {
+				checkpoint.save(root, d, localPath, embedImage);
+			} else {
+				Checkpoint.saveSerialized(root, localPath);
+				if (d.isRemote()) d.upload(); // Upload remote file
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 			throw new RuntimeException("Error while serializing to file '" + checkpointFileName + "'", e);
@@ -11,14 +11,19 @@ import org.bds.data.Data;
 /**
  * All BdsThreads are tracked here
  *
+ * Note: The current BdsThread is resolved very often (e.g. every time a
+ * file path is de-referenced), so it is stored in a ThreadLocal and
+ * looking it up does not require a lock.
+ *
  * @author pcingola
  */
 public class BdsThreads {
 
 	public static boolean doNotRemoveThreads = false; // This is used in only for some test cases
 
-	private static BdsThreads bdsThreadsInstance = new BdsThreads();
+	private static volatile BdsThreads bdsThreadsInstance = new BdsThreads();
 
+	ThreadLocal<BdsThread> currentBdsThread = new ThreadLocal<>(); // BdsThread running in the current Java thread
 	Map<Long, BdsThread> bdsThreadByThreadId = new HashMap<>();
 	Set<BdsThread> bdsThreadDone = new HashSet<>();
 
@@ -55,14 +60,14 @@ public class BdsThreads {
 	public synchronized void add(BdsThread bdsThread) {
 		long id = Thread.currentThread().getId();
 		bdsThreadByThreadId.put(id, bdsThread);
+		currentBdsThread.set(bdsThread);
 	}
 
 	/**
-	 * Get bdsThread
+	 * Get bdsThread running in the current Java thread
 	 */
-	public synchronized BdsThread get() {
-		long id = Thread.currentThread().getId();
-		return bdsThreadByThreadId.get(id);
+	public BdsThread get() {
+		return currentBdsThread.get();
 	}
 
 	/**
@@ -84,6 +89,7 @@ public class BdsThreads {
 		if (bdsThreadByThreadId.get(id) == bdsThread) {
 			bdsThreadByThreadId.remove(id);
 			bdsThreadDone.add(bdsThread);
+			currentBdsThread.remove();
 		} else throw new RuntimeException("Cannot remove thread '" + bdsThread.getBdsThreadId() + "'");
 	}
 
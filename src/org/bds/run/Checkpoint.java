@@ -0,0 +1,367 @@
+package org.bds.run;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.bds.data.Data;
+import org.bds.lang.ProgramUnit;
+import org.bds.scope.Scope;
+import org.bds.task.Task;
+import org.bds.util.Timer;
+import org.bds.vm.BdsVm;
+
+/**
+ * Checkpoint files
+ *
+ * A checkpoint is split in two parts:
+ *
+ *   - Program image: The program's AST, code, constants and types. These don't
+ *     change once the program is compiled, so the image is stored in a file named
+ *     after its hash ('hash.chpc'). All checkpoints of the same program (in the
+ *     same directory) share the image file. Only the image's name and object
+ *     table are kept in memory, the image is serialized again if a checkpoint is
+ *     written to another directory.
+ *
+ *   - State: Threads, VMs (stack, call frames, scopes), tasks, etc. Objects that
+ *     belong to the program image are not serialized again, a reference (index
+ *     in the image's object table) is written instead.
+ *
+ * The checkpoint file starts with the name of the image file, followed by the
+ * root BdsThread. So a checkpoint file can only be restored if the image file is
+ * in the same directory (copy both files when moving a checkpoint).
+ *
+ * Checkpoints created on a fatal error are written as a single file: The image
+ * itself is embedded (instead of the image file name), followed by the root
+ * BdsThread.
+ *
+ * Checkpoint files created by older versions (only a serialized BdsThread)
+ * can still be loaded.
+ *
+ * @author pcingola
+ */
+public class Checkpoint {
+
+	public static final String IMAGE_EXT = ".chpc";
+
+	private static Checkpoint checkpointLatest; // Program image is created only once for each program
+
+	ProgramUnit programUnit;
+	byte[] image; // Serialized program image. Only kept until it's written, it is created again if needed (see 'getImage')
+	String imageName; // Image file name (derived from image's hash)
+	Map<Object, Integer> idByObject; // Object table: Objects in the image, indexed by position in the stream
+
+	/**
+	 * Reference to an object in the program image
+	 */
+	static class CheckpointRef implements Serializable {
+		private static final long serialVersionUID = 6403153727816513203L;
+
+		int id;
+
+		CheckpointRef(int id) {
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Read program image: Replace references to objects in the image
+	 */
+	static class ImageObjectInputStream extends ObjectInputStream {
+
+		Object[] objects;
+
+		ImageObjectInputStream(InputStream in) throws IOException {
+			super(in);
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (objects != null && obj instanceof CheckpointRef) return objects[((CheckpointRef) obj).id];
+			return obj;
+		}
+	}
+
+	/**
+	 * Write program image and record each object in the image's object table
+	 */
+	static class ImageObjectOutputStream extends ObjectOutputStream {
+
+		List<Object> objects = new ArrayList<>();
+		boolean record = true;
+
+		ImageObjectOutputStream(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if (!record) return obj;
+
+			// Runtime state must never be part of the program image
+			if (obj instanceof BdsThread || obj instanceof BdsVm || obj instanceof Scope || obj instanceof Task) //
+				throw new RuntimeException("Program image references runtime object, class '" + obj.getClass().getCanonicalName() + "'");
+
+			// Only objects that can be referenced from the state are added to the object table.
+			// Immutable 'small' objects (strings, numbers) and arrays are just serialized again
+			if (!isValueObject(obj)) objects.add(obj);
+			return obj;
+		}
+	}
+
+	/**
+	 * Write state: Replace objects from the program image by references
+	 */
+	static class StateObjectOutputStream extends ObjectOutputStream {
+
+		Map<Object, Integer> idByObject;
+
+		StateObjectOutputStream(OutputStream out, Map<Object, Integer> idByObject) throws IOException {
+			super(out);
+			this.idByObject = idByObject;
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			Integer id = idByObject.get(obj);
+			return id != null ? new CheckpointRef(id) : obj;
+		}
+	}
+
+	/**
+	 * Get a checkpoint writer for this program
+	 * Returns null if the program image cannot be created (use 'saveSerialized' instead)
+	 */
+	public static synchronized Checkpoint get(BdsThread bdsThreadRoot) {
+		ProgramUnit pu = bdsThreadRoot.getProgramUnit();
+		if (checkpointLatest == null || checkpointLatest.programUnit != pu) checkpointLatest = new Checkpoint(bdsThreadRoot);
+		return checkpointLatest.imageName != null ? checkpointLatest : null;
+	}
+
+	/**
+	 * Does the image file exist in the checkpoint's directory?
+	 */
+	boolean imageExists(Data d, String localPath) {
+		if (d.isRemote()) return Data.factory(imagePath(d.toString(), imageName)).exists();
+		return new File(imagePath(localPath, imageName)).exists();
+	}
+
+	/**
+	 * Image file path: Image is stored in the same directory than the checkpoint file
+	 */
+	static String imagePath(String checkpointPath, String imageName) {
+		int idx = checkpointPath.lastIndexOf('/');
+		return idx < 0 ? imageName : checkpointPath.substring(0, idx + 1) + imageName;
+	}
+
+	/**
+	 * Is this a 'value' object (i.e. immutable or only referenced by its owner)?
+	 */
+	static boolean isValueObject(Object obj) {
+		if (obj instanceof String || obj instanceof Number || obj instanceof Boolean || obj instanceof Character) return true;
+		Class<?> c = obj.getClass();
+		return c.isArray() && !c.getComponentType().isPrimitive();
+	}
+
+	/**
+	 * Load checkpoint file
+	 */
+	public static BdsThread load(String checkpointFile) {
+		try {
+			// If the checkpoint is remote, download it
+			Data d = Data.factory(checkpointFile);
+			String localFile = d.isRemote() ? d.getLocalPath() : d.getAbsolutePath();
+			if (d.isRemote()) d.download();
+
+			// Load data from local file
+			try (ImageObjectInputStream in = new ImageObjectInputStream(new GZIPInputStream(new FileInputStream(localFile)))) {
+				Object obj = in.readObject();
+				if (obj instanceof BdsThread) return (BdsThread) obj; // Old format: Only a serialized BdsThread
+
+				// Load program image (embedded or from image file), then state
+				if (obj instanceof byte[]) in.objects = loadImage(new ByteArrayInputStream((byte[]) obj));
+				else in.objects = loadImage(imagePath(d.isRemote() ? d.toString() : localFile, (String) obj));
+				return (BdsThread) in.readObject();
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Error while reading checkpoint file '" + checkpointFile + "'", e);
+		}
+	}
+
+	/**
+	 * Load program image, return object table
+	 */
+	static Object[] loadImage(String imageFile) throws IOException, ClassNotFoundException {
+		Data d = Data.factory(imageFile);
+		String localFile = d.isRemote() ? d.getLocalPath() : d.getAbsolutePath();
+		if (d.isRemote() && !d.isDownloaded()) d.download();
+
+		return loadImage(new GZIPInputStream(new FileInputStream(localFile)));
+	}
+
+	/**
+	 * Load program image from a stream, return object table
+	 */
+	static Object[] loadImage(InputStream is) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(is)) {
+			in.readObject(); // Program structures
+			return (Object[]) in.readObject(); // Object table
+		}
+	}
+
+	/**
+	 * Save checkpoint using Java serialization of the whole object graph (old format)
+	 */
+	public static void saveSerialized(BdsThread bdsThreadRoot, String localPath) throws IOException {
+		try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(localPath)))) {
+			out.writeObject(bdsThreadRoot);
+		}
+	}
+
+	protected Checkpoint(BdsThread bdsThreadRoot) {
+		programUnit = bdsThreadRoot.getProgramUnit();
+		if (getImage(bdsThreadRoot) == null) imageName = null; // Could not create image: We'll have to serialize everything
+	}
+
+	/**
+	 * Serialize program structures and create object table
+	 */
+	void createImage(BdsThread bdsThreadRoot) throws Exception {
+		List<Object> programObjects = new ArrayList<>();
+		programObjects.add(programUnit);
+		programObjects.addAll(bdsThreadRoot.getVm().getProgramObjects());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ImageObjectOutputStream out = new ImageObjectOutputStream(bytes)) {
+			out.writeObject(programObjects);
+			out.record = false;
+
+			// Object table: All objects are already in the stream, so these are just back-references
+			out.writeObject(out.objects.toArray());
+
+			idByObject = new IdentityHashMap<>(2 * out.objects.size());
+			for (int i = 0; i < out.objects.size(); i++)
+				idByObject.putIfAbsent(out.objects.get(i), i);
+		}
+		image = bytes.toByteArray();
+
+		// Image name from hash
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		byte[] hash = md.digest(image);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 16; i++)
+			sb.append(String.format("%02x", hash[i]));
+		imageName = sb.toString() + IMAGE_EXT;
+	}
+
+	/**
+	 * Get serialized program image (create it again if it was already written)
+	 * Returns null if the image cannot be created
+	 * Note: Creating the image also updates 'imageName' and the object table
+	 */
+	byte[] getImage(BdsThread bdsThreadRoot) {
+		if (image == null) {
+			try {
+				createImage(bdsThreadRoot);
+			} catch (Exception e) {
+				if (bdsThreadRoot.isDebug()) Timer.showStdErr("Checkpoint: Cannot create program image, using full serialization. " + e.getMessage());
+				image = null;
+			}
+		}
+		return image;
+	}
+
+	public String getImageName() {
+		return imageName;
+	}
+
+	/**
+	 * Save checkpoint to 'localPath' (upload to 'd' if remote)
+	 * The program image is stored in its own file, shared by other checkpoints
+	 */
+	public void save(BdsThread bdsThreadRoot, Data d, String localPath) throws IOException {
+		save(bdsThreadRoot, d, localPath, false);
+	}
+
+	/**
+	 * Save checkpoint to 'localPath' (upload to 'd' if remote)
+	 * @param embedImage : Write the program image into the checkpoint file, so
+	 *                     it can be restored without the image file
+	 */
+	public void save(BdsThread bdsThreadRoot, Data d, String localPath, boolean embedImage) throws IOException {
+		byte[] img = null;
+		boolean imageOk;
+		if (embedImage) {
+			img = getImage(bdsThreadRoot);
+			imageOk = (img != null);
+		} else {
+			imageOk = saveImage(bdsThreadRoot, d, localPath); // Save program image, unless it's already there
+		}
+
+		// Could not create program image? Serialize everything
+		if (!imageOk) {
+			saveSerialized(bdsThreadRoot, localPath);
+			if (d.isRemote()) d.upload();
+			return;
+		}
+
+		// Save state
+		try (ObjectOutputStream out = new StateObjectOutputStream(new GZIPOutputStream(new FileOutputStream(localPath)), idByObject)) {
+			if (img != null) out.writeObject(img);
+			else out.writeObject(imageName);
+			out.writeObject(bdsThreadRoot);
+		}
+		image = null; // Don't keep the image in memory
+
+		// Upload remote file
+		if (d.isRemote()) d.upload();
+	}
+
+	/**
+	 * Save program image in the checkpoint's directory (if the file doesn't exist)
+	 * @return false if the image cannot be created
+	 */
+	boolean saveImage(BdsThread bdsThreadRoot, Data d, String localPath) throws IOException {
+		if (imageExists(d, localPath)) return true;
+
+		// The image is not kept in memory once written: Create it again (image name may change)
+		byte[] img = getImage(bdsThreadRoot);
+		if (img == null) return false;
+		if (imageExists(d, localPath)) return true;
+
+		Data dimg = d.isRemote() ? Data.factory(imagePath(d.toString(), imageName)) : null;
+		String imgLocalPath = dimg != null ? dimg.getLocalPath() : imagePath(localPath, imageName);
+
+		// Write to a temporary file and rename, so that concurrent checkpoints never see a partial image
+		File imgFile = new File(imgLocalPath);
+		if (!imgFile.exists()) {
+			File imgTmp = new File(imgLocalPath + ".tmp." + Thread.currentThread().getId());
+			try (OutputStream out = new GZIPOutputStream(new FileOutputStream(imgTmp))) {
+				out.write(img);
+			}
+			if (!imgTmp.renameTo(imgFile)) imgTmp.delete();
+		}
+
+		if (dimg != null) dimg.upload();
+		return true;
+	}
+
+}
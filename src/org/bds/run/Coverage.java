@@ -47,10 +47,11 @@ public class Coverage {
 		bdsNodes.addAll(vm.findNodes());
 
 		// Update node coverage counters
-		Map<Integer, Integer> vmcov = vm.getCoverageCounter();
-		for (Integer nodeId : vmcov.keySet()) {
+		int[] vmcov = vm.getCoverageCounter();
+		for (int nodeId = 0; nodeId < vmcov.length; nodeId++) {
+			if (vmcov[nodeId] == 0) continue;
 			int count = coverageCounter.getOrDefault(nodeId, 0);
-			coverageCounter.put(nodeId, count + vmcov.get(nodeId));
+			coverageCounter.put(nodeId, count + vmcov[nodeId]);
 		}
 	}
 
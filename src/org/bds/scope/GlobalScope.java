@@ -173,6 +173,7 @@ public class GlobalScope extends Scope {
 		add(ExpressionTask.TASK_OPTION_SYSTEM, config.getSystem()); // System type: "local", "ssh", "cluster", "aws", etc.
 		add(ExpressionTask.TASK_OPTION_QUEUE, config.getQueue()); // Default queue: none
 		add(ExpressionTask.TASK_OPTION_RETRY, (long) config.getTaskFailCount()); // Task fail can be re-tried (re-run) N times before considering failed.
+		add(ExpressionTask.TASK_OPTION_PRIORITY, 0L); // Task priority: Higher priority tasks run first
 
 		// Set "physical" path
 		String path;
@@ -31,6 +31,9 @@ public class Scope implements Iterable<String>, Serializable {
 	String parentNodeId;
 	Map<String, Value> values;
 	BdsNode node;
+	Value[] slots; // Function's local variable slots. Shared by all scopes within the same function call (see LOADL / STOREL opcodes)
+	String[] slotNames; // Variable name for each slot
+	Map<String, Integer> slotByName; // Slot variables declared in this scope (null if none)
 
 	protected static int nextId() {
 		return ++scopeNum;
@@ -52,6 +55,12 @@ public class Scope implements Iterable<String>, Serializable {
 		this.parent = parent;
 		this.node = node;
 		values = new HashMap<>();
+
+		// Nested scopes share the function's local variable slots
+		if (parent != null) {
+			slots = parent.slots;
+			slotNames = parent.slotNames;
+		}
 	}
 
 	public synchronized void add(FunctionDeclaration fdecl) {
@@ -81,8 +90,22 @@ public class Scope implements Iterable<String>, Serializable {
 		values.put(name, value);
 	}
 
-	public Collection<String> getNames() {
-		return values.keySet();
+	/**
+	 * Add a local variable stored in slot 'idx'
+	 * The variable is still visible by name from this scope (e.g. 'getVar()', task options, debugger)
+	 */
+	public synchronized void addSlot(int idx, Value value) {
+		if (slotByName == null) slotByName = new HashMap<>();
+		slotByName.put(slotNames[idx], idx);
+		slots[idx] = value;
+	}
+
+	public synchronized Collection<String> getNames() {
+		if (slotByName == null) return values.keySet();
+
+		List<String> names = new ArrayList<>(values.keySet());
+		names.addAll(slotByName.keySet());
+		return names;
 	}
 
 	public BdsNode getNode() {
@@ -120,11 +143,23 @@ public class Scope implements Iterable<String>, Serializable {
 		return null;
 	}
 
+	/**
+	 * Get value of local variable in slot 'idx'
+	 */
+	public Value getSlot(int idx) {
+		return slots[idx];
+	}
+
 	/**
 	 * Get value on this scope (only search this scope)
 	 */
 	public synchronized Value getValueLocal(String name) {
-		return values.get(name);
+		Value v = values.get(name);
+		if (v != null || slotByName == null) return v;
+
+		// Is this a local variable stored in a slot?
+		Integer idx = slotByName.get(name);
+		return idx != null ? slots[idx] : null;
 	}
 
 	public Collection<Value> getValues() {
@@ -146,12 +181,20 @@ public class Scope implements Iterable<String>, Serializable {
 	 * Is this scope empty?
 	 */
 	public boolean isEmpty() {
-		return values.isEmpty();
+		return values.isEmpty() && (slotByName == null || slotByName.isEmpty());
 	}
 
 	@Override
 	public Iterator<String> iterator() {
-		return values.keySet().iterator();
+		return getNames().iterator();
+	}
+
+	/**
+	 * Create new local variable slots for a function call
+	 */
+	public void newSlots(String[] slotNames) {
+		this.slotNames = slotNames;
+		slots = new Value[slotNames.length];
 	}
 
 	/**
@@ -174,10 +217,23 @@ public class Scope implements Iterable<String>, Serializable {
 				s.values.put(name, value);
 				return;
 			}
+
+			// Local variable stored in a slot?
+			if (s.slotByName != null && s.slotByName.containsKey(name)) {
+				s.slots[s.slotByName.get(name)] = value;
+				return;
+			}
 		}
 		throw new RuntimeException("Could not find variable '" + name + "'");
 	}
 
+	/**
+	 * Set value of local variable in slot 'idx'
+	 */
+	public void setSlot(int idx, Value value) {
+		slots[idx] = value;
+	}
+
 	@Override
 	public String toString() {
 		return toString(true, true);
@@ -200,7 +256,7 @@ public class Scope implements Iterable<String>, Serializable {
 
 		// Show scope values
 		List<String> names = new ArrayList<>();
-		names.addAll(values.keySet());
+		names.addAll(getNames());
 		Collections.sort(names);
 		for (String n : names) {
 			Value v = getValueLocal(n);
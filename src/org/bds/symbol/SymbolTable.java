@@ -17,6 +17,7 @@ import org.bds.lang.statement.Args;
 import org.bds.lang.statement.ClassDeclaration;
 import org.bds.lang.statement.FunctionDeclaration;
 import org.bds.lang.statement.MethodDeclaration;
+import org.bds.lang.statement.VariableInit;
 import org.bds.lang.type.Type;
 import org.bds.lang.type.TypeClass;
 import org.bds.lang.value.ValueFunction;
@@ -37,6 +38,7 @@ public class SymbolTable implements Serializable, Iterable<String> {
 	AutoHashMap<String, List<ValueFunction>> functions; // Functions can have more than one item under the same name. E.g.: f(int x), f(string s), f(int x, int y), all are called 'f'
 	Map<String, Type> variableTypes; // Variables defined within this symbol table
 	Set<String> constants; // Symbols defined here are 'constant'
+	Map<String, VariableInit> variableInits; // Variables defined within this symbol table that are stored in function's slots
 
 	public SymbolTable(BdsNode bdsNode) {
 		this.bdsNode = bdsNode;
@@ -63,6 +65,16 @@ public class SymbolTable implements Serializable, Iterable<String> {
 		variableTypes.put(name, type);
 	}
 
+	/**
+	 * Add a variable - type association for a variable that may be stored in a function's slot
+	 */
+	public void addVariable(String name, Type type, VariableInit vi) {
+		addVariable(name, type);
+		if (vi.getSlot() < 0) return;
+		if (variableInits == null) variableInits = new HashMap<>();
+		variableInits.put(name, vi);
+	}
+
 	/**
 	 * Find a native function or method by class
 	 */
@@ -229,6 +241,33 @@ public class SymbolTable implements Serializable, Iterable<String> {
 		return null;
 	}
 
+	/**
+	 * Get the local variable slot for variable 'name' referenced from 'node'
+	 * @return Slot index or -1 if the variable must be accessed by name (e.g. global variables, class fields)
+	 */
+	public int getVariableSlot(String name, BdsNode node) {
+		for (SymbolTable symtab = this; symtab != null; symtab = symtab.getParent()) {
+			if (symtab.resolveLocal(name) != null) {
+				VariableInit vi = symtab.variableInits != null ? symtab.variableInits.get(name) : null;
+				if (vi == null) return -1;
+
+				// Slots are only valid within the same function
+				FunctionDeclaration fdecl = FunctionDeclaration.findFunctionDeclaration(node);
+				if (fdecl == null || fdecl != FunctionDeclaration.findFunctionDeclaration(symtab.bdsNode)) return -1;
+
+				// Referenced within its own initialization (e.g. 'int x = x + 1' shadowing an outer 'x'): The slot is not set yet
+				for (BdsNode n = node; n != fdecl; n = n.getParent())
+					if (n == vi) return -1;
+
+				return vi.getSlot();
+			}
+
+			if (symtab.resolveThis(name) != null) return -1; // Class field
+		}
+
+		return -1;
+	}
+
 	/**
 	 * Get symbol on this scope (only search this scope)
 	 */
@@ -0,0 +1,248 @@
+package org.bds.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bds.data.FileStat;
+import org.bds.data.FileStatCache;
+import org.bds.util.Timer;
+
+/**
+ * Dependency graph required to achieve a goal
+ *
+ * Nodes (files or task IDs) reachable from the goal are interned
+ * to integer IDs, and the graph is traversed only twice:
+ *
+ *   1) Post-order DFS from the goal (i.e. topological order), aggregating
+ *      the maximum modification time of the leaf nodes reachable from
+ *      each node. This is the 'right hand side' of 'node <- leaves'.
+ *
+ *   2) DFS from the goal, only descending into nodes that need to be
+ *      updated, collecting the tasks that create them (in post-order, so
+ *      that a task's dependencies are always executed before the task).
+ *
+ * Note: Nodes are identified by name, the same way 'TaskDependecies.getTasksByOutput()'
+ * does (i.e. task IDs or file names).
+ *
+ * @author pcingola
+ */
+class GoalGraph {
+
+	public static final long MODIFIED_MISSING = Long.MAX_VALUE; // Aggregated modification time when a leaf file is missing
+	public static final long MODIFIED_NONE = Long.MIN_VALUE; // Aggregated modification time when there are no leaf files
+
+	static final byte STATE_NEW = 0;
+	static final byte STATE_OPEN = 1;
+	static final byte STATE_DONE = 2;
+
+	boolean debug;
+	TaskDependecies taskDependecies;
+	String goal;
+	int size; // Number of nodes
+	Map<String, Integer> nodeIds; // Node name to node ID
+	String[] names; // Node names by ID
+	List<List<Task>> tasks; // Tasks creating each node (null if none)
+	int[][] children; // Nodes required by each node (inputs and task dependencies)
+	long[] maxModified; // Maximum modification time of leaf nodes reachable from each node
+	byte[] state;
+
+	public GoalGraph(TaskDependecies taskDependecies, String goal) {
+		this.taskDependecies = taskDependecies;
+		this.goal = goal;
+		debug = taskDependecies.debug;
+		nodeIds = new HashMap<>();
+		names = new String[16];
+		tasks = new ArrayList<>();
+		children = new int[16][];
+		maxModified = new long[16];
+		state = new byte[16];
+	}
+
+	/**
+	 * Build the graph: Find all nodes reachable from the goal and
+	 * calculate leaf nodes modification times
+	 */
+	public GoalGraph build() {
+		int[] stackNode = new int[16];
+		int[] stackIdx = new int[16];
+		int sp = 0;
+
+		int root = nodeId(goal);
+		expand(root);
+		stackNode[sp++] = root;
+
+		while (sp > 0) {
+			int n = stackNode[sp - 1];
+			int i = stackIdx[sp - 1];
+
+			if (i < children[n].length) {
+				// Next child
+				stackIdx[sp - 1]++;
+				int c = children[n][i];
+				if (state[c] != STATE_NEW) continue; // Already visited (if it's 'open', it's a circular dependency: ignore)
+
+				expand(c);
+				if (sp == stackNode.length) {
+					stackNode = Arrays.copyOf(stackNode, 2 * sp);
+					stackIdx = Arrays.copyOf(stackIdx, 2 * sp);
+				}
+				stackNode[sp] = c;
+				stackIdx[sp] = 0;
+				sp++;
+			} else {
+				// All children done: Aggregate modification times
+				sp--;
+				long max = isLeaf(n) ? modified(n) : MODIFIED_NONE;
+				for (int c : children[n])
+					max = Math.max(max, maxModified[c]);
+				maxModified[n] = max;
+				state[n] = STATE_DONE;
+			}
+		}
+
+		if (debug) Timer.showStdErr("Goal: " + goal + ", " + size + " nodes");
+		return this;
+	}
+
+	/**
+	 * Find all nodes required by node 'n'
+	 */
+	void expand(int n) {
+		state[n] = STATE_OPEN;
+
+		List<Task> ts = taskDependecies.getTasksByOutput(names[n]);
+		tasks.set(n, ts);
+		if (ts == null) {
+			children[n] = new int[0];
+			return;
+		}
+
+		List<Integer> ch = new ArrayList<>();
+		for (Task t : ts) {
+			// Add all input files
+			if (t.getInputs() != null) {
+				for (String in : t.getInputs())
+					ch.add(nodeId(in));
+			}
+
+			// Add all task Ids
+			List<Task> depTasks = t.getDependencies();
+			if (depTasks != null) {
+				for (Task dt : depTasks)
+					ch.add(nodeId(dt.getId()));
+			}
+		}
+
+		int[] chn = new int[ch.size()];
+		for (int i = 0; i < chn.length; i++)
+			chn[i] = ch.get(i);
+		children[n] = chn;
+	}
+
+	/**
+	 * Find all tasks that need to be executed to achieve the goal,
+	 * in execution order (i.e. dependencies first)
+	 */
+	public Set<Task> goalTasks() {
+		Set<Task> goalTasks = new LinkedHashSet<>();
+
+		int root = nodeIds.get(goal);
+		if (!needsUpdate(root)) return goalTasks;
+
+		int[] stackNode = new int[16];
+		int[] stackIdx = new int[16];
+		int sp = 0;
+		boolean[] visited = new boolean[size];
+		visited[root] = true;
+		stackNode[sp++] = root;
+
+		while (sp > 0) {
+			int n = stackNode[sp - 1];
+			int i = stackIdx[sp - 1];
+
+			if (i < children[n].length) {
+				// Next child: Only visit if it needs to be updated
+				stackIdx[sp - 1]++;
+				int c = children[n][i];
+				if (visited[c]) continue;
+				visited[c] = true;
+				if (!needsUpdate(c)) continue;
+
+				if (sp == stackNode.length) {
+					stackNode = Arrays.copyOf(stackNode, 2 * sp);
+					stackIdx = Arrays.copyOf(stackIdx, 2 * sp);
+				}
+				stackNode[sp] = c;
+				stackIdx[sp] = 0;
+				sp++;
+			} else {
+				// All dependencies added: Add tasks creating this node
+				sp--;
+				if (tasks.get(n) != null) goalTasks.addAll(tasks.get(n));
+			}
+		}
+
+		return goalTasks;
+	}
+
+	/**
+	 * Is this a 'leaf' node (i.e. it's not created by any task)
+	 */
+	boolean isLeaf(int n) {
+		return !taskDependecies.hasTasksByOutput(names[n]);
+	}
+
+	/**
+	 * Modification time of a leaf node
+	 */
+	long modified(int n) {
+		String name = names[n];
+		if (taskDependecies.isTask(name)) return MODIFIED_NONE; // Task IDs are not files
+
+		FileStat st = FileStatCache.get().stat(TaskDependency.filePath(name));
+		if (debug) Timer.showStdErr("Goal: " + goal + "\tLeaf node '" + name + "': " + st);
+		return st.exists() ? st.getLastModified() : MODIFIED_MISSING;
+	}
+
+	/**
+	 * Does node 'n' need to be updated respect to the leaves?
+	 */
+	boolean needsUpdate(int n) {
+		TaskDependency taskDep = new TaskDependency(null);
+		taskDep.setDebug(debug);
+		taskDep.addOutput(names[n]);
+		return taskDep.depOperator(maxModified[n]);
+	}
+
+	/**
+	 * Get node ID (create a new node if not found)
+	 */
+	int nodeId(String name) {
+		Integer id = nodeIds.get(name);
+		if (id != null) return id;
+
+		if (size == names.length) {
+			int cap = 2 * size;
+			names = Arrays.copyOf(names, cap);
+			children = Arrays.copyOf(children, cap);
+			maxModified = Arrays.copyOf(maxModified, cap);
+			state = Arrays.copyOf(state, cap);
+		}
+
+		int n = size++;
+		names[n] = name;
+		tasks.add(null);
+		nodeIds.put(name, n);
+		return n;
+	}
+
+	public int size() {
+		return size;
+	}
+
+}
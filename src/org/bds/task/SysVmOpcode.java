@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.util.LinkedList;
 
 import org.bds.Config;
+import org.bds.data.FileStatCache;
 import org.bds.lang.BdsNode;
 import org.bds.lang.expression.ExpressionSys;
 import org.bds.lang.expression.ExpressionTask;
@@ -103,6 +104,14 @@ public class SysVmOpcode {
 	 * Create and run sys
 	 */
 	public String run() {
+		return run(true);
+	}
+
+	/**
+	 * Create and run sys
+	 * @param saveOutput : Collect command's output. If false, output is not used (e.g. 'sys' statement) and an empty string is returned
+	 */
+	public String run(boolean saveOutput) {
 		// 'sys' expressions are always executed locally and immediately
 		LinkedList<String> args = new LinkedList<>();
 		String shell = Config.get().getSysShell();
@@ -117,7 +126,8 @@ public class SysVmOpcode {
 		if (Config.get().isLog()) saveProgramFile(cmds);
 
 		// Run command line
-		ExecResult execResult = Exec.exec(args, bdsThread.getConfig().isQuiet());
+		ExecResult execResult = Exec.exec(args, bdsThread.getConfig().isQuiet(), saveOutput);
+		FileStatCache.get().invalidate(); // Command may have changed any file
 
 		// Error running process?
 		int exitValue = execResult.exitValue;
@@ -1,9 +1,18 @@
 package org.bds.task;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.bds.util.Timer;
 
@@ -13,18 +22,27 @@ import org.bds.util.Timer;
  * Can 'follow' several files
  * If a file does not exist, tail waits until the file is created
  *
+ * All files and streams are followed from a single thread. The thread
+ * checks again shortly after any output, and backs off (up to
+ * SLEEP_TIME_DEFAULT) when there is none. Changes in directories of
+ * followed files wake up the thread (local file systems only, see
+ * WatchService)
+ *
  * @author pcingola
  */
 public class Tail extends Thread implements Serializable {
 
 	private static final long serialVersionUID = 3971573486965684116L;
 
-	public static final int SLEEP_TIME_DEFAULT = 100;
+	public static final int SLEEP_TIME_DEFAULT = 100; // Maximum time between checks (milliseconds)
+	public static final int SLEEP_TIME_MIN = 5; // Time between checks when there is output (milliseconds)
 
 	boolean debug, verbose, quiet;
 	boolean running;
 	HashMap<String, TailFile> files;
 	HashSet<String> toRemove;
+	transient volatile WatchService watchService; // Notify changes in directories of followed files
+	transient Set<Path> watchedDirs;
 
 	public Tail() {
 		files = new HashMap<>();
@@ -58,11 +76,14 @@ public class Tail extends Thread implements Serializable {
 		if (inputFileName == null) return;
 		if (quiet) return; // Quiet mode? Nothing to do
 
-		TailFile tf = new TailFileMulti(inputFileName, showStderr);
+		TailFileMulti tf = new TailFileMulti(inputFileName, showStderr);
 		if (debug) log("Adding (" + tf.getClass().getSimpleName() + ") '" + inputFileName + "'");
 		tf.setDebug(debug);
 		tf.setVerbose(verbose);
 		files.put(inputFileName, tf);
+
+		Path dir = tf.getPath().toAbsolutePath().getParent();
+		if (dir != null) watch(dir);
 	}
 
 	/**
@@ -75,6 +96,13 @@ public class Tail extends Thread implements Serializable {
 		for (TailFile tf : files.values())
 			tf.close();
 		files = new HashMap<>();
+
+		// Stop watching directories
+		try {
+			if (watchService != null) watchService.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
 	}
 
 	/**
@@ -113,9 +141,13 @@ public class Tail extends Thread implements Serializable {
 			running = true;
 
 			// Loop until kill()
+			int sleepTime = SLEEP_TIME_MIN;
 			while (running) {
-				if (!quiet) tail();
-				sleep(SLEEP_TIME_DEFAULT);
+				boolean anyOutput = !quiet && tail();
+
+				// Any output? Check again soon. Otherwise back off
+				sleepTime = anyOutput ? SLEEP_TIME_MIN : Math.min(2 * sleepTime, SLEEP_TIME_DEFAULT);
+				waitEvents(sleepTime);
 			}
 
 		} catch (Exception e) {
@@ -163,4 +195,42 @@ public class Tail extends Thread implements Serializable {
 
 		return anyOutput;
 	}
+
+	/**
+	 * Wait until a watched directory changes or 'sleepTime' milliseconds elapse
+	 */
+	void waitEvents(int sleepTime) throws InterruptedException {
+		WatchService ws = watchService;
+		if (ws == null) {
+			sleep(sleepTime);
+			return;
+		}
+
+		try {
+			// Consume all events: we only need to know that something changed
+			for (WatchKey key = ws.poll(sleepTime, TimeUnit.MILLISECONDS); key != null; key = ws.poll()) {
+				key.pollEvents();
+				key.reset();
+			}
+		} catch (ClosedWatchServiceException e) {
+			// Closed while waiting, nothing to do
+		}
+	}
+
+	/**
+	 * Watch a directory for changes (i.e. followed files being created or modified)
+	 */
+	synchronized void watch(Path dir) {
+		if (watchedDirs == null) watchedDirs = new HashSet<>();
+		if (!watchedDirs.add(dir)) return;
+
+		try {
+			if (watchService == null) watchService = FileSystems.getDefault().newWatchService();
+			dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException | UnsupportedOperationException e) {
+			// Cannot watch (e.g. directory does not exist yet): Rely on polling
+			watchedDirs.remove(dir);
+			if (debug) log("Cannot watch directory '" + dir + "': " + e.getMessage());
+		}
+	}
 }
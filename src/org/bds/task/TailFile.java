@@ -16,6 +16,7 @@ import org.bds.util.Timer;
  */
 public abstract class TailFile implements Serializable {
 
+	public static final int BUFFER_SIZE = 64 * 1024; // Output buffer for each file (partial lines are kept until completed or the buffer is full)
 	public static final int DEFAULT_TAIL = 10;
 	public static final int MAX_BUFFER_SIZE = 1024 * 1024;
 	private static final long serialVersionUID = -3331375637614242861L;
@@ -131,6 +132,8 @@ public abstract class TailFile implements Serializable {
 	boolean debug, verbose;
 	String inputFileName; // Read (tail -f) from this file
 	boolean showStderr; // Do we show on STDERR? (default STDOUT)
+	transient byte[] buffer; // Bytes read, not shown yet
+	transient int bufferLen; // Number of bytes in buffer
 
 	public TailFile(String inputFileName, boolean showStderr) {
 		this.inputFileName = inputFileName;
@@ -146,6 +149,17 @@ public abstract class TailFile implements Serializable {
 	 */
 	protected abstract void close(boolean attemptTail);
 
+	/**
+	 * Free space in buffer (allocate buffer if needed)
+	 */
+	protected int bufferFree() {
+		if (buffer == null) {
+			buffer = new byte[BUFFER_SIZE];
+			bufferLen = 0;
+		}
+		return buffer.length - bufferLen;
+	}
+
 	public void log(String msg) {
 		Timer.showStdErr(getClass().getSimpleName() + ": " + msg);
 	}
@@ -163,6 +177,31 @@ public abstract class TailFile implements Serializable {
 		this.verbose = verbose;
 	}
 
+	/**
+	 * Show complete lines in buffer. The last (partial) line is kept
+	 * in the buffer, unless 'flush' is set or the buffer is full
+	 */
+	protected void show(boolean flush) {
+		if (bufferLen <= 0) return;
+
+		// Find the end of the latest complete line
+		int len = bufferLen;
+		if (!flush && bufferLen < buffer.length) {
+			for (len = bufferLen; len > 0; len--)
+				if (buffer[len - 1] == '\n' || buffer[len - 1] == '\r') break;
+			if (len <= 0) return; // No complete lines
+		}
+
+		// Show bytes
+		if (showStderr) System.err.write(buffer, 0, len);
+		else System.out.write(buffer, 0, len);
+		if (debug) log("Showing '" + (new String(buffer, 0, len)) + "'");
+
+		// Keep remaining bytes
+		bufferLen -= len;
+		if (bufferLen > 0) System.arraycopy(buffer, len, buffer, 0, bufferLen);
+	}
+
 	/**
 	 * Check if there is output available on any file
 	 * @returns Number of bytes read. Negative number of there were problems
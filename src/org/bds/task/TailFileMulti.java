@@ -1,9 +1,11 @@
 package org.bds.task;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A file to use with 'Tail'
@@ -35,12 +37,19 @@ public class TailFileMulti extends TailFile {
 	@Override
 	protected synchronized void close(boolean attemptTail) {
 		try {
-			if (attemptTail) tail();
+			if (attemptTail) {
+				while (tail() > 0); // Read all pending bytes
+				show(true);
+			}
 		} catch (Exception e) {
 			// Nothing to do
 		}
 	}
 
+	public Path getPath() {
+		return inputFile.toPath();
+	}
+
 	/**
 	 * Open a file and add buffer to 'buffers'
 	 */
@@ -65,39 +74,20 @@ public class TailFileMulti extends TailFile {
 		long size = inputFile.length();
 		if (size <= inputPos) return 0;
 
-		int avail = (int) (size - inputPos);
+		// Read at most one buffer (we'll read the rest in the next call)
 		int count = 0;
-		try {
-			// Open input
-			FileInputStream fis = new FileInputStream(inputFileName);
-			fis.skip(inputPos);
-			BufferedInputStream input = new BufferedInputStream(fis);
-
-			BufferedOutputStream output = null;
-			avail = input.available();
-
-			while (avail > 0) {
-				// Read all available bytes
-				avail = Math.min(avail, MAX_BUFFER_SIZE); // Limit buffer size (some systems return MAX_INT when the file is growing)
-				byte[] bytes = new byte[avail];
-				count = input.read(bytes);
+		int len = (int) Math.min(size - inputPos, bufferFree());
+		try (FileChannel input = FileChannel.open(getPath(), StandardOpenOption.READ)) {
+			count = input.read(ByteBuffer.wrap(buffer, bufferLen, len), inputPos);
+			if (count > 0) {
 				inputPos += count;
-
-				// Show bytes
-				if (showStderr) System.err.write(bytes, 0, count);
-				else System.out.write(bytes, 0, count);
-
-				// Write to output
-				if (output != null) output.write(bytes, 0, count);
-
-				avail = input.available(); // Something more to read?
+				bufferLen += count;
 			}
-
-			// Close input and output
-			input.close();
-		} catch (Exception e) {
+		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+
+		show(false);
 		return count;
 	}
 }
@@ -13,7 +13,6 @@ import org.bds.util.Gpr;
  */
 public class TailStream extends TailFile {
 
-	public static final int MAX_BUFFER_SIZE = 1024 * 1024;
 	private static final long serialVersionUID = 1034121345155552037L;
 
 	transient InputStream input;
@@ -34,7 +33,10 @@ public class TailStream extends TailFile {
 	@Override
 	protected synchronized void close(boolean attemptTail) {
 		try {
-			if (attemptTail) tail();
+			if (attemptTail) {
+				while (tail() > 0); // Read all pending bytes
+				show(true);
+			}
 
 			// Is it still open?
 			if (input != null) {
@@ -79,19 +81,14 @@ public class TailStream extends TailFile {
 			int count = 0;
 
 			// Any bytes available on this buffer?
+			// Note: We read at most one buffer per call, so a task producing
+			// lots of output doesn't delay other tasks' output
 			int avail = input.available();
 			if (avail > 0) {
-				avail = Math.min(avail, MAX_BUFFER_SIZE); // Limit buffer size (some systems return MAX_INT when the file is growing)
-
-				// Read all available bytes
-				byte[] bytes = new byte[avail];
-				count = input.read(bytes);
-
-				// Show bytes
-				if (showStderr) System.err.write(bytes, 0, count);
-				else System.out.write(bytes, 0, count);
-
-				if (debug) log("Reading '" + (new String(bytes, 0, count)) + "'");
+				int len = Math.min(avail, bufferFree());
+				count = input.read(buffer, bufferLen, len);
+				if (count > 0) bufferLen += count;
+				show(false);
 			}
 
 			return count;
@@ -11,6 +11,7 @@ import java.util.Set;
 
 import org.bds.Config;
 import org.bds.cluster.host.HostResources;
+import org.bds.data.FileStatCache;
 import org.bds.executioner.Executioner;
 import org.bds.lang.BdsNode;
 import org.bds.run.BdsThread;
@@ -40,10 +41,12 @@ public class Task implements Serializable {
 	protected int bdsLineNum; // Program's line number that created this task (used for reporting errors)
 	protected int exitValue; // Exit (error) code
 	protected int failCount, maxFailCount; // Number of times that this task failed
+	protected int priority; // Tasks having higher priority are executed first (when several tasks are ready to run)
 	protected String id; // Task ID
 	protected String bdsFileName; // Program file that created this task (used for reporting errors)
 	protected String currentDir; // Program's 'current directoy' (cd)
 	protected String pid; // PID (if any)
+	protected String pidArray; // Job array's PID (if the task was submitted as an element of a job array)
 	protected String programFileDir; // Program file's dir
 	protected String programFileName; // Program file name
 	protected String programTxt; // Program's text (program's code)
@@ -360,10 +363,25 @@ public class Task implements Serializable {
 		return pid;
 	}
 
+	public synchronized String getPidArray() {
+		return pidArray;
+	}
+
 	public String getPostMortemInfo() {
 		return postMortemInfo;
 	}
 
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Program location that created this task (i.e. 'file:line')
+	 */
+	public String getProgramLocation() {
+		return bdsFileName + ":" + bdsLineNum;
+	}
+
 	public String getProgramFileName() {
 		return programFileName;
 	}
@@ -549,6 +567,7 @@ public class Task implements Serializable {
 		runningEndTime = null;
 		postMortemInfo = null;
 		errorMsg = null;
+		pidArray = null;
 	}
 
 	public void setAllowEmpty(boolean allowEmpty) {
@@ -595,10 +614,18 @@ public class Task implements Serializable {
 		this.pid = pid;
 	}
 
+	public void setPidArray(String pidArray) {
+		this.pidArray = pidArray;
+	}
+
 	public void setPostMortemInfo(String postMortemInfo) {
 		this.postMortemInfo = postMortemInfo;
 	}
 
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
 	public void setQueue(String queue) {
 		this.queue = queue;
 	}
@@ -698,11 +725,16 @@ public class Task implements Serializable {
 			throw new RuntimeException("Unimplemented state: '" + newState + "'");
 		}
 
+		// Task may have changed any file, not only the outputs it declares: Invalidate cached file information
+		if (isDone()) FileStatCache.get().invalidate();
+
 		// Finished OK? Check that output files are OK as well
 		if (isStateFinished()) {
 			// Update failCount if output files failed to be created
 			if (!isCanFail() && !checkOutputFiles().isEmpty()) failCount++;
 		}
+
+		notifyAll(); // Wake up threads waiting for this task (see 'waitDone' and 'waitStarted')
 	}
 
 	/**
@@ -795,4 +827,30 @@ public class Task implements Serializable {
 		return sb.toString();
 	}
 
+	/**
+	 * Wait until this task is done (or 'timeoutMs' milliseconds elapse)
+	 * Note: There might be spurious wake ups, so callers should check 'isDone()' in a loop
+	 */
+	public synchronized void waitDone(long timeoutMs) {
+		if (isDone()) return;
+		try {
+			wait(timeoutMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Wait until this task has started (or 'timeoutMs' milliseconds elapse)
+	 * Note: There might be spurious wake ups, so callers should check 'isStarted()' in a loop
+	 */
+	public synchronized void waitStarted(long timeoutMs) {
+		if (isStarted()) return;
+		try {
+			wait(timeoutMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 }
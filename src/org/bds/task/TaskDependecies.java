@@ -2,11 +2,14 @@ package org.bds.task;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -35,7 +38,9 @@ public class TaskDependecies implements Serializable {
 	List<Task> tasks; // Sorted list of tasks (need it for serialization purposes)
 	Map<String, Task> tasksById;
 	AutoHashMap<String, List<Task>> tasksByOutput;
+	AutoHashMap<String, List<Task>> tasksByInput;
 	Map<String, String> canonicalPath;
+	Set<Task> acyclic; // Tasks known to have no circular dependencies (see 'isCircular')
 
 	public static TaskDependecies get() {
 		return taskDependeciesInstance;
@@ -51,6 +56,8 @@ public class TaskDependecies implements Serializable {
 	public TaskDependecies() {
 		canonicalPath = new HashMap<>();
 		tasksByOutput = new AutoHashMap<>(new LinkedList<Task>());
+		tasksByInput = new AutoHashMap<>(new LinkedList<Task>());
+		acyclic = new HashSet<>();
 		tasksById = new HashMap<>();
 		tasks = new ArrayList<>();
 	}
@@ -87,6 +94,14 @@ public class TaskDependecies implements Serializable {
 			tasks.add(task);
 		}
 
+		// Add task by input files
+		// Note: This must be done before adding outputs, so that
+		// a task using its own output as input is invalidated
+		if (task.getInputs() != null) {
+			for (String inFile : task.getInputs())
+				addTaskByInput(inFile, task);
+		}
+
 		// Add task by output files
 		if (task.getOutputs() != null) {
 			for (String outFile : task.getOutputs())
@@ -94,6 +109,13 @@ public class TaskDependecies implements Serializable {
 		}
 	}
 
+	/**
+	 * Add to 'taskByInput' map
+	 */
+	protected synchronized void addTaskByInput(String inFile, Task task) {
+		tasksByInput.getOrCreate(getCanonicalPath(inFile)).add(task);
+	}
+
 	/**
 	 * Add to 'taskByOutput' map
 	 */
@@ -103,6 +125,9 @@ public class TaskDependecies implements Serializable {
 
 		// Add to map
 		tasksByOutput.getOrCreate(outPath).add(task);
+
+		// Tasks using this file now depend on 'task': They may no longer be acyclic
+		invalidateAcyclic(outPath);
 	}
 
 	/**
@@ -150,65 +175,6 @@ public class TaskDependecies implements Serializable {
 		}
 	}
 
-	/**
-	 * Find 'leaf' nodes (i.e. nodes that do not have dependent tasks)
-	 */
-	Set<String> findLeafNodes(String out) {
-		Set<String> nodes = findNodes(out); // Find all nodes
-
-		// Only add nodes that do not have dependent tasks (i.e. are leaves)
-		Set<String> leaves = new HashSet<>();
-		for (String n : nodes) {
-			if (!hasTasksByOutput(n)) leaves.add(n);
-		}
-
-		return leaves;
-	}
-
-	/**
-	 * Find all leaf nodes required for goal 'out'
-	 */
-	Set<String> findNodes(String out) {
-		// A set of 'goal' nodes
-		Set<String> goals = new HashSet<>();
-		goals.add(out);
-
-		// For each goal
-		for (boolean changed = true; changed;) {
-			changed = false;
-
-			// We need a new set to avoid 'concurrent modification' pendingException
-			Set<String> newGoals = new HashSet<>();
-			newGoals.addAll(goals);
-
-			// For each goal
-			for (String goal : goals) {
-				// Find all tasks required for this goal
-				List<Task> tasks = getTasksByOutput(goal);
-
-				if (tasks != null) // Add all task's input files
-					for (Task t : tasks) {
-						// Add all input files
-						if (t.getInputs() != null) {
-							for (String in : t.getInputs())
-								changed |= newGoals.add(in); // Add each node
-						}
-
-						// Add all task Ids
-						List<Task> depTasks = t.getDependencies();
-						if (depTasks != null) {
-							for (Task dt : depTasks)
-								changed |= newGoals.add(dt.getId()); // Add each task ID
-						}
-					}
-			}
-
-			goals = newGoals;
-		}
-
-		return goals;
-	}
-
 	/**
 	 * Find canonical path (cache return values)
 	 */
@@ -274,65 +240,12 @@ public class TaskDependecies implements Serializable {
 	}
 
 	/**
-	 * Find tasks required to achieve goal 'out'
+	 * Find and execute tasks required to achieve goal 'out'
 	 */
 	public synchronized Set<Task> goal(BdsThread bdsThread, String out) {
-		Set<Task> tasks = new HashSet<>();
-		goalRun(bdsThread, out, tasks);
-		return tasks;
-	}
-
-	/**
-	 * Does this goal need to be updated respect to the leaves
-	 */
-	boolean goalNeedsUpdate(String out) {
-		// Find all 'leaf nodes' (files) required for this goal
-		Set<String> leaves = findLeafNodes(out);
-		TaskDependency tasDep = new TaskDependency(null);
-		tasDep.addOutput(out);
-		tasDep.addInput(leaves);
-
-		if (debug) {
-			Timer.showStdErr("Goal: " + out + "\n\tLeaf nodes:");
-			for (String n : leaves)
-				System.err.println("\t\t'" + n + "'");
-		}
-
-		return tasDep.depOperator();
-	}
-
-	/**
-	 * Find all leaf nodes required for goal 'out'
-	 */
-	boolean goalRun(BdsThread bdsThread, String goal, Set<Task> addedTasks) {
-
-		// Check if we really need to update this goal (with respect to the leaf nodes)
-		if (!goalNeedsUpdate(goal)) return false;
+		Set<Task> tasks = goalTasks(out);
 
-		List<Task> tasks = getTasksByOutput(goal);
-		if (tasks == null) return false;
-
-		// Satisfy all goals before running
-		for (Task t : tasks) {
-			if (addedTasks.contains(t)) continue; // Don't add twice
-			addedTasks.add(t);
-
-			// Add file dependencies
-			if (t.getInputs() != null) {
-				for (String in : t.getInputs())
-					goalRun(bdsThread, in, addedTasks);
-			}
-
-			// Add task dependencies
-			if (t.getDependencies() != null) {
-				for (Task tt : t.getDependencies())
-					if (!addedTasks.contains(tt)) // Not added yet?
-						goalRun(bdsThread, tt.getId(), addedTasks);
-			}
-
-		}
-
-		// Run all tasks
+		// Run all tasks (dependencies first)
 		for (Task t : tasks) {
 			if (!t.isScheduled()) {
 				t.setDependency(false); // We are executing this task, so it it no longer a 'dep'
@@ -340,7 +253,14 @@ public class TaskDependecies implements Serializable {
 			}
 		}
 
-		return true;
+		return tasks;
+	}
+
+	/**
+	 * Find tasks required to achieve goal 'out', in execution order
+	 */
+	public synchronized Set<Task> goalTasks(String out) {
+		return new GoalGraph(this, out).build().goalTasks();
 	}
 
 	public synchronized boolean hasTask(String taskId) {
@@ -372,33 +292,78 @@ public class TaskDependecies implements Serializable {
 	}
 
 	/**
-	 * Is there a circular dependency for this task?
-	 */
-	boolean isCircular(Task task) {
-		boolean circ = isCircular(task, new HashSet<Task>());
-		return circ;
-	}
-
-	/**
-	 * Is there a circular dependency for this task?
+	 * Tasks creating 'task's input files
 	 */
-	@SuppressWarnings("unchecked")
-	boolean isCircular(Task task, HashSet<Task> tasks) {
-		if (!tasks.add(task)) return true;
-
-		// Get all input files, find corresponding tasks and recurse
+	List<Task> inputTasks(Task task) {
+		List<Task> inTasks = new ArrayList<>();
 		if (task.getInputs() != null) {
 			for (String in : task.getInputs()) {
 				List<Task> depTasks = getTasksByOutput(in);
+				if (depTasks != null) inTasks.addAll(depTasks);
+			}
+		}
+		return inTasks;
+	}
 
-				if (depTasks != null) {
-					for (Task t : depTasks) {
-						HashSet<Task> newTasks = (HashSet<Task>) tasks.clone();
-						if (isCircular(t, newTasks)) return true;
-					}
+	/**
+	 * Tasks using 'outPath' (and tasks depending on those ones) may
+	 * have new circular dependencies: Remove them from 'acyclic'
+	 */
+	void invalidateAcyclic(String outPath) {
+		Deque<String> paths = new ArrayDeque<>();
+		paths.add(outPath);
+
+		while (!paths.isEmpty()) {
+			List<Task> inTasks = tasksByInput.get(paths.remove());
+			if (inTasks == null) continue;
+
+			for (Task t : inTasks) {
+				// Note: If a task is not in 'acyclic', then neither are the tasks depending on it
+				if (acyclic.remove(t) && t.getOutputs() != null) {
+					for (String out : t.getOutputs())
+						paths.add(getCanonicalPath(out));
 				}
 			}
 		}
+	}
+
+	/**
+	 * Is there a circular dependency for this task?
+	 *
+	 * Depth first search following input files to the tasks creating them.
+	 * Tasks whose dependencies are fully explored without finding a cycle
+	 * are added to 'acyclic', so they are not explored again (unless a new
+	 * task creates one of their input files, see 'invalidateAcyclic')
+	 */
+	boolean isCircular(Task task) {
+		if (acyclic.contains(task)) return false;
+
+		Set<Task> path = new HashSet<>(); // Tasks in current DFS path
+		Deque<Task> stack = new ArrayDeque<>();
+		Deque<Iterator<Task>> stackIt = new ArrayDeque<>();
+		path.add(task);
+		stack.push(task);
+		stackIt.push(inputTasks(task).iterator());
+
+		while (!stack.isEmpty()) {
+			Iterator<Task> it = stackIt.peek();
+			if (it.hasNext()) {
+				Task t = it.next();
+				if (path.contains(t)) return true;
+				if (acyclic.contains(t)) continue;
+
+				path.add(t);
+				stack.push(t);
+				stackIt.push(inputTasks(t).iterator());
+			} else {
+				// All dependencies explored
+				Task t = stack.pop();
+				stackIt.pop();
+				path.remove(t);
+				acyclic.add(t);
+			}
+		}
+
 		return false;
 	}
 
@@ -417,6 +382,17 @@ public class TaskDependecies implements Serializable {
 	 * Resolve un-serialization
 	 */
 	private Object readResolve() throws ObjectStreamException {
+		// Indexes missing in older versions
+		if (acyclic == null) acyclic = new HashSet<>();
+		if (tasksByInput == null) {
+			tasksByInput = new AutoHashMap<>(new LinkedList<Task>());
+			for (Task task : tasks)
+				if (task.getInputs() != null) {
+					for (String inFile : task.getInputs())
+						addTaskByInput(inFile, task);
+				}
+		}
+
 		taskDependeciesInstance = this;
 		return this;
 	}
@@ -433,14 +409,6 @@ public class TaskDependecies implements Serializable {
 		return tasksById.size();
 	}
 
-	void sleep() {
-		try {
-			Thread.sleep(SLEEP_TIME);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-	}
-
 	/**
 	 * A string of at most 'num' task names of tasks that failed
 	 */
@@ -490,9 +458,10 @@ public class TaskDependecies implements Serializable {
 
 		if (debug) Timer.showStdErr("Wait: Waiting for task to finish: " + task.getId() + ", state: " + task.getTaskState());
 
-		// Wait for task to finish
+		// Wait for task to finish: Task notifies waiting threads on every
+		// state change, SLEEP_TIME is only an upper bound between log reports
 		while (!task.isDone()) {
-			sleep();
+			task.waitDone(SLEEP_TIME);
 			if (Config.get().isLog()) {
 				Report.reportTime();
 			}
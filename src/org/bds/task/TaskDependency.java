@@ -6,6 +6,8 @@ import java.util.Collection;
 import java.util.List;
 
 import org.bds.data.Data;
+import org.bds.data.FileStat;
+import org.bds.data.FileStatCache;
 import org.bds.lang.BdsNode;
 import org.bds.lang.value.Value;
 import org.bds.lang.value.ValueList;
@@ -28,6 +30,14 @@ public class TaskDependency implements Serializable {
 	protected String checkOutputs; // Errors that pop-up when checking output files
 	protected List<Task> tasks; // Task that need to finish before this one is executed
 
+	/**
+	 * Path used for a dependency file: URL if remote, absolute path if local
+	 */
+	public static String filePath(String file) {
+		Data d = BdsThreads.data(file);
+		return d.isRemote() ? d.toString() : d.getAbsolutePath();
+	}
+
 	public TaskDependency() {
 		this(null);
 	}
@@ -72,9 +82,7 @@ public class TaskDependency implements Serializable {
 			tasks.add(task);
 		} else {
 			// Not a taksID, must be an input 'data' (a file)
-			Data d = BdsThreads.data(input);
-			String filePath = d.isRemote() ? d.toString() : d.getAbsolutePath();
-			inputs.add(filePath);
+			inputs.add(filePath(input));
 		}
 	}
 
@@ -95,10 +103,7 @@ public class TaskDependency implements Serializable {
 	 * Add output
 	 */
 	public void addOutput(String output) {
-		Data d = BdsThreads.data(output);
-		String filePath = d.isRemote() ? d.toString() : d.getAbsolutePath();
-		outputs.add(filePath);
-		//		outputs.add(BdsThreads.data(output).getAbsolutePath());
+		outputs.add(filePath(output));
 	}
 
 	public void addOutput(ValueList outputs) {
@@ -115,8 +120,9 @@ public class TaskDependency implements Serializable {
 		if (!task.isStateFinished() || outputs == null) return ""; // Nothing to check
 
 		checkOutputs = "";
+		FileStatCache fileStatCache = FileStatCache.get();
 		for (String fileName : outputs) {
-			Data dfile = Data.factory(fileName);
+			FileStat dfile = fileStatCache.stat(fileName);
 			if (!dfile.exists()) checkOutputs += "Error: Output file '" + fileName + "' does not exist.";
 			else if ((!task.isAllowEmpty()) && (dfile.size() <= 0)) checkOutputs += "Error: Output file '" + fileName + "' has zero length.";
 		}
@@ -148,42 +154,18 @@ public class TaskDependency implements Serializable {
 		// Calculate minimum modification time
 		//---
 
-		long minModifiedLeft = Long.MAX_VALUE;
-		for (String output : outputs) {
-			Data dataOut = Data.factory(output);
-
-			// Any 'left' file does not exists? => We need to build this dependency
-			if (!dataOut.exists()) {
-				if (debug) log("Left hand side: file '" + output + "' doesn't exist");
-				return true;
-			}
-
-			if (dataOut.isFile() && dataOut.size() <= 0) {
-				if (debug) log("Left hand side: file '" + output + "' is empty");
-				return true; // File is empty? => We need to build this dependency.
-			} else if (dataOut.isDirectory()) {
-				// Notice: If it is a directory, we must rebuild if it is empty
-				List<Data> dirList = dataOut.list();
-				if (dirList.isEmpty()) {
-					if (debug) log("Left hand side: file '" + output + "' is an empty dir");
-					return true;
-				}
-			}
-
-			// Analyze modification time
-			long modTime = dataOut.getLastModified().getTime();
-			minModifiedLeft = Math.min(minModifiedLeft, modTime);
-			if (debug) log("Left hand side: file '" + output + "' modified on " + modTime + ". Min modification time: " + minModifiedLeft);
-		}
+		long minModifiedLeft = minModifiedLeft();
+		if (minModifiedLeft == Long.MIN_VALUE) return true; // Some output needs to be built
 
 		//---
 		// Right hand side
 		// Calculate maximum modification time
 		//---
 
+		FileStatCache fileStatCache = FileStatCache.get();
 		long maxModifiedRight = Long.MIN_VALUE;
 		for (String inout : inputs) {
-			Data dataIn = Data.factory(inout);
+			FileStat dataIn = fileStatCache.stat(inout);
 
 			// Is this file scheduled to be modified by a pending task? => Time will change => We'll need to update
 			List<Task> taskOutList = TaskDependecies.get().getTasksByOutput(inout);
@@ -199,7 +181,7 @@ public class TaskDependency implements Serializable {
 
 			if (dataIn.exists()) {
 				// Update max time
-				long modTime = dataIn.getLastModified().getTime();
+				long modTime = dataIn.getLastModified();
 				maxModifiedRight = Math.max(maxModifiedRight, modTime);
 				if (debug) log("Right hand side: file '" + inout + "' modified on " + modTime + ". Max modification time: " + maxModifiedRight);
 			} else {
@@ -218,6 +200,25 @@ public class TaskDependency implements Serializable {
 		return ret;
 	}
 
+	/**
+	 * Calculate the result of '<-' operator when the maximum modification
+	 * time of the inputs is already known (see GoalGraph)
+	 *
+	 * @param maxModifiedRight : Maximum modification time of the inputs (Long.MIN_VALUE
+	 *                           if there are no inputs, Long.MAX_VALUE if any input is missing)
+	 */
+	boolean depOperator(long maxModifiedRight) {
+		if (debug) log("Evaluating dependencies: " + outputs + ", max modification time of inputs: " + maxModifiedRight);
+
+		long minModifiedLeft = minModifiedLeft();
+		if (minModifiedLeft == Long.MIN_VALUE) return true; // Some output needs to be built
+		if (maxModifiedRight == Long.MAX_VALUE) return true; // Some input doesn't exist
+
+		boolean ret = (minModifiedLeft < maxModifiedRight);
+		if (debug) log("Modification times, minModifiedLeft (" + minModifiedLeft + ") < maxModifiedRight (" + maxModifiedRight + "): " + ret);
+		return ret;
+	}
+
 	public List<String> getInputs() {
 		return inputs;
 	}
@@ -243,6 +244,42 @@ public class TaskDependency implements Serializable {
 		else Timer.showStdErr(getClass().getSimpleName() + " : " + msg);
 	}
 
+	/**
+	 * Minimum modification time of the output files ('left hand side')
+	 * @return Long.MIN_VALUE if any output needs to be built (it doesn't exist, or it is empty)
+	 */
+	long minModifiedLeft() {
+		FileStatCache fileStatCache = FileStatCache.get();
+		long minModifiedLeft = Long.MAX_VALUE;
+		for (String output : outputs) {
+			FileStat dataOut = fileStatCache.stat(output);
+
+			// Any 'left' file does not exists? => We need to build this dependency
+			if (!dataOut.exists()) {
+				if (debug) log("Left hand side: file '" + output + "' doesn't exist");
+				return Long.MIN_VALUE;
+			}
+
+			if (dataOut.isFile() && dataOut.size() <= 0) {
+				if (debug) log("Left hand side: file '" + output + "' is empty");
+				return Long.MIN_VALUE; // File is empty? => We need to build this dependency.
+			} else if (dataOut.isDirectory()) {
+				// Notice: If it is a directory, we must rebuild if it is empty
+				if (fileStatCache.isEmptyDir(output)) {
+					if (debug) log("Left hand side: file '" + output + "' is an empty dir");
+					return Long.MIN_VALUE;
+				}
+			}
+
+			// Analyze modification time
+			long modTime = dataOut.getLastModified();
+			minModifiedLeft = Math.min(minModifiedLeft, modTime);
+			if (debug) log("Left hand side: file '" + output + "' modified on " + modTime + ". Min modification time: " + minModifiedLeft);
+		}
+
+		return minModifiedLeft;
+	}
+
 	public void setDebug(boolean debug) {
 		this.debug = debug;
 	}
@@ -47,22 +47,34 @@ public class TaskVmOpcode extends SysVmOpcode {
 	protected String createCommands(String sysCmds) {
 		HashMap<String, String> replace = new HashMap<>();
 		StringBuilder sbDown = new StringBuilder();
+		StringBuilder sbWait = new StringBuilder();
 		StringBuilder sbUp = new StringBuilder();
+		int downloads = 0;
 
 		if (taskDependency != null) {
 			//---
 			// Are there any remote inputs?
 			// We need to create the appropriate 'download' commands
+			// Note: Downloads run concurrently (in background), then we
+			// 'wait' for each one, so that a failed download makes the
+			// task fail (same as running them sequentially)
 			//---
 			if (taskDependency.getInputs() != null) {
 				for (String in : taskDependency.getInputs()) {
 					Data dataIn = Data.factory(in);
 					if (dataIn.isRemote()) {
 						String uriStr = dataIn.toString();
+						if (replace.containsKey(uriStr)) continue; // Already downloaded
+
+						downloads++;
+						String pidVar = "bds_download_" + downloads;
 						sbDown.append(ExpressionTask.CMD_DOWNLOAD //
 								+ " \"" + uriStr + "\"" //
 								+ " \"" + dataIn.getLocalPath() + "\"" //
-								+ "\n");
+								+ " &\n" //
+								+ pidVar + "=$!\n" //
+						);
+						sbWait.append("wait $" + pidVar + "\n");
 
 						replace.put(uriStr, dataIn.getLocalPath());
 					}
@@ -106,6 +118,7 @@ public class TaskVmOpcode extends SysVmOpcode {
 		if (sbDown.length() > 0) {
 			sbSys.append("# Download commands\n");
 			sbSys.append(sbDown);
+			sbSys.append(sbWait);
 		}
 
 		sbSys.append(sysCmds);
@@ -143,6 +156,7 @@ public class TaskVmOpcode extends SysVmOpcode {
 		task.setCurrentDir(bdsThread.getCurrentDir());
 		task.setNode(bdsThread.getString(ExpressionTask.TASK_OPTION_NODE));
 		task.setQueue(bdsThread.getString(ExpressionTask.TASK_OPTION_QUEUE));
+		task.setPriority(getPriority());
 		task.setMaxFailCount((int) bdsThread.getInt(ExpressionTask.TASK_OPTION_RETRY) + 1); // Note: Max fail count is the number of retries plus one (we always run at least once)
 
 		boolean detached = bdsThread.getBool(ExpressionTask.TASK_OPTION_DETACHED);
@@ -180,6 +194,16 @@ public class TaskVmOpcode extends SysVmOpcode {
 		execute(bdsThread, task);
 	}
 
+	/**
+	 * Task priority (default 0)
+	 * Note: A program may use a variable named 'priority' for something else (e.g. a
+	 * string), only 'int' values are used as task priority
+	 */
+	protected int getPriority() {
+		Value priority = bdsThread.getValue(ExpressionTask.TASK_OPTION_PRIORITY);
+		return priority != null && priority.getType().isInt() ? (int) priority.asInt() : 0;
+	}
+
 	@Override
 	protected String getTaskName() {
 		return bdsThread.hasVariable(ExpressionTask.TASK_OPTION_TASKNAME) ? bdsThread.getString(ExpressionTask.TASK_OPTION_TASKNAME) : null;
@@ -0,0 +1,311 @@
+package org.bds.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A minimal, in-process, S3 compatible server used for testing transfers
+ *
+ * Supports (path style requests only):
+ *   - HEAD / GET objects (including ranged GET and 'If-Match')
+ *   - Failing ranged GET requests mid-transfer (see 'failRangedGets')
+ *   - PUT objects
+ *   - Multipart uploads (initiate, upload part, list parts, complete)
+ *
+ * Note: Requests are not authenticated
+ *
+ * @author pcingola
+ */
+public class S3MockServer {
+
+	HttpServer server;
+	ExecutorService executor;
+	Map<String, byte[]> objects = new ConcurrentHashMap<>(); // Objects by path ('/bucket/key')
+	Map<String, ZonedDateTime> lastModified = new ConcurrentHashMap<>(); // Objects modification time by path
+	Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>(); // Multipart uploads: parts by upload ID
+	AtomicInteger uploadIds = new AtomicInteger();
+	AtomicInteger rangedGetsToFail = new AtomicInteger(); // Number of ranged GET requests that will fail mid-transfer
+
+	// Metrics
+	AtomicInteger gets = new AtomicInteger(); // Number of GET requests
+	AtomicInteger rangedGets = new AtomicInteger(); // Number of ranged GET requests
+	AtomicInteger partsUploaded = new AtomicInteger(); // Number of multipart upload parts
+
+	static String md5(byte[] data) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("MD5").digest(data))
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static Map<String, String> parseQuery(URI uri) {
+		Map<String, String> query = new HashMap<>();
+		String q = uri.getRawQuery();
+		if (q == null) return query;
+		for (String kv : q.split("&")) {
+			int idx = kv.indexOf('=');
+			if (idx < 0) query.put(kv, "");
+			else query.put(kv.substring(0, idx), kv.substring(idx + 1));
+		}
+		return query;
+	}
+
+	/**
+	 * Read request's body (decoding 'aws-chunked' payloads)
+	 */
+	static byte[] readBody(HttpExchange ex) throws IOException {
+		byte[] body = ex.getRequestBody().readAllBytes();
+		String sha = ex.getRequestHeaders().getFirst("x-amz-content-sha256");
+		if (sha == null || !sha.startsWith("STREAMING-")) return body;
+
+		// Format: 'hex-size;chunk-signature=...\r\n' + data + '\r\n'
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int pos = 0;
+		while (pos < body.length) {
+			int eol = pos;
+			while (body[eol] != '\r')
+				eol++;
+			String header = new String(body, pos, eol - pos, StandardCharsets.US_ASCII);
+			int len = Integer.parseInt(header.split(";")[0], 16);
+			if (len == 0) break;
+			out.write(body, eol + 2, len);
+			pos = eol + 2 + len + 2;
+		}
+		return out.toByteArray();
+	}
+
+	public S3MockServer() {
+		try {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", ex -> {
+			try {
+				handle(ex);
+			} catch (Throwable t) {
+				t.printStackTrace();
+				send(ex, 500, "InternalError", null);
+			} finally {
+				ex.close();
+			}
+		});
+	}
+
+	/**
+	 * Next 'count' ranged GET requests fail mid-transfer (the
+	 * connection is closed after sending half of the range)
+	 */
+	public void failRangedGets(int count) {
+		rangedGetsToFail.set(count);
+	}
+
+	public String getEndpoint() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	public byte[] getObject(String bucket, String key) {
+		return objects.get("/" + bucket + "/" + key);
+	}
+
+	public int getGets() {
+		return gets.get();
+	}
+
+	public int getPartsUploaded() {
+		return partsUploaded.get();
+	}
+
+	public int getRangedGets() {
+		return rangedGets.get();
+	}
+
+	void handle(HttpExchange ex) throws IOException {
+		String method = ex.getRequestMethod();
+		String path = ex.getRequestURI().getPath();
+		Map<String, String> query = parseQuery(ex.getRequestURI());
+
+		switch (method) {
+		case "HEAD":
+		case "GET":
+			if (query.containsKey("uploadId")) handleListParts(ex, path, query.get("uploadId"));
+			else handleGet(ex, path, method.equals("HEAD"));
+			break;
+
+		case "PUT":
+			byte[] data = readBody(ex);
+			if (query.containsKey("uploadId")) {
+				// Upload a part
+				uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), data);
+				partsUploaded.incrementAndGet();
+			} else {
+				put(path, data);
+			}
+			ex.getResponseHeaders().add("ETag", "\"" + md5(data) + "\"");
+			ex.sendResponseHeaders(200, -1);
+			break;
+
+		case "POST":
+			readBody(ex);
+			String bucket = path.substring(1, path.indexOf('/', 1));
+			String key = path.substring(path.indexOf('/', 1) + 1);
+			if (query.containsKey("uploads")) {
+				// Initiate multipart upload
+				String uploadId = "upload_" + uploadIds.incrementAndGet();
+				uploads.put(uploadId, Collections.synchronizedMap(new TreeMap<>()));
+				send(ex, 200, null, "<InitiateMultipartUploadResult>" //
+						+ "<Bucket>" + bucket + "</Bucket>" //
+						+ "<Key>" + key + "</Key>" //
+						+ "<UploadId>" + uploadId + "</UploadId>" //
+						+ "</InitiateMultipartUploadResult>" //
+				);
+			} else {
+				// Complete multipart upload: Join all parts
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				for (byte[] part : uploads.remove(query.get("uploadId")).values())
+					out.write(part);
+				byte[] obj = out.toByteArray();
+				put(path, obj);
+				send(ex, 200, null, "<CompleteMultipartUploadResult>" //
+						+ "<Location>" + getEndpoint() + path + "</Location>" //
+						+ "<Bucket>" + bucket + "</Bucket>" //
+						+ "<Key>" + key + "</Key>" //
+						+ "<ETag>\"" + md5(obj) + "\"</ETag>" //
+						+ "</CompleteMultipartUploadResult>" //
+				);
+			}
+			break;
+
+		default:
+			send(ex, 405, "MethodNotAllowed", null);
+		}
+	}
+
+	void handleGet(HttpExchange ex, String path, boolean head) throws IOException {
+		byte[] data = objects.get(path);
+		if (data == null) {
+			if (head) ex.sendResponseHeaders(404, -1);
+			else send(ex, 404, "NoSuchKey", null);
+			return;
+		}
+
+		String etag = "\"" + md5(data) + "\"";
+		ex.getResponseHeaders().add("ETag", etag);
+		ex.getResponseHeaders().add("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(lastModified.get(path)));
+		ex.getResponseHeaders().add("Content-Type", "application/octet-stream");
+		ex.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+		if (head) {
+			ex.getResponseHeaders().add("Content-Length", "" + data.length);
+			ex.sendResponseHeaders(200, -1);
+			return;
+		}
+
+		String ifMatch = ex.getRequestHeaders().getFirst("If-Match");
+		if (ifMatch != null && !ifMatch.replace("\"", "").equals(md5(data))) { // Note: Quotes are optional
+			send(ex, 412, "PreconditionFailed", null);
+			return;
+		}
+
+		// Ranged request?
+		gets.incrementAndGet();
+		int start = 0, end = data.length - 1, status = 200;
+		String range = ex.getRequestHeaders().getFirst("Range");
+		if (range != null) {
+			String[] se = range.substring("bytes=".length()).split("-");
+			start = Integer.parseInt(se[0]);
+			end = Math.min(end, Integer.parseInt(se[1]));
+			status = 206;
+			ex.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+			rangedGets.incrementAndGet();
+		}
+
+		int len = end - start + 1;
+		ex.sendResponseHeaders(status, len);
+		if (range != null && rangedGetsToFail.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+			// Fail mid-transfer: Send half of the range, the connection is closed when the exchange is closed
+			OutputStream os = ex.getResponseBody();
+			os.write(data, start, len / 2);
+			os.flush();
+			return;
+		}
+
+		try (OutputStream os = ex.getResponseBody()) {
+			os.write(data, start, len);
+		}
+	}
+
+	/**
+	 * List parts already uploaded
+	 */
+	void handleListParts(HttpExchange ex, String path, String uploadId) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<ListPartsResult><UploadId>" + uploadId + "</UploadId><IsTruncated>false</IsTruncated>");
+		for (Map.Entry<Integer, byte[]> part : uploads.get(uploadId).entrySet())
+			sb.append("<Part><PartNumber>" + part.getKey() + "</PartNumber>" //
+					+ "<ETag>\"" + md5(part.getValue()) + "\"</ETag>" //
+					+ "<Size>" + part.getValue().length + "</Size></Part>" //
+			);
+		sb.append("</ListPartsResult>");
+		send(ex, 200, null, sb.toString());
+	}
+
+	void put(String path, byte[] data) {
+		lastModified.put(path, ZonedDateTime.now(ZoneOffset.UTC));
+		objects.put(path, data);
+	}
+
+	public void putObject(String bucket, String key, byte[] data) {
+		put("/" + bucket + "/" + key, data);
+	}
+
+	/**
+	 * Send a response (an error if 'errorCode' is not null)
+	 */
+	void send(HttpExchange ex, int status, String errorCode, String xml) throws IOException {
+		if (errorCode != null) xml = "<Error><Code>" + errorCode + "</Code><Message>" + errorCode + "</Message></Error>";
+		byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xml).getBytes(StandardCharsets.UTF_8);
+		ex.getResponseHeaders().add("Content-Type", "application/xml");
+		ex.sendResponseHeaders(status, body.length);
+		try (OutputStream os = ex.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	public S3MockServer start() {
+		server.start();
+		return this;
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+}
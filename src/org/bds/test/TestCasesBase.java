@@ -8,6 +8,7 @@ import java.util.TimeZone;
 
 import org.bds.Bds;
 import org.bds.Config;
+import org.bds.compile.CompileCache;
 import org.bds.data.Data;
 import org.bds.data.DataRemote;
 import org.bds.data.DataS3;
@@ -30,6 +31,8 @@ import junit.framework.Assert;
  */
 public class TestCasesBase {
 
+	public static final String COMPILE_CACHE_DIR = "/tmp/bds/compile_cache_test"; // Don't use (or fill) the user's compile cache
+
 	public boolean debug = false;
 	public boolean verbose = false;
 
@@ -48,6 +51,13 @@ public class TestCasesBase {
 		Config.reset();
 		Executioners.reset();
 		BdsThreads.reset();
+
+		// Compile cache uses a test directory (the cache is created now, so the setting is kept after Config is reset)
+		Config.get().load();
+		Config.get().set(Config.COMPILE_CACHE_DIR, COMPILE_CACHE_DIR);
+		CompileCache.reset();
+		CompileCache.get();
+		Config.reset();
 	}
 
 	void checkInterpolate(String str, String strings[], String vars[]) {
@@ -186,6 +196,17 @@ public class TestCasesBase {
 		return bdsTest;
 	}
 
+	/**
+	 * Check that a file compiles without any errors, runs and all variables have their expected values
+	 */
+	BdsTest runAndCheck(String fileName, String[] args, Map<String, Object> expectedValues) {
+		BdsTest bdsTest = new BdsTest(fileName, args, verbose, debug);
+		bdsTest.run();
+		bdsTest.checkRunOk();
+		bdsTest.checkVariables(expectedValues);
+		return bdsTest;
+	}
+
 	/**
 	 * Check that a file compiles without any errors, runs and a variable have its expected map
 	 */
@@ -4,9 +4,13 @@ import java.io.File;
 import java.util.List;
 
 import org.bds.Bds;
+import org.bds.data.Data;
+import org.bds.lang.value.ValueList;
 import org.bds.run.BdsThread;
 import org.bds.run.BdsThreads;
+import org.bds.run.Checkpoint;
 import org.bds.util.Gpr;
+import org.bds.util.Timer;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -325,4 +329,69 @@ public class TestCasesCheckpoint extends TestCasesBase {
 		runAndCheckpoint("test/checkpoint_30.bds", checkpointFile, "sum", 285);
 	}
 
+	/**
+	 * Compare checkpoint sizes and times: Java serialization of the whole
+	 * object graph vs. program image + state
+	 */
+	@Test
+	public void test31_checkpoint_program_image() throws Exception {
+		Gpr.debug("Test");
+		Bds bds = runAndCheckpoint("test/checkpoint_31.bds", "test/checkpoint_31.chp", "sum", 347050);
+		BdsThread bdsThread = bds.getBdsRun().getBdsThread();
+
+		// Full serialization
+		String chpSerialized = "test/checkpoint_31.serialized.chp";
+		Timer timer = new Timer();
+		Checkpoint.saveSerialized(bdsThread, chpSerialized);
+		long timeSerialized = timer.elapsed();
+		long sizeSerialized = new File(chpSerialized).length();
+
+		// Program image + state. First checkpoint creates the image
+		String chpState = "test/checkpoint_31.state.chp";
+		timer = new Timer();
+		Checkpoint checkpoint = Checkpoint.get(bdsThread);
+		Assert.assertNotNull("Cannot create program image", checkpoint);
+		checkpoint.save(bdsThread, Data.factory(chpState), chpState);
+		long timeFirst = timer.elapsed();
+
+		// Next checkpoints only serialize the state
+		timer = new Timer();
+		checkpoint.save(bdsThread, Data.factory(chpState), chpState);
+		long timeState = timer.elapsed();
+		long sizeState = new File(chpState).length();
+		File imageFile = new File("test/" + checkpoint.getImageName());
+		long sizeImage = imageFile.length();
+
+		if (verbose) System.out.println("Serialized: " + sizeSerialized + " bytes, " + timeSerialized + " ms" //
+				+ "\nImage + state: " + sizeImage + " + " + sizeState + " bytes, " + timeFirst + " ms (first), " + timeState + " ms (state only)" //
+		);
+
+		// Load checkpoint and check state
+		BdsThread bdsThreadLoaded = Checkpoint.load(chpState);
+		Assert.assertEquals(bdsThread.getProgramUnit().getFileName(), bdsThreadLoaded.getProgramUnit().getFileName());
+		Assert.assertEquals(100L, ((ValueList) bdsThreadLoaded.getScope().getValue("points")).size());
+
+		Assert.assertTrue("State (" + sizeState + " bytes) should be smaller than full serialization (" + sizeSerialized + " bytes)", sizeState < sizeSerialized);
+
+		// Single file checkpoint (program image is embedded): Can be loaded without the image file
+		imageFile.delete();
+		String chpSingle = "test/checkpoint_31.single.chp";
+		checkpoint.save(bdsThread, Data.factory(chpSingle), chpSingle, true);
+		Assert.assertFalse("Image file should not be created", imageFile.exists());
+		bdsThreadLoaded = Checkpoint.load(chpSingle);
+		Assert.assertEquals(100L, ((ValueList) bdsThreadLoaded.getScope().getValue("points")).size());
+
+		// Image file is written again (the image is not kept in memory)
+		checkpoint.save(bdsThread, Data.factory(chpState), chpState);
+		imageFile = new File("test/" + checkpoint.getImageName());
+		Assert.assertTrue("Image file should be created", imageFile.exists());
+		bdsThreadLoaded = Checkpoint.load(chpState);
+		Assert.assertEquals(100L, ((ValueList) bdsThreadLoaded.getScope().getValue("points")).size());
+
+		new File(chpSerialized).delete();
+		new File(chpState).delete();
+		new File(chpSingle).delete();
+		imageFile.delete();
+	}
+
 }
@@ -1,9 +1,22 @@
 package org.bds.test;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bds.cluster.ClusterSsh;
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostSsh;
+import org.bds.osCmd.Ssh;
+import org.bds.osCmd.SshSessionPool;
+import org.bds.osCmd.SshSessionPool.PooledSession;
 import org.bds.task.Task;
 import org.bds.util.Gpr;
 import org.junit.Test;
 
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
 import junit.framework.Assert;
 
 /**
@@ -36,4 +49,115 @@ public class TestCasesClusterSsh extends TestCasesBase {
 			);
 		}
 	}
+
+	/**
+	 * Ssh connections are reused
+	 */
+	@Test
+	public void test02_session_pool() {
+		Gpr.debug("Test");
+
+		SshSessionPool.reset();
+		HostSsh host = new HostSsh(new ClusterSsh(), "localhost");
+
+		for (int i = 0; i < 3; i++) {
+			Ssh ssh = new Ssh(host);
+			String out = ssh.exec("echo hello_" + i);
+			if (verbose) Gpr.debug("Output: " + out);
+			Assert.assertTrue(out.contains("hello_" + i));
+			Assert.assertEquals(0, ssh.getExitValue());
+		}
+
+		SshSessionPool pool = SshSessionPool.get();
+		if (verbose) Gpr.debug(pool);
+		Assert.assertEquals(3, pool.getChannelsOpened());
+		Assert.assertEquals(1, pool.getSessionsCreated());
+		Assert.assertEquals(2, pool.getSessionsReused());
+		SshSessionPool.reset();
+	}
+
+	/**
+	 * Session pool: Check out, release and retire sessions (no network access)
+	 */
+	@Test
+	public void test03_session_pool_retire() throws JSchException {
+		Gpr.debug("Test");
+
+		// Sessions are never connected: 'dropped' simulates sessions disconnected by the server
+		Set<Session> dropped = new HashSet<>();
+		Set<Session> disconnected = new HashSet<>();
+		SshSessionPool pool = new SshSessionPool(2, 0) {
+			@Override
+			protected Session connect(Host host) throws JSchException {
+				return new JSch().getSession(host.getUserName(), host.getHostName(), host.getPort());
+			}
+
+			@Override
+			protected void disconnect(Session session) {
+				disconnected.add(session);
+			}
+
+			@Override
+			protected boolean isConnected(Session session) {
+				return !dropped.contains(session) && !disconnected.contains(session);
+			}
+		};
+
+		HostSsh host = new HostSsh(new ClusterSsh(), "localhost");
+
+		// Two channels per session
+		PooledSession ps1 = pool.acquire(host);
+		PooledSession ps2 = pool.acquire(host);
+		PooledSession ps3 = pool.acquire(host);
+		Assert.assertSame(ps1, ps2);
+		Assert.assertNotSame(ps1, ps3);
+		Assert.assertEquals(2, ps1.getChannels());
+		Assert.assertEquals(2, pool.getSessionsCreated());
+		Assert.assertEquals(2, pool.getSessions(host));
+
+		// Released channel is reused
+		ps1.release();
+		Assert.assertSame(ps1, pool.acquire(host));
+		Assert.assertEquals(2, pool.getSessionsCreated());
+
+		// Retired session is not handed out, but it's not disconnected while channels are open
+		ps1.retire();
+		Assert.assertTrue(ps1.isRetired());
+		Assert.assertEquals(1, pool.getSessions(host));
+		Assert.assertFalse(disconnected.contains(ps1.getSession()));
+		PooledSession ps4 = pool.acquire(host);
+		Assert.assertSame(ps3, ps4);
+		Assert.assertNotSame(ps1, pool.acquire(host));
+		Assert.assertEquals(3, pool.getSessionsCreated());
+
+		// Retired session is disconnected after its last channel is released
+		ps1.release();
+		Assert.assertFalse(disconnected.contains(ps1.getSession()));
+		ps1.release();
+		Assert.assertTrue(disconnected.contains(ps1.getSession()));
+
+		// Dropped session is retired when found, channels on other sessions are not affected
+		dropped.add(ps3.getSession());
+		ps3.release();
+		PooledSession ps5 = pool.acquire(host);
+		Assert.assertTrue(ps3.isRetired());
+		Assert.assertNotSame(ps3, ps5);
+		Assert.assertFalse(disconnected.contains(ps3.getSession()));
+		ps3.release();
+		Assert.assertTrue(disconnected.contains(ps3.getSession()));
+		Assert.assertEquals(2, pool.getSessionsRetired());
+
+		// Session fails to open a channel: It is retired
+		try {
+			ps5.openChannel("exec");
+			Assert.fail("Channel should not open on a session that is not connected");
+		} catch (JSchException e) {
+			// Expected
+		}
+		Assert.assertTrue(ps5.isRetired());
+		Assert.assertEquals(3, pool.getSessionsRetired());
+
+		pool.close();
+	}
+
 }
@@ -1,13 +1,28 @@
 package org.bds.test;
 
+import java.io.File;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.bds.Config;
 import org.bds.executioner.CheckTasksRunning;
 import org.bds.executioner.Executioner;
+import org.bds.executioner.ExecutionerCluster;
+import org.bds.executioner.ExecutionerClusterFake;
 import org.bds.executioner.Executioners;
 import org.bds.executioner.Executioners.ExecutionerType;
+import org.bds.executioner.MonitorTask;
+import org.bds.executioner.TaskQueue;
+import org.bds.executioner.TaskRuntimeHistory;
+import org.bds.task.Task;
+import org.bds.task.TaskState;
 import org.bds.util.Gpr;
+import org.bds.util.Timer;
 import org.junit.Test;
 
 import junit.framework.Assert;
@@ -86,4 +101,363 @@ public class TestCasesExecutioners extends TestCasesBase {
 		if (verbose) System.out.println("Done");
 	}
 
+	@Test
+	public void test03_jobArrayPids() {
+		Gpr.debug("Test");
+
+		Config config = new Config();
+		config.setDebug(debug);
+		config.setVerbose(verbose);
+		config.load();
+
+		Executioners executioners = Executioners.getInstance(config);
+
+		// SGE: 'qsub -t'
+		ExecutionerCluster sge = (ExecutionerCluster) executioners.get(ExecutionerType.SGE);
+		String pid = sge.parseArrayPidLine("Your job-array 33.1-3:1 (\"STDIN\") has been submitted");
+		Assert.assertEquals("33", pid);
+		Assert.assertEquals("33.2", sge.arrayElementPid(pid, 2));
+
+		// SGE kills an element using 'qdel 33 -t 2'
+		Task t = task("t1", 1);
+		t.setPid(sge.arrayElementPid(pid, 2));
+		t.setPidArray(pid);
+		Assert.assertEquals(Arrays.asList("33", "-t", "2"), sge.arrayElementKillArgs(t));
+
+		// SLURM: 'sbatch --parsable --array'
+		ExecutionerCluster slurm = (ExecutionerCluster) executioners.get(ExecutionerType.SLURM);
+		pid = slurm.parseArrayPidLine("171984");
+		Assert.assertEquals("171984", pid);
+		Assert.assertEquals("171984_3", slurm.arrayElementPid(pid, 3));
+		t.setPid(slurm.arrayElementPid(pid, 3));
+		t.setPidArray(pid);
+		Assert.assertEquals(Arrays.asList("171984_3"), slurm.arrayElementKillArgs(t));
+
+		// Torque: 'qsub -t'
+		ExecutionerCluster pbs = (ExecutionerCluster) executioners.get(ExecutionerType.CLUSTER);
+		Assert.assertEquals("123[7].server", pbs.arrayElementPid("123[].server", 7));
+
+		// Finished
+		sge.kill();
+		slurm.kill();
+		pbs.kill();
+	}
+
+	@Test
+	public void test04_statOwnJobs() {
+		Gpr.debug("Test");
+
+		Config config = new Config();
+		config.setDebug(debug);
+		config.setVerbose(verbose);
+		config.load();
+		config.set(Config.CLUSTER_STAT_OWN_JOBS_ONLY, "false");
+		Executioners executioners = Executioners.getInstance(config);
+
+		// Disabled: Query all jobs
+		ExecutionerCluster slurm = (ExecutionerCluster) executioners.get(ExecutionerType.SLURM);
+		Assert.assertFalse(Arrays.asList(slurm.getCommandStat()).contains("-u"));
+		slurm.kill();
+
+		// Stat command should only query our own jobs
+		config.set(Config.CLUSTER_STAT_OWN_JOBS_ONLY, "true");
+		slurm = (ExecutionerCluster) executioners.get(ExecutionerType.SLURM);
+		String args[] = slurm.getCommandStat();
+		if (verbose) System.out.println("Stat command: " + String.join(" ", args));
+
+		int n = args.length;
+		Assert.assertEquals("squeue", args[0]);
+		Assert.assertEquals("-u", args[n - 2]);
+		Assert.assertEquals(System.getProperty("user.name"), args[n - 1]);
+
+		// PBS / Moab: Filtering by user changes the output format, so it is not used
+		ExecutionerCluster pbs = (ExecutionerCluster) executioners.get(ExecutionerType.PBS);
+		Assert.assertFalse(Arrays.asList(pbs.getCommandStat()).contains("-u"));
+
+		// Finished
+		slurm.kill();
+		pbs.kill();
+	}
+
+	/**
+	 * Ready tasks ids, in selection order
+	 */
+	String readyIds(TaskQueue queue) {
+		List<String> ids = new ArrayList<>();
+		for (Task t : queue.getReady())
+			ids.add(t.getId());
+		return String.join(" ", ids);
+	}
+
+	Task task(String id, int line, Task... deps) {
+		Task task = new Task(id, null, null, "test.bds", line);
+		for (Task dep : deps)
+			task.addDependency(dep);
+		return task;
+	}
+
+	@Test
+	public void test05_taskQueuePriority() {
+		Gpr.debug("Test");
+
+		TaskQueue queue = new TaskQueue();
+		Task t1 = task("t1", 1);
+		Task t2 = task("t2", 2);
+		Task t3 = task("t3", 3);
+		t2.setPriority(10);
+		t3.setPriority(-1);
+		queue.add(t1);
+		queue.add(t2);
+		queue.add(t3);
+		queue.add(task("t4", 4));
+
+		// Higher priority first, then queuing order
+		Assert.assertEquals("t2 t1 t4 t3", readyIds(queue));
+
+		queue.remove(t2);
+		Assert.assertEquals("t1 t4 t3", readyIds(queue));
+	}
+
+	@Test
+	public void test06_taskQueueCriticalPath() {
+		Gpr.debug("Test");
+
+		// Run time estimates, by program line
+		TaskRuntimeHistory history = new TaskRuntimeHistory("tmp_test06_runtimes.txt");
+		history.add("test.bds:1", 10);
+		history.add("test.bds:2", 100);
+		history.add("test.bds:3", 20);
+
+		// DAG: 'a' (short) heads a long chain, 'b' (long) has no dependents, 'c' is short
+		Task a = task("a", 1);
+		Task b = task("b", 2);
+		Task c = task("c", 1);
+		Task a2 = task("a2", 2, a);
+		Task a3 = task("a3", 3, a2);
+
+		// FIFO ordering
+		TaskQueue fifo = new TaskQueue();
+		for (Task t : new Task[] { a, b, c, a2, a3 })
+			fifo.add(t);
+		Assert.assertEquals("a b c", readyIds(fifo));
+
+		// Critical path ordering: Path lengths are updated as dependent tasks are queued
+		TaskQueue queue = new TaskQueue(history);
+		for (Task t : new Task[] { c, b, a })
+			queue.add(t);
+		Assert.assertEquals("b c a", readyIds(queue));
+
+		queue.add(a2);
+		queue.add(a3);
+		Assert.assertEquals(130.0, queue.getPathLength(a), 0.0);
+		Assert.assertEquals(120.0, queue.getPathLength(a2), 0.0);
+		Assert.assertEquals("a b c", readyIds(queue));
+
+		// Priority overrides critical path
+		queue.remove(c);
+		c.setPriority(1);
+		queue.add(c);
+		Assert.assertEquals("c a b", readyIds(queue));
+
+		// 'a' finished: 'a2' is ready
+		queue.remove(a);
+		queue.taskDone(a);
+		Assert.assertEquals("c a2 b", readyIds(queue));
+	}
+
+	/**
+	 * Benchmark: Monitor 50K tasks sharing a log directory, only
+	 * some of them finished (i.e. have an exit file)
+	 */
+	@Test
+	public void test07_monitorTaskLargeDir() {
+		Gpr.debug("Test");
+		int numTasks = 50 * 1000;
+		int finishedEvery = 100;
+		String dir = "/tmp/bds/monitor_07_" + System.currentTimeMillis();
+		new File(dir).mkdirs();
+
+		Config config = new Config();
+		config.load();
+
+		// Create tasks: Each task has a program file and STDOUT in the log directory
+		Timer timer = new Timer();
+		MonitorTask monitorTask = new MonitorTask();
+		List<Task> finished = new ArrayList<>();
+		for (int i = 0; i < numTasks; i++) {
+			Task task = new Task("task_monitor_07_" + i, dir + "/task_" + i + ".sh", "echo " + i, "test.bds", 1);
+			task.createProgramFile();
+			Gpr.toFile(task.getStdoutFile(), "");
+			if (i % finishedEvery == 0) {
+				Gpr.toFile(task.getExitCodeFile(), "0");
+				finished.add(task);
+			}
+			monitorTask.add(null, task);
+		}
+		if (verbose) System.out.println("Created " + numTasks + " tasks in '" + dir + "': " + timer.elapsed() + " ms");
+
+		try {
+			// Check each exit file
+			monitorTask.setDirListMinTasks(Integer.MAX_VALUE);
+			timer.start();
+			Set<Task> finishedStat = monitorTask.findFinished();
+			long timeStat = timer.elapsed();
+
+			// List log directory
+			monitorTask.setDirListMinTasks(MonitorTask.DIR_LIST_MIN_TASKS);
+			timer.start();
+			Set<Task> finishedList = monitorTask.findFinished();
+			long timeList = timer.elapsed();
+
+			if (verbose) System.out.println("Finished tasks: " + finishedList.size() + " / " + numTasks //
+					+ "\n\tCheck each exit file : " + timeStat + " ms" //
+					+ "\n\tList log directory   : " + timeList + " ms" //
+			);
+			Assert.assertEquals(finished.size(), finishedStat.size());
+			Assert.assertEquals(finished.size(), finishedList.size());
+			Assert.assertTrue(finishedList.containsAll(finished));
+
+			// Finished tasks are no longer monitored
+			for (Task task : finished)
+				monitorTask.remove(task);
+			Assert.assertEquals(0, monitorTask.findFinished().size());
+		} finally {
+			for (File f : new File(dir).listFiles())
+				f.delete();
+			new File(dir).delete();
+		}
+	}
+
+	/**
+	 * Submit tasks to a (fake) cluster in batches: All tasks
+	 * should be submitted as one job array and finish OK
+	 */
+	@Test
+	public void test08_clusterBatchFake() throws Exception {
+		Gpr.debug("Test");
+		int numTasks = 10;
+
+		// Use the fake cluster from this source tree
+		String fakeClusterDir = new File("fakeCluster").getAbsolutePath();
+		String fakeClusterOri = ExecutionerClusterFake.FAKE_CLUSTER;
+		ExecutionerClusterFake.FAKE_CLUSTER = fakeClusterDir + "/";
+		new ProcessBuilder(fakeClusterDir + "/reset").start().waitFor();
+		Process fakeCluster = new ProcessBuilder(fakeClusterDir + "/fakeCluster.sh") //
+				.redirectErrorStream(true) //
+				.redirectOutput(Redirect.to(new File("/dev/null"))) //
+				.start();
+
+		try {
+			String[] args = { "-c", "test/cluster_batch_01.config", "-s", "fake" };
+			BdsTest bdsTest = new BdsTest("test/cluster_batch_01.bds", args, verbose, debug);
+			bdsTest.run();
+			bdsTest.checkRunOk();
+
+			// All tasks finished OK, each one is an element of the same job array
+			Collection<Task> tasks = bdsTest.bds.getBdsRun().getBdsThread().getTasks();
+			Assert.assertEquals(numTasks, tasks.size());
+
+			Set<String> arrayPids = new HashSet<>();
+			Set<String> elements = new HashSet<>();
+			for (Task t : tasks) {
+				if (verbose) System.out.println("Task " + t.getId() + "\tpid: " + t.getPid() + "\tstate: " + t.getTaskState());
+				Assert.assertTrue("Task '" + t.getId() + "' did not finish OK", t.isDoneOk());
+
+				String pid = t.getPid();
+				int idx = pid.lastIndexOf('.');
+				Assert.assertTrue("Task '" + t.getId() + "' is not a job array element, PID: '" + pid + "'", idx > 0);
+				arrayPids.add(pid.substring(0, idx));
+				elements.add(pid.substring(idx + 1));
+			}
+			Assert.assertEquals("Tasks were not submitted as a single job array: " + arrayPids, 1, arrayPids.size());
+			Assert.assertEquals(numTasks, elements.size());
+		} finally {
+			ExecutionerClusterFake.FAKE_CLUSTER = fakeClusterOri;
+			fakeCluster.destroy();
+			fakeCluster.waitFor();
+		}
+	}
+
+	/**
+	 * Job array elements are found by their own PID, unless
+	 * the cluster reports the job array as a whole
+	 */
+	@Test
+	public void test09_checkTasksRunningArray() {
+		Gpr.debug("Test");
+
+		Config config = new Config();
+		config.setDebug(debug);
+		config.setVerbose(verbose);
+		config.load();
+
+		Executioner ex = Executioners.getInstance(config).get(ExecutionerType.LOCAL);
+		CheckTasksRunning ctr = new CheckTasksRunning(config, ex);
+
+		// Job array '123' has three elements, job '200' is not an array
+		List<Task> tasks = new ArrayList<>();
+		for (int i = 1; i <= 3; i++) {
+			Task t = task("t" + i, i);
+			t.setPid("123." + i);
+			t.setPidArray("123");
+			tasks.add(t);
+		}
+		Task job = task("job", 4);
+		job.setPid("200.server");
+		tasks.add(job);
+
+		// Only element '2' is reported
+		Set<Task> found = ctr.findRunningTasks(tasks, "123.2.server   STDIN   user   00:00:00 R sw\n200   STDIN   user   00:00:00 R sw\n");
+		Assert.assertEquals(2, found.size());
+		Assert.assertTrue(found.contains(tasks.get(1)));
+		Assert.assertTrue(found.contains(job));
+
+		// The whole array is reported (e.g. SGE's 'qstat' shows the array's job ID)
+		found = ctr.findRunningTasks(tasks, "123   0.5   STDIN   user   r   1\n");
+		Assert.assertEquals(3, found.size());
+		Assert.assertFalse(found.contains(job));
+
+		ex.kill();
+	}
+
+	/**
+	 * Kill tasks submitted to a (fake) cluster in a batch: Each
+	 * task's job array element should be removed from the queue
+	 */
+	@Test
+	public void test10_clusterBatchFakeKill() throws Exception {
+		Gpr.debug("Test");
+		int numTasks = 10;
+
+		// Use the fake cluster from this source tree, but don't start it (tasks stay queued)
+		String fakeClusterDir = new File("fakeCluster").getAbsolutePath();
+		String fakeClusterOri = ExecutionerClusterFake.FAKE_CLUSTER;
+		ExecutionerClusterFake.FAKE_CLUSTER = fakeClusterDir + "/";
+		new ProcessBuilder(fakeClusterDir + "/reset").start().waitFor();
+
+		try {
+			String[] args = { "-c", "test/cluster_batch_01.config", "-s", "fake" };
+			BdsTest bdsTest = new BdsTest("test/cluster_batch_02.bds", args, verbose, debug);
+			bdsTest.run();
+			bdsTest.checkExitCode(1); // Killed tasks are errors
+
+			// Only the first task's element was removed by 'kill tid'
+			bdsTest.checkVariable("queued", numTasks - 1);
+
+			// All tasks were killed as job array elements and removed from the queue
+			Collection<Task> tasks = bdsTest.bds.getBdsRun().getBdsThread().getTasks();
+			Assert.assertEquals(numTasks, tasks.size());
+			for (Task t : tasks) {
+				if (verbose) System.out.println("Task " + t.getId() + "\tpid: " + t.getPid() + "\tstate: " + t.getTaskState());
+				Assert.assertEquals("Task '" + t.getId() + "' was not killed", TaskState.KILLED, t.getTaskState());
+				Assert.assertNotNull("Task '" + t.getId() + "' is not a job array element", t.getPidArray());
+			}
+
+			String queue[] = new File(System.getProperty("user.home") + "/.bds/fakeClusterTasks").list((dir, name) -> name.endsWith(".sh"));
+			Assert.assertEquals("Tasks still in the cluster's queue: " + Arrays.toString(queue), 0, queue.length);
+		} finally {
+			ExecutionerClusterFake.FAKE_CLUSTER = fakeClusterOri;
+		}
+	}
+
 }
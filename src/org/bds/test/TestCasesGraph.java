@@ -1,8 +1,17 @@
 package org.bds.test;
 
 import java.io.File;
-
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.bds.task.Task;
+import org.bds.task.TaskDependecies;
+import org.bds.task.TaskDependency;
 import org.bds.util.Gpr;
+import org.bds.util.Timer;
 import org.junit.Test;
 
 import junit.framework.Assert;
@@ -147,4 +156,83 @@ public class TestCasesGraph extends TestCasesBase {
 		Assert.assertTrue(out.contains("Hi 2\n"));
 	}
 
+	@Test
+	public void test16_dep_file_stat_cache() {
+		Gpr.debug("Test");
+		Map<String, Object> expectedValues = new HashMap<>();
+		expectedValues.put("dep1", "true");
+		expectedValues.put("dep2", "false");
+		expectedValues.put("dep3", "true");
+		expectedValues.put("dep4", "true");
+		expectedValues.put("dep5", "true");
+		expectedValues.put("dep6", "false");
+		runAndCheck("test/graph_16.bds", expectedValues);
+	}
+
+	/**
+	 * Benchmark: Synthetic DAG having 100K nodes (1K input files and 99K
+	 * tasks). Each task uses the previous node and two random nodes
+	 * as inputs, so the goal (last node) depends on every other node
+	 */
+	@Test
+	public void test17_goal_large_dag() {
+		Gpr.debug("Test");
+		int numNodes = 100 * 1000;
+		int numLeaves = 1000;
+		String dir = "tmp_graph_17"; // Doesn't exist, so all tasks need to be executed
+		TaskDependecies.reset();
+		TaskDependecies taskDeps = TaskDependecies.get();
+		Random random = new Random(20170717);
+
+		// Create tasks
+		Timer timer = new Timer();
+		Task[] tasks = new Task[numNodes];
+		for (int i = numLeaves; i < numNodes; i++) {
+			TaskDependency taskDep = new TaskDependency();
+			taskDep.addOutput(dir + "/node_" + i + ".txt");
+			taskDep.addInput(dir + "/node_" + (i - 1) + ".txt");
+			taskDep.addInput(dir + "/node_" + random.nextInt(i) + ".txt");
+			taskDep.addInput(dir + "/node_" + random.nextInt(i) + ".txt");
+
+			tasks[i] = new Task("task_graph_17_" + i);
+			tasks[i].setTaskDependency(taskDep);
+			tasks[i].setDependency(true);
+			taskDeps.add(tasks[i]);
+		}
+		long timeAdd = timer.elapsed();
+
+		// Goal: All tasks are required, dependencies first
+		timer = new Timer();
+		Set<Task> goalTasks = taskDeps.goalTasks(dir + "/node_" + (numNodes - 1) + ".txt");
+		long timeGoal = timer.elapsed();
+		if (verbose) System.out.println("Graph: " + numNodes + " nodes. Adding tasks: " + timeAdd + " ms, goal: " + timeGoal + " ms");
+
+		Assert.assertEquals(numNodes - numLeaves, goalTasks.size());
+		Set<String> created = new HashSet<>();
+		for (int i = 0; i < numLeaves; i++)
+			created.add(new File(dir + "/node_" + i + ".txt").getAbsolutePath());
+		for (Task t : goalTasks) {
+			for (String in : t.getInputs())
+				Assert.assertTrue("Task '" + t.getId() + "' executed before input '" + in + "' is created", created.contains(in));
+			created.addAll(t.getOutputs());
+		}
+
+		// Circular dependency: Detected when the task is added again (i.e. executed)
+		TaskDependency taskDep = new TaskDependency();
+		taskDep.addOutput(dir + "/node_" + numLeaves + ".txt");
+		taskDep.addInput(dir + "/node_" + (numNodes - 1) + ".txt");
+		Task taskCirc = new Task("task_graph_17_circ");
+		taskCirc.setTaskDependency(taskDep);
+		taskCirc.setDependency(true);
+		taskDeps.add(taskCirc);
+		try {
+			taskDeps.add(taskCirc);
+			Assert.fail("Circular dependency not detected");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getMessage().contains("Circular dependency"));
+		} finally {
+			TaskDependecies.reset();
+		}
+	}
+
 }
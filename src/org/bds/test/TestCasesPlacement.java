@@ -0,0 +1,213 @@
+package org.bds.test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.bds.cluster.Cluster;
+import org.bds.cluster.host.Host;
+import org.bds.cluster.host.HostResources;
+import org.bds.cluster.placement.PlacementPolicy;
+import org.bds.task.Task;
+import org.bds.util.Gpr;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for task placement policies (selecting a host to run a task)
+ *
+ * @author pcingola
+ */
+public class TestCasesPlacement extends TestCasesBase {
+
+	public static final long G = 1024L * 1024 * 1024;
+
+	/**
+	 * A task running in the simulation
+	 */
+	class SimTask implements Comparable<SimTask> {
+		Task task;
+		Host host;
+		long seconds; // Run time
+		long end; // End time
+
+		@Override
+		public int compareTo(SimTask st) {
+			return Long.compare(end, st.end);
+		}
+	}
+
+	Host host(Cluster cluster, String name, int cpus, long mem) {
+		Host host = new Host(cluster, name);
+		host.getResources().setCpus(cpus);
+		host.getResources().setMem(mem);
+		host.updateResourcesAvailable();
+		return host;
+	}
+
+	/**
+	 * Create 'numHosts' hosts
+	 */
+	List<Host> hosts(int numHosts, int cpus, long mem) {
+		Cluster cluster = new Cluster();
+		List<Host> hosts = new ArrayList<>();
+		for (int i = 0; i < numHosts; i++)
+			hosts.add(host(cluster, "node_" + i, cpus, mem));
+		return hosts;
+	}
+
+	/**
+	 * Read a trace file: Each line is a task 'cpus \t mem \t seconds'
+	 */
+	List<SimTask> readTrace(String fileName) {
+		List<SimTask> trace = new ArrayList<>();
+		for (String line : Gpr.readFile(fileName).split("\n")) {
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			String fields[] = line.split("\t");
+
+			SimTask st = new SimTask();
+			st.task = task("task_" + trace.size(), Gpr.parseIntSafe(fields[0]), Gpr.parseMemSafe(fields[1]));
+			st.seconds = Gpr.parseLongSafe(fields[2]);
+			trace.add(st);
+		}
+		return trace;
+	}
+
+	/**
+	 * Simulate running all tasks in a trace, return makespan (seconds)
+	 * Tasks are considered in trace order, every time a task finishes
+	 * all pending tasks are tried (same as Executioner.selectTask)
+	 */
+	long simulate(PlacementPolicy policy, List<Host> hosts, List<SimTask> trace) {
+		LinkedList<SimTask> pending = new LinkedList<>(trace);
+		PriorityQueue<SimTask> running = new PriorityQueue<>();
+		long time = 0;
+
+		while (!pending.isEmpty() || !running.isEmpty()) {
+			// Start all tasks that can be placed
+			for (Iterator<SimTask> it = pending.iterator(); it.hasNext();) {
+				SimTask st = it.next();
+				Host host = policy.select(st.task.getResources(), hosts);
+				if (host == null) continue;
+
+				host.add(st.task);
+				st.host = host;
+				st.end = time + st.seconds;
+				running.add(st);
+				it.remove();
+			}
+
+			if (running.isEmpty()) throw new RuntimeException("Task cannot be placed in any host: " + pending.getFirst().task.getResources());
+
+			// Advance to next task finishing
+			SimTask st = running.poll();
+			time = st.end;
+			st.host.remove(st.task);
+			while (!running.isEmpty() && running.peek().end == time) {
+				st = running.poll();
+				st.host.remove(st.task);
+			}
+		}
+
+		return time;
+	}
+
+	Task task(String id, int cpus, long mem) {
+		Task task = new Task(id);
+		task.getResources().setCpus(cpus);
+		task.getResources().setMem(mem);
+		return task;
+	}
+
+	/**
+	 * Select a host using different policies
+	 */
+	@Test
+	public void test01_policy_select() {
+		Gpr.debug("Test");
+		Cluster cluster = new Cluster();
+		Host hostA = host(cluster, "node_a", 4, 16 * G);
+		Host hostB = host(cluster, "node_b", 4, 16 * G);
+		hostB.add(task("t0", 3, 2 * G));
+		List<Host> hosts = List.of(hostA, hostB);
+
+		HostResources small = task("t1", 1, G).getResources();
+		Assert.assertEquals(hostA, PlacementPolicy.factory(PlacementPolicy.FIRST_FIT).select(small, hosts));
+		Assert.assertEquals(hostB, PlacementPolicy.factory(PlacementPolicy.BEST_FIT).select(small, hosts));
+		Assert.assertEquals(hostA, PlacementPolicy.factory(PlacementPolicy.WORST_FIT).select(small, hosts));
+		Assert.assertEquals(hostB, PlacementPolicy.factory(PlacementPolicy.BIN_PACKING).select(small, hosts));
+
+		// Only one host can run this task
+		HostResources large = task("t2", 2, G).getResources();
+		Assert.assertEquals(hostA, PlacementPolicy.factory(PlacementPolicy.BEST_FIT).select(large, hosts));
+
+		// No host can run this task
+		HostResources huge = task("t3", 1, 32 * G).getResources();
+		Assert.assertNull(PlacementPolicy.factory(PlacementPolicy.BIN_PACKING).select(huge, hosts));
+	}
+
+	/**
+	 * Incremental accounting of resources must match consuming every task's resources
+	 */
+	@Test
+	public void test02_incremental_resources() {
+		Gpr.debug("Test");
+		Host host = host(new Cluster(), "node", 64, 256 * G);
+		Random rand = new Random(20190101);
+		List<Task> running = new ArrayList<>();
+
+		for (int i = 0; i < 1000; i++) {
+			if (!running.isEmpty() && rand.nextBoolean()) {
+				host.remove(running.remove(rand.nextInt(running.size())));
+			} else {
+				Task task = task("task_" + i, rand.nextInt(4), rand.nextBoolean() ? -1 : rand.nextInt(8) * G);
+				host.add(task);
+				running.add(task);
+			}
+
+			// Compare to consuming all tasks resources
+			HostResources expected = host.getResources().clone();
+			for (Task t : running)
+				expected.consume(t.getResources());
+			Assert.assertEquals(expected.getCpus(), host.getResourcesAvaialble().getCpus());
+			Assert.assertEquals(expected.getMem(), host.getResourcesAvaialble().getMem());
+		}
+	}
+
+	/**
+	 * Simulate a task trace using all policies, compare makespan
+	 */
+	@Test
+	public void test03_simulate_trace() {
+		Gpr.debug("Test");
+		List<SimTask> trace = readTrace("test/placement_trace_01.txt");
+
+		// Lower bound: Total CPU time divided by number of CPUs
+		int numHosts = 4, cpus = 16;
+		long cpuSecs = 0;
+		for (SimTask st : trace)
+			cpuSecs += st.task.getResources().getCpus() * st.seconds;
+		long lowerBound = cpuSecs / (numHosts * cpus);
+
+		long makespanFirstFit = 0;
+		for (String policyName : new String[] { PlacementPolicy.FIRST_FIT, PlacementPolicy.BEST_FIT, PlacementPolicy.WORST_FIT, PlacementPolicy.BIN_PACKING }) {
+			List<Host> hosts = hosts(numHosts, cpus, 64 * G);
+			long makespan = simulate(PlacementPolicy.factory(policyName), hosts, trace);
+			if (verbose) System.out.println(String.format("Placement policy: %-12s makespan: %6d (lower bound %d)", policyName, makespan, lowerBound));
+			Assert.assertTrue(makespan >= lowerBound);
+			if (policyName.equals(PlacementPolicy.FIRST_FIT)) makespanFirstFit = makespan;
+
+			// All resources must be released
+			for (Host h : hosts) {
+				Assert.assertEquals(cpus, h.getResourcesAvaialble().getCpus());
+				Assert.assertEquals(64 * G, h.getResourcesAvaialble().getMem());
+			}
+		}
+		Assert.assertTrue(makespanFirstFit > 0);
+	}
+
+}
@@ -2,10 +2,15 @@ package org.bds.test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.Set;
 
 import org.bds.Config;
 import org.bds.data.Data;
+import org.bds.data.DataCache;
 import org.bds.data.DataFile;
 import org.bds.data.DataHttp;
 import org.bds.data.DataRemote;
@@ -28,6 +33,7 @@ public class TestCasesRemote extends TestCasesBase {
 	public void beforeEachTest() {
 		Config.reset();
 		Config.get().load();
+		DataCache.reset();
 	}
 
 	String getCurrPath() {
@@ -750,4 +756,183 @@ public class TestCasesRemote extends TestCasesBase {
 		runAndCheck("test/remote_36.bds", "outStr", "IN: 'remote_36'");
 	}
 
+	// Multipart upload and parallel (ranged) download, using a mock S3 server
+	@Test
+	public void test37_s3_multipart() throws IOException {
+		Gpr.debug("Test");
+		S3MockServer s3mock = new S3MockServer().start();
+		try {
+			System.setProperty("aws.accessKeyId", "test");
+			System.setProperty("aws.secretKey", "test");
+			Config.get().set(Config.S3_ENDPOINT, s3mock.getEndpoint());
+			Config.get().set(Config.S3_PART_SIZE, "5M");
+			Config.get().set(Config.S3_THREADS, "4");
+
+			// Create a local file (three parts)
+			byte[] data = new byte[12 * 1024 * 1024 + 123];
+			new Random(37).nextBytes(data);
+			File local = new File("/tmp/bds/remote_37/big.bin");
+			local.getParentFile().mkdirs();
+			Files.write(local.toPath(), data);
+
+			// Missing object
+			DataS3 missing = new DataS3("s3://bds_test/remote_37/missing.bin");
+			Assert.assertFalse(missing.exists());
+
+			// Upload
+			DataS3 up = new DataS3("s3://bds_test/remote_37/big.bin");
+			Assert.assertTrue("Upload OK", up.upload(Data.factory(local.getAbsolutePath())));
+			Assert.assertEquals(3, s3mock.getPartsUploaded());
+			Assert.assertTrue("Uploaded object differs", Arrays.equals(data, s3mock.getObject("bds_test", "remote_37/big.bin")));
+
+			// Download
+			File localDown = new File("/tmp/bds/remote_37/big_down.bin");
+			localDown.delete();
+			DataS3 down = new DataS3("s3://bds_test/remote_37/big.bin");
+			Assert.assertTrue("Download OK", down.download(Data.factory(localDown.getAbsolutePath())));
+			Assert.assertEquals(3, s3mock.getRangedGets());
+			Assert.assertTrue("Downloaded file differs", Arrays.equals(data, Files.readAllBytes(localDown.toPath())));
+		} finally {
+			s3mock.stop();
+		}
+	}
+
+	// Remote data cache: Downloads are shared, least recently used entries are evicted
+	@Test
+	public void test38_data_cache() throws IOException {
+		Gpr.debug("Test");
+		S3MockServer s3mock = new S3MockServer().start();
+		try {
+			System.setProperty("aws.accessKeyId", "test");
+			System.setProperty("aws.secretKey", "test");
+			String cacheDir = "/tmp/bds/remote_38/cache_" + System.currentTimeMillis(); // Start with an empty cache
+			Config.get().set(Config.S3_ENDPOINT, s3mock.getEndpoint());
+			Config.get().set(Config.DATA_CACHE_DIR, cacheDir);
+			Config.get().set(Config.DATA_CACHE_MAX_SIZE, "1500");
+			Config.get().set(Config.DATA_CACHE_LINK, "false");
+			DataCache.reset();
+
+			s3mock.putObject("bds_test", "remote_38/file_1.txt", new byte[1000]);
+			s3mock.putObject("bds_test", "remote_38/file_2.txt", new byte[1000]);
+
+			// First download: Cache miss
+			File local1 = new File("/tmp/bds/remote_38/local_1.txt");
+			Assert.assertTrue(new DataS3("s3://bds_test/remote_38/file_1.txt").download(Data.factory(local1.getAbsolutePath())));
+			Assert.assertEquals(1, s3mock.getGets());
+			Assert.assertEquals(1, DataCache.get().getMisses());
+
+			// Second download (different local file): Cache hit, no request to server
+			File local2 = new File("/tmp/bds/remote_38/local_2.txt");
+			Assert.assertTrue(new DataS3("s3://bds_test/remote_38/file_1.txt").download(Data.factory(local2.getAbsolutePath())));
+			Assert.assertEquals(1, s3mock.getGets());
+			Assert.assertEquals(1, DataCache.get().getHits());
+			Assert.assertEquals(1000, local2.length());
+			Assert.assertFalse("Local files should be copies", Files.getAttribute(local1.toPath(), "unix:ino").equals(Files.getAttribute(local2.toPath(), "unix:ino")));
+
+			// Modifying a local file does not affect the cache
+			Files.write(local2.toPath(), "modified".getBytes());
+			Assert.assertTrue(new DataS3("s3://bds_test/remote_38/file_1.txt").download(Data.factory(local2.getAbsolutePath())));
+			Assert.assertEquals(1, s3mock.getGets());
+			Assert.assertEquals(2, DataCache.get().getHits());
+			Assert.assertTrue("Local file should not be modified", Arrays.equals(new byte[1000], Files.readAllBytes(local2.toPath())));
+
+			// Another file: Cache is over its maximum size, first entry is evicted
+			File local3 = new File("/tmp/bds/remote_38/local_3.txt");
+			Assert.assertTrue(new DataS3("s3://bds_test/remote_38/file_2.txt").download(Data.factory(local3.getAbsolutePath())));
+			Assert.assertEquals(2, s3mock.getGets());
+			Assert.assertEquals(1, DataCache.get().getEvictions());
+			Assert.assertEquals("Local file should not be affected by eviction", 1000, local1.length());
+
+			// Download evicted file again: Cache miss
+			Assert.assertTrue(new DataS3("s3://bds_test/remote_38/file_1.txt").download(Data.factory(local2.getAbsolutePath())));
+			Assert.assertEquals(3, s3mock.getGets());
+			Assert.assertEquals(3, DataCache.get().getMisses());
+		} finally {
+			s3mock.stop();
+			DataCache.reset();
+		}
+	}
+
+	// Remote data cache: Local files are read-only hard links to cache entries
+	@Test
+	public void test39_data_cache_link() throws IOException {
+		Gpr.debug("Test");
+		S3MockServer s3mock = new S3MockServer().start();
+		try {
+			System.setProperty("aws.accessKeyId", "test");
+			System.setProperty("aws.secretKey", "test");
+			String cacheDir = "/tmp/bds/remote_39/cache_" + System.currentTimeMillis(); // Start with an empty cache
+			Config.get().set(Config.S3_ENDPOINT, s3mock.getEndpoint());
+			Config.get().set(Config.DATA_CACHE_DIR, cacheDir);
+			Config.get().set(Config.DATA_CACHE_MAX_SIZE, "1500");
+			Config.get().set(Config.DATA_CACHE_LINK, "true");
+			DataCache.reset();
+
+			s3mock.putObject("bds_test", "remote_39/file_1.txt", new byte[1000]);
+
+			File local1 = new File("/tmp/bds/remote_39/local_1.txt");
+			File local2 = new File("/tmp/bds/remote_39/local_2.txt");
+			Assert.assertTrue(new DataS3("s3://bds_test/remote_39/file_1.txt").download(Data.factory(local1.getAbsolutePath())));
+			Assert.assertTrue(new DataS3("s3://bds_test/remote_39/file_1.txt").download(Data.factory(local2.getAbsolutePath())));
+			Assert.assertEquals(1, s3mock.getGets());
+			Assert.assertEquals(1, DataCache.get().getHits());
+			Assert.assertEquals("Local files should be hard links", Files.getAttribute(local1.toPath(), "unix:ino"), Files.getAttribute(local2.toPath(), "unix:ino"));
+
+			Set<PosixFilePermission> perms = Files.getPosixFilePermissions(local2.toPath());
+			Assert.assertFalse("Linked file should be read-only: " + perms, perms.contains(PosixFilePermission.OWNER_WRITE) || perms.contains(PosixFilePermission.GROUP_WRITE) || perms.contains(PosixFilePermission.OTHERS_WRITE));
+		} finally {
+			s3mock.stop();
+			Config.get().set(Config.DATA_CACHE_LINK, "false");
+			DataCache.reset();
+		}
+	}
+
+	// Parallel (ranged) download fails mid-transfer: No partial local file is left, so a retry downloads the file again
+	@Test
+	public void test40_s3_download_parts_fail() throws IOException {
+		Gpr.debug("Test");
+		S3MockServer s3mock = new S3MockServer().start();
+		try {
+			System.setProperty("aws.accessKeyId", "test");
+			System.setProperty("aws.secretKey", "test");
+			Config.get().set(Config.S3_ENDPOINT, s3mock.getEndpoint());
+			Config.get().set(Config.S3_PART_SIZE, "5M");
+			Config.get().set(Config.S3_THREADS, "4");
+			Config.get().set(Config.DATA_CACHE_MAX_SIZE, "0"); // Disable data cache
+			DataCache.reset();
+
+			// Object with three parts
+			byte[] data = new byte[12 * 1024 * 1024 + 123];
+			new Random(40).nextBytes(data);
+			s3mock.putObject("bds_test", "remote_40/big.bin", data);
+
+			DataS3 down = new DataS3("s3://bds_test/remote_40/big.bin");
+			File local = new File(down.getLocalPath());
+			local.delete();
+
+			// One part fails
+			s3mock.failRangedGets(1);
+			try {
+				down.download();
+				Assert.fail("Download should fail");
+			} catch (RuntimeException e) {
+				if (verbose) Gpr.debug("Download failed (as expected): " + e.getMessage());
+			}
+			Assert.assertFalse("Partial download should not exist", local.exists());
+			String[] parts = local.getParentFile().list((dir, name) -> name.startsWith(local.getName() + ".") && name.endsWith(".part"));
+			Assert.assertEquals("Temporary files should be deleted: " + Arrays.toString(parts), 0, parts.length);
+
+			// Retry: File is downloaded again
+			// Note: Parts of the failed download may still be in flight, so we cannot count requests exactly
+			int gets = s3mock.getRangedGets();
+			down = new DataS3("s3://bds_test/remote_40/big.bin");
+			Assert.assertTrue("Download OK", down.download());
+			Assert.assertTrue("File was not downloaded again", s3mock.getRangedGets() >= gets + 3);
+			Assert.assertTrue("Downloaded file differs", Arrays.equals(data, Files.readAllBytes(local.toPath())));
+		} finally {
+			s3mock.stop();
+			DataCache.reset();
+		}
+	}
+
 }
@@ -1,11 +1,28 @@
 package org.bds.test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
+import org.bds.Config;
+import org.bds.compile.CompileCache;
+import org.bds.run.BdsThread;
+import org.bds.run.BdsThreads;
 import org.bds.util.Gpr;
+import org.bds.util.LineReader;
+import org.bds.util.Timer;
 import org.junit.Test;
 
+import junit.framework.Assert;
+
 /**
  * Test cases Classes / Objects
  *
@@ -480,4 +497,326 @@ public class TestCasesRun3 extends TestCasesBase {
 		runAndCheck("test/run_254.bds", expectedValues);
 	}
 
+	@Test
+	public void test255_local_variable_slots() {
+		HashMap<String, Object> expectedValues = new HashMap<>();
+
+		expectedValues.put("fib15", 610);
+		expectedValues.put("fret", 70);
+		expectedValues.put("hval", "local");
+		expectedValues.put("hglobal", "7");
+
+		runAndCheck("test/run_255.bds", expectedValues);
+	}
+
+	@Test
+	public void test256_method_call_inline_cache() {
+		runAndCheck("test/run_256.bds", "sum", 3 * (1 + 10 + 110 + 1 + 110 + 1));
+	}
+
+	@Test
+	public void test257_task_dag_layers() {
+		runAndCheck("test/run_257.bds", "lines", 15L);
+	}
+
+	@Test
+	public void test258_local_exec_async() {
+		HashMap<String, Object> expectedValues = new HashMap<>();
+
+		expectedValues.put("ok", 40L);
+		expectedValues.put("exitFail", 3L);
+
+		String args[] = { "-c", "test/test258_local_exec_async.config" };
+		runAndCheck("test/run_258.bds", args, expectedValues);
+	}
+
+	@Test
+	public void test259_sys_output_spill() {
+		HashMap<String, Object> expectedValues = new HashMap<>();
+
+		expectedValues.put("n", 1000L);
+		expectedValues.put("first", "1");
+		expectedValues.put("last", "1000");
+		expectedValues.put("len", 3893L);
+
+		// Spill files are removed once the output is collected
+		File tmpDir = new File(Config.DEFAULT_TMP_DIR);
+		FilenameFilter spillFiles = (dir, name) -> name.startsWith("bds_output_");
+		int spillFilesBefore = tmpDir.list(spillFiles).length;
+
+		String args[] = { "-c", "test/test259_sys_output_spill.config" };
+		runAndCheck("test/run_259.bds", args, expectedValues);
+
+		Assert.assertEquals("Spill files not removed", spillFilesBefore, tmpDir.list(spillFiles).length);
+	}
+
+	@Test
+	public void test260_task_priority() {
+		runAndCheck("test/run_260.bds", "order", "first 5 4 3 2 1 last");
+	}
+
+	/**
+	 * Compiled program cache: Unchanged programs are loaded from the cache,
+	 * changes in included files or command line arguments are honored
+	 */
+	@Test
+	public void test261_compile_cache() {
+		Gpr.debug("Test");
+		String dir = "/tmp/bds/run_261_" + System.currentTimeMillis(); // Start with an empty cache
+		String program = dir + "/run_261.bds";
+		String lib = dir + "/run_261_lib.bds";
+		new File(dir).mkdirs();
+		Gpr.toFile(program, "include 'run_261_lib.bds'\n\nint n = 3\nc := new Counter()\nfor( int i = 0 ; i < n ; i++ ) c.inc()\nres := f(c.count)\n");
+		Gpr.toFile(lib, "class Counter {\n\tint count\n\tvoid inc() { count++ }\n}\n\nint f(int x) {\n\treturn 10 * x\n}\n");
+
+		try {
+			Config.get().load();
+			Config.get().set(Config.COMPILE_CACHE_DIR, dir + "/cache");
+			CompileCache.reset();
+			CompileCache compileCache = CompileCache.get();
+
+			// First run: Not in cache
+			runAndCheck(program, "res", 30L);
+			Assert.assertEquals(1, compileCache.getMisses());
+			Assert.assertEquals(0, compileCache.getHits());
+
+			// Unchanged program: Loaded from cache
+			runAndCheck(program, "res", 30L);
+			Assert.assertEquals(1, compileCache.getHits());
+
+			// Command line arguments change variable initialization
+			List<String> args = new ArrayList<>();
+			args.add("-n");
+			args.add("5");
+			Map<String, Object> expectedValues = new HashMap<>();
+			expectedValues.put("res", 50L);
+			runAndCheck(program, expectedValues, args);
+			Assert.assertEquals(2, compileCache.getHits());
+
+			// Included file changed: Compile again
+			Gpr.toFile(lib, Gpr.readFile(lib).replace("10 * x", "100 * x"));
+			runAndCheck(program, "res", 300L);
+			Assert.assertEquals(2, compileCache.getMisses());
+			runAndCheck(program, "res", 300L);
+			Assert.assertEquals(3, compileCache.getHits());
+		} finally {
+			CompileCache.reset();
+		}
+	}
+
+	/**
+	 * Benchmark: Resolve the current BdsThread (and relative paths) from many
+	 * Java threads concurrently. Each thread must see its own BdsThread
+	 */
+	@Test
+	public void test262_bds_threads_lookup() throws InterruptedException {
+		Gpr.debug("Test");
+		int numThreads = 8;
+		int numLookups = 1000 * 1000;
+		int numData = 100 * 1000;
+		Config config = new Config();
+		AtomicInteger errors = new AtomicInteger();
+
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < numThreads; i++) {
+			String dir = "/tmp/bds/run_262_" + i;
+			threads.add(new Thread(() -> {
+				BdsThread bdsThread = new BdsThread(null, config, null);
+				bdsThread.setCurrentDir(dir);
+				BdsThreads.getInstance().add(bdsThread);
+
+				for (int j = 0; j < numLookups; j++)
+					if (BdsThreads.getInstance().get() != bdsThread) errors.incrementAndGet();
+
+				// Relative paths are resolved using the thread's current dir
+				for (int j = 0; j < numData; j++)
+					if (!BdsThreads.data("in.txt").getAbsolutePath().equals(dir + "/in.txt")) errors.incrementAndGet();
+
+				BdsThreads.getInstance().remove();
+			}));
+		}
+
+		Timer timer = new Timer();
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+
+		if (verbose) System.out.println("Threads: " + numThreads + ", lookups: " + numLookups + ", data: " + numData + " (per thread), elapsed: " + timer.elapsed() + " ms");
+		Assert.assertEquals(0, errors.get());
+		Assert.assertNull(BdsThreads.getInstance().get());
+	}
+
+	/**
+	 * Read a file in chunks using 'readLines(start, num)'
+	 */
+	@Test
+	public void test263_readLines_chunks() {
+		Gpr.debug("Test");
+		Map<String, Object> expectedValues = new HashMap<>();
+		expectedValues.put("same", "true");
+		expectedValues.put("numChunks", "143");
+		expectedValues.put("first", "line 0,line 1");
+		expectedValues.put("last", "line 998,line 999");
+		expectedValues.put("after", "0");
+		runAndCheck("test/run_263.bds", expectedValues);
+	}
+
+	/**
+	 * Benchmark: Read files (into a single array) and compare to reading using a reader
+	 */
+	@Test
+	public void test264_read_file() {
+		Gpr.debug("Test");
+		String dir = "/tmp/bds/run_264_" + System.currentTimeMillis();
+		new File(dir).mkdirs();
+
+		try {
+			// Corner cases
+			String[] contents = { "", "\n", "hello", "hello\nworld\n", "a\r\nb\r\n", "caf\u00e9 \u00fc\u00f1\u00ee\u00e7\u00f8d\u00e9\n" };
+			for (int i = 0; i < contents.length; i++) {
+				String fileName = dir + "/file_" + i + ".txt";
+				Gpr.toFile(fileName, contents[i]);
+				Assert.assertEquals(Gpr.readFileReader(fileName, false), Gpr.readFile(fileName, false));
+			}
+
+			// Missing file
+			Assert.assertEquals("", Gpr.readFile(dir + "/does_not_exist.txt", false));
+
+			// Small and large files
+			for (int size : new int[] { 1024 * 1024, 64 * 1024 * 1024 }) {
+				String fileName = dir + "/file_" + size + ".txt";
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; sb.length() < size; i++)
+					sb.append("chr1\t" + i + "\t" + (i + 100) + "\tmetric_" + (i % 1000) + "\n");
+				Gpr.toFile(fileName, sb);
+
+				Timer timer = new Timer();
+				String reader = Gpr.readFileReader(fileName, false);
+				long timeReader = timer.elapsed();
+
+				timer.start();
+				String read = Gpr.readFile(fileName, false);
+				long timeRead = timer.elapsed();
+
+				if (verbose) System.out.println("File size: " + sb.length() + "\treader: " + timeReader + " ms\treadFile: " + timeRead + " ms");
+				Assert.assertEquals(reader, read);
+			}
+		} finally {
+			for (File f : new File(dir).listFiles())
+				f.delete();
+			new File(dir).delete();
+		}
+	}
+
+	/**
+	 * Variables declared within a 'par' body must be local to each parallel thread
+	 */
+	@Test
+	public void test265_par_local_isolation() {
+		Gpr.debug("Test");
+		runAndCheck("test/run_265.bds", "res", "[0, 10, 20, 30, 40]");
+	}
+
+	/**
+	 * Compiled program cache: Least recently used entries are evicted when the cache is too large
+	 */
+	@Test
+	public void test266_compile_cache_evict() {
+		Gpr.debug("Test");
+		String dir = "/tmp/bds/run_266_" + System.currentTimeMillis(); // Start with an empty cache
+		String program1 = dir + "/run_266_1.bds";
+		String program2 = dir + "/run_266_2.bds";
+		new File(dir).mkdirs();
+		Gpr.toFile(program1, "res := 1\n");
+		Gpr.toFile(program2, "res := 2\n");
+
+		try {
+			Config.get().load();
+			Config.get().set(Config.COMPILE_CACHE_DIR, dir + "/cache");
+			Config.get().set(Config.COMPILE_CACHE_MAX_SIZE, "1"); // Only the latest entry fits
+			CompileCache.reset();
+			CompileCache compileCache = CompileCache.get();
+
+			runAndCheck(program1, "res", 1L);
+			runAndCheck(program1, "res", 1L);
+			Assert.assertEquals(1, compileCache.getHits());
+			Assert.assertEquals(0, compileCache.getEvictions());
+
+			// Another program: First program is evicted
+			runAndCheck(program2, "res", 2L);
+			Assert.assertEquals(1, compileCache.getEvictions());
+			Assert.assertEquals(1, new File(dir + "/cache").list().length);
+
+			runAndCheck(program1, "res", 1L);
+			Assert.assertEquals(3, compileCache.getMisses());
+			Assert.assertEquals(1, compileCache.getHits());
+		} finally {
+			CompileCache.reset();
+		}
+	}
+
+	/**
+	 * Task priority: Variables named 'priority' having other types don't affect tasks
+	 */
+	@Test
+	public void test267_task_priority_var() {
+		Gpr.debug("Test");
+		runAndCheck("test/run_267.bds", "ok", "true");
+	}
+
+	/**
+	 * Reading a file in chunks ('readLines(start, num)') must return the same
+	 * lines as reading the whole file (e.g. trailing empty lines are removed)
+	 */
+	@Test
+	public void test268_readLines_chunks_empty_lines() throws IOException {
+		Gpr.debug("Test");
+		String dir = "/tmp/bds/run_268_" + System.currentTimeMillis();
+		new File(dir).mkdirs();
+		String contents[] = { "a\n\n\n", "a\n\nb\n\n", "\n\na\n\n\nb", "", "\n\n", "a", "a\n", "\n\n\n\nz\n" };
+
+		try {
+			for (int i = 0; i < contents.length; i++) {
+				for (boolean gz : new boolean[] { false, true }) {
+					String fileName = dir + "/file_" + i + ".txt" + (gz ? ".gz" : "");
+					if (gz) {
+						try (OutputStream os = new GZIPOutputStream(new FileOutputStream(fileName))) {
+							os.write(contents[i].getBytes());
+						}
+					} else Gpr.toFile(fileName, contents[i]);
+					if (!gz) new File(fileName).setLastModified(System.currentTimeMillis() - 10 * 1000); // Old file: Cursors are reused
+
+					List<String> expected = new ArrayList<>();
+					LineReader.readLines(fileName, l -> expected.add(l));
+
+					for (int num = 1; num <= 4; num++) {
+						List<String> chunks = new ArrayList<>();
+						for (long start = 0;; start += num) {
+							List<String> lines = LineReader.readLines(fileName, start, num);
+							if (lines.isEmpty()) break;
+							Assert.assertTrue("Too many lines in chunk", lines.size() <= num);
+							chunks.addAll(lines);
+						}
+						if (verbose) System.out.println("Contents: '" + contents[i].replace("\n", "\\n") + "'\tgz: " + gz + "\tnum: " + num + "\texpected: " + expected + "\tchunks: " + chunks);
+						Assert.assertEquals("Contents: '" + contents[i].replace("\n", "\\n") + "', gz: " + gz + ", num: " + num, expected, chunks);
+					}
+				}
+			}
+
+			// File rewritten within the same modification time 'tick' (same size and time): Cursor must not be reused
+			String fileName = dir + "/rewritten.txt";
+			Gpr.toFile(fileName, "aa\nbb\ncc\n");
+			long lastModified = new File(fileName).lastModified();
+			Assert.assertEquals("[aa]", LineReader.readLines(fileName, 0, 1).toString());
+			Gpr.toFile(fileName, "a\nbbb\ncc\n");
+			new File(fileName).setLastModified(lastModified);
+			Assert.assertEquals("[bbb]", LineReader.readLines(fileName, 1, 1).toString());
+		} finally {
+			for (File f : new File(dir).listFiles())
+				f.delete();
+			new File(dir).delete();
+		}
+	}
+
 }
@@ -1,7 +1,13 @@
 package org.bds.test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+
 import junit.framework.Assert;
 
+import org.bds.task.Tail;
 import org.bds.task.TailFile;
 import org.junit.Test;
 
@@ -56,4 +62,36 @@ public class TestCasesTail extends TestCasesBase {
 		Assert.assertEquals("line 11\nline 12\nline 13\nline 14\nline 15\nline 16\nline 17\nline 18\nline 19\nline 20\n", tail);
 	}
 
+	/**
+	 * Follow a stream: Partial lines are shown only when completed (or the stream is removed)
+	 */
+	@Test
+	public void test07_stream_partial_lines() throws Exception {
+		PipedOutputStream pout = new PipedOutputStream();
+		PipedInputStream pin = new PipedInputStream(pout);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream stdout = System.out;
+
+		Tail tail = new Tail();
+		try {
+			System.setOut(new PrintStream(out, true));
+			tail.start();
+			tail.add(pin, "test07", false);
+
+			pout.write("Hello ".getBytes());
+			Thread.sleep(5 * Tail.SLEEP_TIME_DEFAULT);
+			Assert.assertEquals("", out.toString());
+
+			pout.write("world\nBye".getBytes());
+			Thread.sleep(5 * Tail.SLEEP_TIME_DEFAULT);
+			Assert.assertEquals("Hello world\n", out.toString());
+
+			tail.remove("test07");
+			Assert.assertEquals("Hello world\nBye", out.toString());
+		} finally {
+			tail.kill();
+			System.setOut(stdout);
+		}
+	}
+
 }
@@ -39,4 +39,16 @@ public class TestCasesVm extends TestCasesBase {
 		runVmAndCheck("test/vm03.asm", "z", "bye");
 	}
 
+	@Test
+	public void test04() {
+		Gpr.debug("Test");
+		runVmAndCheck("test/vm04.asm", "z", "285");
+	}
+
+	@Test
+	public void test05() {
+		Gpr.debug("Test");
+		runVmAndCheck("test/vm05.asm", "r", "0.5");
+	}
+
 }
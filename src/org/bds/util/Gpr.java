@@ -14,6 +14,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.JarURLConnection;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.sql.Date;
 import java.text.SimpleDateFormat;
 import java.util.zip.GZIPInputStream;
@@ -30,6 +34,9 @@ public class Gpr {
 	// User's home directory
 	public static final String HOME = System.getProperty("user.home");
 
+	// Maximum size of an array (files larger than this cannot be read into a single String)
+	public static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
 	/**
 	 * Return file's name (without the path)
 	 * @param file
@@ -392,6 +399,46 @@ public class Gpr {
 	 * @param showExceptions : show exceptions if true
 	 */
 	public static String readFile(String fileName, boolean showExceptions) {
+		// Fast path: Read plain files into a single array and decode once
+		// Note: Some special files report zero length (e.g. '/proc/meminfo'), so they are read using a reader
+		File file = new File(fileName);
+		long size = file.length();
+		if (size > 0 && size <= MAX_ARRAY_SIZE && !fileName.equals("-") && !fileName.endsWith(".gz") && file.isFile()) {
+			try {
+				return readFileBytes(file);
+			} catch (IOException e) {
+				// Cannot read file: Try using a reader
+			}
+		}
+
+		return readFileReader(fileName, showExceptions);
+	}
+
+	/**
+	 * Read a (plain) file as a String
+	 * The file is read into a single array and decoded once
+	 * Note: Decoding is the same as using a reader (malformed input is replaced)
+	 */
+	public static String readFileBytes(File file) throws IOException {
+		try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = fc.size();
+			if (size > MAX_ARRAY_SIZE) throw new IOException("File too large: '" + file + "'");
+
+			// Read until the array is full (the file may have been truncated)
+			byte bytes[] = new byte[(int) size];
+			ByteBuffer bb = ByteBuffer.wrap(bytes);
+			while (bb.hasRemaining())
+				if (fc.read(bb) <= 0) break;
+
+			return new String(bytes, 0, bb.position(), Charset.defaultCharset());
+		}
+	}
+
+	/**
+	 * Read a file as a String using a reader
+	 * Note: the file can be compressed using gzip (file name must have a ".gz" extension).
+	 */
+	public static String readFileReader(String fileName, boolean showExceptions) {
 		BufferedReader inFile;
 		StringBuffer strb = new StringBuffer();
 		char buff[] = new char[10240];
@@ -0,0 +1,305 @@
+package org.bds.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Read lines from a file without reading the whole file into memory
+ *
+ * Lines are separated by '\n' (any '\r' is kept), the same way as
+ * splitting the file's contents using 'split("\n")'.
+ *
+ * Reading a file in chunks (i.e. 'num' lines starting at line 'start')
+ * remembers the position where the latest chunk ended, so reading a file
+ * sequentially does not need to scan the file from the beginning on every
+ * chunk. A position is only reused if the file's size and modification
+ * time didn't change, and the file was not modified within the last
+ * MTIME_RESOLUTION milliseconds (a file rewritten within the same time
+ * 'tick' would look unchanged).
+ *
+ * @author pcingola
+ */
+public class LineReader {
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+	public static final int MAX_CURSORS = 100; // Maximum number of cursors (i.e. files being read in chunks)
+	public static final long MTIME_RESOLUTION = 2000; // Modification time resolution (milliseconds) in some file systems
+
+	private static final Map<String, Cursor> cursors = new LinkedHashMap<>();
+
+	/**
+	 * Position where the latest chunk of a file ended
+	 */
+	static class Cursor {
+		long size, lastModified; // Used to check that the file didn't change
+		long lineNum; // Next line to read
+		long offset; // Position (in bytes) of 'lineNum'
+	}
+
+	/**
+	 * Add pending empty lines (up to 'num' lines in total) and update cursor
+	 * Returns the number of empty lines still pending (zero, unless 'lines' is full)
+	 */
+	static long addEmptyLines(List<String> lines, int num, Cursor next, long emptyLines, long emptyLineNum, long emptyOffset) {
+		for (long n = 0; n < emptyLines; n++) {
+			if (lines.size() >= num) return emptyLines - n;
+			lines.add("");
+			next.lineNum = emptyLineNum + n + 1;
+			next.offset = emptyOffset + n + 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Find a cursor at or before line 'start'
+	 */
+	static synchronized Cursor cursor(File file, long start) {
+		Cursor cursor = cursors.get(file.getPath());
+		if (cursor != null //
+				&& cursor.size == file.length() //
+				&& cursor.lastModified == file.lastModified() //
+				&& (System.currentTimeMillis() - cursor.lastModified) > MTIME_RESOLUTION //
+				&& cursor.lineNum <= start //
+		) return cursor;
+
+		// No cursor, file changed or we need an earlier line: Start from the beginning
+		cursor = new Cursor();
+		cursor.size = file.length();
+		cursor.lastModified = file.lastModified();
+		return cursor;
+	}
+
+	static synchronized void cursor(File file, Cursor cursor) {
+		cursors.remove(file.getPath());
+		if (cursors.size() >= MAX_CURSORS) cursors.remove(cursors.keySet().iterator().next()); // Remove oldest
+		cursors.put(file.getPath(), cursor);
+	}
+
+	/**
+	 * Read all lines from a file
+	 * Note: Same as 'Gpr.readFile(fileName, false).split("\n")', but
+	 * lines are sent to 'consumer' as soon as they are read
+	 * (e.g. trailing empty lines are removed and an empty file has
+	 * one empty line)
+	 */
+	public static void readLines(String fileName, Consumer<String> consumer) {
+		BufferedReader reader = Gpr.reader(fileName, false, false);
+		if (reader == null) {
+			consumer.accept("");
+			return;
+		}
+
+		try {
+			char buff[] = new char[BUFFER_SIZE];
+			StringBuilder line = new StringBuilder();
+			boolean newLine = false; // Any '\n' found?
+			int emptyLines = 0; // Empty lines pending (discarded if they are at the end of the file)
+			int len;
+
+			while ((len = reader.read(buff)) >= 0) {
+				int start = 0;
+				for (int i = 0; i < len; i++) {
+					if (buff[i] != '\n') continue;
+
+					// Line (avoid copying to 'line' if the whole line is in the buffer)
+					String l;
+					if (line.length() == 0) {
+						l = (i > start ? new String(buff, start, i - start) : "");
+					} else {
+						l = line.append(buff, start, i - start).toString();
+						line.setLength(0);
+					}
+					start = i + 1;
+					newLine = true;
+
+					if (l.isEmpty()) {
+						emptyLines++;
+					} else {
+						for (; emptyLines > 0; emptyLines--)
+							consumer.accept("");
+						consumer.accept(l);
+					}
+				}
+				line.append(buff, start, len - start);
+			}
+
+			// Last line
+			if (line.length() > 0) {
+				for (; emptyLines > 0; emptyLines--)
+					consumer.accept("");
+				consumer.accept(line.toString());
+			} else if (!newLine) consumer.accept(""); // Empty file
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	/**
+	 * Read up to 'num' lines, starting at line 'start' (zero based)
+	 * Returns an empty list after the last line
+	 * Note: Lines are the same as 'readLines(fileName, consumer)' (e.g. trailing
+	 * empty lines are removed and an empty file has one empty line)
+	 */
+	public static List<String> readLines(String fileName, long start, int num) {
+		List<String> lines = new ArrayList<>();
+		if (start < 0 || num <= 0) return lines;
+
+		// Compressed files cannot be read from an arbitrary position
+		File file = new File(fileName);
+		if (fileName.endsWith(".gz") || !file.exists()) return readLinesSkip(fileName, start, num);
+
+		// Empty file: One empty line
+		if (file.length() == 0) {
+			if (start == 0) lines.add("");
+			return lines;
+		}
+
+		Cursor cursor = cursor(file, start);
+		Cursor next = new Cursor(); // Position after the latest line added to 'lines'
+		next.size = cursor.size;
+		next.lastModified = cursor.lastModified;
+		next.lineNum = cursor.lineNum;
+		next.offset = cursor.offset;
+		Charset charset = Charset.defaultCharset();
+
+		try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			fc.position(cursor.offset);
+			byte buff[] = new byte[BUFFER_SIZE];
+			byte line[] = new byte[1024];
+			int lineLen = 0, len;
+			long lineNum = cursor.lineNum; // Line being read
+			long pos = cursor.offset; // File position of 'buff[0]'
+			long emptyLines = 0, emptyLineNum = 0, emptyOffset = 0; // Empty lines pending (discarded if they are at the end of the file), first line number and position
+			boolean eof = false;
+
+			while (lines.size() < num) {
+				len = fc.read(ByteBuffer.wrap(buff));
+				if (len <= 0) {
+					eof = true;
+					break;
+				}
+
+				for (int i = 0; i < len && lines.size() < num; i++) {
+					if (buff[i] != '\n') {
+						if (lineNum >= start) {
+							if (lineLen >= line.length) line = Arrays.copyOf(line, 2 * line.length);
+							line[lineLen++] = buff[i];
+						}
+						continue;
+					}
+
+					// End of line
+					if (lineNum < start) {
+						next.lineNum = lineNum + 1;
+						next.offset = pos + i + 1;
+					} else if (lineLen == 0) {
+						// Empty line: Only added if a non-empty line follows
+						// Note: Consecutive empty lines are consecutive '\n', so the position of each one is known
+						if (emptyLines == 0) {
+							emptyLineNum = lineNum;
+							emptyOffset = pos + i;
+						}
+						emptyLines++;
+					} else {
+						emptyLines = addEmptyLines(lines, num, next, emptyLines, emptyLineNum, emptyOffset);
+						if (lines.size() < num) {
+							lines.add(new String(line, 0, lineLen, charset));
+							next.lineNum = lineNum + 1;
+							next.offset = pos + i + 1;
+						}
+					}
+
+					lineLen = 0;
+					lineNum++;
+				}
+				pos += len;
+			}
+
+			// Last line is not terminated by '\n'
+			if (eof && lineLen > 0) {
+				addEmptyLines(lines, num, next, emptyLines, emptyLineNum, emptyOffset);
+				if (lines.size() < num) lines.add(new String(line, 0, lineLen, charset));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		}
+
+		cursor(file, next);
+		return lines;
+	}
+
+	/**
+	 * Read up to 'num' lines, starting at line 'start', by skipping all previous lines
+	 */
+	static List<String> readLinesSkip(String fileName, long start, int num) {
+		List<String> lines = new ArrayList<>();
+		BufferedReader reader = Gpr.reader(fileName, false, false);
+		if (reader == null) return lines;
+
+		try {
+			char buff[] = new char[BUFFER_SIZE];
+			StringBuilder line = new StringBuilder();
+			long lineNum = 0;
+			long emptyLines = 0; // Empty lines pending (discarded if they are at the end of the file)
+			boolean newLine = false; // Any '\n' found?
+			int len;
+
+			while (lines.size() < num && (len = reader.read(buff)) >= 0) {
+				for (int i = 0; i < len && lines.size() < num; i++) {
+					if (buff[i] != '\n') {
+						if (lineNum >= start) line.append(buff[i]);
+						continue;
+					}
+
+					newLine = true;
+					if (lineNum >= start) {
+						if (line.length() == 0) {
+							emptyLines++;
+						} else {
+							for (; emptyLines > 0 && lines.size() < num; emptyLines--)
+								lines.add("");
+							if (lines.size() < num) lines.add(line.toString());
+						}
+					}
+					line.setLength(0);
+					lineNum++;
+				}
+			}
+
+			// Last line (or empty file)
+			if (line.length() > 0) {
+				for (; emptyLines > 0 && lines.size() < num; emptyLines--)
+					lines.add("");
+				if (lines.size() < num) lines.add(line.toString());
+			} else if (!newLine && lines.isEmpty() && start == 0) lines.add(""); // Empty file
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+
+		return lines;
+	}
+
+}
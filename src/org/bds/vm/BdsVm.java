@@ -1,5 +1,8 @@
 package org.bds.vm;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -55,16 +58,24 @@ public class BdsVm implements Serializable {
 	private static final long serialVersionUID = 6533146851765102340L;
 	public static final int SLEEP_TIME_FREEZE = 200; // Milliseconds
 	public static final int STACK_SIZE = 100 * 1024; // Initial stack size
+	static final byte SLOT_VALUE = 0; // Stack slot holds a 'Value' object (see 'stack')
+	static final byte SLOT_BOOL = 1; // Stack slot holds an unboxed 'bool' (see 'stackPrim')
+	static final byte SLOT_INT = 2; // Stack slot holds an unboxed 'int' (see 'stackPrim')
+	static final byte SLOT_REAL = 3; // Stack slot holds an unboxed 'real', stored as raw long bits (see 'stackPrim')
 	BdsThread bdsThread;
-	CallFrame[] callFrames; // Call Frame stack
+	transient CallFrame[] callFrames; // Call Frame stack (see 'writeObject')
 	int code[]; // Compile assembly code (OopCodes)
+	transient OpCode[] ops; // Pre-decoded opcodes, indexed by pc (null for parameter positions)
+	transient Object[] params; // Pre-decoded parameters, indexed by pc: constants and types already resolved
+	transient int[] jumpPcs; // Pre-decoded jump targets, indexed by pc (JMP, JMPT, JMPF, JSR)
 	List<Object> constants;
-	Map<Integer, Integer> coverageCounter; // Count how many times a nodeId was traversed
+	int[] coverageCounter; // Count how many times a nodeId was traversed (indexed by nodeId)
 	Map<Object, Integer> constantsByObject;
 	boolean debug;
 	ExceptionHandler exceptionHandler; // Current Exception handler (null if we are not in a 'try/catch' statement)
 	ValueClass exceptionValue; // Latest exception thrown (this is mostly used for test cases)
 	Integer exitCode = null; // Default exit code (null means: parse last entry from stack)
+	transient InlineCache[] inlineCaches; // Method call inline caches, indexed by call site's pc (created on demand)
 	int fp; // Frame pointer
 	Map<String, FunctionDeclaration> functionsBySignature;
 	Map<String, Integer> labels;
@@ -75,7 +86,9 @@ public class BdsVm implements Serializable {
 	boolean run; // Keep program running while this variable is 'true'
 	Scope scope; // Current scope (variables)
 	int sp; // Stack pointer
-	Value[] stack; // Stack: main stack used for values
+	transient Value[] stack; // Stack: main stack used for values (see 'writeObject')
+	transient long[] stackPrim; // Unboxed primitive values, parallel to 'stack'
+	transient byte[] stackPrimType; // Slot type for each stack position (SLOT_VALUE means the value is in 'stack')
 	List<Type> types;
 	Map<Type, Integer> typeToIndex;
 	boolean verbose;
@@ -86,12 +99,14 @@ public class BdsVm implements Serializable {
 	public BdsVm() {
 		constants = new ArrayList<>();
 		constantsByObject = new HashMap<>();
-		coverageCounter = new HashMap<>();
+		coverageCounter = new int[0];
 		labels = new HashMap<>();
 		labelsByPc = new AutoHashMap<>(new LinkedList<String>());
 		functionsBySignature = new HashMap<>();
 		scope = new Scope();
 		stack = new Value[STACK_SIZE];
+		stackPrim = new long[STACK_SIZE];
+		stackPrimType = new byte[STACK_SIZE];
 		types = new ArrayList<>();
 		typeToIndex = new HashMap<>();
 
@@ -116,9 +131,11 @@ public class BdsVm implements Serializable {
 	Value addArgsCallScope(FunctionDeclaration fdecl) {
 		Value vthis = null; // The last item to pop from the stack is 'this'
 		List<String> args = fdecl.getParameterNames();
+		Integer[] slots = fdecl.getParameterSlots();
 		for (int i = args.size() - 1; i >= 0; i--) {
 			vthis = pop();
-			scope.add(args.get(i), vthis);
+			if (slots[i] >= 0) scope.addSlot(slots[i], vthis);
+			else scope.add(args.get(i), vthis);
 		}
 		return vthis;
 	}
@@ -128,8 +145,11 @@ public class BdsVm implements Serializable {
 	 */
 	void addArgsCallScope(FunctionDeclaration fdecl, Value[] values) {
 		List<String> args = fdecl.getParameterNames();
-		for (int i = 0; i < args.size(); i++)
-			scope.add(args.get(i), values[i]);
+		Integer[] slots = fdecl.getParameterSlots();
+		for (int i = 0; i < args.size(); i++) {
+			if (slots[i] >= 0) scope.addSlot(slots[i], values[i]);
+			else scope.add(args.get(i), values[i]);
+		}
 	}
 
 	/**
@@ -198,7 +218,7 @@ public class BdsVm implements Serializable {
 		int spStart = sp - count;
 		StringBuilder sb = new StringBuilder();
 		for (int i = spStart; i < sp; i++)
-			sb.append(stack[i]);
+			sb.append(box(i));
 
 		sp = spStart;
 		push(sb.toString());
@@ -226,6 +246,39 @@ public class BdsVm implements Serializable {
 		return idx;
 	}
 
+	/**
+	 * Make sure the value at stack position 'idx' is a 'Value' object.
+	 * Unboxed primitives are only converted to objects when they
+	 * escape the stack (e.g. stored in a scope, list or passed to a
+	 * native call), so tight numeric code does not allocate.
+	 */
+	Value box(int idx) {
+		switch (stackPrimType[idx]) {
+		case SLOT_VALUE:
+			return stack[idx];
+
+		case SLOT_BOOL:
+			stack[idx] = new ValueBool(stackPrim[idx] != 0L);
+			break;
+
+		case SLOT_INT:
+			ValueInt vi = new ValueInt();
+			vi.set(stackPrim[idx]);
+			stack[idx] = vi;
+			break;
+
+		case SLOT_REAL:
+			stack[idx] = new ValueReal(Double.longBitsToDouble(stackPrim[idx]));
+			break;
+
+		default:
+			throw new RuntimeException("Unknown stack slot type " + stackPrimType[idx]);
+		}
+
+		stackPrimType[idx] = SLOT_VALUE;
+		return stack[idx];
+	}
+
 	/**
 	 * Call a function
 	 * @param name: Function's signature
@@ -234,21 +287,31 @@ public class BdsVm implements Serializable {
 		pushCallFrame(); // Push stack frame
 		FunctionDeclaration fdecl = functionsBySignature.get(fsig); // Find function meta-data
 		newScope(); // Create a new scope
+		newSlots(fdecl); // Create local variable slots
 		addArgsCallScope(fdecl); // Add function arguments to scope
 		pc = fdecl.getPc(); // Jump to function
 	}
 
 	/**
-	 * Call a function
-	 * @param name: Function's signature
+	 * Call a method
+	 * @param inlineCache: Call site's inline cache (method declaration and resolved virtual methods)
 	 */
-	void callMethod(String fsig, boolean isSuper) {
+	void callMethod(InlineCache inlineCache, boolean isSuper) {
 		pushCallFrame(); // Push stack frame
-		FunctionDeclaration fdecl = functionsBySignature.get(fsig);
+		FunctionDeclaration fdecl = inlineCache.getFunctionDeclaration();
 		newScope(); // Create a new scope
 		Value[] values = getArgsFromStack(fdecl); // Get arguments from scope
 		Value vthis = values[0]; // First argument is 'this'
-		fdecl = resolveVirtualMethod(vthis, fdecl, isSuper, fsig); // Find 'virtual method' (class inheritance)
+
+		// Find 'virtual method' (class inheritance)
+		FunctionDeclaration fdeclResolved = (vthis != null ? inlineCache.get(vthis.getType()) : null);
+		if (fdeclResolved == null) {
+			fdeclResolved = resolveVirtualMethod(vthis, fdecl, isSuper, fdecl.signature());
+			inlineCache.put(vthis.getType(), fdeclResolved);
+		}
+		fdecl = fdeclResolved;
+
+		newSlots(fdecl); // Create local variable slots
 		addArgsCallScope(fdecl, values); // Add arguments to scope
 		pc = fdecl.getPc(); // Jump to method
 	}
@@ -361,40 +424,75 @@ public class BdsVm implements Serializable {
 	 * Parameters is a reference to a 'bool' constant
 	 */
 	boolean constantBool() {
-		int idx = code[pc++];
-		return (Boolean) constants.get(idx);
+		return (Boolean) params[pc++];
 	}
 
 	/**
 	 * Parameters is a reference to a 'int' constant
 	 */
 	long constantInt() {
-		int idx = code[pc++];
-		return (Long) constants.get(idx);
+		return (Long) params[pc++];
 	}
 
 	/**
 	 * Parameters is a reference to a 'real' constant
 	 */
 	double constantReal() {
-		int idx = code[pc++];
-		return (Double) constants.get(idx);
+		return (Double) params[pc++];
 	}
 
 	/**
 	 * Parameters is a reference to a 'string' constant
 	 */
 	String constantString() {
-		int idx = code[pc++];
-		return (String) constants.get(idx);
+		return (String) params[pc++];
 	}
 
 	/**
 	 * Parameters is a reference to a 'type' constant
 	 */
 	Type constantType() {
-		int idx = code[pc++];
-		return types.get(idx);
+		return (Type) params[pc++];
+	}
+
+	/**
+	 * Pre-decode code: Resolve opcodes, constants, types and jump
+	 * targets, so that the main loop doesn't need to look them up
+	 * on every instruction
+	 */
+	void decode() {
+		OpCode[] ops = new OpCode[code.length];
+		Object[] params = new Object[code.length];
+		int[] jumpPcs = new int[code.length];
+
+		for (int pc = 0; pc < code.length; pc++) {
+			OpCode op = OPCODES[code[pc]];
+			ops[pc] = op;
+			if (!op.hasParam()) continue;
+
+			// Decode parameter
+			int idx = code[++pc];
+			if (op.isParamDirect()) params[pc] = idx;
+			else if (op.isParamType()) params[pc] = types.get(idx);
+			else params[pc] = constants.get(idx);
+
+			// Resolve jump target
+			switch (op) {
+			case JMP:
+			case JMPF:
+			case JMPT:
+			case JSR:
+				jumpPcs[pc] = getLabel((String) params[pc]);
+				break;
+
+			default:
+				break;
+			}
+		}
+
+		this.params = params;
+		this.jumpPcs = jumpPcs;
+		this.ops = ops;
 	}
 
 	/**
@@ -431,6 +529,22 @@ public class BdsVm implements Serializable {
 		--fp;
 	}
 
+	/**
+	 * Duplicate latest value in the stack.
+	 * Unboxed primitives are copied without creating new objects
+	 */
+	void dup() {
+		int idx = sp - 1;
+		if (stackPrimType[idx] == SLOT_VALUE) {
+			push(peek().clone());
+		} else {
+			ensureStackCapacity();
+			stackPrim[sp] = stackPrim[idx];
+			stackPrimType[sp] = stackPrimType[idx];
+			sp++;
+		}
+	}
+
 	/**
 	 * Exception handler: Add catch block parameters to Exception handler
 	 */
@@ -523,11 +637,28 @@ public class BdsVm implements Serializable {
 		return bdsThread;
 	}
 
+	/**
+	 * Get inline cache for the method call at the current pc
+	 * Note: The call's parameter (method signature) is consumed
+	 */
+	InlineCache getInlineCache() {
+		int callPc = pc;
+		String fsig = constantString();
+
+		if (inlineCaches == null) inlineCaches = new InlineCache[code.length];
+		InlineCache ic = inlineCaches[callPc];
+		if (ic == null) {
+			ic = new InlineCache(functionsBySignature.get(fsig));
+			inlineCaches[callPc] = ic;
+		}
+		return ic;
+	}
+
 	Object getConstant(int idx) {
 		return constants.get(idx);
 	}
 
-	public Map<Integer, Integer> getCoverageCounter() {
+	public int[] getCoverageCounter() {
 		return coverageCounter;
 	}
 
@@ -565,6 +696,42 @@ public class BdsVm implements Serializable {
 		return pc;
 	}
 
+	/**
+	 * Program structures: Code, constants, labels, functions and types
+	 * These are shared by all VMs (see 'clone') and don't change once the program is compiled
+	 */
+	public List<Object> getProgramObjects() {
+		List<Object> objs = new ArrayList<>();
+		objs.add(code);
+		objs.add(constants);
+		objs.add(constantsByObject);
+		objs.add(functionsBySignature);
+		objs.add(labels);
+		objs.add(labelsByPc);
+		objs.add(types);
+		objs.add(typeToIndex);
+		return objs;
+	}
+
+	/**
+	 * Set program structures (see 'getProgramObjects')
+	 * This is used to create a VM from a compiled program (e.g. loaded from the compile cache)
+	 */
+	@SuppressWarnings("unchecked")
+	public void setProgramObjects(List<Object> objs) {
+		int i = 0;
+		code = (int[]) objs.get(i++);
+		constants = (List<Object>) objs.get(i++);
+		constantsByObject = (Map<Object, Integer>) objs.get(i++);
+		functionsBySignature = (Map<String, FunctionDeclaration>) objs.get(i++);
+		labels = (Map<String, Integer>) objs.get(i++);
+		labelsByPc = (AutoHashMap<Integer, List<String>>) objs.get(i++);
+		types = (List<Type>) objs.get(i++);
+		typeToIndex = (Map<Type, Integer>) objs.get(i++);
+		inlineCaches = null;
+		ops = null;
+	}
+
 	RunState getRunState() {
 		return bdsThread != null ? bdsThread.getRunState() : RunState.OK;
 	}
@@ -613,6 +780,18 @@ public class BdsVm implements Serializable {
 		return OPCODES[code[pc]].hasParam();
 	}
 
+	/**
+	 * Resize stack if there is no space for one more value
+	 */
+	void ensureStackCapacity() {
+		if (sp >= stack.length) {
+			int len = 2 * stack.length;
+			stack = Arrays.copyOf(stack, len);
+			stackPrim = Arrays.copyOf(stackPrim, len);
+			stackPrimType = Arrays.copyOf(stackPrimType, len);
+		}
+	}
+
 	public boolean isEmptyStack() {
 		return sp <= 0;
 	}
@@ -658,6 +837,14 @@ public class BdsVm implements Serializable {
 		scope = new Scope(scope, bdsNode);
 	}
 
+	/**
+	 * Create local variable slots for a function call
+	 */
+	void newSlots(FunctionDeclaration fdecl) {
+		String[] slotNames = fdecl.getSlotNames();
+		if (slotNames.length > 0) scope.newSlots(slotNames);
+	}
+
 	/**
 	 * Create a 'parallel' vm-thread
 	 */
@@ -665,6 +852,12 @@ public class BdsVm implements Serializable {
 		BdsVm vmclone = new BdsVm();
 
 		vmclone.code = code;
+		if (ops == null) decode();
+		vmclone.ops = ops;
+		vmclone.params = params;
+		vmclone.jumpPcs = jumpPcs;
+		if (inlineCaches == null) inlineCaches = new InlineCache[code.length];
+		vmclone.inlineCaches = inlineCaches; // Inline caches are shared by all threads
 		vmclone.debug = debug;
 		vmclone.nodeId = nodeId;
 		vmclone.run = run;
@@ -721,19 +914,21 @@ public class BdsVm implements Serializable {
 	}
 
 	public Value peek() {
-		return stack[sp - 1];
+		return box(sp - 1);
 	}
 
 	public Value pop() {
 		if (isEmptyStack()) throw new RuntimeException("Pop from empty stack!");
-		return stack[--sp];
+		return box(--sp);
 	}
 
 	/**
 	 * Pop a bool from stack
 	 */
 	public boolean popBool() {
-		Value v = pop();
+		if (isEmptyStack()) throw new RuntimeException("Pop from empty stack!");
+		if (stackPrimType[--sp] == SLOT_BOOL) return stackPrim[sp] != 0L;
+		Value v = box(sp);
 		return v != null ? v.asBool() : false;
 	}
 
@@ -749,7 +944,9 @@ public class BdsVm implements Serializable {
 	 * Pop an int from stack
 	 */
 	public long popInt() {
-		Value v = pop();
+		if (isEmptyStack()) throw new RuntimeException("Pop from empty stack!");
+		if (stackPrimType[--sp] == SLOT_INT) return stackPrim[sp];
+		Value v = box(sp);
 		return v != null ? v.asInt() : 0;
 	}
 
@@ -757,8 +954,18 @@ public class BdsVm implements Serializable {
 	 * Pop a real from stack
 	 */
 	public double popReal() {
-		Value v = pop();
-		return v != null ? v.asReal() : 0.0;
+		if (isEmptyStack()) throw new RuntimeException("Pop from empty stack!");
+		switch (stackPrimType[--sp]) {
+		case SLOT_REAL:
+			return Double.longBitsToDouble(stackPrim[sp]);
+
+		case SLOT_INT:
+			return stackPrim[sp];
+
+		default:
+			Value v = box(sp);
+			return v != null ? v.asReal() : 0.0;
+		}
 	}
 
 	/**
@@ -777,16 +984,25 @@ public class BdsVm implements Serializable {
 		return v != null ? v.asString() : "null";
 	}
 
+	/**
+	 * Push a bool (unboxed, no object is created)
+	 */
 	public void push(boolean b) {
-		push(new ValueBool(b));
+		pushPrim(b ? 1L : 0L, SLOT_BOOL);
 	}
 
+	/**
+	 * Push a real (unboxed, no object is created)
+	 */
 	public void push(double v) {
-		push(new ValueReal(v));
+		pushPrim(Double.doubleToRawLongBits(v), SLOT_REAL);
 	}
 
+	/**
+	 * Push an int (unboxed, no object is created)
+	 */
 	public void push(long v) {
-		push(new ValueInt(v));
+		pushPrim(v, SLOT_INT);
 	}
 
 	public void push(String s) {
@@ -794,13 +1010,21 @@ public class BdsVm implements Serializable {
 	}
 
 	public void push(Value val) {
-		if (sp >= stack.length) {
-			// Resize stack
-			stack = Arrays.copyOf(stack, 2 * stack.length);
-		}
+		ensureStackCapacity();
+		stackPrimType[sp] = SLOT_VALUE;
 		stack[sp++] = val;
 	}
 
+	/**
+	 * Push an unboxed primitive value
+	 */
+	void pushPrim(long v, byte slotType) {
+		ensureStackCapacity();
+		stackPrim[sp] = v;
+		stackPrimType[sp] = slotType;
+		sp++;
+	}
+
 	/**
 	 * Push call frame
 	 */
@@ -811,6 +1035,24 @@ public class BdsVm implements Serializable {
 		exceptionHandler = null;
 	}
 
+	/**
+	 * Un-serialize: Only the used part of the stack and call frames was stored (see 'writeObject')
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		Value[] st = (Value[]) in.readObject();
+		int len = Math.max(STACK_SIZE, st.length);
+		stack = Arrays.copyOf(st, len);
+		stackPrim = Arrays.copyOf((long[]) in.readObject(), len);
+		stackPrimType = Arrays.copyOf((byte[]) in.readObject(), len);
+
+		CallFrame[] cfs = (CallFrame[]) in.readObject();
+		callFrames = Arrays.copyOf(cfs, CALL_STACK_SIZE);
+		for (int i = cfs.length; i < callFrames.length; i++)
+			callFrames[i] = new CallFrame();
+	}
+
 	/**
 	 * Resolve method call
 	 * Note: For non-class types, there is nothing to resolve
@@ -885,705 +1127,750 @@ public class BdsVm implements Serializable {
 
 	/**
 	 * Run the program in 'code'
+	 * Note: There is an instrumented version of the main loop (debug
+	 *       mode) and a lean one, so that normal runs don't pay for
+	 *       debugging checks on every instruction
 	 */
 	protected void runLoop() {
-		// First instruction
-		int instruction;
-		OpCode opcode = OpCode.NOOP;
-
-		// Some variables used for opcodes
-		boolean b1, b2;
-		long i1, i2, idx;
-		double r1, r2;
-		String name, s1, s2;
-		Type type;
-		Value v1, v2, val;
-		ValueList vlist;
-		ValueMap vmap;
-		ValueClass vclass;
+		// Pre-decode code (e.g. after loading a checkpoint)
+		if (ops == null) decode();
 
 		// In case of recovered checkpoints, the task ID could be repeated (e.g. recovering checkpoints several times)
 		// We append PID to avoid file name collision
 		boolean usePidInFileNames = recoveredCheckpoint;
 
+		if (debug) runLoopDebug(usePidInFileNames);
+		else runLoopLean(usePidInFileNames);
+	}
+
+	/**
+	 * Main loop, debug mode: Show stack and instruction before executing it
+	 */
+	void runLoopDebug(boolean usePidInFileNames) {
 		// Execute while not the end of the program
 		while (pc < code.length && run) {
-			instruction = code[pc];
-			opcode = OPCODES[instruction];
-			if (debug) {
-				String msg = "" //
-						+ (sp > 0 ? "\n\t\t\t\t\t\t\t\t# stack: " + toStringStack() : "") //
-						+ (exceptionHandler != null ? "\n\t\t\t\t\t\t\t\t# exceptionHandler: " + exceptionHandler.getFinallyLabel() : "") //
-						+ (fp > 0 ? "\n\t\t\t\t\t\t\t\t# call stack: " + toStringCallStack() : "") //
-						+ "\n" //
-						+ (bdsThread != null ? bdsThread.getBdsThreadId() + "\t\t|" : "") //
-						+ toAsm(pc) //
-				;
-				System.err.print(msg);
-			}
-			pc++;
-
-			switch (opcode) {
-			case ADDI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 + i2);
-				break;
-
-			case ADDR:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 + r2);
-				break;
-
-			case ADDS:
-				s2 = popString();
-				s1 = popString();
-				push(s1 + s2);
-				break;
-
-			case ADDSM:
-				adds(paramInt());
-				break;
-
-			case ANDB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b1 && b2);
-				break;
-
-			case ANDI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 & i2);
-				break;
-
-			case BREAKPOINT:
-				s1 = popString();
-				if (vmDebugger != null) vmDebugger.breakpoint(s1);
-				break;
-
-			case CALL:
-				name = constantString(); // Get function signature
-				call(name);
-				break;
-
-			case CALLMETHOD:
-				name = constantString(); // Get method signature
-				callMethod(name, false);
-				break;
-
-			case CALLNATIVE:
-				vmStateSave();
-				name = constantString(); // Get signature
-				v1 = callNative(name);
-				vmStateInvalidate();
-				push(v1);
-				break;
-
-			case CALLSUPER:
-				name = constantString(); // Get method signature
-				callMethod(name, true);
-				break;
-
-			case CAST_TOB:
-				push(pop().asBool());
-				break;
-
-			case CAST_TOC: // Cast object to class (only if up-casting)
-				name = constantString();
-				castToClass(name);
-				break;
-
-			case CAST_TOI:
-				push(pop().asInt());
-				break;
-
-			case CAST_TOR:
-				push(pop().asReal());
-				break;
-
-			case CAST_TOS:
-				push(pop().asString());
-				break;
-
-			case CHECKPOINT:
-				s1 = popString(); // File name (may be empty)
-				bdsThread.checkpoint(s1, getBdsNode());
-				break;
-
-			case CHECKPOINTVM:
-				s1 = popString(); // File name (may be empty)
-				s1 = bdsThread.checkpointVm(s1, getBdsNode()); // Return checkpoint file name
-				push(s1); // Push checkpoint file name to stack
-				break;
-
-			case CHECKPOINT_RECOVERED:
-				// Checkpoint recovered: Push true to the stack ONLY if both conditions are satisfied:
-				//   a) this VM was recovered from a checkpoint
-				//   b) this is the first time we check
-				// Important: Only true the first time we check
-				push(recoveredCheckpointOp);
-				recoveredCheckpointOp = false;
-				break;
-
-			case DEBUG:
-				debug();
-				break;
-
-			case DEC:
-				i1 = popInt();
-				push(--i1);
-				break;
-
-			case DEP:
-				dep();
-				break;
-
-			case DIVI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 / i2);
-				break;
-
-			case DIVR:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 / r2);
-				break;
-
-			case DUP:
-				push(peek().clone());
-				break;
-
-			case EHADD:
-				ehAdd(constantString(), popString(), popString());
-				break;
-
-			case EHCREATE:
-				ehCreate(constantString());
-				break;
-
-			case EHEND:
-				ehEnd();
-				break;
-
-			case EHCSTART:
-				ehcStart();
-				break;
-
-			case EHFSTART:
-				ehfStart();
-				break;
-
-			case EQB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b1 == b2);
-				break;
-
-			case EQI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 == i2);
-				break;
-
-			case EQR:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 == r2);
-				break;
-
-			case EQS:
-				s2 = popString();
-				s1 = popString();
-				push(s1.equals(s2));
-				break;
-
-			case ERROR:
-				bdsThread.fatalError(popString());
-				exitCode = BdsThread.EXITCODE_ERROR;
-				return;
-
-			case GEB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b1 || b1 == b2);
-				break;
-
-			case GEI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 >= i2);
-				break;
-
-			case GER:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 >= r2);
-				break;
-
-			case GES:
-				s2 = popString();
-				s1 = popString();
-				push(s1.compareTo(s2) >= 0);
-				break;
-
-			case GOAL:
-				goal();
-				break;
-
-			case GTB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b1 && !b2);
-				break;
-
-			case GTI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 > i2);
-				break;
-
-			case GTR:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 > r2);
-				break;
-
-			case GTS:
-				s2 = popString();
-				s1 = popString();
-				push(s1.compareTo(s2) > 0);
-				break;
-
-			case HALT:
-				pc--; // Next instruction is this same 'halt'. Used when recovering from a checkpoint.
-				run = false;
-				return;
-
-			case INC:
-				i1 = popInt();
-				push(++i1);
-				break;
-
-			case JMP:
-				name = constantString(); // Get function name
-				pc = getLabel(name);
-				break;
-
-			case JMPT:
-				if (popBool()) {
-					name = constantString(); // Get label name
-					pc = getLabel(name); // Jump to label
-				} else pc++;
-				break;
-
-			case JMPF:
-				if (!popBool()) {
-					name = constantString(); // Get label name
-					pc = getLabel(name); // Jump to label
-				} else pc++;
-				break;
-
-			case JSR:
-				name = constantString(); // Get label name
-				pushCallFrame();
-				pc = getLabel(name);
-				break;
-
-			case KILL:
-				kill();
-				break;
-
-			case LEB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b2 || b1 == b2);
-				break;
-
-			case LEI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 <= i2);
-				break;
-
-			case LER:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 <= r2);
-				break;
-
-			case LES:
-				s2 = popString();
-				s1 = popString();
-				push(s1.compareTo(s2) <= 0);
-				break;
-
-			case LOAD:
-				name = constantString();
-				push(scope.getValue(name));
-				break;
-
-			case LTB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b2 && !b1);
-				break;
-
-			case LTI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 < i2);
-				break;
-
-			case LTR:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 < r2);
-				break;
-
-			case LTS:
-				s2 = popString();
-				s1 = popString();
-				push(s1.compareTo(s2) < 0);
-				break;
-
-			case MODI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 % i2);
-				break;
-
-			case MULI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 * i2);
-				break;
-
-			case MULR:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 * r2);
-				break;
+			String msg = "" //
+					+ (sp > 0 ? "\n\t\t\t\t\t\t\t\t# stack: " + toStringStack() : "") //
+					+ (exceptionHandler != null ? "\n\t\t\t\t\t\t\t\t# exceptionHandler: " + exceptionHandler.getFinallyLabel() : "") //
+					+ (fp > 0 ? "\n\t\t\t\t\t\t\t\t# call stack: " + toStringCallStack() : "") //
+					+ "\n" //
+					+ (bdsThread != null ? bdsThread.getBdsThreadId() + "\t\t|" : "") //
+					+ toAsm(pc) //
+			;
+			System.err.print(msg);
+
+			if (!runOpCode(ops[pc++], usePidInFileNames)) return;
+		}
 
-			case MULS:
-				v2 = pop();
-				v1 = pop();
-				push(muls(v1, v2));
-				break;
+		// Finished running code? We are done
+		run = false;
+	}
 
-			case NEB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b1 != b2);
-				break;
+	/**
+	 * Main loop, no instrumentation
+	 */
+	void runLoopLean(boolean usePidInFileNames) {
+		OpCode[] ops = this.ops;
 
-			case NEI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 != i2);
-				break;
+		// Execute while not the end of the program
+		while (pc < code.length && run) {
+			if (!runOpCode(ops[pc++], usePidInFileNames)) return;
+		}
 
-			case NER:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 != r2);
-				break;
+		// Finished running code? We are done
+		run = false;
+	}
 
-			case NES:
-				s2 = popString();
-				s1 = popString();
-				push(!s1.equals(s2));
-				break;
+	/**
+	 * Execute one instruction
+	 * Note: 'pc' already points to the instruction's parameter (if any)
+	 * @return false if the main loop should stop (e.g. 'halt' or 'error')
+	 */
+	boolean runOpCode(OpCode opcode, boolean usePidInFileNames) {
+		// Some variables used for opcodes
+		boolean b1, b2;
+		long i1, i2, idx;
+		double r1, r2;
+		String name, s1, s2;
+		Type type;
+		Value v1, v2, val;
+		ValueList vlist;
+		ValueMap vmap;
+		ValueClass vclass;
 
-			case NEW:
-				type = constantType(); // Get type
-				val = type.newValue();
+		switch (opcode) {
+		case ADDI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 + i2);
+			break;
+
+		case ADDR:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 + r2);
+			break;
+
+		case ADDS:
+			s2 = popString();
+			s1 = popString();
+			push(s1 + s2);
+			break;
+
+		case ADDSM:
+			adds(paramInt());
+			break;
+
+		case ANDB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b1 && b2);
+			break;
+
+		case ANDI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 & i2);
+			break;
+
+		case BREAKPOINT:
+			s1 = popString();
+			if (vmDebugger != null) vmDebugger.breakpoint(s1);
+			break;
+
+		case CALL:
+			name = constantString(); // Get function signature
+			call(name);
+			break;
+
+		case CALLMETHOD:
+			callMethod(getInlineCache(), false);
+			break;
+
+		case CALLNATIVE:
+			vmStateSave();
+			name = constantString(); // Get signature
+			v1 = callNative(name);
+			vmStateInvalidate();
+			push(v1);
+			break;
+
+		case CALLSUPER:
+			callMethod(getInlineCache(), true);
+			break;
+
+		case CAST_TOB:
+			push(pop().asBool());
+			break;
+
+		case CAST_TOC: // Cast object to class (only if up-casting)
+			name = constantString();
+			castToClass(name);
+			break;
+
+		case CAST_TOI:
+			push(pop().asInt());
+			break;
+
+		case CAST_TOR:
+			push(pop().asReal());
+			break;
+
+		case CAST_TOS:
+			push(pop().asString());
+			break;
+
+		case CHECKPOINT:
+			s1 = popString(); // File name (may be empty)
+			bdsThread.checkpoint(s1, getBdsNode());
+			break;
+
+		case CHECKPOINTVM:
+			s1 = popString(); // File name (may be empty)
+			s1 = bdsThread.checkpointVm(s1, getBdsNode()); // Return checkpoint file name
+			push(s1); // Push checkpoint file name to stack
+			break;
+
+		case CHECKPOINT_RECOVERED:
+			// Checkpoint recovered: Push true to the stack ONLY if both conditions are satisfied:
+			//   a) this VM was recovered from a checkpoint
+			//   b) this is the first time we check
+			// Important: Only true the first time we check
+			push(recoveredCheckpointOp);
+			recoveredCheckpointOp = false;
+			break;
+
+		case DEBUG:
+			debug();
+			break;
+
+		case DEC:
+			i1 = popInt();
+			push(--i1);
+			break;
+
+		case DEP:
+			dep();
+			break;
+
+		case DIVI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 / i2);
+			break;
+
+		case DIVR:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 / r2);
+			break;
+
+		case DUP:
+			dup();
+			break;
+
+		case EHADD:
+			ehAdd(constantString(), popString(), popString());
+			break;
+
+		case EHCREATE:
+			ehCreate(constantString());
+			break;
+
+		case EHEND:
+			ehEnd();
+			break;
+
+		case EHCSTART:
+			ehcStart();
+			break;
+
+		case EHFSTART:
+			ehfStart();
+			break;
+
+		case EQB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b1 == b2);
+			break;
+
+		case EQI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 == i2);
+			break;
+
+		case EQR:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 == r2);
+			break;
+
+		case EQS:
+			s2 = popString();
+			s1 = popString();
+			push(s1.equals(s2));
+			break;
+
+		case ERROR:
+			bdsThread.fatalError(popString());
+			exitCode = BdsThread.EXITCODE_ERROR;
+			return false;
+
+		case GEB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b1 || b1 == b2);
+			break;
+
+		case GEI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 >= i2);
+			break;
+
+		case GER:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 >= r2);
+			break;
+
+		case GES:
+			s2 = popString();
+			s1 = popString();
+			push(s1.compareTo(s2) >= 0);
+			break;
+
+		case GOAL:
+			goal();
+			break;
+
+		case GTB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b1 && !b2);
+			break;
+
+		case GTI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 > i2);
+			break;
+
+		case GTR:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 > r2);
+			break;
+
+		case GTS:
+			s2 = popString();
+			s1 = popString();
+			push(s1.compareTo(s2) > 0);
+			break;
+
+		case HALT:
+			pc--; // Next instruction is this same 'halt'. Used when recovering from a checkpoint.
+			run = false;
+			return false;
+
+		case INC:
+			i1 = popInt();
+			push(++i1);
+			break;
+
+		case JMP:
+			pc = jumpPcs[pc]; // Jump to label
+			break;
+
+		case JMPT:
+			if (popBool()) pc = jumpPcs[pc]; // Jump to label
+			else pc++;
+			break;
+
+		case JMPF:
+			if (!popBool()) pc = jumpPcs[pc]; // Jump to label
+			else pc++;
+			break;
+
+		case JSR:
+			i1 = jumpPcs[pc++]; // Label's pc
+			pushCallFrame();
+			pc = (int) i1;
+			break;
+
+		case KILL:
+			kill();
+			break;
+
+		case LEB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b2 || b1 == b2);
+			break;
+
+		case LEI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 <= i2);
+			break;
+
+		case LER:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 <= r2);
+			break;
+
+		case LES:
+			s2 = popString();
+			s1 = popString();
+			push(s1.compareTo(s2) <= 0);
+			break;
+
+		case LOAD:
+			name = constantString();
+			push(scope.getValue(name));
+			break;
+
+		case LOADL:
+			push(scope.getSlot(paramInt()));
+			break;
+
+		case LTB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b2 && !b1);
+			break;
+
+		case LTI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 < i2);
+			break;
+
+		case LTR:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 < r2);
+			break;
+
+		case LTS:
+			s2 = popString();
+			s1 = popString();
+			push(s1.compareTo(s2) < 0);
+			break;
+
+		case MODI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 % i2);
+			break;
+
+		case MULI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 * i2);
+			break;
+
+		case MULR:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 * r2);
+			break;
+
+		case MULS:
+			v2 = pop();
+			v1 = pop();
+			push(muls(v1, v2));
+			break;
+
+		case NEB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b1 != b2);
+			break;
+
+		case NEI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 != i2);
+			break;
+
+		case NER:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 != r2);
+			break;
+
+		case NES:
+			s2 = popString();
+			s1 = popString();
+			push(!s1.equals(s2));
+			break;
+
+		case NEW:
+			type = constantType(); // Get type
+			val = type.newValue();
+			push(val);
+			break;
+
+		case NODE:
+			nodeId = paramInt();
+			if (vmDebugger != null) vmDebugger.node();
+			break;
+
+		case NODE_COVERAGE:
+			nodeId = paramInt();
+			if (nodeId >= coverageCounter.length) coverageCounter = Arrays.copyOf(coverageCounter, Math.max(nodeId + 1, 2 * coverageCounter.length));
+			coverageCounter[nodeId]++; // Increment node counter
+			if (vmDebugger != null) vmDebugger.node();
+			break;
+
+		case NOOP:
+			break;
+
+		case NOTB:
+			b1 = popBool();
+			push(!b1);
+			break;
+
+		case NOTI:
+			i1 = popInt();
+			push(~i1);
+			break;
+
+		case ORB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b1 || b2);
+			break;
+
+		case ORI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 | i2);
+			break;
+
+		case PARALLEL:
+			parallelOpCode(0);
+			break;
+
+		case PARALLELPUSH:
+			i1 = popInt();
+			parallelOpCode((int) i1);
+			break;
+
+		case POP:
+			sp--; // Drop last value from stack
+			break;
+
+		case PRINT:
+			System.out.print(pop());
+			break;
+
+		case PRINTLN:
+			System.out.println(pop());
+			break;
+
+		case PRINTSTDERR:
+			System.err.print(popString());
+			break;
+
+		case PRINTSTDERRLN:
+			System.err.println(popString());
+			break;
+
+		case PUSHB:
+			push(constantBool());
+			break;
+
+		case PUSHI:
+			push(constantInt());
+			break;
+
+		case PUSHNULL:
+			push((Value) null);
+			break;
+
+		case PUSHR:
+			push(constantReal());
+			break;
+
+		case PUSHS:
+			push(constantString());
+			break;
+
+		case REFFIELD:
+			name = constantString();
+			vclass = (ValueClass) pop();
+			if (vclass != null) {
+				val = vclass.getValue(name);
 				push(val);
-				break;
-
-			case NODE:
-				nodeId = paramInt();
-				if (vmDebugger != null) vmDebugger.node();
-				break;
-
-			case NODE_COVERAGE:
-				nodeId = paramInt();
-				coverageCounter.put(nodeId, coverageCounter.getOrDefault(nodeId, 0) + 1); // Increment node counter
-				if (vmDebugger != null) vmDebugger.node();
-				break;
-
-			case NOOP:
-				break;
-
-			case NOTB:
-				b1 = popBool();
-				push(!b1);
-				break;
-
-			case NOTI:
-				i1 = popInt();
-				push(~i1);
-				break;
-
-			case ORB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b1 || b2);
-				break;
-
-			case ORI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 | i2);
-				break;
-
-			case PARALLEL:
-				parallelOpCode(0);
-				break;
-
-			case PARALLELPUSH:
-				i1 = popInt();
-				parallelOpCode((int) i1);
-				break;
-
-			case POP:
-				sp--; // Drop last value from stack
-				break;
-
-			case PRINT:
-				System.out.print(pop());
-				break;
-
-			case PRINTLN:
-				System.out.println(pop());
-				break;
-
-			case PRINTSTDERR:
-				System.err.print(popString());
-				break;
-
-			case PRINTSTDERRLN:
-				System.err.println(popString());
-				break;
-
-			case PUSHB:
-				push(constantBool());
-				break;
-
-			case PUSHI:
-				push(constantInt());
-				break;
-
-			case PUSHNULL:
-				push((Value) null);
-				break;
-
-			case PUSHR:
-				push(constantReal());
-				break;
-
-			case PUSHS:
-				push(constantString());
-				break;
-
-			case REFFIELD:
-				name = constantString();
-				vclass = (ValueClass) pop();
-				if (vclass != null) {
-					val = vclass.getValue(name);
-					push(val);
-				} else {
-					fatalError("Null pointer. Trying to access field '" + name + "' in null object.");
-				}
-				break;
-
-			case REFLIST:
-				vlist = (ValueList) pop();
-				idx = popInt();
-				if (vlist != null) {
-					val = vlist.getValue(idx);
-					push(val);
-				} else {
-					fatalError("Null pointer. Trying to access item " + idx + " in null list.");
-				}
-				break;
-
-			case REFMAP:
-				vmap = (ValueMap) pop();
-				v1 = pop();
-				if (vmap != null) {
-					val = vmap.getValue(v1);
-					push(val);
-				} else {
-					fatalError("Null pointer. Trying to access item '" + v1 + "' in null map.");
-				}
-				break;
-
-			case RET:
-				popCallFrame();
-				break;
-
-			case RMONEXIT:
-				v1 = pop();
-				bdsThread.rmOnExit(v1);
-				break;
-
-			case SCOPEPUSH:
-				newScope();
-				break;
-
-			case SCOPEPOP:
-				scope = scope.getParent();
-				break;
-
-			case SET:
-				v1 = pop();
-				v2 = pop();
-				v1.setValue(v2);
-				push(v1);
-				break;
-
-			case SETPOP:
-				v1 = pop();
-				v2 = pop();
-				v1.setValue(v2);
-				break;
-
-			case SETFIELD:
-				name = constantString();
-				vclass = (ValueClass) pop();
-				vclass.setValue(name, peek()); // We leave the value in the stack
-				break;
-
-			case SETFIELDPOP:
-				name = constantString();
-				vclass = (ValueClass) pop();
-				vclass.setValue(name, pop());
-				break;
-
-			case SETLIST:
-				vlist = (ValueList) pop();
-				idx = popInt();
-				vlist.setValue(idx, peek()); // We leave the value in the stack
-				break;
-
-			case SETLISTPOP:
-				vlist = (ValueList) pop();
-				idx = popInt();
-				vlist.setValue(idx, pop());
-				break;
-
-			case SETMAP:
-				vmap = (ValueMap) pop();
-				v1 = pop(); // Key
-				vmap.put(v1, peek()); // We leave the value in the stack
-				break;
-
-			case SETMAPPOP:
-				vmap = (ValueMap) pop();
-				v1 = pop(); // Key
-				vmap.put(v1, pop());
-				break;
-
-			case STORE:
-				name = constantString();
-				scope.setValue(name, peek()); // We leave the value in the stack
-				break;
-
-			case STOREPOP:
-				name = constantString();
-				scope.setValue(name, pop());
-				break;
-
-			case SUBI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 - i2);
-				break;
-
-			case SUBR:
-				r2 = popReal();
-				r1 = popReal();
-				push(r1 - r2);
-				break;
-
-			case SYS:
-				vmStateSave();
-				SysVmOpcode sf = new SysVmOpcode(bdsThread, usePidInFileNames);
-				s1 = sf.run();
-				vmStateInvalidate();
-				push(s1);
-				break;
-
-			case SWAP:
-				v2 = pop();
-				v1 = pop();
-				push(v2);
-				push(v1);
-				break;
-
-			case TASK:
-				TaskVmOpcode taskVmOp = new TaskVmOpcode(bdsThread, usePidInFileNames);
-				s1 = taskVmOp.run();
-				push(s1);
-				break;
-
-			case TASKDEP:
-				TaskVmOpcode depVmOp = new DepVmOpcode(bdsThread, usePidInFileNames);
-				s1 = depVmOp.run();
-				push(s1);
-				break;
-
-			case THROW:
-				throwException((ValueClass) pop()); // Get Exception object to throw
-				break;
-
-			case VAR:
-				name = constantString();
-				scope.add(name, peek()); // We leave the value in the stack
-				break;
-
-			case VARPOP:
-				name = constantString();
-				scope.add(name, pop());
-				break;
-
-			case WAIT:
-				vmStateSave();
-				ValueList tids = (ValueList) pop();
-				b1 = bdsThread.wait(tids);
-				vmStateInvalidate();
-				push(b1);
-				break;
-
-			case WAITALL:
-				vmStateSave();
-				b1 = bdsThread.waitAll();
-				vmStateInvalidate();
-				push(b1);
-				break;
-
-			case XORB:
-				b2 = popBool();
-				b1 = popBool();
-				push(b1 ^ b2);
-				break;
+			} else {
+				fatalError("Null pointer. Trying to access field '" + name + "' in null object.");
+			}
+			break;
 
-			case XORI:
-				i2 = popInt();
-				i1 = popInt();
-				push(i1 ^ i2);
-				break;
+		case REFLIST:
+			vlist = (ValueList) pop();
+			idx = popInt();
+			if (vlist != null) {
+				val = vlist.getValue(idx);
+				push(val);
+			} else {
+				fatalError("Null pointer. Trying to access item " + idx + " in null list.");
+			}
+			break;
 
-			default:
-				throw new RuntimeException("Unimplemented opcode " + opcode);
+		case REFMAP:
+			vmap = (ValueMap) pop();
+			v1 = pop();
+			if (vmap != null) {
+				val = vmap.getValue(v1);
+				push(val);
+			} else {
+				fatalError("Null pointer. Trying to access item '" + v1 + "' in null map.");
 			}
+			break;
+
+		case RET:
+			popCallFrame();
+			break;
+
+		case RMONEXIT:
+			v1 = pop();
+			bdsThread.rmOnExit(v1);
+			break;
+
+		case SCOPEPUSH:
+			newScope();
+			break;
+
+		case SCOPEPOP:
+			scope = scope.getParent();
+			break;
+
+		case SET:
+			v1 = pop();
+			v2 = pop();
+			v1.setValue(v2);
+			push(v1);
+			break;
+
+		case SETPOP:
+			v1 = pop();
+			v2 = pop();
+			v1.setValue(v2);
+			break;
+
+		case SETFIELD:
+			name = constantString();
+			vclass = (ValueClass) pop();
+			vclass.setValue(name, peek()); // We leave the value in the stack
+			break;
+
+		case SETFIELDPOP:
+			name = constantString();
+			vclass = (ValueClass) pop();
+			vclass.setValue(name, pop());
+			break;
+
+		case SETLIST:
+			vlist = (ValueList) pop();
+			idx = popInt();
+			vlist.setValue(idx, peek()); // We leave the value in the stack
+			break;
+
+		case SETLISTPOP:
+			vlist = (ValueList) pop();
+			idx = popInt();
+			vlist.setValue(idx, pop());
+			break;
+
+		case SETMAP:
+			vmap = (ValueMap) pop();
+			v1 = pop(); // Key
+			vmap.put(v1, peek()); // We leave the value in the stack
+			break;
+
+		case SETMAPPOP:
+			vmap = (ValueMap) pop();
+			v1 = pop(); // Key
+			vmap.put(v1, pop());
+			break;
+
+		case STORE:
+			name = constantString();
+			scope.setValue(name, peek()); // We leave the value in the stack
+			break;
+
+		case STOREL:
+			scope.setSlot(paramInt(), peek()); // We leave the value in the stack
+			break;
+
+		case STORELPOP:
+			scope.setSlot(paramInt(), pop());
+			break;
+
+		case STOREPOP:
+			name = constantString();
+			scope.setValue(name, pop());
+			break;
+
+		case SUBI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 - i2);
+			break;
+
+		case SUBR:
+			r2 = popReal();
+			r1 = popReal();
+			push(r1 - r2);
+			break;
+
+		case SYS:
+			vmStateSave();
+			SysVmOpcode sf = new SysVmOpcode(bdsThread, usePidInFileNames);
+			s1 = sf.run(pc >= ops.length || ops[pc] != OpCode.POP); // Output is discarded if next instruction is 'pop' (e.g. 'sys' statement)
+			vmStateInvalidate();
+			push(s1);
+			break;
+
+		case SWAP:
+			v2 = pop();
+			v1 = pop();
+			push(v2);
+			push(v1);
+			break;
+
+		case TASK:
+			TaskVmOpcode taskVmOp = new TaskVmOpcode(bdsThread, usePidInFileNames);
+			s1 = taskVmOp.run();
+			push(s1);
+			break;
+
+		case TASKDEP:
+			TaskVmOpcode depVmOp = new DepVmOpcode(bdsThread, usePidInFileNames);
+			s1 = depVmOp.run();
+			push(s1);
+			break;
+
+		case THROW:
+			throwException((ValueClass) pop()); // Get Exception object to throw
+			break;
+
+		case VAR:
+			name = constantString();
+			scope.add(name, peek()); // We leave the value in the stack
+			break;
+
+		case VARL:
+			scope.addSlot(paramInt(), peek()); // We leave the value in the stack
+			break;
+
+		case VARLPOP:
+			scope.addSlot(paramInt(), pop());
+			break;
+
+		case VARPOP:
+			name = constantString();
+			scope.add(name, pop());
+			break;
+
+		case WAIT:
+			vmStateSave();
+			ValueList tids = (ValueList) pop();
+			b1 = bdsThread.wait(tids);
+			vmStateInvalidate();
+			push(b1);
+			break;
+
+		case WAITALL:
+			vmStateSave();
+			b1 = bdsThread.waitAll();
+			vmStateInvalidate();
+			push(b1);
+			break;
+
+		case XORB:
+			b2 = popBool();
+			b1 = popBool();
+			push(b1 ^ b2);
+			break;
+
+		case XORI:
+			i2 = popInt();
+			i1 = popInt();
+			push(i1 ^ i2);
+			break;
+
+		default:
+			throw new RuntimeException("Unimplemented opcode " + opcode);
 		}
 
-		// Finished running code? We are done
-		run = false;
+		return true;
 	}
 
 	public void sanityCheckStack() {
@@ -1600,10 +1887,10 @@ public class BdsVm implements Serializable {
 	/**
 	 * Add code to the VM
 	 */
-	public void setCode(List<Integer> code) {
-		this.code = new int[code.size()];
-		for (int i = 0; i < code.size(); i++)
-			this.code[i] = code.get(i);
+	public void setCode(int[] code) {
+		this.code = code;
+		inlineCaches = null;
+		ops = null; // Decoded lazily, labels could still be added
 	}
 
 	public void setDebug(boolean debug) {
@@ -1824,7 +2111,7 @@ public class BdsVm implements Serializable {
 		sb.append("[");
 		String s;
 		for (int i = 0; i < sp; i++) {
-			Value v = stack[i];
+			Value v = box(i);
 
 			if (v == null) {
 				s = "null";
@@ -1887,4 +2174,20 @@ public class BdsVm implements Serializable {
 		vmState.set(fp, nodeId, pc - 1, sp, scope);
 	}
 
+	/**
+	 * Serialize: The stack and call frames are pre-allocated, only the used part is stored.
+	 * Positions above the stack (or frame) pointer are always written before being read.
+	 * Note: A long running opcode may restore the stack and frame pointers (see 'vmStateRecover')
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		int spMax = vmState.isValid() ? Math.max(sp, vmState.sp) : sp;
+		int fpMax = vmState.isValid() ? Math.max(fp, vmState.fp) : fp;
+
+		out.defaultWriteObject();
+		out.writeObject(Arrays.copyOf(stack, spMax));
+		out.writeObject(Arrays.copyOf(stackPrim, spMax));
+		out.writeObject(Arrays.copyOf(stackPrimType, spMax));
+		out.writeObject(Arrays.copyOf(callFrames, fpMax));
+	}
+
 }
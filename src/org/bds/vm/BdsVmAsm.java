@@ -1,6 +1,6 @@
 package org.bds.vm;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +27,16 @@ import org.bds.util.Gpr;
  */
 public class BdsVmAsm {
 
+	private static final Map<String, OpCode> OPCODE_BY_NAME; // Opcodes by name (both upper and lower case)
+
+	static {
+		OPCODE_BY_NAME = new HashMap<>();
+		for (OpCode op : OpCode.values()) {
+			OPCODE_BY_NAME.put(op.name(), op);
+			OPCODE_BY_NAME.put(op.toString(), op);
+		}
+	}
+
 	boolean debug;
 	boolean coverage;
 	boolean verbose;
@@ -35,7 +45,8 @@ public class BdsVmAsm {
 	String file;
 	BdsVm bdsvm;
 	ProgramUnit programUnit;
-	List<Integer> code;
+	int[] code; // Compiled code (opcodes and parameters)
+	int codeLen; // Number of entries used in 'code'
 	Map<String, Type> typeByName;
 
 	public BdsVmAsm(ProgramUnit programUnit) {
@@ -53,10 +64,18 @@ public class BdsVmAsm {
 		// If in coverage mode, we switch all opcodes from 'NODE' to 'NODE_COVERAGE'?
 		if (coverage && opcode == OpCode.NODE) opcode = OpCode.NODE_COVERAGE;
 		// Add opcode and parameter
-		code.add(opcode.ordinal());
+		addCode(opcode.ordinal());
 		if (param != null) addParam(opcode, param);
 	}
 
+	/**
+	 * Append to code
+	 */
+	void addCode(int value) {
+		if (codeLen >= code.length) code = Arrays.copyOf(code, 2 * code.length);
+		code[codeLen++] = value;
+	}
+
 	/**
 	 * Add param to code
 	 * @param param
@@ -64,7 +83,7 @@ public class BdsVmAsm {
 	void addParam(OpCode opcode, String param) {
 		// We need to add 'param' to pool of constants and add a reference to it
 		int idx = parseParam(opcode, param);
-		code.add(idx);
+		addCode(idx);
 	}
 
 	public void addType(Type type) {
@@ -88,14 +107,22 @@ public class BdsVmAsm {
 
 		// Initialize
 		bdsvm = new BdsVm();
-		code = new ArrayList<>();
+		code = new int[1024];
+		codeLen = 0;
 		bdsvm.setDebug(debug);
 		bdsvm.setVerbose(verbose);
 		init();
 
 		// Read file and parse each line
+		// Note: Lines are scanned without regular expressions, assembly code for large programs has millions of lines
+		String asm = code();
 		lineNum = 1;
-		for (String line : code().split("\n")) {
+		for (int start = 0, len = asm.length(); start < len;) {
+			int end = asm.indexOf('\n', start);
+			if (end < 0) end = len;
+			String line = asm.substring(start, end);
+			start = end + 1;
+
 			// Remove comments and labels
 			if (isCommentLine(line)) continue;
 
@@ -112,7 +139,7 @@ public class BdsVmAsm {
 			lineNum++;
 		}
 
-		bdsvm.setCode(code);
+		bdsvm.setCode(Arrays.copyOf(code, codeLen));
 		if (debug) System.err.println("# Assembly: Start\n" + bdsvm.toAsm() + "\n# Assembly: End\n");
 		return bdsvm;
 	}
@@ -238,21 +265,32 @@ public class BdsVmAsm {
 	 * Parse an opcode
 	 */
 	OpCode opcode(String line) {
-		String s[] = line.split("\\s+", 2);
-		String op = s[0].toUpperCase();
-		try {
-			return OpCode.valueOf(op);
-		} catch (Exception e) {
-			throw new RuntimeException("Unknown opcode '" + op + "', file '" + file + "', line " + lineNum);
-		}
+		String op = line.substring(0, opcodeEnd(line));
+		OpCode opcode = OPCODE_BY_NAME.get(op);
+		if (opcode == null) opcode = OPCODE_BY_NAME.get(op.toUpperCase());
+		if (opcode == null) throw new RuntimeException("Unknown opcode '" + op.toUpperCase() + "', file '" + file + "', line " + lineNum);
+		return opcode;
+	}
+
+	/**
+	 * Position of the first whitespace after the opcode (line length if there is none)
+	 */
+	int opcodeEnd(String line) {
+		int len = line.length();
+		for (int i = 0; i < len; i++)
+			if (Character.isWhitespace(line.charAt(i))) return i;
+		return len;
 	}
 
 	/**
 	 * Parse a parameter
 	 */
 	String param(String line) {
-		String s[] = line.split("\\s+", 2);
-		return s.length > 1 ? s[1] : null;
+		int len = line.length();
+		int idx = opcodeEnd(line);
+		while (idx < len && Character.isWhitespace(line.charAt(idx)))
+			idx++;
+		return idx < len ? line.substring(idx) : null;
 	}
 
 	/**
@@ -267,8 +305,13 @@ public class BdsVmAsm {
 			return bdsvm.addType((Type) oparam);
 
 		case ADDSM:
+		case LOADL:
 		case NODE:
 		case NODE_COVERAGE:
+		case STOREL:
+		case STORELPOP:
+		case VARL:
+		case VARLPOP:
 			return ((int) oparam);
 
 		default:
@@ -280,7 +323,7 @@ public class BdsVmAsm {
 	 * Current program counter
 	 */
 	int pc() {
-		return code.size();
+		return codeLen;
 	}
 
 	public void setCode(String codeStr) {
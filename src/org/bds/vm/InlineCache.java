@@ -0,0 +1,86 @@
+package org.bds.vm;
+
+import org.bds.lang.statement.FunctionDeclaration;
+import org.bds.lang.type.Type;
+import org.bds.lang.type.TypeClass;
+
+/**
+ * Inline cache for a method call site (CALLMETHOD / CALLSUPER)
+ *
+ * Caches the method declaration (so we don't look it up by signature)
+ * and the method resolved for each receiver's type (virtual dispatch).
+ * Up to MAX_TYPES receiver types are cached, after that the call site
+ * is 'megamorphic' and the method is resolved on every call.
+ *
+ * Note: Entries are never modified, they are replaced by a new 'Entries'
+ *       object published through a volatile field. This allows 'parallel'
+ *       VMs to share the cache without locking
+ *
+ * @author pcingola
+ */
+public class InlineCache {
+
+	public static final int MAX_TYPES = 4;
+
+	/**
+	 * Immutable set of cached 'receiver type, resolved method' pairs
+	 */
+	static class Entries {
+		final int version; // Entries are invalid if any class declaration changed
+		final Object[] pairs; // Pairs of 'receiver type, resolved method'
+
+		Entries(int version, Object[] pairs) {
+			this.version = version;
+			this.pairs = pairs;
+		}
+	}
+
+	final FunctionDeclaration fdecl; // Method declaration at the call site
+	volatile Entries entries = new Entries(TypeClass.getDeclarationVersion(), new Object[0]);
+
+	public InlineCache(FunctionDeclaration fdecl) {
+		this.fdecl = fdecl;
+	}
+
+	/**
+	 * Find resolved method for receiver's type
+	 * @return Method declaration or null if not in cache
+	 */
+	public FunctionDeclaration get(Type type) {
+		Entries ents = entries;
+		if (ents.version != TypeClass.getDeclarationVersion()) return null;
+
+		Object[] pairs = ents.pairs;
+		for (int i = 0; i < pairs.length; i += 2)
+			if (pairs[i] == type) return (FunctionDeclaration) pairs[i + 1];
+
+		return null;
+	}
+
+	public FunctionDeclaration getFunctionDeclaration() {
+		return fdecl;
+	}
+
+	/**
+	 * Add resolved method for receiver's type
+	 */
+	public void put(Type type, FunctionDeclaration method) {
+		int ver = TypeClass.getDeclarationVersion();
+		Entries ents = entries;
+		Object[] pairs = (ents.version == ver ? ents.pairs : new Object[0]);
+		if (pairs.length >= 2 * MAX_TYPES) return; // Megamorphic, don't cache
+
+		Object[] newPairs = new Object[pairs.length + 2];
+		System.arraycopy(pairs, 0, newPairs, 0, pairs.length);
+		newPairs[pairs.length] = type;
+		newPairs[pairs.length + 1] = method;
+
+		entries = new Entries(ver, newPairs);
+	}
+
+	@Override
+	public String toString() {
+		return "InlineCache(" + fdecl.signature() + ", types: " + (entries.pairs.length / 2) + ")";
+	}
+
+}
@@ -87,7 +87,8 @@ public enum OpCode {
 	, LEB, LEI, LER, LES
 	// Load variable from scope into stack
 	//    LOAD varName
-	, LOAD
+	//    LOADL slot        # Local variable stored in function's slot 'slot'
+	, LOAD, LOADL
 	// Less or equal than
 	, LTB, LTI, LTR, LTS
 	// Modulo (int)
@@ -133,7 +134,8 @@ public enum OpCode {
 	, SETPOP
 	// Store value to local variable (scope). Leaves the value in the stack (stack is not changed)
 	//    STORE varName
-	, STORE, STOREPOP
+	//    STOREL slot       # Local variable stored in function's slot 'slot'
+	, STORE, STOREL, STORELPOP, STOREPOP
 	// Subtraction
 	, SUBI, SUBR
 	// Swap two values in stack
@@ -145,7 +147,9 @@ public enum OpCode {
 	// Throw an Exception
 	, THROW
 	// Create a variable in local scope (and pop)
-	, VAR, VARPOP
+	//    VAR varName
+	//    VARL slot         # Local variable stored in function's slot 'slot'
+	, VAR, VARL, VARLPOP, VARPOP
 	// Wait for task to finish
 	, WAIT, WAITALL
 	// XOR
@@ -176,6 +180,7 @@ public enum OpCode {
 		case JMPF:
 		case JSR:
 		case LOAD:
+		case LOADL:
 		case NEW:
 		case NODE:
 		case NODE_COVERAGE:
@@ -187,8 +192,12 @@ public enum OpCode {
 		case SETFIELD:
 		case SETFIELDPOP:
 		case STORE:
+		case STOREL:
+		case STORELPOP:
 		case STOREPOP:
 		case VAR:
+		case VARL:
+		case VARLPOP:
 		case VARPOP:
 			return true;
 
@@ -198,12 +207,25 @@ public enum OpCode {
 	}
 
 	/**
-	 * Is the parameters a 'nodeId'?
+	 * Is the parameters a 'nodeId' or a local variable slot?
 	 * Note that node ID is a 32bit int encoded encoded directly in
 	 * the opcode parameter (as opposed to using poll of constants)
 	 */
 	public boolean isParamDirect() {
-		return this == NODE || this == NODE_COVERAGE || this == ADDSM;
+		switch (this) {
+		case ADDSM:
+		case LOADL:
+		case NODE:
+		case NODE_COVERAGE:
+		case STOREL:
+		case STORELPOP:
+		case VARL:
+		case VARLPOP:
+			return true;
+
+		default:
+			return false;
+		}
 	}
 
 	/**
@@ -276,8 +298,13 @@ public enum OpCode {
 			return getType(param, typeByName);
 
 		case ADDSM:
+		case LOADL:
 		case NODE:
 		case NODE_COVERAGE:
+		case STOREL:
+		case STORELPOP:
+		case VARL:
+		case VARLPOP:
 			return Gpr.parseIntSafe(param);
 
 		case PUSHB:
@@ -303,6 +330,7 @@ public enum OpCode {
 				|| (param.charAt(0) == '"' && param.charAt(lastCharIdx) == '"')) // Using double quotes
 		{
 			String escapedStr = param.substring(1, param.length() - 1); // Remove quotes
+			if (escapedStr.indexOf('\\') < 0) return escapedStr; // Nothing to unescape
 			return GprString.unescape(escapedStr);
 		}
 		return param; // Unquoted string
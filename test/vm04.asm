@@ -0,0 +1,32 @@
+main:
+# int z = 0
+pushi 0
+var z
+pop
+
+# for( int i = 0 ; i < 10 ; i++ ) z = z + i * i
+pushi 0
+var i
+pop
+
+loop:
+load i
+pushi 10
+lti
+jmpf 'end'
+
+load z
+load i
+dup
+muli
+addi
+store z
+pop
+
+load i
+inc
+store i
+pop
+jmp 'loop'
+
+end:
@@ -0,0 +1,28 @@
+main:
+# real r = 0.0
+pushr 0.0
+var r
+pop
+
+# bool b = (1.5 * 2.0 > 2.5) && !false
+pushr 1.5
+pushr 2.0
+mulr
+pushr 2.5
+gtr
+pushb false
+notb
+andb
+var b
+pop
+
+# if( b ) r = r + 0.5
+load b
+jmpf 'end'
+load r
+pushr 0.5
+addr
+store r
+pop
+
+end: